@@ -20,13 +20,17 @@ import com.android.tools.idea.experimental.codeanalysis.datastructs.PsiCFGClass;
 import com.android.tools.idea.experimental.codeanalysis.utils.PsiCFGAnalysisUtil;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.intellij.analysis.AnalysisScope;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.*;
+import com.intellij.psi.util.PsiModificationTracker;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 
 public class CodeAnalysisMain {
 
@@ -36,6 +40,11 @@ public class CodeAnalysisMain {
 
   private PsiCFGScene mScene;
 
+  //The java structure modification count and the files the scene was built from.
+  //As long as neither changes, only the CFGs of edited methods are rebuilt.
+  private long mStructureModificationCount = -1;
+  private Set<PsiFile> mFilesInScene = Collections.emptySet();
+
   private CodeAnalysisMain(Project project) {
     mProject = project;
   }
@@ -55,11 +64,6 @@ public class CodeAnalysisMain {
   public void analyze(@NotNull AnalysisScope scope) {
 
 //    PsiDocumentManager.getInstance(mProject).commitAllDocuments();
-    //Create a mScene for this project.
-    //Each project has its own mScene.
-    mScene = PsiCFGScene.createFreshInstance(mProject);
-    PsiCFGAnalysisUtil AnalysisUtil = mScene.analysisUtil;
-
     //Get list of java files available in this project
     int fileCount = scope.getFileCount();
     //LOG.info("File count in scope " + fileCount);
@@ -67,6 +71,27 @@ public class CodeAnalysisMain {
     //LOG.info("File count in visitor " + allFilesInScope.length);
     //outputFileNames(allFilesInScope);
 
+    long structureModificationCount = PsiModificationTracker.SERVICE.getInstance(mProject).getJavaStructureModificationCount();
+    Set<PsiFile> files = Sets.newHashSet(allFilesInScope);
+    if (mScene != null && mScene == PsiCFGScene.getInstance(mProject) && mStructureModificationCount == structureModificationCount &&
+        mFilesInScene.equals(files) && isSceneValid()) {
+      //Only method bodies changed since the last analysis
+      PsiCFGAnalysisUtil AnalysisUtil = mScene.analysisUtil;
+      if (AnalysisUtil.performIncrementalStage3() > 0 || mScene.getCallGraph() == null) {
+        AnalysisUtil.performStage4();
+        AnalysisUtil.performStage5();
+      }
+      AnalysisUtil.performStage6();
+      return;
+    }
+
+    //Create a mScene for this project.
+    //Each project has its own mScene.
+    mScene = PsiCFGScene.createFreshInstance(mProject);
+    mStructureModificationCount = structureModificationCount;
+    mFilesInScene = files;
+    PsiCFGAnalysisUtil AnalysisUtil = mScene.analysisUtil;
+
     //Extract all java classes from java files.
     //Consider these classes are application classes.
     //As they are written by developer
@@ -84,6 +109,16 @@ public class CodeAnalysisMain {
     AnalysisUtil.performStage6();
   }
 
+  private boolean isSceneValid() {
+    for (PsiCFGClass cfgClass : mScene.getAllApplicationClasses()) {
+      PsiClass psiClass = cfgClass.getPsiClass();
+      if (psiClass != null && !psiClass.isValid()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   private void outputFileNames(PsiFile[] filesArray) {
     for (PsiFile f : filesArray) {
       System.out.println(f.getName());
@@ -30,6 +30,7 @@ import com.google.common.collect.Sets;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.*;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentMap;
@@ -51,7 +52,7 @@ public class PsiCFGScene {
 
   private Project mProject;
 
-  protected ArrayList<GraphNode> mInvocationNodes;
+  protected Set<GraphNode> mInvocationNodes;
 
   public PsiCFGAnalysisUtil analysisUtil;
 
@@ -59,6 +60,11 @@ public class PsiCFGScene {
 
   public Deque<PsiCFGClass> workingList;
 
+  //The CFG built for each method, with what its construction added to the scene
+  private final Map<PsiCFGMethod, MethodBuild> mMethodBuildMap;
+
+  //The build of the method whose CFG is being constructed on the current thread
+  private final ThreadLocal<MethodBuild> mCurrentBuild = new ThreadLocal<MethodBuild>();
 
   //private Map<PsiClass, PsiCFGClassBase> mPsiClassPsiMap;
 
@@ -79,8 +85,9 @@ public class PsiCFGScene {
     mAppPsiClassPsiCFGClassMap = Maps.newHashMap();
     mLibraryPsiClassPsiCFGClassMap = Maps.newHashMap();
     mLambdaPsiCFGClassMap = Maps.newHashMap();
-    mInvocationNodes = Lists.newArrayList();
+    mInvocationNodes = Sets.newLinkedHashSet();
     workingList = Queues.newArrayDeque();
+    mMethodBuildMap = Maps.newConcurrentMap();
   }
 
   public void setCallGraph(Callgraph callGraph) {
@@ -91,14 +98,63 @@ public class PsiCFGScene {
     return mCallGraph;
   }
 
-  public void addInvocationNode(GraphNode node) {
+  public synchronized void addInvocationNode(GraphNode node) {
     mInvocationNodes.add(node);
+    MethodBuild build = mCurrentBuild.get();
+    if (build != null) {
+      build.mInvocationNodes.add(node);
+    }
   }
 
-  public GraphNode[] getAllInvocationNode() {
+  public synchronized GraphNode[] getAllInvocationNode() {
     return mInvocationNodes.toArray(GraphNode.EMPTY_ARRAY);
   }
 
+  /**
+   * Record what the CFG construction on the current thread adds to the scene
+   * into the given build, until {@link #endMethodBuild()} is called.
+   * CFGs of different methods can be constructed concurrently on different threads.
+   * @param build The build of the method whose CFG is about to be constructed.
+   */
+  public void beginMethodBuild(@NotNull MethodBuild build) {
+    mCurrentBuild.set(build);
+  }
+
+  public void endMethodBuild() {
+    mCurrentBuild.remove();
+  }
+
+  public void putMethodBuild(@NotNull PsiCFGMethod method, @NotNull MethodBuild build) {
+    mMethodBuildMap.put(method, build);
+  }
+
+  @Nullable
+  public MethodBuild getMethodBuild(@NotNull PsiCFGMethod method) {
+    return mMethodBuildMap.get(method);
+  }
+
+  /**
+   * Remove the invocation nodes, nested classes and lambdas that the construction
+   * of the method's CFG added to the scene, before the CFG is constructed again.
+   * @param method The method whose CFG is going to be rebuilt.
+   */
+  public synchronized void removeMethodBuild(@NotNull PsiCFGMethod method) {
+    MethodBuild build = mMethodBuildMap.remove(method);
+    if (build == null) {
+      return;
+    }
+    mInvocationNodes.removeAll(build.mInvocationNodes);
+    for (PsiCFGClass nestedClass : build.mNestedClasses) {
+      mAppPsiClassPsiCFGClassMap.remove(nestedClass.getPsiClass());
+      mAppClassNamePsiMap.remove(nestedClass.getQualifiedClassName());
+      build.mDeclaringClasses.get(nestedClass).removeNestedInnerClass(nestedClass);
+    }
+    for (PsiCFGClass lambdaClass : build.mLambdaClasses) {
+      mLambdaPsiCFGClassMap.remove(lambdaClass.getPsiLambdaRef());
+      build.mDeclaringClasses.get(lambdaClass).removeLambda(lambdaClass);
+    }
+  }
+
   /**
    * Get the Scene object for this project.
    * The original idea is that the CFG does not need be recreated each time it is used.
@@ -143,7 +199,7 @@ public class PsiCFGScene {
    * Get all PsiClass instances found by visiting all java files in the project.
    * @return A new array of PsiClass instances which are application classes.
    */
-  public PsiClass[] getAllApplicationPsiClasses() {
+  public synchronized PsiClass[] getAllApplicationPsiClasses() {
     PsiClass[] retArray = new PsiClass[mAppClassNamePsiMap.size()];
     int i = 0;
     for (String className : mAppClassNamePsiMap.keySet()) {
@@ -158,7 +214,7 @@ public class PsiCFGScene {
    * Get all PsiCFGClass instances constructed from the application classses.
    * @return A new array of PsiCFGClass instances which are application classes will be returned.
    */
-  public PsiCFGClass[] getAllApplicationClasses() {
+  public synchronized PsiCFGClass[] getAllApplicationClasses() {
     PsiCFGClass[] retArray = new PsiCFGClass[mAppClassNamePsiMap.size()];
     int i = 0;
     for (String className : mAppClassNamePsiMap.keySet()) {
@@ -172,7 +228,7 @@ public class PsiCFGScene {
    * Get the set of PsiCFGClass instances which are application classes.
    * @return A new set of PsiCFGClass instances which are application classes will be returned.
    */
-  public Set<PsiClass> getAllLibraryClassPsiSet() {
+  public synchronized Set<PsiClass> getAllLibraryClassPsiSet() {
     return Sets.newHashSet(this.mLibraryPsiClassPsiCFGClassMap.keySet());
   }
 
@@ -180,7 +236,7 @@ public class PsiCFGScene {
    * Get all PsiCFGClass instances constructed from the library classses.
    * @return A new array of PsiCFGClass instances which are library classes will be returned.
    */
-  public PsiCFGClass[] getAllLibraryClasses() {
+  public synchronized PsiCFGClass[] getAllLibraryClasses() {
     PsiCFGClass[] retArray = new PsiCFGClass[mLibraryClassNamePsiMap.size()];
     int i = 0;
     for (String className : mLibraryClassNamePsiMap.keySet()) {
@@ -195,7 +251,7 @@ public class PsiCFGScene {
    * @return A new array of PsiCFGClass instances which are lambda anonymous classes will be
    * returned.
    */
-  public PsiCFGClass[] getAllLambdaClass() {
+  public synchronized PsiCFGClass[] getAllLambdaClass() {
     PsiCFGClass[] retArray = new PsiCFGClass[mLambdaPsiCFGClassMap.size()];
     int i = 0;
     for (PsiLambdaExpression lbdExpr : mLambdaPsiCFGClassMap.keySet()) {
@@ -211,7 +267,7 @@ public class PsiCFGScene {
    * @param name The qualified name of the class
    * @return The PsiCFGClass instance.
    */
-  public PsiCFGClass getPsiCFGClass(String name) {
+  public synchronized PsiCFGClass getPsiCFGClass(String name) {
     if (mAppClassNamePsiMap.containsKey(name)) {
       return mAppClassNamePsiMap.get(name);
     }
@@ -230,7 +286,7 @@ public class PsiCFGScene {
    * @param name The PsiClass
    * @return The PsiCFGClass instance.
    */
-  public PsiCFGClass getPsiCFGClass(PsiClass psiClazz) {
+  public synchronized PsiCFGClass getPsiCFGClass(PsiClass psiClazz) {
     if (mAppPsiClassPsiCFGClassMap.containsKey(psiClazz)) {
       return mAppPsiClassPsiCFGClassMap.get(psiClazz);
     }
@@ -243,7 +299,7 @@ public class PsiCFGScene {
     }
   }
 
-  public PsiCFGClass getOrCreateCFGClass(PsiClass psiClazz) {
+  public synchronized PsiCFGClass getOrCreateCFGClass(PsiClass psiClazz) {
     PsiCFGClass retClass = getPsiCFGClass(psiClazz);
     if (retClass == null) {
       retClass = createAndParsePsiCFGClassOnTheFly(psiClazz);
@@ -251,7 +307,7 @@ public class PsiCFGScene {
     return retClass;
   }
 
-  public PsiCFGClass createPsiCFGClass(PsiClass psiClass,
+  public synchronized PsiCFGClass createPsiCFGClass(PsiClass psiClass,
                                        PsiFile declaringFile,
                                        boolean bAppClass) {
     String fullClassName = psiClass.getQualifiedName();
@@ -304,7 +360,7 @@ public class PsiCFGScene {
    * @param psiClass
    * @return
    */
-  public PsiCFGClass createAndParsePsiCFGClassOnTheFly(PsiClass psiClass) {
+  public synchronized PsiCFGClass createAndParsePsiCFGClassOnTheFly(PsiClass psiClass) {
     //Sanity check. Make sure the psiClass param is really not in side the App classes.
     if (mAppPsiClassPsiCFGClassMap.containsKey(psiClass)) {
       //Not expected. Print a log
@@ -329,7 +385,7 @@ public class PsiCFGScene {
    * @param clazz
    * @return
    */
-  public PsiCFGClass createLibraryCFGClassesWInnerClasses(PsiClass clazz) {
+  public synchronized PsiCFGClass createLibraryCFGClassesWInnerClasses(PsiClass clazz) {
     ArrayList<PsiClass> classList = Lists.newArrayList();
     retriveClassAndInnerClass(classList, clazz);
     classList.remove(clazz);
@@ -358,10 +414,10 @@ public class PsiCFGScene {
   }
 
 
-  public PsiCFGClass getOrCreateNestedClass(PsiClass nestedClass,
-                                            PsiCFGClass parentCFGClass,
-                                            PsiCFGMethod declaringMethod,
-                                            BlockGraph declaringBlock) {
+  public synchronized PsiCFGClass getOrCreateNestedClass(PsiClass nestedClass,
+                                                         PsiCFGClass parentCFGClass,
+                                                         PsiCFGMethod declaringMethod,
+                                                         BlockGraph declaringBlock) {
     PsiCFGClass currentNestedCFGClass =
       new PsiCFGClass(nestedClass, parentCFGClass.getDeclearingFile());
 
@@ -380,7 +436,16 @@ public class PsiCFGScene {
 
     parentCFGClass.addNestedInnerClass(currentNestedCFGClass, className);
 
-    workingList.addLast(currentNestedCFGClass);
+    //The methods of the nested class are built along with the method declaring it
+    MethodBuild build = mCurrentBuild.get();
+    if (build != null) {
+      build.mNestedClasses.add(currentNestedCFGClass);
+      build.mDeclaringClasses.put(currentNestedCFGClass, parentCFGClass);
+      build.mPendingClasses.addLast(currentNestedCFGClass);
+    }
+    else {
+      workingList.addLast(currentNestedCFGClass);
+    }
 
     this.mAppPsiClassPsiCFGClassMap.put(nestedClass, currentNestedCFGClass);
     this.mAppClassNamePsiMap
@@ -403,13 +468,21 @@ public class PsiCFGScene {
     PsiCFGClass wrapperClass = new PsiCFGClass(null, declearingClass.getDeclearingFile());
     wrapperClass.setAnonlymous();
     wrapperClass.setLambdaRef(lambdaExpress);
-    //parentInterfaceCFGClass.addLambda(wrapperClass);
-    declearingClass.addLambda(wrapperClass);
     wrapperClass.setDirectOverride(parentInterfaceCFGClass);
 
     PsiCFGMethod wrapperMethod = new PsiCFGMethod(lambdaExpress, overridedMethod, wrapperClass);
     wrapperClass.addMethod(wrapperMethod);
-    mLambdaPsiCFGClassMap.put(lambdaExpress, wrapperClass);
+    synchronized (this) {
+      //parentInterfaceCFGClass.addLambda(wrapperClass);
+      declearingClass.addLambda(wrapperClass);
+      mLambdaPsiCFGClassMap.put(lambdaExpress, wrapperClass);
+      MethodBuild build = mCurrentBuild.get();
+      if (build != null) {
+        build.mLambdaClasses.add(wrapperClass);
+        build.mDeclaringClasses.put(wrapperClass, declearingClass);
+      }
+    }
+    //Built outside of the lock, on the thread building the declaring method
     CFGUtil.constructMethodGraphForLambda(this, wrapperMethod);
     return wrapperClass;
   }
@@ -431,4 +504,54 @@ public class PsiCFGScene {
     }
     return retMethod;
   }
+
+  /**
+   * The CFG construction of a single method: the state of the method body it was
+   * built from, and everything it added to the scene besides the CFG itself.
+   */
+  public static class MethodBuild {
+    private final long mBodyHash;
+    private volatile long mFileStamp;
+
+    protected final List<GraphNode> mInvocationNodes = Lists.newArrayList();
+    protected final List<PsiCFGClass> mNestedClasses = Lists.newArrayList();
+    protected final List<PsiCFGClass> mLambdaClasses = Lists.newArrayList();
+    protected final Map<PsiCFGClass, PsiCFGClass> mDeclaringClasses = Maps.newHashMap();
+    protected final Deque<PsiCFGClass> mPendingClasses = Queues.newArrayDeque();
+
+    public MethodBuild(@NotNull PsiCodeBlock body) {
+      mBodyHash = body.getText().hashCode();
+      PsiFile file = body.getContainingFile();
+      mFileStamp = file == null ? -1 : file.getModificationStamp();
+    }
+
+    /**
+     * Check whether the CFG built from this method body is still valid. The file
+     * modification stamp is checked first, so that the text of the methods in files
+     * which have not been edited is not even looked at.
+     * @param body The current body of the method.
+     * @return True if the body has not changed since the CFG was built.
+     */
+    public boolean isUpToDate(@NotNull PsiCodeBlock body) {
+      PsiFile file = body.getContainingFile();
+      long fileStamp = file == null ? -1 : file.getModificationStamp();
+      if (fileStamp != -1 && fileStamp == mFileStamp) {
+        return true;
+      }
+      if (body.getText().hashCode() != mBodyHash) {
+        return false;
+      }
+      mFileStamp = fileStamp;
+      return true;
+    }
+
+    /**
+     * @return The next nested class declared while building the method whose
+     * methods still need a CFG, or null if there is none.
+     */
+    @Nullable
+    public PsiCFGClass pollPendingClass() {
+      return mPendingClasses.pollFirst();
+    }
+  }
 }
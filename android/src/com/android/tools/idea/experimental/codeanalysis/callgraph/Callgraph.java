@@ -102,6 +102,17 @@ public class Callgraph {
 
   public Set<PsiCFGMethod> allMethodsInGraph;
 
+  //The method level call graph indexed by integer method ids.
+  protected CompactCallgraph mCompactGraph;
+
+  public CompactCallgraph getCompactGraph() {
+    return mCompactGraph;
+  }
+
+  protected void setCompactGraph(CompactCallgraph compactGraph) {
+    this.mCompactGraph = compactGraph;
+  }
+
   protected Callgraph() {
     this.callerNodeToMethodsMap = Multimaps.newSetMultimap(
       Maps.newHashMap(), new Supplier<Set<PsiCFGMethod>>() {
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.experimental.codeanalysis.callgraph;
+
+import com.android.tools.idea.experimental.codeanalysis.PsiCFGScene;
+import com.android.tools.idea.experimental.codeanalysis.utils.PsiCFGAnalysisUtil;
+import com.android.tools.idea.experimental.codeanalysis.utils.PsiCFGDebugUtil;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Builds the call graph of a scene with every {@link CallgraphBuilder.Mode}
+ * and reports the build time and the size of each call graph.
+ * Enabled with -Dandroid.codeanalysis.callgraph.benchmark=true
+ */
+public class CallgraphBenchmark {
+  public static final String PROPERTY = "android.codeanalysis.callgraph.benchmark";
+
+  //The first builds warm up the JIT
+  private static final int RUNS = 3;
+
+  public static boolean isEnabled() {
+    return Boolean.getBoolean(PROPERTY);
+  }
+
+  @NotNull
+  public static String run(@NotNull PsiCFGScene scene, @NotNull PsiCFGAnalysisUtil analysisUtil) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("Call graph benchmark, ")
+      .append(scene.getAllApplicationClasses().length).append(" application classes, ")
+      .append(scene.getAllLibraryClasses().length).append(" library classes, ")
+      .append(scene.getAllInvocationNode().length).append(" invocation sites\n");
+    for (CallgraphBuilder.Mode mode : CallgraphBuilder.Mode.values()) {
+      long bestTime = Long.MAX_VALUE;
+      CompactCallgraph graph = null;
+      for (int i = 0; i < RUNS; i++) {
+        CallgraphBuilder builder = new CallgraphBuilder(scene, analysisUtil, mode);
+        long start = System.nanoTime();
+        builder.build();
+        bestTime = Math.min(bestTime, System.nanoTime() - start);
+        graph = builder.getCallGraph().getCompactGraph();
+      }
+      assert graph != null;
+      sb.append(String.format("%-13s %8.1f ms %8d edges %8d methods\n",
+                              mode, bestTime / 1e6, graph.getEdgeCount(), graph.getMethodCount()));
+    }
+    PsiCFGDebugUtil.LOG.info(sb.toString());
+    return sb.toString();
+  }
+}
@@ -34,9 +34,14 @@ import com.intellij.openapi.util.Pair;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiClassType;
 import com.intellij.psi.PsiType;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntObjectHashMap;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -47,6 +52,18 @@ import java.util.Set;
  */
 public class CallgraphBuilder {
 
+  /**
+   * How the targets of virtual invocations are resolved.
+   */
+  public enum Mode {
+    //Class hierarchy analysis walking the sub classes of the receiver for each invocation site
+    RECURSIVE_CHA,
+    //Class hierarchy analysis using a precomputed ClassHierarchyTable
+    CHA,
+    //Rapid type analysis: only classes instantiated in reachable code are dispatched to
+    RTA
+  }
+
   protected PsiCFGScene mScene;
 
   protected PsiCFGAnalysisUtil mAnalysisUtil;
@@ -57,9 +74,28 @@ public class CallgraphBuilder {
 
   public PsiCFGClass JAVA_LANG_OBJECT;
 
+  protected final Mode mMode;
+
+  protected ClassHierarchyTable mHierarchy;
+
+  protected CompactCallgraph.Builder mCompactGraphBuilder;
+
+  //RTA state
+  protected boolean[] mInstantiated;
+  protected TIntArrayList mInstantiatedList;
+  protected ArrayDeque<Integer> mTypeWorkList;
+  protected Set<PsiCFGMethod> mReachableMethods;
+  protected ArrayDeque<PsiCFGMethod> mMethodWorkList;
+  protected TIntObjectHashMap<Map<PsiCFGPartialMethodSignature, VirtualSiteGroup>> mVirtualSites;
+
   public CallgraphBuilder(@NotNull PsiCFGScene scene, @NotNull PsiCFGAnalysisUtil analysisUtil) {
+    this(scene, analysisUtil, Mode.CHA);
+  }
+
+  public CallgraphBuilder(@NotNull PsiCFGScene scene, @NotNull PsiCFGAnalysisUtil analysisUtil, @NotNull Mode mode) {
     this.mScene = scene;
     this.mAnalysisUtil = analysisUtil;
+    this.mMode = mode;
     this.mMethodOrderTreeMap = Maps.newHashMap();
     JAVA_LANG_OBJECT = mScene.getPsiCFGClass("java.lang.Object");
   }
@@ -68,13 +104,154 @@ public class CallgraphBuilder {
     //Initiate
 
     this.mCallGraphInstance = new Callgraph();
+    this.mCompactGraphBuilder = new CompactCallgraph.Builder();
+    if (mMode != Mode.RECURSIVE_CHA) {
+      this.mHierarchy = new ClassHierarchyTable(mScene, JAVA_LANG_OBJECT);
+    }
 
     //Retrive all callsites
 
     GraphNode[] invocationNodes = mScene.getAllInvocationNode();
+    if (mMode == Mode.RTA) {
+      buildWithRTA(invocationNodes);
+    }
+    else {
+      for (GraphNode invocationNode : invocationNodes) {
+
+        processSingleInvocation(invocationNode);
+      }
+    }
+    mCallGraphInstance.setCompactGraph(mCompactGraphBuilder.build());
+  }
+
+  /**
+   * Rapid type analysis.
+   * Starting from the methods of the application classes, only the methods
+   * that become reachable are processed, and virtual invocations are only
+   * dispatched to the classes instantiated so far. Invocation sites are grouped
+   * by receiver class and signature, so a newly instantiated class only
+   * revisits the groups whose receiver is one of its super types.
+   */
+  protected void buildWithRTA(@NotNull GraphNode[] invocationNodes) {
+    mInstantiated = new boolean[mHierarchy.getClassCount()];
+    mInstantiatedList = new TIntArrayList();
+    mTypeWorkList = new ArrayDeque<>();
+    mReachableMethods = Sets.newHashSet();
+    mMethodWorkList = new ArrayDeque<>();
+    mVirtualSites = new TIntObjectHashMap<>();
+
+    Map<PsiCFGMethod, List<GraphNode>> invocationNodesByMethod = Maps.newHashMap();
     for (GraphNode invocationNode : invocationNodes) {
+      PsiCFGMethod parentMethod = retrieveParentMethod(invocationNode);
+      if (parentMethod == null) {
+        continue;
+      }
+      List<GraphNode> nodes = invocationNodesByMethod.get(parentMethod);
+      if (nodes == null) {
+        nodes = Lists.newArrayList();
+        invocationNodesByMethod.put(parentMethod, nodes);
+      }
+      nodes.add(invocationNode);
+    }
+
+    //Objects created by the framework, or by code that is not analyzed
+    for (int i = 0; i < mHierarchy.getClassCount(); i++) {
+      PsiCFGClass clazz = mHierarchy.getClassById(i);
+      if (clazz.isInterface()) {
+        continue;
+      }
+      PsiCFGClass superClass = clazz.getSuperClass();
+      if (clazz.isLibraryClass() || clazz.getPsiLambdaRef() != null ||
+          (superClass != null && superClass.isLibraryClass() && !superClass.equals(JAVA_LANG_OBJECT))) {
+        addInstantiatedClass(clazz);
+      }
+    }
+
+    //Any method of the application may be called back by the framework
+    for (PsiCFGClass clazz : mScene.getAllApplicationClasses()) {
+      for (PsiCFGMethod method : clazz.getAllMethods()) {
+        addReachableMethod(method);
+      }
+    }
+    for (PsiCFGClass clazz : mScene.getAllLambdaClass()) {
+      for (PsiCFGMethod method : clazz.getAllMethods()) {
+        addReachableMethod(method);
+      }
+    }
+
+    while (!mTypeWorkList.isEmpty() || !mMethodWorkList.isEmpty()) {
+      if (!mTypeWorkList.isEmpty()) {
+        processInstantiatedClass(mTypeWorkList.poll());
+      }
+      else {
+        List<GraphNode> nodes = invocationNodesByMethod.get(mMethodWorkList.poll());
+        if (nodes != null) {
+          for (GraphNode node : nodes) {
+            processSingleInvocation(node);
+          }
+        }
+      }
+    }
+  }
+
+  protected void addInstantiatedClass(@Nullable PsiCFGClass clazz) {
+    int id = mHierarchy.getId(clazz);
+    if (id >= 0 && !mInstantiated[id]) {
+      mInstantiated[id] = true;
+      mInstantiatedList.add(id);
+      mTypeWorkList.add(id);
+    }
+  }
 
-      processSingleInvocation(invocationNode);
+  protected void addReachableMethod(@NotNull PsiCFGMethod method) {
+    if (mReachableMethods.add(method)) {
+      mMethodWorkList.add(method);
+    }
+  }
+
+  protected void processInstantiatedClass(int classId) {
+    for (int superId : mHierarchy.getSuperTypes(classId)) {
+      Map<PsiCFGPartialMethodSignature, VirtualSiteGroup> groups = mVirtualSites.get(superId);
+      if (groups == null) {
+        continue;
+      }
+      for (VirtualSiteGroup group : groups.values()) {
+        addTargetToGroup(group, mHierarchy.dispatch(classId, group.signature));
+      }
+    }
+  }
+
+  protected void addVirtualSite(@NotNull GraphNode node, int receiverId, @NotNull PsiCFGPartialMethodSignature signature) {
+    Map<PsiCFGPartialMethodSignature, VirtualSiteGroup> groups = mVirtualSites.get(receiverId);
+    if (groups == null) {
+      groups = Maps.newHashMap();
+      mVirtualSites.put(receiverId, groups);
+    }
+    VirtualSiteGroup group = groups.get(signature);
+    if (group == null) {
+      group = new VirtualSiteGroup(signature);
+      groups.put(signature, group);
+      group.nodes.add(node);
+      for (int i = 0; i < mInstantiatedList.size(); i++) {
+        int classId = mInstantiatedList.get(i);
+        if (mHierarchy.isSubType(classId, receiverId)) {
+          addTargetToGroup(group, mHierarchy.dispatch(classId, signature));
+        }
+      }
+    }
+    else {
+      group.nodes.add(node);
+      for (PsiCFGMethod target : group.targets) {
+        addToCallGraph(node, target);
+      }
+    }
+  }
+
+  private void addTargetToGroup(@NotNull VirtualSiteGroup group, @Nullable PsiCFGMethod target) {
+    if (target != null && group.targets.add(target)) {
+      for (GraphNode node : group.nodes) {
+        addToCallGraph(node, target);
+      }
     }
   }
 
@@ -147,6 +324,7 @@ public class CallgraphBuilder {
     mCallGraphInstance.calleeMethodToCallerGraphNodeMap.put(calleeMethod, callerNode);
     PsiCFGMethod callerMethod = retrieveParentMethod(callerNode);
     if (callerMethod != null) {
+      mCompactGraphBuilder.addEdge(callerMethod, calleeMethod);
       mCallGraphInstance.callerMethodToCalleeMethodMap.put(callerMethod, calleeMethod);
       mCallGraphInstance.calleeMethodToCallerMethodReturnMap.put(calleeMethod, callerMethod);
       mCallGraphInstance.allMethodsInGraph.add(callerMethod);
@@ -160,6 +338,10 @@ public class CallgraphBuilder {
       mCallGraphInstance.callerNodeToCalleeNodeMap.put(callerNode, entryNode);
       mCallGraphInstance.calleeNodeToCallerNodeMap.put(exitNode, callerNode);
     }
+
+    if (mMode == Mode.RTA) {
+      addReachableMethod(calleeMethod);
+    }
   }
 
   public void performCHAForInvocationSite(GraphNode node, PsiType receiverType, PsiCFGMethod targetMethod) {
@@ -180,20 +362,41 @@ public class CallgraphBuilder {
         return;
       }
 
-      //Find first concrete method to the top
-      //It may not exist
-      PsiCFGPartialMethodSignature methodSignature = targetMethod.getSignature();
-      PsiCFGMethod nearestConcreteMethodFromTop = getNearestConcreteMethod(receiverClass, methodSignature);
-      if (nearestConcreteMethodFromTop != null) {
-        addToCallGraph(node, nearestConcreteMethodFromTop);
-      }
+      resolveVirtualInvocation(node, receiverClass, targetMethod.getSignature());
+    }
+  }
 
-      //Find concrete method to the leaf
-      ArrayList<PsiCFGMethod> methodList = Lists.newArrayList();
-      recursivelyQueryConcreteMethodFromChildrenWithCache(methodList, receiverClass, methodSignature);
-      for (PsiCFGMethod concreteMethodFromSubClass : methodList) {
-        addToCallGraph(node, concreteMethodFromSubClass);
-      }
+  /**
+   * Add the possible targets of a virtual invocation according to the mode of this builder.
+   */
+  public void resolveVirtualInvocation(GraphNode node, PsiCFGClass receiverClass, PsiCFGPartialMethodSignature methodSignature) {
+    int receiverId = mHierarchy == null ? -1 : mHierarchy.getId(receiverClass);
+    if (receiverId >= 0 && mMode == Mode.RTA) {
+      addVirtualSite(node, receiverId, methodSignature);
+      return;
+    }
+
+    //Find first concrete method to the top
+    //It may not exist
+    PsiCFGMethod nearestConcreteMethodFromTop = receiverId >= 0
+                                                ? mHierarchy.dispatch(receiverId, methodSignature)
+                                                : getNearestConcreteMethod(receiverClass, methodSignature);
+    if (nearestConcreteMethodFromTop != null) {
+      addToCallGraph(node, nearestConcreteMethodFromTop);
+    }
+
+    //Find concrete method to the leaf
+    List<PsiCFGMethod> methodList;
+    if (receiverId >= 0) {
+      methodList = mHierarchy.getConcreteMethodsInCone(receiverId, methodSignature);
+    }
+    else {
+      ArrayList<PsiCFGMethod> recursiveMethodList = Lists.newArrayList();
+      recursivelyQueryConcreteMethodFromChildrenWithCache(recursiveMethodList, receiverClass, methodSignature);
+      methodList = recursiveMethodList;
+    }
+    for (PsiCFGMethod concreteMethodFromSubClass : methodList) {
+      addToCallGraph(node, concreteMethodFromSubClass);
     }
   }
 
@@ -247,10 +450,10 @@ public class CallgraphBuilder {
       if (cfgClass == null) {
         PsiCFGDebugUtil.LOG.warning("PsiType of ThisRef cannot be resolved to cfgClass :"
                                     + thisBaseType.getClass().getSimpleName());
+        return;
       }
 
-      ArrayList<PsiCFGMethod> methodsList = Lists.newArrayList();
-      recursivelyQueryConcreteMethodFromChildrenWithCache(methodsList, cfgClass, method.getSignature());
+      resolveVirtualInvocation(node, cfgClass, method.getSignature());
     }
   }
 
@@ -294,6 +497,9 @@ public class CallgraphBuilder {
   }
 
   public void processSingleInvocationWithConstructorInvoke(GraphNode node, NewExpr newExpr) {
+    if (mMode == Mode.RTA) {
+      addInstantiatedClass(newExpr.getBaseClass());
+    }
     PsiCFGMethod constructorMethod = newExpr.getConstructorInvocation();
     if (constructorMethod != null) {
       addToCallGraph(node, constructorMethod);
@@ -307,4 +513,18 @@ public class CallgraphBuilder {
     return this.mCallGraphInstance;
   }
 
+  /**
+   * Invocation sites with the same receiver class and signature,
+   * and the targets found for them so far.
+   */
+  protected static class VirtualSiteGroup {
+    public final PsiCFGPartialMethodSignature signature;
+    public final List<GraphNode> nodes = Lists.newArrayList();
+    public final Set<PsiCFGMethod> targets = Sets.newHashSet();
+
+    public VirtualSiteGroup(@NotNull PsiCFGPartialMethodSignature signature) {
+      this.signature = signature;
+    }
+  }
+
 }
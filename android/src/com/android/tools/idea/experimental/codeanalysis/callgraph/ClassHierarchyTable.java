@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.experimental.codeanalysis.callgraph;
+
+import com.android.tools.idea.experimental.codeanalysis.PsiCFGScene;
+import com.android.tools.idea.experimental.codeanalysis.datastructs.PsiCFGClass;
+import com.android.tools.idea.experimental.codeanalysis.datastructs.PsiCFGMethod;
+import com.android.tools.idea.experimental.codeanalysis.datastructs.PsiCFGPartialMethodSignature;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class hierarchy table computed once per call graph construction, so that
+ * virtual calls can be resolved without walking the sub class sets of the
+ * receiver class for every invocation site.
+ *
+ * Every class of the scene gets an integer id. For each class, the ids of all
+ * its super types (itself included) are stored sorted in a single array, with
+ * an offset array pointing at the range of each class. For each method
+ * signature, the ids of the classes which declare a concrete method with that
+ * signature are stored as well. The concrete targets of a call on a receiver
+ * class are then the declaring classes which have the receiver as a super type.
+ */
+public class ClassHierarchyTable {
+  private final PsiCFGClass[] mClasses;
+  private final Map<PsiCFGClass, Integer> mClassIds;
+
+  //Super types of class i are mSuperTypes[mSuperTypeOffsets[i] .. mSuperTypeOffsets[i + 1]), sorted
+  private final int[] mSuperTypeOffsets;
+  private final int[] mSuperTypes;
+
+  //Ids of the classes declaring a concrete method, by signature
+  private final Map<PsiCFGPartialMethodSignature, int[]> mDeclaringClasses;
+
+  @Nullable private final PsiCFGClass mJavaLangObject;
+
+  public ClassHierarchyTable(@NotNull PsiCFGScene scene, @Nullable PsiCFGClass javaLangObject) {
+    mJavaLangObject = javaLangObject;
+    PsiCFGClass[] appClasses = scene.getAllApplicationClasses();
+    PsiCFGClass[] libraryClasses = scene.getAllLibraryClasses();
+    PsiCFGClass[] lambdaClasses = scene.getAllLambdaClass();
+    mClasses = new PsiCFGClass[appClasses.length + libraryClasses.length + lambdaClasses.length];
+    System.arraycopy(appClasses, 0, mClasses, 0, appClasses.length);
+    System.arraycopy(libraryClasses, 0, mClasses, appClasses.length, libraryClasses.length);
+    System.arraycopy(lambdaClasses, 0, mClasses, appClasses.length + libraryClasses.length, lambdaClasses.length);
+    mClassIds = Maps.newHashMapWithExpectedSize(mClasses.length);
+    for (int i = 0; i < mClasses.length; i++) {
+      mClassIds.put(mClasses[i], i);
+    }
+
+    //Both directions are recorded by the scene, but not always for the same pairs of classes
+    List<TIntArrayList> directSuperTypes = Lists.newArrayListWithCapacity(mClasses.length);
+    for (int i = 0; i < mClasses.length; i++) {
+      directSuperTypes.add(new TIntArrayList(2));
+    }
+    for (int i = 0; i < mClasses.length; i++) {
+      for (PsiCFGClass subClass : mClasses[i].getSubClassSet()) {
+        Integer subId = mClassIds.get(subClass);
+        if (subId != null) {
+          directSuperTypes.get(subId).add(i);
+        }
+      }
+      for (PsiCFGClass superType : mClasses[i].getAllSupers()) {
+        Integer superId = superType == null ? null : mClassIds.get(superType);
+        if (superId != null) {
+          directSuperTypes.get(i).add(superId);
+        }
+      }
+    }
+
+    int[][] superTypes = new int[mClasses.length][];
+    boolean[] inProgress = new boolean[mClasses.length];
+    int total = 0;
+    for (int i = 0; i < mClasses.length; i++) {
+      total += computeSuperTypes(i, directSuperTypes, superTypes, inProgress).length;
+    }
+    mSuperTypeOffsets = new int[mClasses.length + 1];
+    mSuperTypes = new int[total];
+    int offset = 0;
+    for (int i = 0; i < mClasses.length; i++) {
+      mSuperTypeOffsets[i] = offset;
+      System.arraycopy(superTypes[i], 0, mSuperTypes, offset, superTypes[i].length);
+      offset += superTypes[i].length;
+    }
+    mSuperTypeOffsets[mClasses.length] = offset;
+
+    Map<PsiCFGPartialMethodSignature, TIntArrayList> declaringClasses = Maps.newHashMap();
+    for (int i = 0; i < mClasses.length; i++) {
+      for (PsiCFGMethod method : mClasses[i].getAllMethods()) {
+        if (method.isAbstract() || method.getSignature() == null) {
+          continue;
+        }
+        TIntArrayList ids = declaringClasses.get(method.getSignature());
+        if (ids == null) {
+          ids = new TIntArrayList(1);
+          declaringClasses.put(method.getSignature(), ids);
+        }
+        ids.add(i);
+      }
+    }
+    mDeclaringClasses = Maps.newHashMapWithExpectedSize(declaringClasses.size());
+    for (Map.Entry<PsiCFGPartialMethodSignature, TIntArrayList> entry : declaringClasses.entrySet()) {
+      mDeclaringClasses.put(entry.getKey(), entry.getValue().toNativeArray());
+    }
+  }
+
+  @NotNull
+  private int[] computeSuperTypes(int id, @NotNull List<TIntArrayList> directSuperTypes, @NotNull int[][] superTypes,
+                                  @NotNull boolean[] inProgress) {
+    if (superTypes[id] != null) {
+      return superTypes[id];
+    }
+    if (inProgress[id]) {
+      //Malformed hierarchy with a cycle. Cut it here.
+      return new int[]{id};
+    }
+    inProgress[id] = true;
+    TIntArrayList result = new TIntArrayList();
+    result.add(id);
+    TIntArrayList direct = directSuperTypes.get(id);
+    for (int i = 0; i < direct.size(); i++) {
+      result.add(computeSuperTypes(direct.get(i), directSuperTypes, superTypes, inProgress));
+    }
+    int[] sorted = result.toNativeArray();
+    Arrays.sort(sorted);
+    int unique = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (i == 0 || sorted[i] != sorted[i - 1]) {
+        sorted[unique++] = sorted[i];
+      }
+    }
+    superTypes[id] = unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique);
+    inProgress[id] = false;
+    return superTypes[id];
+  }
+
+  public int getClassCount() {
+    return mClasses.length;
+  }
+
+  /**
+   * @return The id of the class, or -1 if it is not in the scene.
+   */
+  public int getId(@Nullable PsiCFGClass clazz) {
+    Integer id = clazz == null ? null : mClassIds.get(clazz);
+    return id == null ? -1 : id;
+  }
+
+  @NotNull
+  public PsiCFGClass getClassById(int id) {
+    return mClasses[id];
+  }
+
+  /**
+   * @return True if the class with id superId is the class with id subId or one of its super types.
+   */
+  public boolean isSubType(int subId, int superId) {
+    return Arrays.binarySearch(mSuperTypes, mSuperTypeOffsets[subId], mSuperTypeOffsets[subId + 1], superId) >= 0;
+  }
+
+  /**
+   * @return The ids of all the super types of the class, including the class itself.
+   */
+  @NotNull
+  public int[] getSuperTypes(int id) {
+    return Arrays.copyOfRange(mSuperTypes, mSuperTypeOffsets[id], mSuperTypeOffsets[id + 1]);
+  }
+
+  /**
+   * Class hierarchy analysis: the concrete methods with the signature declared in
+   * the receiver class or in any of its sub types.
+   */
+  @NotNull
+  public List<PsiCFGMethod> getConcreteMethodsInCone(int receiverId, @NotNull PsiCFGPartialMethodSignature signature) {
+    int[] declaringIds = mDeclaringClasses.get(signature);
+    if (declaringIds == null) {
+      return Lists.newArrayList();
+    }
+    List<PsiCFGMethod> methods = Lists.newArrayListWithCapacity(declaringIds.length);
+    for (int declaringId : declaringIds) {
+      if (isSubType(declaringId, receiverId)) {
+        methods.add(mClasses[declaringId].getMethod(signature));
+      }
+    }
+    return methods;
+  }
+
+  /**
+   * The method a virtual call with the signature dispatches to on an instance of the class:
+   * the nearest concrete method going up the super classes, java.lang.Object excluded.
+   */
+  @Nullable
+  public PsiCFGMethod dispatch(int classId, @NotNull PsiCFGPartialMethodSignature signature) {
+    PsiCFGClass receiverClass = mClasses[classId];
+    while (receiverClass != null && !receiverClass.equals(mJavaLangObject)) {
+      PsiCFGMethod methodInCurClass = receiverClass.getMethod(signature);
+      if (methodInCurClass != null && !methodInCurClass.isAbstract()) {
+        return methodInCurClass;
+      }
+      receiverClass = receiverClass.getSuperClass();
+    }
+    return null;
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.experimental.codeanalysis.callgraph;
+
+import com.android.tools.idea.experimental.codeanalysis.datastructs.PsiCFGMethod;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import gnu.trove.TLongHashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Method level call graph stored in compressed sparse rows.
+ * Methods are numbered from 0, the callees of method i are
+ * mCalleeTargets[mCalleeOffsets[i] .. mCalleeOffsets[i + 1]),
+ * sorted, and the callers are stored the same way.
+ */
+public class CompactCallgraph {
+  private final PsiCFGMethod[] mMethods;
+  private final Map<PsiCFGMethod, Integer> mMethodIds;
+
+  private final int[] mCalleeOffsets;
+  private final int[] mCalleeTargets;
+  private final int[] mCallerOffsets;
+  private final int[] mCallerTargets;
+
+  private CompactCallgraph(@NotNull PsiCFGMethod[] methods, @NotNull Map<PsiCFGMethod, Integer> methodIds, @NotNull long[] edges) {
+    mMethods = methods;
+    mMethodIds = methodIds;
+    mCalleeOffsets = new int[methods.length + 1];
+    mCalleeTargets = new int[edges.length];
+    mCallerOffsets = new int[methods.length + 1];
+    mCallerTargets = new int[edges.length];
+    fill(edges, true, mCalleeOffsets, mCalleeTargets);
+    fill(edges, false, mCallerOffsets, mCallerTargets);
+  }
+
+  private static void fill(@NotNull long[] edges, boolean forward, @NotNull int[] offsets, @NotNull int[] targets) {
+    for (long edge : edges) {
+      offsets[(forward ? caller(edge) : callee(edge)) + 1]++;
+    }
+    for (int i = 1; i < offsets.length; i++) {
+      offsets[i] += offsets[i - 1];
+    }
+    int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+    for (long edge : edges) {
+      int from = forward ? caller(edge) : callee(edge);
+      targets[next[from]++] = forward ? callee(edge) : caller(edge);
+    }
+    for (int i = 0; i < offsets.length - 1; i++) {
+      Arrays.sort(targets, offsets[i], offsets[i + 1]);
+    }
+  }
+
+  private static long edge(int caller, int callee) {
+    return ((long)caller << 32) | (callee & 0xFFFFFFFFL);
+  }
+
+  private static int caller(long edge) {
+    return (int)(edge >>> 32);
+  }
+
+  private static int callee(long edge) {
+    return (int)edge;
+  }
+
+  public int getMethodCount() {
+    return mMethods.length;
+  }
+
+  public int getEdgeCount() {
+    return mCalleeTargets.length;
+  }
+
+  /**
+   * @return The id of the method, or -1 if the method is not in the call graph.
+   */
+  public int getId(@Nullable PsiCFGMethod method) {
+    Integer id = method == null ? null : mMethodIds.get(method);
+    return id == null ? -1 : id;
+  }
+
+  @NotNull
+  public PsiCFGMethod getMethod(int id) {
+    return mMethods[id];
+  }
+
+  public int getCalleeCount(int id) {
+    return mCalleeOffsets[id + 1] - mCalleeOffsets[id];
+  }
+
+  public int getCallerCount(int id) {
+    return mCallerOffsets[id + 1] - mCallerOffsets[id];
+  }
+
+  @NotNull
+  public int[] getCallees(int id) {
+    return Arrays.copyOfRange(mCalleeTargets, mCalleeOffsets[id], mCalleeOffsets[id + 1]);
+  }
+
+  @NotNull
+  public int[] getCallers(int id) {
+    return Arrays.copyOfRange(mCallerTargets, mCallerOffsets[id], mCallerOffsets[id + 1]);
+  }
+
+  /**
+   * Collects the method edges while the call graph is built.
+   * Duplicated edges are only recorded once.
+   */
+  public static class Builder {
+    private final List<PsiCFGMethod> mMethods = Lists.newArrayList();
+    private final Map<PsiCFGMethod, Integer> mMethodIds = Maps.newHashMap();
+    private final TLongHashSet mEdges = new TLongHashSet();
+
+    public int addMethod(@NotNull PsiCFGMethod method) {
+      Integer id = mMethodIds.get(method);
+      if (id == null) {
+        id = mMethods.size();
+        mMethods.add(method);
+        mMethodIds.put(method, id);
+      }
+      return id;
+    }
+
+    public void addEdge(@NotNull PsiCFGMethod caller, @NotNull PsiCFGMethod callee) {
+      mEdges.add(edge(addMethod(caller), addMethod(callee)));
+    }
+
+    @NotNull
+    public CompactCallgraph build() {
+      return new CompactCallgraph(mMethods.toArray(PsiCFGMethod.EMPTY_ARRAY), Maps.newHashMap(mMethodIds), mEdges.toArray());
+    }
+  }
+}
@@ -71,6 +71,11 @@ public class PsiCFGClass implements PsiAnnotationOwner {
   //Including Anonymous Classes
   protected Map<String, Set<PsiCFGClass>> nestedInnerClassMap;
 
+  //Numbers given to nested classes and lambdas so far. They are not
+  //reused when a class or lambda is removed, so that names stay unique
+  protected Map<String, Integer> nestedInnerClassCounterMap;
+  protected int lambdaCounter;
+
 
   /***
    * Library Classes are classes that their methods does not have
@@ -121,6 +126,7 @@ public class PsiCFGClass implements PsiAnnotationOwner {
 
     mSignatureMethodMap = Maps.newHashMap();
     nestedInnerClassMap = Maps.newHashMap();
+    nestedInnerClassCounterMap = Maps.newHashMap();
   }
 
   /**
@@ -346,13 +352,26 @@ public class PsiCFGClass implements PsiAnnotationOwner {
       nestedInnerClassMap.put(name, currentCFGClassSet);
     }
 
-    int indexNumber = currentCFGClassSet.size() + 1;
+    Integer lastIndex = nestedInnerClassCounterMap.get(name);
+    int indexNumber = lastIndex == null ? 1 : lastIndex + 1;
+    nestedInnerClassCounterMap.put(name, indexNumber);
     String qualifiedName = String.format("%s.$%d%s", this.qualifiedClassName, indexNumber, name);
     nestedClass.qualifiedClassName = qualifiedName;
     currentCFGClassSet.add(nestedClass);
     return nestedClass;
   }
 
+  /**
+   * Remove a nested class added by {@link #addNestedInnerClass}, when the CFG
+   * of the method declaring it is rebuilt.
+   * @param nestedClass The CFGClass of nested class
+   */
+  public void removeNestedInnerClass(PsiCFGClass nestedClass) {
+    for (Set<PsiCFGClass> classSet : nestedInnerClassMap.values()) {
+      classSet.remove(nestedClass);
+    }
+  }
+
   /**
    * The purpose of this method is to assign the lambda expression a proper name.
    * For a lambda expression declared within a class.
@@ -368,13 +387,22 @@ public class PsiCFGClass implements PsiAnnotationOwner {
    * @return The modified PsiCFGClass
    */
   public PsiCFGClass addLambda(PsiCFGClass lambdaClass) {
-    int curCount = declaredLambda.size() + 1;
+    int curCount = ++lambdaCounter;
     lambdaClass.qualifiedClassName = this.qualifiedClassName + "$lambda$" + curCount;
     this.declaredLambda.add(lambdaClass);
     //lambdaClass.mDirectOverridenInterface = this;
     return lambdaClass;
   }
 
+  /**
+   * Remove a lambda added by {@link #addLambda}, when the CFG of the
+   * method declaring it is rebuilt.
+   * @param lambdaClass The lambda class
+   */
+  public void removeLambda(PsiCFGClass lambdaClass) {
+    this.declaredLambda.remove(lambdaClass);
+  }
+
   /**
    * For anonymos Class and lambda expression only.
    * @param cfgClass The Super class or interface
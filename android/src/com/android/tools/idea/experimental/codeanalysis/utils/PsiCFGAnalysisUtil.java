@@ -17,17 +17,24 @@ package com.android.tools.idea.experimental.codeanalysis.utils;
 
 import com.android.tools.idea.experimental.codeanalysis.PsiCFGScene;
 import com.android.tools.idea.experimental.codeanalysis.callgraph.Callgraph;
+import com.android.tools.idea.experimental.codeanalysis.callgraph.CallgraphBenchmark;
 import com.android.tools.idea.experimental.codeanalysis.callgraph.CallgraphBuilder;
 import com.android.tools.idea.experimental.codeanalysis.datastructs.PsiCFGClass;
 import com.android.tools.idea.experimental.codeanalysis.datastructs.PsiCFGField;
 import com.android.tools.idea.experimental.codeanalysis.datastructs.PsiCFGMethod;
 import com.android.tools.idea.experimental.codeanalysis.datastructs.graph.MethodGraph;
 import com.android.tools.idea.experimental.codeanalysis.datastructs.graph.node.GraphNode;
+import com.google.common.collect.Lists;
+import com.intellij.concurrency.JobLauncher;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.psi.*;
 import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.Processor;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
 public class PsiCFGAnalysisUtil {
@@ -78,42 +85,120 @@ public class PsiCFGAnalysisUtil {
   /**
    * The purpose of the Stage3 is create IntraProcedural
    * CFG for the methods and lambdas inside the app
-   * class, including the constructor and the init code
+   * class, including the constructor and the init code.
+   *
+   * The CFGs of the methods are built in parallel. A method's nested classes
+   * and lambdas are built on the same thread as the method declaring them.
    */
   public void performStage3() {
-    PsiCFGClass[] appClasses = mScene.getAllApplicationClasses();
-
-    mScene.workingList.clear();
-    mScene.workingList.addAll(Arrays.asList(appClasses));
-
-    while (!mScene.workingList.isEmpty()) {
-      //While the working list is not empty
-      //Process the working list
-      PsiCFGClass currentClass = mScene.workingList.removeFirst();
-      PsiCFGMethod[] allMethods = currentClass.getAllMethods();
+    List<PsiCFGMethod> methods = Lists.newArrayList();
+    for (PsiCFGClass currentClass : mScene.getAllApplicationClasses()) {
+      for (PsiCFGMethod currentMethod : currentClass.getAllMethods()) {
+        if (getBody(currentMethod) != null) {
+          methods.add(currentMethod);
+        }
+      }
+    }
+    buildMethodGraphs(methods);
+  }
 
-      for (PsiCFGMethod currentMethod : allMethods) {
-        //Abstract method does not have a body
-        //Lambda methods' CFG is created by the time it is decleared
-        if (currentMethod.isAbstract() || currentMethod.isLambda()) {
+  /**
+   * Stage3 for a scene whose classes are unchanged since they were last analyzed:
+   * only the CFGs of the methods whose body has changed since their CFG was built
+   * are built again.
+   *
+   * @return The number of methods whose CFG was rebuilt.
+   */
+  public int performIncrementalStage3() {
+    List<PsiCFGMethod> changedMethods = Lists.newArrayList();
+    for (PsiCFGClass currentClass : mScene.getAllApplicationClasses()) {
+      //The CFGs of nested classes are rebuilt with their declaring method
+      if (currentClass.isNested()) {
+        continue;
+      }
+      for (PsiCFGMethod currentMethod : currentClass.getAllMethods()) {
+        PsiCodeBlock codeBlock = getBody(currentMethod);
+        if (codeBlock == null) {
           continue;
         }
+        PsiCFGScene.MethodBuild build = mScene.getMethodBuild(currentMethod);
+        if (build == null || !build.isUpToDate(codeBlock)) {
+          changedMethods.add(currentMethod);
+        }
+      }
+    }
+    for (PsiCFGMethod changedMethod : changedMethods) {
+      mScene.removeMethodBuild(changedMethod);
+    }
+    buildMethodGraphs(changedMethods);
+    return changedMethods.size();
+  }
 
-        PsiMethod methodRef = currentMethod.getMethodRef();
-        if (methodRef != null) {
-          PsiCodeBlock codeBlock = methodRef.getBody();
+  private void buildMethodGraphs(@NotNull List<PsiCFGMethod> methods) {
+    boolean completed = JobLauncher.getInstance().invokeConcurrentlyUnderProgress(
+      methods, ProgressManager.getInstance().getProgressIndicator(), true, false, new Processor<PsiCFGMethod>() {
+        @Override
+        public boolean process(PsiCFGMethod method) {
+          buildMethodGraph(method);
+          return true;
+        }
+      });
+    if (!completed) {
+      throw new ProcessCanceledException();
+    }
+  }
 
-          if (codeBlock == null) {
-            PsiCFGDebugUtil.LOG.info("In " + currentClass.getQualifiedClassName() + "."
-                                     + currentMethod.getName() + "Code block is null");
-            continue;
+  /**
+   * Build the CFG of a method, and of the methods of the classes declared in its body.
+   * What the construction adds to the scene is recorded, so that it can be
+   * removed when the method changes.
+   */
+  private void buildMethodGraph(@NotNull PsiCFGMethod method) {
+    PsiCodeBlock codeBlock = getBody(method);
+    if (codeBlock == null) {
+      return;
+    }
+    PsiCFGScene.MethodBuild build = new PsiCFGScene.MethodBuild(codeBlock);
+    mScene.beginMethodBuild(build);
+    try {
+      method.setControlFlowGraph(CFGUtil.constructMethodGraph(mScene, codeBlock, method));
+
+      PsiCFGClass nestedClass;
+      while ((nestedClass = build.pollPendingClass()) != null) {
+        for (PsiCFGMethod nestedMethod : nestedClass.getAllMethods()) {
+          PsiCodeBlock nestedCodeBlock = getBody(nestedMethod);
+          if (nestedCodeBlock != null) {
+            nestedMethod.setControlFlowGraph(CFGUtil.constructMethodGraph(mScene, nestedCodeBlock, nestedMethod));
           }
-
-          MethodGraph cfg = CFGUtil.constructMethodGraph(mScene, codeBlock, currentMethod);
-          currentMethod.setControlFlowGraph(cfg);
         }
       }
     }
+    finally {
+      mScene.endMethodBuild();
+    }
+    mScene.putMethodBuild(method, build);
+  }
+
+  /**
+   * @return The body of the method, or null if it has no CFG of its own to be built.
+   */
+  @Nullable
+  private static PsiCodeBlock getBody(@NotNull PsiCFGMethod method) {
+    //Abstract method does not have a body
+    //Lambda methods' CFG is created by the time it is decleared
+    if (method.isAbstract() || method.isLambda()) {
+      return null;
+    }
+    PsiMethod methodRef = method.getMethodRef();
+    if (methodRef == null) {
+      return null;
+    }
+    PsiCodeBlock codeBlock = methodRef.getBody();
+    if (codeBlock == null) {
+      PsiCFGDebugUtil.LOG.info("In " + method.getDeclaringClass().getQualifiedClassName() + "."
+                               + method.getName() + "Code block is null");
+    }
+    return codeBlock;
   }
 
   /**
@@ -148,6 +233,9 @@ public class PsiCFGAnalysisUtil {
    * scene.
    */
   public void performStage5() {
+    if (CallgraphBenchmark.isEnabled()) {
+      CallgraphBenchmark.run(mScene, this);
+    }
     CallgraphBuilder cgBuilder = new CallgraphBuilder(mScene, this);
     cgBuilder.build();
     Callgraph cg = cgBuilder.getCallGraph();
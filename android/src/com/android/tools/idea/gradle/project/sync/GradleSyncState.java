@@ -216,6 +216,10 @@ public class GradleSyncState {
 
   public void syncEnded() {
     LOG.info(String.format("Sync with Gradle successful for project '%1$s'.", myProject.getName()));
+    String setupTimings = mySummary.getSetupTimingsReport();
+    if (setupTimings != null) {
+      LOG.info(setupTimings);
+    }
 
     addInfoToEventLog("Gradle sync completed");
 
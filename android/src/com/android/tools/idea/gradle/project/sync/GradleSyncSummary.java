@@ -18,6 +18,7 @@ package com.android.tools.idea.gradle.project.sync;
 import com.android.annotations.Nullable;
 import com.android.ide.common.repository.GradleVersion;
 import com.android.tools.idea.gradle.project.sync.messages.SyncMessages;
+import com.android.tools.idea.gradle.project.sync.setup.module.ModuleSetupTimings;
 import com.intellij.openapi.project.Project;
 import org.jetbrains.annotations.NotNull;
 
@@ -28,6 +29,7 @@ public class GradleSyncSummary {
    * The version of Gradle used by the project.
    */
   @Nullable private GradleVersion myGradleVersion;
+  @NotNull private final ModuleSetupTimings mySetupTimings = new ModuleSetupTimings();
   private long mySyncTimestamp;
   private boolean mySyncErrorsFound;
   private boolean myWrongJdkFound;
@@ -54,6 +56,19 @@ public class GradleSyncSummary {
     mySyncTimestamp = syncTimestamp;
   }
 
+  /**
+   * @return the time spent in each module setup step, per module, during the last sync.
+   */
+  @NotNull
+  public ModuleSetupTimings getSetupTimings() {
+    return mySetupTimings;
+  }
+
+  @Nullable
+  public String getSetupTimingsReport() {
+    return mySetupTimings.getReport();
+  }
+
   public void setSyncErrorsFound(boolean syncErrorsFound) {
     mySyncErrorsFound = syncErrorsFound;
   }
@@ -75,5 +90,6 @@ public class GradleSyncSummary {
     mySyncTimestamp = -1;
     mySyncErrorsFound = false;
     myWrongJdkFound = false;
+    mySetupTimings.clear();
   }
 }
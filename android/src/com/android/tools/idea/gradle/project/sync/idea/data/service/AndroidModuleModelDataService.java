@@ -58,6 +58,13 @@ public class AndroidModuleModelDataService extends ModuleModelDataService<Androi
     return ANDROID_MODEL;
   }
 
+  @Override
+  protected void prepareData(@NotNull Project project,
+                             @NotNull IdeModifiableModelsProvider modelsProvider,
+                             @NotNull Map<String, AndroidModuleModel> modelsByName) {
+    myModuleSetup.prepareModules(findModulesToImport(modelsProvider, modelsByName));
+  }
+
   @Override
   protected void importData(@NotNull Collection<DataNode<AndroidModuleModel>> toImport,
                             @NotNull Project project,
@@ -49,6 +49,13 @@ public class JavaModuleModelDataService extends ModuleModelDataService<JavaModul
     return JAVA_MODULE_MODEL;
   }
 
+  @Override
+  protected void prepareData(@NotNull Project project,
+                             @NotNull IdeModifiableModelsProvider modelsProvider,
+                             @NotNull Map<String, JavaModuleModel> modelsByName) {
+    myModuleSetup.prepareModules(findModulesToImport(modelsProvider, modelsByName));
+  }
+
   @Override
   protected void importData(@NotNull Collection<DataNode<JavaModuleModel>> toImport,
                             @NotNull Project project,
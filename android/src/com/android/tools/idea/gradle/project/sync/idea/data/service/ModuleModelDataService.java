@@ -17,6 +17,7 @@ package com.android.tools.idea.gradle.project.sync.idea.data.service;
 
 import com.android.tools.idea.gradle.project.model.ModuleModel;
 import com.android.tools.idea.gradle.project.sync.GradleSyncState;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.RunResult;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.diagnostic.Logger;
@@ -24,13 +25,16 @@ import com.intellij.openapi.externalSystem.model.DataNode;
 import com.intellij.openapi.externalSystem.model.project.ProjectData;
 import com.intellij.openapi.externalSystem.service.project.IdeModifiableModelsProvider;
 import com.intellij.openapi.externalSystem.service.project.manage.AbstractProjectDataService;
+import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import static com.intellij.openapi.util.text.StringUtil.isNotEmpty;
@@ -46,7 +50,9 @@ public abstract class ModuleModelDataService<T extends ModuleModel> extends Abst
       return;
     }
     try {
-      importData(toImport, project, modelsProvider);
+      Map<String, T> modelsByName = indexByModuleName(toImport);
+      prepareData(project, modelsProvider, modelsByName);
+      importData(toImport, project, modelsProvider, modelsByName);
     }
     catch (Throwable e) {
       getLog().info(String.format("Failed to set up modules in project '%1$s'", project.getName()), e);
@@ -58,16 +64,43 @@ public abstract class ModuleModelDataService<T extends ModuleModel> extends Abst
   protected void onModelsNotFound(@NotNull IdeModifiableModelsProvider modelsProvider) {
   }
 
+  /**
+   * Invoked before the write action in which the models are imported, to compute in parallel whatever the import needs that does not
+   * touch the IDE project model. All the changes to the project model are still made in {@link #importData}, in a single write
+   * action.
+   */
+  protected void prepareData(@NotNull Project project,
+                             @NotNull IdeModifiableModelsProvider modelsProvider,
+                             @NotNull Map<String, T> modelsByName) {
+  }
+
+  /**
+   * @return the modules of the project which have a model to import, with their models.
+   */
+  @NotNull
+  protected Map<Module, T> findModulesToImport(@NotNull IdeModifiableModelsProvider modelsProvider, @NotNull Map<String, T> modelsByName) {
+    return ApplicationManager.getApplication().runReadAction((Computable<Map<Module, T>>)() -> {
+      Map<Module, T> modules = new LinkedHashMap<>();
+      for (Module module : modelsProvider.getModules()) {
+        T model = modelsByName.get(module.getName());
+        if (model != null) {
+          modules.put(module, model);
+        }
+      }
+      return modules;
+    });
+  }
+
   private void importData(@NotNull Collection<DataNode<T>> toImport,
                           @NotNull Project project,
-                          @NotNull IdeModifiableModelsProvider modelsProvider) throws Throwable {
+                          @NotNull IdeModifiableModelsProvider modelsProvider,
+                          @NotNull Map<String, T> modelsByName) throws Throwable {
     RunResult result = new WriteCommandAction.Simple(project) {
       @Override
       protected void run() throws Throwable {
         if (project.isDisposed()) {
           return;
         }
-        Map<String, T> modelsByName = indexByModuleName(toImport);
         importData(toImport, project, modelsProvider, modelsByName);
       }
     }.execute();
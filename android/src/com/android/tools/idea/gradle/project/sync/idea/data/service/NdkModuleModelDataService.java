@@ -52,6 +52,13 @@ public class NdkModuleModelDataService extends ModuleModelDataService<NdkModuleM
     return NDK_MODEL;
   }
 
+  @Override
+  protected void prepareData(@NotNull Project project,
+                             @NotNull IdeModifiableModelsProvider modelsProvider,
+                             @NotNull Map<String, NdkModuleModel> modelsByName) {
+    myModuleSetup.prepareModules(findModulesToImport(modelsProvider, modelsByName));
+  }
+
   @Override
   protected void importData(@NotNull Collection<DataNode<NdkModuleModel>> toImport,
                             @NotNull Project project,
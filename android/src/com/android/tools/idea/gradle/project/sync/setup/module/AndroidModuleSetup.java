@@ -24,16 +24,31 @@ import com.intellij.openapi.module.Module;
 import com.intellij.openapi.progress.ProgressIndicator;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Map;
+
 public class AndroidModuleSetup {
   private final AndroidModuleSetupStep[] mySetupSteps;
+  @NotNull private final ModuleSetupTimings.Recorder myTimings;
 
   public AndroidModuleSetup() {
-    this(AndroidModuleSetupStep.getExtensions());
+    this(AndroidModuleSetupStep.getExtensions(), ModuleSetupTimings.SYNC_SUMMARY);
   }
 
   @VisibleForTesting
   AndroidModuleSetup(AndroidModuleSetupStep[] setupSteps) {
+    this(setupSteps, ModuleSetupTimings.NO_OP);
+  }
+
+  private AndroidModuleSetup(AndroidModuleSetupStep[] setupSteps, @NotNull ModuleSetupTimings.Recorder timings) {
     mySetupSteps = setupSteps;
+    myTimings = timings;
+  }
+
+  /**
+   * Lets the setup steps compute, in parallel and outside of any write action, what they need from the given models.
+   */
+  public void prepareModules(@NotNull Map<Module, AndroidModuleModel> androidModels) {
+    ModuleSetupStep.prepareModules(mySetupSteps, androidModels, myTimings);
   }
 
   public void setUpModule(@NotNull Module module,
@@ -41,11 +56,6 @@ public class AndroidModuleSetup {
                           @Nullable AndroidModuleModel androidModel,
                           @Nullable SyncAction.ModuleModels models,
                           @Nullable ProgressIndicator indicator) {
-    for (AndroidModuleSetupStep step : mySetupSteps) {
-      if (indicator != null) {
-        step.displayDescription(module, indicator);
-      }
-      step.setUpModule(module, ideModelsProvider, androidModel, models, indicator);
-    }
+    ModuleSetupStep.runSetupSteps(mySetupSteps, module, ideModelsProvider, androidModel, models, indicator, myTimings);
   }
 }
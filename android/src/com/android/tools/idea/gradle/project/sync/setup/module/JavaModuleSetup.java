@@ -29,20 +29,39 @@ import com.intellij.openapi.roots.ModifiableRootModel;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import static com.android.tools.idea.gradle.project.sync.messages.GroupNames.PROJECT_STRUCTURE_ISSUES;
 import static com.android.tools.idea.gradle.project.sync.messages.MessageType.ERROR;
 import static com.android.tools.idea.gradle.project.sync.setup.Facets.removeAllFacets;
 
 public class JavaModuleSetup {
   private final JavaModuleSetupStep[] mySetupSteps;
+  @NotNull private final ModuleSetupTimings.Recorder myTimings;
 
   public JavaModuleSetup() {
-    this(JavaModuleSetupStep.getExtensions());
+    this(JavaModuleSetupStep.getExtensions(), ModuleSetupTimings.SYNC_SUMMARY);
   }
 
   @VisibleForTesting
   JavaModuleSetup(JavaModuleSetupStep[] setupSteps) {
+    this(setupSteps, ModuleSetupTimings.NO_OP);
+  }
+
+  private JavaModuleSetup(JavaModuleSetupStep[] setupSteps, @NotNull ModuleSetupTimings.Recorder timings) {
     mySetupSteps = setupSteps;
+    myTimings = timings;
+  }
+
+  /**
+   * Lets the setup steps compute, in parallel and outside of any write action, what they need from the given models. Android modules
+   * without variants are skipped, since they are not set up.
+   */
+  public void prepareModules(@NotNull Map<Module, JavaModuleModel> javaModuleModels) {
+    Map<Module, JavaModuleModel> modelsToPrepare = new HashMap<>(javaModuleModels);
+    modelsToPrepare.values().removeIf(JavaModuleModel::isAndroidModuleWithoutVariants);
+    ModuleSetupStep.prepareModules(mySetupSteps, modelsToPrepare, myTimings);
   }
 
   public void setUpModule(@NotNull Module module,
@@ -62,12 +81,7 @@ public class JavaModuleSetup {
       // happen due to a project configuration error and there is a lot of module configuration missing, there is no point on even trying.
       return;
     }
-    for (JavaModuleSetupStep step : mySetupSteps) {
-      if (indicator != null) {
-        step.displayDescription(module, indicator);
-      }
-      step.setUpModule(module, ideModelsProvider, javaModuleModel, models, indicator);
-    }
+    ModuleSetupStep.runSetupSteps(mySetupSteps, module, ideModelsProvider, javaModuleModel, models, indicator, myTimings);
   }
 
   private static void cleanUpAndroidModuleWithoutVariants(@NotNull Module module, @NotNull IdeModifiableModelsProvider ideModelsProvider) {
@@ -16,12 +16,19 @@
 package com.android.tools.idea.gradle.project.sync.setup.module;
 
 import com.android.tools.idea.gradle.project.sync.SyncAction;
+import com.intellij.concurrency.JobLauncher;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.externalSystem.service.project.IdeModifiableModelsProvider;
 import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 public abstract class ModuleSetupStep<T> {
   public final void setUpModule(@NotNull Module module,
                                 @NotNull IdeModifiableModelsProvider ideModelsProvider,
@@ -38,6 +45,14 @@ public abstract class ModuleSetupStep<T> {
   protected void gradleModelNotFound(@NotNull Module module, @NotNull IdeModifiableModelsProvider ideModelsProvider) {
   }
 
+  /**
+   * Computes from the Gradle model alone what {@link #doSetUpModule} will need, before the write action in which the modules are set
+   * up. This is invoked for all the modules in parallel, so implementations must not touch the IDE project model or any other shared
+   * state. {@link #doSetUpModule} must still work if this method was not invoked, or failed.
+   */
+  public void prepareModule(@NotNull Module module, @NotNull T gradleModel) {
+  }
+
   protected abstract void doSetUpModule(@NotNull Module module,
                                         @NotNull IdeModifiableModelsProvider ideModelsProvider,
                                         @NotNull T gradleModel,
@@ -54,4 +69,54 @@ public abstract class ModuleSetupStep<T> {
   public boolean invokeOnBuildVariantChange() {
     return false;
   }
+
+  /**
+   * Invokes {@link #prepareModule} of the given steps for all the given modules in parallel. A step failing to prepare a module is
+   * logged and otherwise ignored, since the step then computes what it needs while setting up the module.
+   */
+  static <T> void prepareModules(@NotNull ModuleSetupStep<T>[] setupSteps,
+                                 @NotNull Map<Module, T> gradleModels,
+                                 @NotNull ModuleSetupTimings.Recorder timings) {
+    if (setupSteps.length == 0 || gradleModels.isEmpty()) {
+      return;
+    }
+    List<Map.Entry<Module, T>> modules = new ArrayList<>(gradleModels.entrySet());
+    JobLauncher.getInstance().invokeConcurrentlyUnderProgress(modules, null, false, false, entry -> {
+      Module module = entry.getKey();
+      for (ModuleSetupStep<T> step : setupSteps) {
+        long start = System.nanoTime();
+        try {
+          step.prepareModule(module, entry.getValue());
+        }
+        catch (ProcessCanceledException e) {
+          throw e;
+        }
+        catch (Throwable e) {
+          Logger.getInstance(step.getClass()).warn(String.format("Failed to prepare module '%1$s'", module.getName()), e);
+        }
+        timings.record(module, step, true, System.nanoTime() - start);
+      }
+      return true;
+    });
+  }
+
+  /**
+   * Invokes {@link #setUpModule} of the given steps on a module, recording the time spent in each step.
+   */
+  static <T> void runSetupSteps(@NotNull ModuleSetupStep<T>[] setupSteps,
+                                @NotNull Module module,
+                                @NotNull IdeModifiableModelsProvider ideModelsProvider,
+                                @Nullable T gradleModel,
+                                @Nullable SyncAction.ModuleModels gradleModels,
+                                @Nullable ProgressIndicator indicator,
+                                @NotNull ModuleSetupTimings.Recorder timings) {
+    for (ModuleSetupStep<T> step : setupSteps) {
+      if (indicator != null) {
+        step.displayDescription(module, indicator);
+      }
+      long start = System.nanoTime();
+      step.setUpModule(module, ideModelsProvider, gradleModel, gradleModels, indicator);
+      timings.record(module, step, false, System.nanoTime() - start);
+    }
+  }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.gradle.project.sync.setup.module;
+
+import com.android.tools.idea.gradle.project.sync.GradleSyncState;
+import com.intellij.openapi.module.Module;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time spent by each module setup step on each module, during the last sync. Steps can run on several threads at once, when they
+ * prepare their data for all the modules in parallel.
+ */
+public class ModuleSetupTimings {
+  /**
+   * Where the setup of a module reports the time spent in each step.
+   */
+  public interface Recorder {
+    /**
+     * @param preparing whether the time was spent in {@link ModuleSetupStep#prepareModule} rather than in
+     *                  {@link ModuleSetupStep#setUpModule}
+     */
+    void record(@NotNull Module module, @NotNull ModuleSetupStep<?> step, boolean preparing, long durationNanos);
+  }
+
+  public static final Recorder NO_OP = (module, step, preparing, durationNanos) -> {
+  };
+
+  /**
+   * Records into the {@link com.android.tools.idea.gradle.project.sync.GradleSyncSummary} of the module's project.
+   */
+  public static final Recorder SYNC_SUMMARY = (module, step, preparing, durationNanos) -> {
+    if (!module.isDisposed()) {
+      String stepName = preparing ? step.getDescription() + " (prepare)" : step.getDescription();
+      GradleSyncState.getInstance(module.getProject()).getSummary().getSetupTimings().add(stepName, module.getName(), durationNanos);
+    }
+  };
+
+  // Step -> module name -> duration in nanoseconds.
+  @NotNull private final ConcurrentMap<String, ConcurrentMap<String, Long>> myDurations = new ConcurrentHashMap<>();
+
+  public void add(@NotNull String step, @NotNull String moduleName, long durationNanos) {
+    ConcurrentMap<String, Long> durations = myDurations.computeIfAbsent(step, key -> new ConcurrentHashMap<>());
+    durations.merge(moduleName, durationNanos, Long::sum);
+  }
+
+  public boolean isEmpty() {
+    return myDurations.isEmpty();
+  }
+
+  @NotNull
+  public Set<String> getSteps() {
+    return Collections.unmodifiableSet(myDurations.keySet());
+  }
+
+  /**
+   * @return the time spent by the given step on each module, in milliseconds.
+   */
+  @NotNull
+  public Map<String, Long> getDurationsByModule(@NotNull String step) {
+    Map<String, Long> durations = myDurations.get(step);
+    if (durations == null) {
+      return Collections.emptyMap();
+    }
+    Map<String, Long> durationsInMillis = new TreeMap<>();
+    for (Map.Entry<String, Long> entry : durations.entrySet()) {
+      durationsInMillis.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue()));
+    }
+    return durationsInMillis;
+  }
+
+  /**
+   * @return the time spent by the given step on all the modules, in milliseconds.
+   */
+  public long getTotalDuration(@NotNull String step) {
+    Map<String, Long> durations = myDurations.get(step);
+    long total = 0;
+    if (durations != null) {
+      for (long duration : durations.values()) {
+        total += duration;
+      }
+    }
+    return TimeUnit.NANOSECONDS.toMillis(total);
+  }
+
+  public void clear() {
+    myDurations.clear();
+  }
+
+  /**
+   * @return the steps sorted from the slowest to the fastest, each with its total time and its slowest module, or {@code null} if no
+   * step was recorded.
+   */
+  @Nullable
+  public String getReport() {
+    if (myDurations.isEmpty()) {
+      return null;
+    }
+    List<String> steps = new ArrayList<>(myDurations.keySet());
+    steps.sort(Comparator.<String>comparingLong(this::getTotalDuration).reversed());
+
+    StringBuilder report = new StringBuilder("Module setup times:");
+    for (String step : steps) {
+      Map.Entry<String, Long> slowest = null;
+      for (Map.Entry<String, Long> entry : getDurationsByModule(step).entrySet()) {
+        if (slowest == null || entry.getValue() > slowest.getValue()) {
+          slowest = entry;
+        }
+      }
+      report.append(String.format("%n  %1$s: %2$d ms", step, getTotalDuration(step)));
+      if (slowest != null) {
+        report.append(String.format(" (slowest module '%1$s': %2$d ms)", slowest.getKey(), slowest.getValue()));
+      }
+    }
+    return report.toString();
+  }
+}
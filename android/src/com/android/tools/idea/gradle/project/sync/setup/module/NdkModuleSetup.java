@@ -24,16 +24,31 @@ import com.intellij.openapi.progress.ProgressIndicator;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Map;
+
 public class NdkModuleSetup {
   private final NdkModuleSetupStep[] mySetupSteps;
+  @NotNull private final ModuleSetupTimings.Recorder myTimings;
 
   public NdkModuleSetup() {
-    this(NdkModuleSetupStep.getExtensions());
+    this(NdkModuleSetupStep.getExtensions(), ModuleSetupTimings.SYNC_SUMMARY);
   }
 
   @VisibleForTesting
   NdkModuleSetup(@NotNull NdkModuleSetupStep[] extensions) {
+    this(extensions, ModuleSetupTimings.NO_OP);
+  }
+
+  private NdkModuleSetup(@NotNull NdkModuleSetupStep[] extensions, @NotNull ModuleSetupTimings.Recorder timings) {
     mySetupSteps = extensions;
+    myTimings = timings;
+  }
+
+  /**
+   * Lets the setup steps compute, in parallel and outside of any write action, what they need from the given models.
+   */
+  public void prepareModules(@NotNull Map<Module, NdkModuleModel> ndkModels) {
+    ModuleSetupStep.prepareModules(mySetupSteps, ndkModels, myTimings);
   }
 
   public void setUpModule(@NotNull Module module,
@@ -41,11 +56,6 @@ public class NdkModuleSetup {
                           @Nullable NdkModuleModel ndkModuleModel,
                           @Nullable SyncAction.ModuleModels models,
                           @Nullable ProgressIndicator indicator) {
-    for (NdkModuleSetupStep setupStep : mySetupSteps) {
-      if (indicator != null) {
-        setupStep.displayDescription(module, indicator);
-      }
-      setupStep.setUpModule(module, ideModelsProvider, ndkModuleModel, models, indicator);
-    }
+    ModuleSetupStep.runSetupSteps(mySetupSteps, module, ideModelsProvider, ndkModuleModel, models, indicator, myTimings);
   }
 }
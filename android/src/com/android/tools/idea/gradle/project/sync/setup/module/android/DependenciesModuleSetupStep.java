@@ -39,6 +39,8 @@ import com.intellij.openapi.roots.ContentEntry;
 import com.intellij.openapi.roots.DependencyScope;
 import com.intellij.openapi.roots.ModifiableRootModel;
 import com.intellij.openapi.roots.ModuleOrderEntry;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.android.sdk.AndroidSdkAdditionalData;
 import org.jetbrains.android.sdk.AndroidSdkData;
@@ -62,6 +64,9 @@ import static com.intellij.openapi.util.text.StringUtil.isNotEmpty;
 import static com.intellij.openapi.vfs.VfsUtilCore.virtualToIoFile;
 
 public class DependenciesModuleSetupStep extends AndroidModuleSetupStep {
+  // The dependencies extracted by prepareModule, with the model they were extracted from.
+  private static final Key<Pair<AndroidModuleModel, DependencySet>> PREPARED_DEPENDENCIES = Key.create("android.prepared.dependencies");
+
   @NotNull private final DependenciesExtractor myDependenciesExtractor;
   @NotNull private final AndroidModuleDependenciesSetup myDependenciesSetup;
 
@@ -86,6 +91,12 @@ public class DependenciesModuleSetupStep extends AndroidModuleSetupStep {
     myDependenciesSetup = dependenciesSetup;
   }
 
+  @Override
+  public void prepareModule(@NotNull Module module, @NotNull AndroidModuleModel androidModel) {
+    // Walking the dependency graph of the model only reads the model, so it can be done for all the modules at once.
+    module.putUserData(PREPARED_DEPENDENCIES, Pair.create(androidModel, myDependenciesExtractor.extractFrom(androidModel)));
+  }
+
   @Override
   protected void doSetUpModule(@NotNull Module module,
                                @NotNull IdeModifiableModelsProvider ideModelsProvider,
@@ -94,7 +105,10 @@ public class DependenciesModuleSetupStep extends AndroidModuleSetupStep {
                                @Nullable ProgressIndicator indicator) {
     AndroidProject androidProject = androidModel.getAndroidProject();
 
-    DependencySet dependencies = myDependenciesExtractor.extractFrom(androidModel);
+    Pair<AndroidModuleModel, DependencySet> prepared = module.getUserData(PREPARED_DEPENDENCIES);
+    module.putUserData(PREPARED_DEPENDENCIES, null);
+    DependencySet dependencies =
+      prepared != null && prepared.getFirst() == androidModel ? prepared.getSecond() : myDependenciesExtractor.extractFrom(androidModel);
     for (LibraryDependency dependency : dependencies.onLibraries()) {
       updateLibraryDependency(module, ideModelsProvider, dependency, androidProject);
     }
@@ -104,7 +104,7 @@ public class GradleInstantRunContext implements InstantRunContext {
 
   @VisibleForTesting
   static HashCode getManifestResourcesHash(@NotNull AndroidFacet facet) {
-    Document manifest = MergedManifest.get(facet).getDocument();
+    Document manifest = MergedManifest.get(facet).awaitUpToDate().getDocument();
     if (manifest == null || manifest.getDocumentElement() == null) {
       return HashCode.fromInt(0);
     }
@@ -22,6 +22,8 @@ import com.android.tools.lint.detector.api.*;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.android.tools.idea.lint.LintIdeProject.SUPPORT_CLASS_FILES;
 
@@ -53,7 +55,13 @@ public class LintIdeIssueRegistry extends BuiltinIssueRegistry {
   public static final Issue CUSTOM_ERROR = Issue.create(
     "CustomError", "Error from Custom Rule", CUSTOM_EXPLANATION, Category.CORRECTNESS, 5, Severity.ERROR, DUMMY_IMPLEMENTATION);
 
-  private static List<Issue> ourFilteredIssues;
+  private static volatile List<Issue> ourFilteredIssues;
+
+  /**
+   * Issues per scope. {@link com.android.tools.lint.client.api.IssueRegistry} caches them in a map shared by all the
+   * registries which is not safe to fill from several drivers at once, and lint runs on the fly while batch lint runs.
+   */
+  private final Map<EnumSet<Scope>, List<Issue>> myScopeIssues = new ConcurrentHashMap<>();
 
   public LintIdeIssueRegistry() {
   }
@@ -61,6 +69,35 @@ public class LintIdeIssueRegistry extends BuiltinIssueRegistry {
   @NonNull
   @Override
   public List<Issue> getIssues() {
+    List<Issue> filteredIssues = ourFilteredIssues;
+    if (filteredIssues != null) {
+      return filteredIssues;
+    }
+    // Batch lint may create its drivers on several threads
+    synchronized (LintIdeIssueRegistry.class) {
+      return computeFilteredIssues();
+    }
+  }
+
+  @NonNull
+  @Override
+  protected List<Issue> getIssuesForScope(@NonNull EnumSet<Scope> scope) {
+    List<Issue> scopeIssues = myScopeIssues.get(scope);
+    if (scopeIssues == null) {
+      scopeIssues = new ArrayList<Issue>();
+      for (Issue issue : getIssues()) {
+        if (issue.getImplementation().isAdequate(scope)) {
+          scopeIssues.add(issue);
+        }
+      }
+      // The drivers may change their scope set afterwards, so key on a copy
+      myScopeIssues.putIfAbsent(EnumSet.copyOf(scope), scopeIssues);
+    }
+    return scopeIssues;
+  }
+
+  @NonNull
+  private List<Issue> computeFilteredIssues() {
     if (ourFilteredIssues == null) {
       List<Issue> sIssues = super.getIssues();
       List<Issue> result = new ArrayList<Issue>(sIssues.size());
@@ -26,6 +26,8 @@ import com.android.sdklib.AndroidVersion;
 import com.android.sdklib.IAndroidTarget;
 import com.android.sdklib.SdkVersionInfo;
 import com.android.sdklib.devices.Device;
+import com.android.tools.idea.gradle.project.sync.GradleSyncListener;
+import com.android.tools.idea.gradle.project.sync.GradleSyncState;
 import com.android.tools.idea.rendering.multi.CompatibilityRenderTarget;
 import com.android.tools.idea.run.activity.ActivityLocatorUtils;
 import com.android.tools.lint.checks.PermissionHolder;
@@ -34,11 +36,25 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.intellij.ProjectTopics;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.util.ProgressIndicatorUtils;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootAdapter;
+import com.intellij.openapi.roots.ModuleRootEvent;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.ModificationTracker;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.psi.*;
+import com.intellij.util.Alarm;
+import com.intellij.util.PathUtil;
+import com.intellij.util.messages.MessageBusConnection;
 import org.jetbrains.android.dom.manifest.Manifest;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.annotations.NotNull;
@@ -48,6 +64,8 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.android.SdkConstants.*;
 import static com.android.tools.lint.checks.PermissionRequirement.ATTR_PROTECTION_LEVEL;
@@ -56,27 +74,27 @@ import static com.android.xml.AndroidManifest.*;
 
 /**
  * To get a {@linkplain MergedManifest} use {@link MergedManifest#get(AndroidFacet)} or {@link MergedManifest#get(Module)}
+ * <p>
+ * The getters read an immutable snapshot of the last merge, without taking any lock. Changes to manifest files, Gradle
+ * syncs and changes to the module roots increment the {@link #getModificationCount() modification count} and schedule
+ * a merge on a background thread, which publishes a new snapshot when it is done. Only the first access merges on the
+ * calling thread. Callers which must see the effect of an edit they just made should call {@link #awaitUpToDate()}.
  */
-public class MergedManifest {
+public class MergedManifest implements ModificationTracker {
+  /** How long to wait after the last change before merging again, so that typing in a manifest causes a single merge. */
+  private static final int MERGE_DELAY_MS = 300;
 
   private final Module myModule;
-  private String myPackage;
-  private String myApplicationId;
-  private Integer myVersionCode;
-  private String myManifestTheme;
-  private Map<String, ActivityAttributes> myActivityAttributesMap;
-  private ManifestInfo.ManifestFile myManifestFile;
-  private long myLastChecked;
-  private AndroidVersion myMinSdk;
-  private AndroidVersion myTargetSdk;
-  private String myApplicationIcon;
-  private String myApplicationLabel;
-  private boolean myApplicationSupportsRtl;
-  private Boolean myApplicationDebuggable;
-  private @Nullable Map<String, XmlNode.NodeKey> myNodeKeys;
-  private Document myDocument;
-  private List<VirtualFile> myManifestFiles;
-  private ModulePermissions myPermissionHolder;
+  private final AtomicLong myModificationCount = new AtomicLong(1);
+  private final AtomicBoolean myTracking = new AtomicBoolean();
+  private final Object myMergeLock = new Object();
+  private ManifestInfo.ManifestFile myManifestFile; // guarded by myMergeLock
+  private Alarm myMergeAlarm;
+  private volatile Snapshot mySnapshot;
+  // The modification count mySnapshot was merged at; written after mySnapshot, so read it first
+  private volatile long mySnapshotVersion;
+  // Readers merge on their own thread until a snapshot of at least this version has been published
+  private volatile long myRequiredVersion;
 
   /**
    * Constructs a new MergedManifest
@@ -96,8 +114,10 @@ public class MergedManifest {
   public static MergedManifest get(@NotNull Module module) {
     if (module.isDisposed()) {
       return new MergedManifest(module) {
+        @NotNull
         @Override
-        protected void syncWithReadPermission() {
+        Snapshot createSnapshot(@Nullable Snapshot previous) {
+          return new Snapshot();
         }
       };
     }
@@ -117,10 +137,34 @@ public class MergedManifest {
     return get(facet.getModule());
   }
 
+  /**
+   * Returns a count which is incremented whenever something the merged manifest depends on changes. The getters may
+   * lag behind it until the background merge has caught up; see {@link #awaitUpToDate()}.
+   */
+  @Override
+  public long getModificationCount() {
+    return myModificationCount.get();
+  }
+
+  /**
+   * Waits for the merged manifest to reflect all the changes made so far, merging on the calling thread if the
+   * background merge hasn't caught up yet.
+   *
+   * @return this merged manifest
+   */
+  @NotNull
+  public MergedManifest awaitUpToDate() {
+    startTracking();
+    long version = myModificationCount.get();
+    if (mySnapshotVersion < version || mySnapshot == null) {
+      merge();
+    }
+    return this;
+  }
+
   @Nullable
   public Document getDocument() {
-    sync();
-    return myDocument;
+    return getSnapshot().myDocument;
   }
 
   /**
@@ -130,7 +174,7 @@ public class MergedManifest {
    */
   @Nullable
   public List<VirtualFile> getManifestFiles() {
-    return myManifestFiles;
+    return getSnapshot().myManifestFiles;
   }
 
   /**
@@ -139,7 +183,7 @@ public class MergedManifest {
    */
   @VisibleForTesting
   public void clear() {
-    myLastChecked = 0;
+    myRequiredVersion = myModificationCount.incrementAndGet();
   }
 
   /**
@@ -149,8 +193,7 @@ public class MergedManifest {
    */
   @Nullable
   public String getPackage() {
-    sync();
-    return myPackage;
+    return getSnapshot().myPackage;
   }
 
   /**
@@ -158,14 +201,12 @@ public class MergedManifest {
    */
   @Nullable
   public String getApplicationId() {
-    sync();
-    return myApplicationId;
+    return getSnapshot().myApplicationId;
   }
 
   @Nullable
   public Integer getVersionCode() {
-    sync();
-    return myVersionCode;
+    return getSnapshot().myVersionCode;
   }
 
   /**
@@ -175,11 +216,11 @@ public class MergedManifest {
    */
   @NotNull
   public Map<String, ActivityAttributes> getActivityAttributesMap() {
-    sync();
-    if (myActivityAttributesMap == null) {
+    Map<String, ActivityAttributes> activityAttributesMap = getSnapshot().myActivityAttributesMap;
+    if (activityAttributesMap == null) {
       return Collections.emptyMap();
     }
-    return myActivityAttributesMap;
+    return activityAttributesMap;
   }
 
   /**
@@ -187,11 +228,12 @@ public class MergedManifest {
    */
   @Nullable
   public ActivityAttributes getActivityAttributes(@NotNull String activity) {
+    Snapshot snapshot = getSnapshot();
     int index = activity.indexOf('.');
-    if (index <= 0 && myApplicationId != null && !myApplicationId.isEmpty()) {
-      activity = myApplicationId + (index == -1 ? "." : "") + activity;
+    if (index <= 0 && snapshot.myApplicationId != null && !snapshot.myApplicationId.isEmpty()) {
+      activity = snapshot.myApplicationId + (index == -1 ? "." : "") + activity;
     }
-    return getActivityAttributesMap().get(activity);
+    return snapshot.myActivityAttributesMap == null ? null : snapshot.myActivityAttributesMap.get(activity);
   }
 
   /**
@@ -201,8 +243,7 @@ public class MergedManifest {
    */
   @Nullable
   public String getManifestTheme() {
-    sync();
-    return myManifestTheme;
+    return getSnapshot().myManifestTheme;
   }
 
   /**
@@ -216,10 +257,9 @@ public class MergedManifest {
    */
   @NotNull
   public String getDefaultTheme(@Nullable IAndroidTarget renderingTarget, @Nullable ScreenSize screenSize, @Nullable Device device) {
-    sync();
-
-    if (myManifestTheme != null) {
-      return myManifestTheme;
+    String manifestTheme = getSnapshot().myManifestTheme;
+    if (manifestTheme != null) {
+      return manifestTheme;
     }
 
     // For Android Wear and Android TV, the defaults differ
@@ -265,8 +305,7 @@ public class MergedManifest {
    */
   @Nullable
   public String getApplicationIcon() {
-    sync();
-    return myApplicationIcon;
+    return getSnapshot().myApplicationIcon;
   }
 
   /**
@@ -276,8 +315,7 @@ public class MergedManifest {
    */
   @Nullable
   public String getApplicationLabel() {
-    sync();
-    return myApplicationLabel;
+    return getSnapshot().myApplicationLabel;
   }
 
   /**
@@ -286,8 +324,7 @@ public class MergedManifest {
    * @return true if the application has RTL support.
    */
   public boolean isRtlSupported() {
-    sync();
-    return myApplicationSupportsRtl;
+    return getSnapshot().myApplicationSupportsRtl;
   }
 
   /**
@@ -295,8 +332,7 @@ public class MergedManifest {
    */
   @Nullable
   public Boolean getApplicationDebuggable() {
-    sync();
-    return myApplicationDebuggable;
+    return getSnapshot().myApplicationDebuggable;
   }
 
   /**
@@ -306,8 +342,8 @@ public class MergedManifest {
    */
   @NotNull
   public AndroidVersion getTargetSdkVersion() {
-    sync();
-    return myTargetSdk != null ? myTargetSdk : getMinSdkVersion();
+    AndroidVersion targetSdk = getSnapshot().myTargetSdk;
+    return targetSdk != null ? targetSdk : getMinSdkVersion();
   }
 
   /**
@@ -317,8 +353,8 @@ public class MergedManifest {
    */
   @NotNull
   public AndroidVersion getMinSdkVersion() {
-    sync();
-    return myMinSdk != null ? myMinSdk : AndroidVersion.DEFAULT;
+    AndroidVersion minSdk = getSnapshot().myMinSdk;
+    return minSdk != null ? minSdk : AndroidVersion.DEFAULT;
   }
 
   /**
@@ -326,36 +362,163 @@ public class MergedManifest {
    */
   @NotNull
   public PermissionHolder getPermissionHolder() {
-    sync();
-    if (myPermissionHolder == null) {
+    ModulePermissions permissionHolder = getSnapshot().myPermissionHolder;
+    if (permissionHolder == null) {
       return new ModulePermissions(Collections.emptySet(), Collections.emptySet());
     }
-    return myPermissionHolder;
+    return permissionHolder;
+  }
+
+  /**
+   * Returns the last merged snapshot. Only merges on the calling thread if nothing has been merged yet, or if
+   * {@link #clear()} asked for a refresh; otherwise a pending change is picked up by the background merge.
+   */
+  @NotNull
+  private Snapshot getSnapshot() {
+    startTracking();
+    long version = mySnapshotVersion;
+    Snapshot snapshot = mySnapshot;
+    if (snapshot == null || version < myRequiredVersion) {
+      return merge();
+    }
+    return snapshot;
+  }
+
+  /**
+   * Merges the manifests unless another thread has already merged them at the current modification count, and
+   * publishes the result. The read action is taken before the merge lock, so that a thread which holds the write lock
+   * and needs to merge never waits for a thread which is itself waiting for read access.
+   */
+  @NotNull
+  private Snapshot merge() {
+    return ApplicationManager.getApplication().runReadAction((Computable<Snapshot>)this::mergeInReadAction);
+  }
+
+  @NotNull
+  private Snapshot mergeInReadAction() {
+    synchronized (myMergeLock) {
+      long version = myModificationCount.get();
+      Snapshot current = mySnapshot;
+      if (current != null && mySnapshotVersion >= version) {
+        return current;
+      }
+      Snapshot snapshot = createSnapshot(current);
+      mySnapshot = snapshot;
+      mySnapshotVersion = version;
+      return snapshot;
+    }
   }
 
   /**
-   * Ensure that the package, theme and activity maps are initialized and up to date
-   * with respect to the manifest file
+   * Merges on the pooled thread of the merge alarm. The merge gives way to write actions: it doesn't start while one is
+   * pending, and is cancelled when one starts, in which case it is scheduled again.
    */
-  private void sync() {
-    // Since each of the accessors call sync(), allow a bunch of immediate
-    // accessors to all bypass the file stat() below
-    long now = System.currentTimeMillis();
-    if (now - myLastChecked < 50 && myManifestFile != null) {
+  private void mergeInBackground() {
+    if (myModule.isDisposed() || mySnapshotVersion >= myModificationCount.get()) {
       return;
     }
-    myLastChecked = now;
+    boolean merged;
+    try {
+      merged = ProgressIndicatorUtils.runInReadActionWithWriteActionPriority(this::mergeInReadAction);
+    }
+    catch (ProcessCanceledException e) {
+      merged = false;
+    }
+    if (!merged) {
+      scheduleMerge();
+    }
+  }
 
-    // TODO remove this time based checking
+  private void modified() {
+    myModificationCount.incrementAndGet();
+    scheduleMerge();
+  }
 
-    // Ensure that two simultaneous sync requests from different threads don't interfere with each other.
-    synchronized (this) {
-      ApplicationManager.getApplication().runReadAction(new Runnable() {
-        @Override
-        public void run() {
-          syncWithReadPermission();
+  private void scheduleMerge() {
+    Alarm alarm = myMergeAlarm;
+    if (alarm != null && !alarm.isDisposed()) {
+      alarm.cancelAllRequests();
+      alarm.addRequest(this::mergeInBackground, MERGE_DELAY_MS);
+    }
+  }
+
+  /**
+   * Starts listening for the changes which affect the merged manifest. This is done on first use rather than when the
+   * module is loaded, so that modules whose manifest is never looked at don't pay for it.
+   */
+  private void startTracking() {
+    if (myModule.isDisposed() || !myTracking.compareAndSet(false, true)) {
+      return;
+    }
+    Project project = myModule.getProject();
+    myMergeAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, myModule);
+
+    // Any manifest counts, since the manifests of flavors, build types and library modules are merged in too
+    PsiManager.getInstance(project).addPsiTreeChangeListener(new PsiTreeChangeAdapter() {
+      @Override
+      public void childAdded(@NotNull PsiTreeChangeEvent event) {
+        psiChanged(event);
+      }
+
+      @Override
+      public void childRemoved(@NotNull PsiTreeChangeEvent event) {
+        psiChanged(event);
+      }
+
+      @Override
+      public void childReplaced(@NotNull PsiTreeChangeEvent event) {
+        psiChanged(event);
+      }
+
+      @Override
+      public void childMoved(@NotNull PsiTreeChangeEvent event) {
+        psiChanged(event);
+      }
+
+      @Override
+      public void childrenChanged(@NotNull PsiTreeChangeEvent event) {
+        psiChanged(event);
+      }
+    }, myModule);
+
+    MessageBusConnection connection = project.getMessageBus().connect(myModule);
+    connection.subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+      @Override
+      public void after(@NotNull List<? extends VFileEvent> events) {
+        for (VFileEvent event : events) {
+          if (FN_ANDROID_MANIFEST_XML.equals(PathUtil.getFileName(event.getPath()))) {
+            modified();
+            return;
+          }
         }
-      });
+      }
+    });
+    connection.subscribe(ProjectTopics.PROJECT_ROOTS, new ModuleRootAdapter() {
+      @Override
+      public void rootsChanged(ModuleRootEvent event) {
+        modified();
+      }
+    });
+    GradleSyncState.subscribe(project, new GradleSyncListener.Adapter() {
+      @Override
+      public void syncSucceeded(@NotNull Project project) {
+        modified();
+      }
+
+      @Override
+      public void syncSkipped(@NotNull Project project) {
+        modified();
+      }
+    }, myModule);
+  }
+
+  private void psiChanged(@NotNull PsiTreeChangeEvent event) {
+    PsiFile file = event.getFile();
+    if (file == null && event.getChild() instanceof PsiFile) {
+      file = (PsiFile)event.getChild();
+    }
+    if (file != null && FN_ANDROID_MANIFEST_XML.equals(file.getName())) {
+      modified();
     }
   }
 
@@ -365,7 +528,13 @@ public class MergedManifest {
     return Strings.emptyToNull(element.getAttributeNS(namespace, localName));
   }
 
-  protected void syncWithReadPermission() {
+  /**
+   * Merges the manifests and reads the merged document. Called with read access and the merge lock held.
+   *
+   * @param previous the last snapshot, returned as is if none of the manifest files has changed since
+   */
+  @NotNull
+  Snapshot createSnapshot(@Nullable Snapshot previous) {
     AndroidFacet facet = AndroidFacet.getInstance(myModule);
     assert facet != null : "Attempt to obtain manifest info from a non Android module: " + myModule.getName();
 
@@ -373,52 +542,49 @@ public class MergedManifest {
       myManifestFile = ManifestInfo.ManifestFile.create(facet);
     }
 
-    // Check to see if our data is up to date
-    boolean refresh = myManifestFile.refresh();
-    if (!refresh) {
-      // Already have up to date data
-      return;
-    }
+    Snapshot snapshot = new Snapshot();
+    try {
+      // Check to see if our data is up to date
+      boolean refresh = myManifestFile.refresh();
+      if (!refresh) {
+        // Already have up to date data
+        return previous != null ? previous : snapshot;
+      }
 
-    myActivityAttributesMap = new HashMap<String, ActivityAttributes>();
-    myManifestTheme = null;
-    myTargetSdk = AndroidVersion.DEFAULT;
-    myMinSdk = AndroidVersion.DEFAULT;
-    myPackage = ""; //$NON-NLS-1$
-    myApplicationId = ""; //$NON-NLS-1$
-    myVersionCode = null;
-    myApplicationIcon = null;
-    myApplicationLabel = null;
-    myApplicationSupportsRtl = false;
-    myNodeKeys = null;
-    myActivities = Lists.newArrayList();
-    myActivityAliases = Lists.newArrayListWithExpectedSize(4);
-    myServices = Lists.newArrayListWithExpectedSize(4);
-    Set<String> permissions = Sets.newHashSetWithExpectedSize(30);
-    Set<String> revocable = Sets.newHashSetWithExpectedSize(2);
+      snapshot.myActivityAttributesMap = new HashMap<>();
+      snapshot.myTargetSdk = AndroidVersion.DEFAULT;
+      snapshot.myMinSdk = AndroidVersion.DEFAULT;
+      snapshot.myPackage = ""; //$NON-NLS-1$
+      snapshot.myApplicationId = ""; //$NON-NLS-1$
+      snapshot.myActivities = Lists.newArrayList();
+      snapshot.myActivityAliases = Lists.newArrayListWithExpectedSize(4);
+      snapshot.myServices = Lists.newArrayListWithExpectedSize(4);
+      Set<String> permissions = Sets.newHashSetWithExpectedSize(30);
+      Set<String> revocable = Sets.newHashSetWithExpectedSize(2);
 
-    try {
       Document document = myManifestFile.getXmlDocument();
       if (document == null) {
-        return;
+        return snapshot;
       }
-      myDocument = document;
-      myManifestFiles = myManifestFile.getManifestFiles();
+      snapshot.myDocument = document;
+      snapshot.myManifestFiles = myManifestFile.getManifestFiles();
+      snapshot.myLoggingRecords = myManifestFile.getLoggingRecords();
+      snapshot.myActions = myManifestFile.getActions();
 
       Element root = document.getDocumentElement();
       if (root == null) {
-        return;
+        return snapshot;
       }
 
-      myApplicationId = getAttributeValue(root, null, ATTRIBUTE_PACKAGE);
+      snapshot.myApplicationId = getAttributeValue(root, null, ATTRIBUTE_PACKAGE);
 
       // The package comes from the main manifest, NOT from the merged manifest.
       Manifest manifest = facet.getManifest();
-      myPackage = manifest == null ? myApplicationId : manifest.getPackage().getValue();
+      snapshot.myPackage = manifest == null ? snapshot.myApplicationId : manifest.getPackage().getValue();
 
       String versionCode = getAttributeValue(root, ANDROID_URI, SdkConstants.ATTR_VERSION_CODE);
       try {
-        myVersionCode = Integer.valueOf(versionCode);
+        snapshot.myVersionCode = Integer.valueOf(versionCode);
       }
       catch (NumberFormatException ignored) {}
 
@@ -428,13 +594,13 @@ public class MergedManifest {
           String nodeName = node.getNodeName();
           if (NODE_APPLICATION.equals(nodeName)) {
             Element application = (Element) node;
-            myApplicationIcon = getAttributeValue(application, ANDROID_URI, ATTRIBUTE_ICON);
-            myApplicationLabel = getAttributeValue(application, ANDROID_URI, ATTRIBUTE_LABEL);
-            myManifestTheme = getAttributeValue(application, ANDROID_URI, ATTRIBUTE_THEME);
-            myApplicationSupportsRtl = VALUE_TRUE.equals(getAttributeValue(application, ANDROID_URI, ATTRIBUTE_SUPPORTS_RTL));
+            snapshot.myApplicationIcon = getAttributeValue(application, ANDROID_URI, ATTRIBUTE_ICON);
+            snapshot.myApplicationLabel = getAttributeValue(application, ANDROID_URI, ATTRIBUTE_LABEL);
+            snapshot.myManifestTheme = getAttributeValue(application, ANDROID_URI, ATTRIBUTE_THEME);
+            snapshot.myApplicationSupportsRtl = VALUE_TRUE.equals(getAttributeValue(application, ANDROID_URI, ATTRIBUTE_SUPPORTS_RTL));
 
             String debuggable = getAttributeValue(application, ANDROID_URI, ATTRIBUTE_DEBUGGABLE);
-            myApplicationDebuggable = debuggable == null ? null : VALUE_TRUE.equals(debuggable);
+            snapshot.myApplicationDebuggable = debuggable == null ? null : VALUE_TRUE.equals(debuggable);
 
             Node child = node.getFirstChild();
             while (child != null) {
@@ -442,13 +608,13 @@ public class MergedManifest {
                 String childNodeName = child.getNodeName();
                 if (NODE_ACTIVITY.equals(childNodeName)) {
                   Element element = (Element)child;
-                  ActivityAttributes attributes = new ActivityAttributes(element, myApplicationId);
-                  myActivityAttributesMap.put(attributes.getName(), attributes);
-                  myActivities.add(element);
+                  ActivityAttributes attributes = new ActivityAttributes(element, snapshot.myApplicationId);
+                  snapshot.myActivityAttributesMap.put(attributes.getName(), attributes);
+                  snapshot.myActivities.add(element);
                 } else if (NODE_ACTIVITY_ALIAS.equals(childNodeName)) {
-                  myActivityAliases.add((Element) child);
+                  snapshot.myActivityAliases.add((Element) child);
                 } else if (NODE_SERVICE.equals(childNodeName)) {
-                  myServices.add((Element) child);
+                  snapshot.myServices.add((Element) child);
                 }
               }
               child = child.getNextSibling();
@@ -456,8 +622,8 @@ public class MergedManifest {
           } else if (NODE_USES_SDK.equals(nodeName)) {
             // Look up target SDK
             Element usesSdk = (Element) node;
-            myMinSdk = getApiVersion(usesSdk, ATTRIBUTE_MIN_SDK_VERSION, AndroidVersion.DEFAULT);
-            myTargetSdk = getApiVersion(usesSdk, ATTRIBUTE_TARGET_SDK_VERSION, myMinSdk);
+            snapshot.myMinSdk = getApiVersion(usesSdk, ATTRIBUTE_MIN_SDK_VERSION, AndroidVersion.DEFAULT);
+            snapshot.myTargetSdk = getApiVersion(usesSdk, ATTRIBUTE_TARGET_SDK_VERSION, snapshot.myMinSdk);
           } else if (TAG_USES_PERMISSION.equals(nodeName)
                      || TAG_USES_PERMISSION_SDK_23.equals(nodeName)
                      || TAG_USES_PERMISSION_SDK_M.equals(nodeName)) {
@@ -481,16 +647,16 @@ public class MergedManifest {
 
         node = node.getNextSibling();
       }
-      myPermissionHolder = new ModulePermissions(ImmutableSet.copyOf(permissions), ImmutableSet.copyOf(revocable));
+      snapshot.myPermissionHolder = new ModulePermissions(ImmutableSet.copyOf(permissions), ImmutableSet.copyOf(revocable));
     }
     catch (ProcessCanceledException e) {
       myManifestFile = null; // clear the file, to make sure we reload everything on next call to this method
-      myDocument = null;
       throw e;
     }
     catch (Exception e) {
       Logger.getInstance(MergedManifest.class).warn("Could not read Manifest data", e);
     }
+    return snapshot;
   }
 
   private static AndroidVersion getApiVersion(Element usesSdk, String attribute, AndroidVersion defaultApiLevel) {
@@ -507,21 +673,15 @@ public class MergedManifest {
 
   @NotNull
   public List<Element> getActivities() {
-    sync();
-    return myActivities;
+    return getSnapshot().myActivities;
   }
 
-  private List<Element> myActivities = Collections.emptyList();
-  private List<Element> myActivityAliases = Collections.emptyList();
-  private List<Element> myServices = Collections.emptyList();
-
   /**
    * @return the list of activity aliases defined in the manifest.
    */
   @NotNull
   public List<Element> getActivityAliases() {
-    sync();
-    return myActivityAliases;
+    return getSnapshot().myActivityAliases;
   }
 
   /**
@@ -529,16 +689,16 @@ public class MergedManifest {
    */
   @NotNull
   public List<Element> getServices() {
-    return myServices;
+    return getSnapshot().myServices;
   }
 
   @Nullable
   public Element findUsedFeature(@NotNull String name) {
-    sync();
-    if (myDocument == null) {
+    Document document = getSnapshot().myDocument;
+    if (document == null) {
       return null;
     }
-    Node node = myDocument.getDocumentElement().getFirstChild();
+    Node node = document.getDocumentElement().getFirstChild();
     while (node != null) {
       if (node.getNodeType() == Node.ELEMENT_NODE && NODE_USES_FEATURE.equals(node.getNodeName())) {
         Element element = (Element)node;
@@ -554,49 +714,48 @@ public class MergedManifest {
 
   @NotNull
   public ImmutableList<MergingReport.Record> getLoggingRecords() {
-    sync();
-    return myManifestFile == null ? ImmutableList.<MergingReport.Record>of() : myManifestFile.getLoggingRecords();
+    return getSnapshot().myLoggingRecords;
   }
 
   @Nullable
   public Actions getActions() {
-    sync();
-    return myManifestFile == null ? null : myManifestFile.getActions();
+    return getSnapshot().myActions;
   }
 
   @Nullable
   public XmlNode.NodeKey getNodeKey(String name) {
-    sync();
-    if (myNodeKeys == null) {
-      HashMap<String, XmlNode.NodeKey> nodeKeys = new HashMap<>();
-      Actions actions = getActions();
+    Snapshot snapshot = getSnapshot();
+    Map<String, XmlNode.NodeKey> nodeKeys = snapshot.myNodeKeys;
+    if (nodeKeys == null) {
+      nodeKeys = new HashMap<>();
+      Actions actions = snapshot.myActions;
       if (actions != null) {
         Set<XmlNode.NodeKey> keys = actions.getNodeKeys();
         for (XmlNode.NodeKey key : keys) {
           nodeKeys.put(key.toString(), key);
         }
       }
-      myNodeKeys = nodeKeys;
+      snapshot.myNodeKeys = nodeKeys;
     }
-    return myNodeKeys.get(name);
+    return nodeKeys.get(name);
   }
 
   @Nullable
   public Element findActivity(@Nullable String qualifiedName) {
-    sync();
-    if (qualifiedName == null || myActivities == null) {
+    List<Element> activities = getSnapshot().myActivities;
+    if (qualifiedName == null || activities == null) {
       return null;
     }
-    return getActivityOrAliasByName(qualifiedName, myActivities);
+    return getActivityOrAliasByName(qualifiedName, activities);
   }
 
   @Nullable
   public Element findActivityAlias(@Nullable String qualifiedName) {
-    sync();
-    if (qualifiedName == null || myActivityAliases == null) {
+    List<Element> activityAliases = getSnapshot().myActivityAliases;
+    if (qualifiedName == null || activityAliases == null) {
       return null;
     }
-    return getActivityOrAliasByName(qualifiedName, myActivityAliases);
+    return getActivityOrAliasByName(qualifiedName, activityAliases);
   }
 
   @Nullable
@@ -610,6 +769,33 @@ public class MergedManifest {
     return null;
   }
 
+  /**
+   * The result of one merge. Filled in by {@link #createSnapshot} and never modified once published, except for the
+   * node key map which is built on first use.
+   */
+  private static final class Snapshot {
+    private String myPackage;
+    private String myApplicationId;
+    private Integer myVersionCode;
+    private String myManifestTheme;
+    private Map<String, ActivityAttributes> myActivityAttributesMap;
+    private AndroidVersion myMinSdk;
+    private AndroidVersion myTargetSdk;
+    private String myApplicationIcon;
+    private String myApplicationLabel;
+    private boolean myApplicationSupportsRtl;
+    private Boolean myApplicationDebuggable;
+    private volatile @Nullable Map<String, XmlNode.NodeKey> myNodeKeys;
+    private Document myDocument;
+    private List<VirtualFile> myManifestFiles;
+    private ModulePermissions myPermissionHolder;
+    private List<Element> myActivities = Collections.emptyList();
+    private List<Element> myActivityAliases = Collections.emptyList();
+    private List<Element> myServices = Collections.emptyList();
+    private ImmutableList<MergingReport.Record> myLoggingRecords = ImmutableList.of();
+    private Actions myActions;
+  }
+
   public static class ActivityAttributes {
     @NotNull private final Element myElement;
     @Nullable private final String myIcon;
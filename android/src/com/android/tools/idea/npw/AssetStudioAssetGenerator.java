@@ -25,19 +25,22 @@ import com.android.ide.common.vectordrawable.VdOverrideInfo;
 import com.android.ide.common.vectordrawable.VdPreview;
 import com.android.resources.Density;
 import com.android.tools.idea.npw.assetstudio.AssetStudioGraphicGeneratorContext;
+import com.android.tools.idea.npw.assetstudio.AssetStudioUtils;
 import com.android.tools.idea.npw.assetstudio.icon.AndroidIconType;
 import com.android.tools.idea.rendering.ImageUtils;
 import com.android.tools.idea.wizard.template.TemplateWizardState;
 import com.google.common.base.Strings;
 import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.intellij.ide.fileTemplates.impl.UrlUtil;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
 import org.w3c.dom.Document;
 
 import javax.imageio.ImageIO;
@@ -45,10 +48,13 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
 
@@ -86,7 +92,14 @@ public class AssetStudioAssetGenerator implements GraphicGeneratorContext {
 
   private static final Logger LOG = Logger.getInstance("#" + AssetStudioAssetGenerator.class.getName());
   private static final String OUTPUT_DIRECTORY = "src/main/";
-  private static Cache<String, BufferedImage> ourImageCache = CacheBuilder.newBuilder().build();
+  private static final long MAX_CACHED_PIXELS = 16 * 1024 * 1024;
+  private static final Cache<String, BufferedImage> ourImageCache = AssetStudioUtils.createImageCache(MAX_CACHED_PIXELS);
+  /**
+   * Source images after loading, trimming and padding, keyed by {@link #getSourceImageKey}. The preview is regenerated on
+   * every change in the wizard, and decoding and cropping a large source image dominates that when only, say, the
+   * shape or the color changed.
+   */
+  private static final Cache<String, BufferedImage> ourSourceImageCache = AssetStudioUtils.createImageCache(MAX_CACHED_PIXELS);
 
   private final ActionBarIconGenerator myActionBarIconGenerator;
   private final NotificationIconGenerator myNotificationIconGenerator;
@@ -420,6 +433,7 @@ public class AssetStudioAssetGenerator implements GraphicGeneratorContext {
     }
 
     BufferedImage sourceImage = null;
+    boolean prepared = false;
     switch (sourceType) {
       case SVG:
       case VECTORDRAWABLE: {
@@ -443,7 +457,8 @@ public class AssetStudioAssetGenerator implements GraphicGeneratorContext {
         }
 
         try {
-          sourceImage = getImage(path, false);
+          sourceImage = getSourceImage(path, trim, padding);
+          prepared = true;
         }
         catch (FileNotFoundException e) {
           throw new ImageGeneratorException("Image file not found: " + path);
@@ -480,12 +495,8 @@ public class AssetStudioAssetGenerator implements GraphicGeneratorContext {
       }
     }
 
-    if (trim) {
-      sourceImage = crop(sourceImage);
-    }
-
-    if (padding != 0) {
-      sourceImage = AssetUtil.paddedImage(sourceImage, padding);
+    if (!prepared) {
+      sourceImage = prepareSourceImage(sourceImage, trim, padding);
     }
 
     GraphicGenerator generator = null;
@@ -561,28 +572,39 @@ public class AssetStudioAssetGenerator implements GraphicGeneratorContext {
   public void outputImagesIntoVariantRoot(@NotNull File variantDir) {
     try {
       Map<String, Map<String, BufferedImage>> images = generateImages(false);
+
+      // PNG encoding is the expensive part of writing the icons, and the densities are independent of each other. The files
+      // themselves are still written here, since VFS changes need the write action held by the caller.
+      BoundedTaskExecutor executor = new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, Runtime.getRuntime().availableProcessors());
+      List<Pair<String, Future<byte[]>>> encodedImages = new ArrayList<>();
       for (Map<String, BufferedImage> density : images.values()) {
         for (Map.Entry<String, BufferedImage> image : density.entrySet()) {
-          // TODO: The output directory needs to take flavor and build type into account, which will need to be configurable by the user
-          File file = new File(variantDir, image.getKey());
-          try {
-            VirtualFile directory = VfsUtil.createDirectories(file.getParentFile().getAbsolutePath());
-            VirtualFile imageFile = directory.findChild(file.getName());
-            if (imageFile == null || !imageFile.exists()) {
-              imageFile = directory.createChildData(this, file.getName());
-            }
-            OutputStream outputStream = imageFile.getOutputStream(this);
-            try {
-              ImageIO.write(image.getValue(), "PNG", outputStream);
-            }
-            finally {
-              outputStream.close();
-            }
+          final BufferedImage bufferedImage = image.getValue();
+          encodedImages.add(Pair.create(image.getKey(), executor.submit(() -> encodePng(bufferedImage))));
+        }
+      }
 
+      for (Pair<String, Future<byte[]>> image : encodedImages) {
+        // TODO: The output directory needs to take flavor and build type into account, which will need to be configurable by the user
+        File file = new File(variantDir, image.getFirst());
+        try {
+          byte[] content = image.getSecond().get();
+          VirtualFile directory = VfsUtil.createDirectories(file.getParentFile().getAbsolutePath());
+          VirtualFile imageFile = directory.findChild(file.getName());
+          if (imageFile == null || !imageFile.exists()) {
+            imageFile = directory.createChildData(this, file.getName());
           }
-          catch (IOException e) {
-            LOG.error(e);
+          OutputStream outputStream = imageFile.getOutputStream(this);
+          try {
+            outputStream.write(content);
+          }
+          finally {
+            outputStream.close();
           }
+
+        }
+        catch (IOException | ExecutionException e) {
+          LOG.error(e);
         }
       }
     } catch (Exception e) {
@@ -787,6 +809,53 @@ public class AssetStudioAssetGenerator implements GraphicGeneratorContext {
     return image;
   }
 
+  @NotNull
+  private static byte[] encodePng(@NotNull BufferedImage image) throws IOException {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    ImageIO.write(image, "PNG", stream);
+    return stream.toByteArray();
+  }
+
+  /**
+   * Loads, trims and pads the source image at the given path, reusing the result of a previous call
+   * as long as the file and the parameters are unchanged.
+   */
+  @NotNull
+  private static BufferedImage getSourceImage(@NotNull final String path, final boolean trim, final int padding) throws IOException {
+    try {
+      return ourSourceImageCache.get(getSourceImageKey(new File(path), trim, padding), new Callable<BufferedImage>() {
+        @Override
+        public BufferedImage call() throws Exception {
+          return prepareSourceImage(getImage(path, false), trim, padding);
+        }
+      });
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException)cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  @NotNull
+  private static String getSourceImageKey(@NotNull File file, boolean trim, int padding) {
+    return file.getAbsolutePath() + '|' + file.lastModified() + '|' + file.length() + '|' + trim + '|' + padding;
+  }
+
+  @NotNull
+  private static BufferedImage prepareSourceImage(@NotNull BufferedImage sourceImage, boolean trim, int padding) {
+    if (trim) {
+      sourceImage = crop(sourceImage);
+    }
+
+    if (padding != 0) {
+      sourceImage = AssetUtil.paddedImage(sourceImage, padding);
+    }
+    return sourceImage;
+  }
+
   @NotNull
   protected static BufferedImage crop(@NotNull BufferedImage sourceImage) {
     BufferedImage cropped = ImageUtils.cropBlank(sourceImage, null, TYPE_INT_ARGB);
@@ -19,7 +19,6 @@ package com.android.tools.idea.npw.assetstudio;
 import com.android.assetstudiolib.GraphicGenerator;
 import com.android.assetstudiolib.GraphicGeneratorContext;
 import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.intellij.openapi.diagnostic.Logger;
 import org.jetbrains.annotations.NotNull;
 
@@ -34,7 +33,8 @@ import java.util.concurrent.ExecutionException;
  */
 public final class AssetStudioGraphicGeneratorContext implements GraphicGeneratorContext {
 
-  private static Cache<String, BufferedImage> ourImageCache = CacheBuilder.newBuilder().build();
+  private static final long MAX_CACHED_PIXELS = 16 * 1024 * 1024;
+  private static final Cache<String, BufferedImage> ourImageCache = AssetStudioUtils.createImageCache(MAX_CACHED_PIXELS);
 
   private static Logger getLog() {
     return Logger.getInstance(AssetStudioGraphicGeneratorContext.class);
@@ -21,6 +21,9 @@ import com.android.resources.ResourceType;
 import com.android.tools.idea.npw.project.AndroidProjectPaths;
 import com.android.tools.idea.res.AppResourceRepository;
 import com.android.tools.idea.rendering.ImageUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 import com.intellij.openapi.util.io.FileUtil;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.annotations.NotNull;
@@ -47,6 +50,21 @@ public final class AssetStudioUtils {
     return new BufferedImage(1, 1, TYPE_INT_ARGB);
   }
 
+  /**
+   * Create a cache of images which holds at most the given number of pixels in total, evicting
+   * the least recently used images first. Source images can be orders of magnitude larger than
+   * stencils, so the number of entries alone says little about the memory held by the cache.
+   */
+  @NotNull
+  public static <K> Cache<K, BufferedImage> createImageCache(long maxPixels) {
+    return CacheBuilder.newBuilder().maximumWeight(maxPixels).weigher(new Weigher<K, BufferedImage>() {
+      @Override
+      public int weigh(@NotNull K key, @NotNull BufferedImage image) {
+        return (int)Math.min(Integer.MAX_VALUE, (long)image.getWidth() * image.getHeight());
+      }
+    }).build();
+  }
+
   /**
    * Remove any surrounding padding from the image.
    */
@@ -15,7 +15,6 @@
  */
 package com.android.tools.idea.res;
 
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.intellij.facet.ProjectFacetManager;
 import com.intellij.openapi.Disposable;
@@ -34,6 +33,7 @@ import org.jetbrains.ide.PooledThreadExecutor;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -42,6 +42,8 @@ import java.util.concurrent.Future;
 public class ResourceFolderRegistry {
   private final static Object DIR_MAP_LOCK = new Object();
   private final static Map<VirtualFile, ResourceFolderRepository> ourDirMap = Maps.newHashMap();
+  // Directories which are being scanned by a PopulateCachesTask, and not yet in ourDirMap.
+  private final static Map<VirtualFile, Future<ResourceFolderRepository>> ourPendingDirs = Maps.newHashMap();
 
   public static void reset() {
     synchronized (DIR_MAP_LOCK) {
@@ -52,15 +54,37 @@ public class ResourceFolderRegistry {
         PsiProjectListener.removeRoot(project, dir, repository);
       }
       ourDirMap.clear();
+      ourPendingDirs.clear();
     }
   }
 
   @NotNull
   public static ResourceFolderRepository get(@NotNull final AndroidFacet facet, @NotNull final VirtualFile dir) {
+    Project project = facet.getModule().getProject();
+    Future<ResourceFolderRepository> pending;
+    synchronized (DIR_MAP_LOCK) {
+      ResourceFolderRepository repository = ourDirMap.get(dir);
+      if (repository != null) {
+        return repository;
+      }
+      pending = ourPendingDirs.get(dir);
+    }
+    // If the directory is already being scanned in the background, wait for just that scan rather than scanning it again.
+    // Don't wait while holding the read lock: the scan needs read actions, which a pending write action would block.
+    if (pending != null && !ApplicationManager.getApplication().isReadAccessAllowed()) {
+      try {
+        return publishRepository(project, dir, pending.get());
+      }
+      catch (ExecutionException e) {
+        // Fall back to scanning the directory on this thread.
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
     synchronized (DIR_MAP_LOCK) {
       ResourceFolderRepository repository = ourDirMap.get(dir);
       if (repository == null) {
-        Project project = facet.getModule().getProject();
         repository = ResourceFolderRepository.create(facet, dir, null);
         putRepositoryInCache(project, dir, repository);
       }
@@ -68,6 +92,28 @@ public class ResourceFolderRegistry {
     }
   }
 
+  /**
+   * Puts a repository created by a background scan into the cache, unless the directory has been cached in the meantime.
+   *
+   * @return the repository that ends up cached for the directory
+   */
+  @NotNull
+  private static ResourceFolderRepository publishRepository(@NotNull Project project, @NotNull VirtualFile dir,
+                                                            @NotNull ResourceFolderRepository repository) {
+    synchronized (DIR_MAP_LOCK) {
+      ourPendingDirs.remove(dir);
+      ResourceFolderRepository cached = ourDirMap.get(dir);
+      if (cached == null) {
+        putRepositoryInCache(project, dir, repository);
+        return repository;
+      }
+      if (cached != repository) {
+        repository.dispose();
+      }
+      return cached;
+    }
+  }
+
   private static void putRepositoryInCache(@NotNull Project project, @NotNull final VirtualFile dir,
                                            @NotNull ResourceFolderRepository repository) {
     synchronized (DIR_MAP_LOCK) {
@@ -134,11 +180,13 @@ public class ResourceFolderRegistry {
         return;
       }
       // Some directories in the registry may already be populated by this point, so filter them out.
+      Map<VirtualFile, Future<ResourceFolderRepository>> jobs;
       synchronized (DIR_MAP_LOCK) {
         indicator.setText("Indexing resources");
         indicator.setIndeterminate(false);
         Map<VirtualFile, AndroidFacet> resDirectories = getResourceDirectoriesForFacets(facets);
         filterOutCached(resDirectories);
+        resDirectories.keySet().removeAll(ourPendingDirs.keySet());
         // Might already be done, as there can be a race for filling the memory caches.
         if (resDirectories.isEmpty()) {
           return;
@@ -155,47 +203,63 @@ public class ResourceFolderRegistry {
           return;
         }
         Application application = ApplicationManager.getApplication();
-        List<ResourceFolderRepository> repositories;
         // Beware if the current thread is holding the write lock. The current thread will
         // end up waiting for helper threads to finish, and the helper threads will be
         // acquiring a read lock (which would then block because of the write lock).
         assert !application.isWriteAccessAllowed();
-        repositories = executeParallel(indicator, resDirectories);
-        for (ResourceFolderRepository repository : repositories) {
-          putRepositoryInCache(myProject, repository.getResourceDir(), repository);
-        }
+        jobs = queueParallel(resDirectories);
+        ourPendingDirs.putAll(jobs);
       }
+      // Publish each repository as soon as it is done, without holding the lock, so that an editor which needs one
+      // of the directories (e.g. for the first layout render) does not have to wait for the whole project to be scanned.
+      awaitAndPublish(indicator, jobs);
     }
 
-    private static List<ResourceFolderRepository> executeParallel(@NotNull ProgressIndicator indicator,
-                                                                  @NotNull Map<VirtualFile, AndroidFacet> resDirectories) {
-      int numDone = 0;
-      List<ResourceFolderRepository> repositories = Lists.newArrayList();
+    private static Map<VirtualFile, Future<ResourceFolderRepository>> queueParallel(
+      @NotNull Map<VirtualFile, AndroidFacet> resDirectories) {
       // Cap the threads to 4 for now. Scaling is okay from 1 to 2, but not necessarily much better as we go higher.
       int maxThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
       BoundedTaskExecutor
         parallelExecutor = new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, maxThreads);
-      List<Future<ResourceFolderRepository>> repositoryJobs = Lists.newArrayList();
+      Map<VirtualFile, Future<ResourceFolderRepository>> repositoryJobs = Maps.newLinkedHashMap();
       for (Map.Entry<VirtualFile, AndroidFacet> entry : resDirectories.entrySet()) {
-        repositoryJobs.add(queueRepositoryFuture(parallelExecutor, entry.getValue(), entry.getKey()));
+        repositoryJobs.put(entry.getKey(), queueRepositoryFuture(parallelExecutor, entry.getValue(), entry.getKey()));
       }
-      for (Future<ResourceFolderRepository> job : repositoryJobs) {
+      return repositoryJobs;
+    }
+
+    private void awaitAndPublish(@NotNull ProgressIndicator indicator,
+                                 @NotNull Map<VirtualFile, Future<ResourceFolderRepository>> repositoryJobs) {
+      int numDone = 0;
+      for (Map.Entry<VirtualFile, Future<ResourceFolderRepository>> entry : repositoryJobs.entrySet()) {
+        VirtualFile dir = entry.getKey();
         if (indicator.isCanceled()) {
+          forgetPending(repositoryJobs);
           break;
         }
-        indicator.setFraction((double)numDone / resDirectories.size());
+        indicator.setFraction((double)numDone / repositoryJobs.size());
         try {
-          repositories.add(job.get());
+          publishRepository(myProject, dir, entry.getValue().get());
         }
         catch (ExecutionException e) {
           // If we get an exception, that's okay -- we stop pre-populating the cache, which is just for performance.
+          forgetPending(Collections.singletonMap(dir, entry.getValue()));
         }
         catch (InterruptedException e) {
           Thread.currentThread().interrupt();
+          forgetPending(repositoryJobs);
+          break;
         }
         ++numDone;
       }
-      return repositories;
+    }
+
+    private static void forgetPending(@NotNull Map<VirtualFile, Future<ResourceFolderRepository>> jobs) {
+      synchronized (DIR_MAP_LOCK) {
+        for (Map.Entry<VirtualFile, Future<ResourceFolderRepository>> entry : jobs.entrySet()) {
+          ourPendingDirs.remove(entry.getKey(), entry.getValue());
+        }
+      }
     }
 
     private static Future<ResourceFolderRepository> queueRepositoryFuture(
@@ -40,6 +40,7 @@ import com.intellij.openapi.fileTypes.FileTypeManager;
 import com.intellij.openapi.fileTypes.StdFileTypes;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.Condition;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
@@ -50,6 +51,7 @@ import com.intellij.psi.*;
 import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.psi.xml.*;
 import com.intellij.util.ArrayUtil;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
 import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.android.sdk.AndroidTargetData;
@@ -57,10 +59,14 @@ import org.jetbrains.android.util.AndroidResourceUtil;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.android.SdkConstants.*;
@@ -94,6 +100,12 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
   private Set<PsiFile> myPendingScans;
   private InitialScanState myInitialScanState;
 
+  /** Minimum number of uncached value files for which the initial scan parses them in parallel. */
+  @VisibleForTesting
+  static final int PARALLEL_SCAN_MIN_FILES = 8;
+  // Each repository scan is itself one of up to 4 parallel jobs of ResourceFolderRegistry.PopulateCachesTask.
+  private static final int MAX_SCAN_THREADS = 4;
+
   @VisibleForTesting
   static int ourFullRescans;
 
@@ -105,19 +117,27 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
     myResourceDir = resourceDir;
     myLibraryName = libraryName;
 
-    ResourceMerger merger = loadPreviousStateIfExists();
-    myInitialScanState = new InitialScanState(merger, VfsUtilCore.virtualToIoFile(myResourceDir));
+    long startNanos = System.nanoTime();
+    myInitialScanState = new InitialScanState(VfsUtilCore.virtualToIoFile(myResourceDir), libraryName);
+    loadPreviousStateIfExists();
+    long loadedNanos = System.nanoTime();
     scanRemainingFiles();
-    Application app = ApplicationManager.getApplication();
-    // For now, automatically save the state. We may want to move this out to a separate task.
-    if (!hasFreshFileCache() && !app.isUnitTestMode()) {
-      saveStateToFile();
+    myInitialScanState.recordTimings(loadedNanos - startNanos, System.nanoTime() - loadedNanos);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(String.format("%1$s: %2$d files from the file cache in %3$d ms, %4$d XML files parsed in %5$d ms",
+                              myResourceDir.getPath(), myResourceFiles.size() - myInitialScanState.numXmlReparsed,
+                              myInitialScanState.loadMillis, myInitialScanState.numXmlReparsed, myInitialScanState.scanMillis));
     }
-    // Clear some unneeded state (myInitialScanState's resource merger holds a second map of items).
+    Application app = ApplicationManager.getApplication();
     // Skip for unit tests, which may need to test saving separately (saving is normally skipped for unit tests).
-    if (!app.isUnitTestMode()) {
-      myInitialScanState = null;
+    if (app.isUnitTestMode()) {
+      return;
     }
+    if (!hasFreshFileCache()) {
+      // Save the state off the scanning thread, so that the repository is usable (e.g. for a first render) right away.
+      app.executeOnPooledThread(this::saveStateToFile);
+    }
+    myInitialScanState = null;
   }
 
   @NotNull
@@ -136,114 +156,74 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
   }
 
   /**
-   * Saves the non-Psi XML state as a single blob for faster loading the second time
+   * Saves the non-Psi state as a {@link ResourceFolderRepositorySnapshot} for faster loading the second time
    * by {@link #loadPreviousStateIfExists}.
    */
   void saveStateToFile() {
-    File blobRoot = ResourceFolderRepositoryFileCacheService.get().getResourceDir(myModule.getProject(), myResourceDir);
-    if (blobRoot == null) {
+    File cacheDir = ResourceFolderRepositoryFileCacheService.get().getResourceDir(myModule.getProject(), myResourceDir);
+    if (cacheDir == null) {
       // The cache is invalid, do nothing
       return;
     }
 
-    try {
-      ResourcePreprocessor preprocessor = new NoOpResourcePreprocessor();
-      File tempDirectory = FileUtil.createTempDirectory("resource", "tmp", false);
-      try {
-        MergeConsumer<ResourceItem> consumer = MergedResourceWriter.createWriterWithoutPngCruncher(
-          blobRoot, null, null, preprocessor, tempDirectory);
-        myInitialScanState.myResourceMerger.writeBlobToWithTimestamps(blobRoot, consumer);
-      } finally {
-        FileUtil.delete(tempDirectory);
+    // Take a consistent copy; Psi events (which update myResourceFiles) are delivered under the write lock.
+    List<ResourceFile> resourceFiles = ApplicationManager.getApplication().runReadAction((Computable<List<ResourceFile>>)() -> {
+      List<ResourceFile> files = Lists.newArrayListWithExpectedSize(myResourceFiles.size());
+      for (ResourceFile resourceFile : myResourceFiles.values()) {
+        // Psi files are never cached; they are rescanned as Psi the next time.
+        if (!(resourceFile instanceof PsiResourceFile)) {
+          files.add(resourceFile);
+        }
       }
+      return files;
+    });
+    try {
+      FileUtil.ensureExists(cacheDir);
+      File snapshotFile = new File(cacheDir, ResourceFolderRepositorySnapshot.FILE_NAME);
+      ResourceFolderRepositorySnapshot.write(snapshotFile, VfsUtilCore.virtualToIoFile(myResourceDir), resourceFiles);
     }
-    catch (MergingException|IOException e) {
+    catch (IOException e) {
       LOG.error("Failed to saveStateToFile", e);
-      // Delete the blob root just in case it's in an inconsistent state.
-      FileUtil.delete(blobRoot);
+      // Delete the cache directory just in case it's in an inconsistent state.
+      FileUtil.delete(cacheDir);
     }
   }
 
   /**
-   * Reloads ResourceFile and ResourceItems which have not changed since the last {@link #saveStateToFile}.
+   * Reloads ResourceFile and ResourceItems whose files have not changed since the last {@link #saveStateToFile}.
    * Some Resource file and items may not be covered, so {@link #scanRemainingFiles} should be run
    * to load the rest of the items.
-   *
-   * @return the loaded ResourceMerger -- this can be used to save state again, if the cache isn't fresh
    */
-  private ResourceMerger loadPreviousStateIfExists() {
-    File blobRoot = ResourceFolderRepositoryFileCacheService.get().getResourceDir(
-      myModule.getProject(), myResourceDir);
-    if (blobRoot == null || !blobRoot.exists()) {
-      return createFreshResourceMerger();
-    }
-    ResourceMerger merger = new ResourceMerger(0 /* minSdk */);
-    // This load may fail if the data is in an inconsistent state or the xml contains illegal
-    // resource names, which the Psi parser would otherwise allow, so load failures are not
-    // strictly an error.
-    // loadFromBlob will check timestamps for stale data and skip.
-    try {
-      if (!merger.loadFromBlob(blobRoot, false)) {
-        LOG.warn("failed to loadPreviousStateIfExists " + blobRoot);
-        return createFreshResourceMerger();
-      }
+  private void loadPreviousStateIfExists() {
+    File cacheDir = ResourceFolderRepositoryFileCacheService.get().getResourceDir(myModule.getProject(), myResourceDir);
+    if (cacheDir == null) {
+      return;
     }
-    catch (MergingException e) {
-      LOG.warn("failed to loadPreviousStateIfExists " + blobRoot, e);
-      return createFreshResourceMerger();
+    File snapshotFile = new File(cacheDir, ResourceFolderRepositorySnapshot.FILE_NAME);
+    if (!snapshotFile.isFile()) {
+      return;
     }
-    // This temp resourceFiles set is just to avoid calling VfsUtil#findFileByIoFile a ton.
-    Set<ResourceFile> resourceFiles = Sets.newHashSet();
-    List<ResourceSet> resourceSets = merger.getDataSets();
-    if (resourceSets.size() != 1) {
-      LOG.error("Expecting exactly one resource set, but found " + resourceSets.size());
-      return createFreshResourceMerger();
+    Map<File, ResourceFile> resourceFiles;
+    try {
+      resourceFiles = ResourceFolderRepositorySnapshot.read(snapshotFile, VfsUtilCore.virtualToIoFile(myResourceDir), myLibraryName);
     }
-    ResourceSet dataSet = resourceSets.get(0);
-    List<File> sourceFiles = dataSet.getSourceFiles();
-    if (sourceFiles.size() != 1) {
-      LOG.error("Expecting exactly source files (res/ directories), but found " + sourceFiles.size());
-      return createFreshResourceMerger();
+    catch (IOException e) {
+      // Not strictly an error: the snapshot may have been written by a different version, or be in an inconsistent state.
+      LOG.warn("failed to loadPreviousStateIfExists " + snapshotFile, e);
+      return;
     }
-    File myResourceDirFile = VfsUtilCore.virtualToIoFile(myResourceDir);
-    // Check that the dataSet we're loading actually corresponds to this resource directory.
-    // This could happen if there's a hash collision in naming the cache directory.
-    if (!FileUtil.filesEqual(sourceFiles.get(0), myResourceDirFile)) {
-      LOG.warn(String.format("source file %1$s, does not match resource dir %2$s",
-                             sourceFiles.get(0), myResourceDirFile));
-      return createFreshResourceMerger();
-    }
-    for (Map.Entry<String, ResourceItem> entry : dataSet.getDataMap().entries()) {
-      ResourceItem item = entry.getValue();
-      ResourceFile file = item.getSource();
-      if (file != null) {
-        if (!resourceFiles.contains(file)) {
-          VirtualFile vFile = VfsUtil.findFileByIoFile(file.getFile(), false);
-          if (vFile == null) {
-            // Cannot handle this item, mark it ignored to that it doesn't persist.
-            item.setIgnoredFromDiskMerge(true);
-            continue;
-          }
-          resourceFiles.add(file);
-          myResourceFiles.put(vFile, file);
-        }
+    for (Map.Entry<File, ResourceFile> entry : resourceFiles.entrySet()) {
+      VirtualFile vFile = VfsUtil.findFileByIoFile(entry.getKey(), false);
+      if (vFile == null) {
+        continue;
+      }
+      ResourceFile resourceFile = entry.getValue();
+      myResourceFiles.put(vFile, resourceFile);
+      for (ResourceItem item : resourceFile.getItems()) {
         ListMultimap<String, ResourceItem> map = getMap(item.getType(), true);
         map.put(item.getName(), item);
-      } else {
-        // Cannot handle this item, mark it ignored to that it doesn't persist.
-        item.setIgnoredFromDiskMerge(true);
       }
     }
-    return merger;
-  }
-
-  private ResourceMerger createFreshResourceMerger() {
-    ResourceMerger merger = new ResourceMerger(0 /* minSdk */);
-    ResourceSet myData = new ResourceSet(myResourceDir.getName(), myLibraryName, false /* validateEnabled */);
-    File resourceDir = VfsUtilCore.virtualToIoFile(myResourceDir);
-    myData.addSource(resourceDir);
-    merger.addDataSet(myData);
-    return merger;
   }
 
   /**
@@ -260,31 +240,29 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
   InitialScanState getInitialScanState() { return myInitialScanState; }
 
   /**
-   * Tracks state used by the initial scan, which may be used to save the state to a cache.
+   * Tracks state used by the initial scan.
    *
    * This also tracks how fresh the repo file-cache is by tracking how many xml file were reparsed during scan.
-   * The file cache omits non-XML single-file items, since those are easily derived from the file path.
+   * Non-XML single-file items are not counted, since they never need to be parsed.
    */
   static class InitialScanState {
     int numXml; // Doesn't count files that are explicitly skipped
     int numXmlReparsed;
+    long loadMillis;
+    long scanMillis;
 
-    final ResourceMerger myResourceMerger;
     final ResourceSet myResourceSet;
     final ILogger myILogger;
     final File myResourceDir;
     final Collection<PsiFileResourceQueueEntry> myPsiFileResourceQueue = new ArrayList<>();
     final Collection<PsiValueResourceQueueEntry> myPsiValueResourceQueue = new ArrayList<>();
+    final String myLibraryName;
 
-    public InitialScanState(ResourceMerger merger, File resourceDir) {
-      myResourceMerger = merger;
-      assert myResourceMerger.getDataSets().size() == 1;
-      myResourceSet = myResourceMerger.getDataSets().get(0);
-      myResourceSet.setShouldParseResourceIds(true);
-      myResourceSet.setDontNormalizeQualifiers(true);
-      myResourceSet.setTrackSourcePositions(false);
-      myILogger = new LogWrapper(LOG);
+    public InitialScanState(File resourceDir, @Nullable String libraryName) {
       myResourceDir = resourceDir;
+      myLibraryName = libraryName;
+      myResourceSet = createResourceSet();
+      myILogger = new LogWrapper(LOG);
     }
 
     public void countCacheHit() {
@@ -296,8 +274,13 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
       ++numXmlReparsed;
     }
 
+    void recordTimings(long loadNanos, long scanNanos) {
+      loadMillis = TimeUnit.NANOSECONDS.toMillis(loadNanos);
+      scanMillis = TimeUnit.NANOSECONDS.toMillis(scanNanos);
+    }
+
     /**
-     * Load a ResourceFile into the resource merger's resource set and return it.
+     * Load a ResourceFile into the scan's resource set and return it.
      *
      * @param file a resource XML file to load and parse
      * @return the resulting ResourceFile, if there is no parse error.
@@ -308,6 +291,20 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
       return myResourceSet.loadFile(myResourceDir, file, myILogger);
     }
 
+    /**
+     * Creates a resource set for parsing resource files without Psi. {@link ResourceSet} is not thread safe, so each worker
+     * thread of a parallel scan needs a set of its own.
+     */
+    @NotNull
+    ResourceSet createResourceSet() {
+      ResourceSet resourceSet = new ResourceSet(myResourceDir.getName(), myLibraryName, false /* validateEnabled */);
+      resourceSet.addSource(myResourceDir);
+      resourceSet.setShouldParseResourceIds(true);
+      resourceSet.setDontNormalizeQualifiers(true);
+      resourceSet.setTrackSourcePositions(false);
+      return resourceSet;
+    }
+
     public void queuePsiFileResourceScan(PsiFileResourceQueueEntry data) {
       myPsiFileResourceQueue.add(data);
     }
@@ -417,6 +414,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
   }
 
   private void scanResFolder(@NotNull VirtualFile resDir) {
+    List<PsiValueResourceQueueEntry> valueFiles = new ArrayList<>();
     for (VirtualFile subDir : resDir.getChildren()) {
       if (subDir.isValid() && subDir.isDirectory()) {
         String name = subDir.getName();
@@ -428,7 +426,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
           }
           String qualifiers = getQualifiers(name);
           if (folderType == VALUES) {
-            scanValueResFolder(subDir, qualifiers, folderConfiguration);
+            collectValueFiles(subDir, qualifiers, folderConfiguration, valueFiles);
           }
           else {
             scanFileResourceFolder(subDir, folderType, qualifiers, folderConfiguration);
@@ -436,6 +434,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
         }
       }
     }
+    scanValueFiles(valueFiles);
   }
 
   private static String getQualifiers(String dirName) {
@@ -515,11 +514,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
           return;
         }
         ListMultimap<String, ResourceItem> idMap = getMap(ResourceType.ID, true);
-        boolean isDensityBasedResource = folderType == DRAWABLE || folderType == MIPMAP;
-        // We skip caching density-based resources, so don't count those against cache statistics.
-        if (!isDensityBasedResource) {
-          myInitialScanState.countCacheMiss();
-        }
+        myInitialScanState.countCacheMiss();
         for (ResourceItem item : resourceFile.getItems()) {
           ListMultimap<String, ResourceItem> itemMap;
           if (item.getType() == ResourceType.ID) {
@@ -529,12 +524,6 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
             itemMap = map;
           }
           itemMap.put(item.getName(), item);
-          // It's not yet safe to serialize density-based resources items to blob files.
-          // The ResourceValue should be an instance of DensityBasedResourceValue, but no flags are
-          // serialized to the blob to indicate that.
-          if (isDensityBasedResource) {
-            item.setIgnoredFromDiskMerge(true);
-          }
         }
       }
       catch (MergingException e) {
@@ -545,13 +534,15 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
       }
     }
     else {
-      // We create the items without adding it to the resource set / resource merger.
-      // No need to write these out to blob files, as the item is easily reconstructed from the filename.
+      if (myResourceFiles.containsKey(file)) {
+        // Loaded from the file cache. Not counted as a cache hit, since the item is easily reconstructed from the filename.
+        return;
+      }
+      // We create the items without adding it to the resource set.
       String name = ResourceHelper.getResourceName(file);
       ResourceItem item = new ResourceItem(name, type, null, myLibraryName);
       map.put(name, item);
       resourceFile = new ResourceFile(VfsUtilCore.virtualToIoFile(file), item, qualifiers, folderConfiguration);
-      item.setIgnoredFromDiskMerge(true);
     }
     myResourceFiles.put(file, resourceFile);
   }
@@ -818,14 +809,96 @@ public final class ResourceFolderRepository extends LocalResourceRepository {
     }
   }
 
-  private void scanValueResFolder(@NotNull VirtualFile directory, String qualifiers, FolderConfiguration folderConfiguration) {
+  private static void collectValueFiles(@NotNull VirtualFile directory, String qualifiers, FolderConfiguration folderConfiguration,
+                                        @NotNull List<PsiValueResourceQueueEntry> valueFiles) {
     //noinspection ConstantConditions
     assert directory.getName().startsWith(FD_RES_VALUES);
 
     for (VirtualFile file : directory.getChildren()) {
-      if (file.isValid() && !file.isDirectory()) {
-        scanValueFile(qualifiers, file, folderConfiguration);
+      if (file.isValid() && !file.isDirectory() && file.getFileType() == StdFileTypes.XML) {
+        valueFiles.add(new PsiValueResourceQueueEntry(file, qualifiers, folderConfiguration));
+      }
+    }
+  }
+
+  /**
+   * Scans the value files of all the values folders. Files not covered by the file cache are parsed in parallel when there
+   * are enough of them to make that worthwhile; the results are then added to the repository in the original file order.
+   */
+  private void scanValueFiles(@NotNull List<PsiValueResourceQueueEntry> valueFiles) {
+    List<PsiValueResourceQueueEntry> uncached = new ArrayList<>(valueFiles.size());
+    for (PsiValueResourceQueueEntry entry : valueFiles) {
+      if (myResourceFiles.containsKey(entry.file)) {
+        myInitialScanState.countCacheHit();
+      }
+      else {
+        uncached.add(entry);
+      }
+    }
+    int maxThreads = Math.min(MAX_SCAN_THREADS, Runtime.getRuntime().availableProcessors());
+    if (maxThreads < 2 || uncached.size() < PARALLEL_SCAN_MIN_FILES) {
+      for (PsiValueResourceQueueEntry entry : uncached) {
+        scanValueFile(entry.qualifiers, entry.file, entry.folderConfiguration);
+      }
+      return;
+    }
+    scanValueFilesInParallel(uncached, maxThreads);
+  }
+
+  private void scanValueFilesInParallel(@NotNull List<PsiValueResourceQueueEntry> valueFiles, int maxThreads) {
+    InitialScanState scanState = myInitialScanState;
+    BoundedTaskExecutor executor = new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, maxThreads);
+    int chunkSize = (valueFiles.size() + maxThreads - 1) / maxThreads;
+    List<Future<List<ResourceFile>>> jobs = new ArrayList<>();
+    for (List<PsiValueResourceQueueEntry> chunk : Lists.partition(valueFiles, chunkSize)) {
+      jobs.add(executor.submit(() -> {
+        ResourceSet resourceSet = scanState.createResourceSet();
+        List<ResourceFile> resourceFiles = new ArrayList<>(chunk.size());
+        for (PsiValueResourceQueueEntry entry : chunk) {
+          ResourceFile resourceFile;
+          try {
+            resourceFile = resourceSet.loadFile(scanState.myResourceDir, VfsUtilCore.virtualToIoFile(entry.file), scanState.myILogger);
+          }
+          catch (MergingException e) {
+            resourceFile = null;
+          }
+          resourceFiles.add(resourceFile);
+        }
+        return resourceFiles;
+      }));
+    }
+
+    int index = 0;
+    for (Future<List<ResourceFile>> job : jobs) {
+      List<ResourceFile> resourceFiles;
+      try {
+        resourceFiles = job.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        resourceFiles = null;
+      }
+      catch (ExecutionException e) {
+        LOG.warn("Failed to scan value files in " + myResourceDir, e.getCause());
+        resourceFiles = null;
+      }
+      int chunkEnd = Math.min(index + chunkSize, valueFiles.size());
+      for (int i = index; i < chunkEnd; i++) {
+        PsiValueResourceQueueEntry entry = valueFiles.get(i);
+        ResourceFile resourceFile = resourceFiles != null ? resourceFiles.get(i - index) : null;
+        if (resourceFile == null) {
+          // The file-based parser failed for some reason. Fall back to Psi in case it is more lax.
+          scanState.queuePsiValueResourceScan(entry);
+          continue;
+        }
+        for (ResourceItem item : resourceFile.getItems()) {
+          ListMultimap<String, ResourceItem> map = getMap(item.getType(), true);
+          map.put(item.getName(), item);
+        }
+        scanState.countCacheMiss();
+        myResourceFiles.put(entry.file, resourceFile);
       }
+      index = chunkEnd;
     }
   }
 
@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.res;
+
+import com.android.annotations.VisibleForTesting;
+import com.android.ide.common.res2.ResourceFile;
+import com.android.ide.common.res2.ResourceItem;
+import com.android.ide.common.resources.configuration.FolderConfiguration;
+import com.android.resources.FolderTypeRelationship;
+import com.android.resources.ResourceFolderType;
+import com.android.resources.ResourceType;
+import com.android.utils.SdkUtils;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.*;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static com.android.SdkConstants.DOT_XML;
+import static com.android.tools.idea.res.ResourceHelper.getFolderType;
+
+/**
+ * Compact binary snapshot of the non-Psi {@link ResourceFile}s of a {@link ResourceFolderRepository}, used to skip
+ * parsing unchanged files when a project is reopened.
+ * <p>
+ * Layout of the file (all numbers big-endian):
+ * <pre>
+ *   int magic, int version
+ *   int stringCount, { int byteLength, utf-8 bytes }*        -- string table, referenced by index below (-1 for null)
+ *   int fileCount, {
+ *     int relativePath, int folderName, int qualifiers, byte kind, long length, long contentHash,
+ *     int itemCount, { int name, int type, node value }*
+ *   }*
+ * </pre>
+ * where a node is {@code byte nodeType} followed by, for elements, {@code int namespace, int qualifiedName,
+ * int attributeCount, { int namespace, int qualifiedName, int value }*, int childCount, node*}, and for text, CDATA and
+ * comments, {@code int data}. {@link #NO_NODE} stands for an item without a value.
+ * <p>
+ * XML files are validated against a hash of their contents rather than their timestamps, so that a checkout or a
+ * build which touches a file without changing it does not invalidate its entry. Single-file resources such as images
+ * only need to exist, since their items are derived from the path.
+ */
+final class ResourceFolderRepositorySnapshot {
+  static final String FILE_NAME = "resources.bin";
+
+  private static final int MAGIC = 0x52465253; // "RFRS"
+  @VisibleForTesting
+  static final int VERSION = 1;
+
+  private static final byte KIND_VALUES = 0;
+  private static final byte KIND_SINGLE_FILE = 1;
+  private static final byte KIND_ID_GENERATING = 2;
+
+  private static final byte NO_NODE = 0;
+
+  private ResourceFolderRepositorySnapshot() {
+  }
+
+  /**
+   * Writes the given resource files to the snapshot file, replacing any previous snapshot.
+   * Files which are not under {@code resourceDir} are skipped.
+   */
+  static void write(@NotNull File snapshotFile, @NotNull File resourceDir, @NotNull Collection<ResourceFile> resourceFiles)
+    throws IOException {
+    StringTable strings = new StringTable();
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(body);
+    List<ResourceFile> files = Lists.newArrayListWithExpectedSize(resourceFiles.size());
+    for (ResourceFile resourceFile : resourceFiles) {
+      if (FileUtil.isAncestor(resourceDir, resourceFile.getFile(), true)) {
+        files.add(resourceFile);
+      }
+    }
+    out.writeInt(files.size());
+    for (ResourceFile resourceFile : files) {
+      File file = resourceFile.getFile();
+      File folder = file.getParentFile();
+      byte kind = getKind(resourceFile);
+      out.writeInt(strings.indexOf(FileUtil.getRelativePath(resourceDir, file)));
+      out.writeInt(strings.indexOf(folder.getName()));
+      out.writeInt(strings.indexOf(resourceFile.getQualifiers()));
+      out.writeByte(kind);
+      if (kind == KIND_SINGLE_FILE) {
+        out.writeLong(0);
+        out.writeLong(0);
+      }
+      else {
+        out.writeLong(file.length());
+        out.writeLong(hash(file));
+      }
+      Collection<ResourceItem> items = resourceFile.getItems();
+      out.writeInt(items.size());
+      for (ResourceItem item : items) {
+        out.writeInt(strings.indexOf(item.getName()));
+        out.writeInt(strings.indexOf(item.getType().getName()));
+        writeNode(out, strings, item.getValue());
+      }
+    }
+    out.flush();
+
+    File tempFile = new File(snapshotFile.getPath() + ".tmp");
+    try (DataOutputStream fileOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      fileOut.writeInt(MAGIC);
+      fileOut.writeInt(VERSION);
+      strings.writeTo(fileOut);
+      body.writeTo(fileOut);
+    }
+    if (!FileUtil.delete(snapshotFile) || !tempFile.renameTo(snapshotFile)) {
+      FileUtil.delete(tempFile);
+      throw new IOException("Could not replace " + snapshotFile);
+    }
+  }
+
+  /**
+   * Reads a snapshot written by {@link #write}. Entries whose files no longer exist, or whose contents changed since the
+   * snapshot was written, are left out of the result. The file is read in a heap buffer and closed before this returns,
+   * so that the next {@link #write} can replace it (a memory mapped file can't be deleted on Windows).
+   *
+   * @return the up to date resource files, keyed by their file
+   * @throws IOException if the snapshot can't be read, is corrupt, or was written with a different format version
+   */
+  @NotNull
+  static Map<File, ResourceFile> read(@NotNull File snapshotFile, @NotNull File resourceDir, @Nullable String libraryName)
+    throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.toByteArray(snapshotFile));
+    try {
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        throw new IOException("Unexpected snapshot format in " + snapshotFile);
+      }
+      String[] strings = readStringTable(buffer);
+      Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+
+      int fileCount = buffer.getInt();
+      Map<File, ResourceFile> resourceFiles = Maps.newHashMapWithExpectedSize(fileCount);
+      for (int i = 0; i < fileCount; i++) {
+        File file = new File(resourceDir, strings[buffer.getInt()]);
+        String folderName = strings[buffer.getInt()];
+        String qualifiers = strings[buffer.getInt()];
+        byte kind = buffer.get();
+        long length = buffer.getLong();
+        long hash = buffer.getLong();
+        int itemCount = buffer.getInt();
+        List<ResourceItem> items = Lists.newArrayListWithExpectedSize(itemCount);
+        for (int j = 0; j < itemCount; j++) {
+          String name = strings[buffer.getInt()];
+          ResourceType type = ResourceType.getEnum(strings[buffer.getInt()]);
+          Node value = readNode(buffer, strings, document);
+          if (type != null) {
+            items.add(new ResourceItem(name, type, value, libraryName));
+          }
+        }
+
+        if (!file.isFile() || kind != KIND_SINGLE_FILE && (file.length() != length || hash(file) != hash)) {
+          continue;
+        }
+        FolderConfiguration folderConfiguration = FolderConfiguration.getConfigForFolder(folderName);
+        if (folderConfiguration == null || items.isEmpty()) {
+          continue;
+        }
+        ResourceFile resourceFile = kind == KIND_SINGLE_FILE
+                                    ? new ResourceFile(file, items.get(0), qualifiers, folderConfiguration)
+                                    : new ResourceFile(file, items, qualifiers, folderConfiguration);
+        resourceFiles.put(file, resourceFile);
+      }
+      return resourceFiles;
+    }
+    catch (RuntimeException e) {
+      // Buffer underflows, bad string indices, negative counts and DOM exceptions from invalid names
+      throw new IOException("Truncated or corrupt snapshot " + snapshotFile, e);
+    }
+    catch (ParserConfigurationException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static byte getKind(@NotNull ResourceFile resourceFile) {
+    ResourceFolderType folderType = getFolderType(resourceFile);
+    if (folderType == ResourceFolderType.VALUES) {
+      return KIND_VALUES;
+    }
+    return folderType != null && FolderTypeRelationship.isIdGeneratingFolderType(folderType) &&
+           SdkUtils.endsWithIgnoreCase(resourceFile.getFile().getPath(), DOT_XML)
+           ? KIND_ID_GENERATING
+           : KIND_SINGLE_FILE;
+  }
+
+  private static long hash(@NotNull File file) throws IOException {
+    return Files.hash(file, Hashing.murmur3_128()).asLong();
+  }
+
+  private static void writeNode(@NotNull DataOutputStream out, @NotNull StringTable strings, @Nullable Node node) throws IOException {
+    if (node == null) {
+      out.writeByte(NO_NODE);
+      return;
+    }
+    short nodeType = node.getNodeType();
+    switch (nodeType) {
+      case Node.ELEMENT_NODE: {
+        out.writeByte(nodeType);
+        out.writeInt(strings.indexOf(node.getNamespaceURI()));
+        out.writeInt(strings.indexOf(node.getNodeName()));
+        NamedNodeMap attributes = node.getAttributes();
+        out.writeInt(attributes.getLength());
+        for (int i = 0; i < attributes.getLength(); i++) {
+          Node attribute = attributes.item(i);
+          out.writeInt(strings.indexOf(attribute.getNamespaceURI()));
+          out.writeInt(strings.indexOf(attribute.getNodeName()));
+          out.writeInt(strings.indexOf(attribute.getNodeValue()));
+        }
+        NodeList children = node.getChildNodes();
+        out.writeInt(children.getLength());
+        for (int i = 0; i < children.getLength(); i++) {
+          writeNode(out, strings, children.item(i));
+        }
+        break;
+      }
+      case Node.TEXT_NODE:
+      case Node.CDATA_SECTION_NODE:
+      case Node.COMMENT_NODE:
+        out.writeByte(nodeType);
+        out.writeInt(strings.indexOf(node.getNodeValue()));
+        break;
+      default:
+        // Entity references and processing instructions don't survive parsing into resource values; keep their text.
+        out.writeByte(Node.TEXT_NODE);
+        out.writeInt(strings.indexOf(node.getTextContent()));
+        break;
+    }
+  }
+
+  @Nullable
+  private static Node readNode(@NotNull ByteBuffer buffer, @NotNull String[] strings, @NotNull Document document)
+    throws IOException {
+    byte nodeType = buffer.get();
+    switch (nodeType) {
+      case NO_NODE:
+        return null;
+      case Node.ELEMENT_NODE: {
+        String namespace = getString(strings, buffer.getInt());
+        String name = strings[buffer.getInt()];
+        Element element = namespace != null ? document.createElementNS(namespace, name) : document.createElement(name);
+        int attributeCount = buffer.getInt();
+        for (int i = 0; i < attributeCount; i++) {
+          String attributeNamespace = getString(strings, buffer.getInt());
+          String attributeName = strings[buffer.getInt()];
+          String attributeValue = strings[buffer.getInt()];
+          if (attributeNamespace != null) {
+            element.setAttributeNS(attributeNamespace, attributeName, attributeValue);
+          }
+          else {
+            element.setAttribute(attributeName, attributeValue);
+          }
+        }
+        int childCount = buffer.getInt();
+        for (int i = 0; i < childCount; i++) {
+          Node child = readNode(buffer, strings, document);
+          if (child != null) {
+            element.appendChild(child);
+          }
+        }
+        return element;
+      }
+      case Node.TEXT_NODE:
+        return document.createTextNode(strings[buffer.getInt()]);
+      case Node.CDATA_SECTION_NODE:
+        return document.createCDATASection(strings[buffer.getInt()]);
+      case Node.COMMENT_NODE:
+        return document.createComment(strings[buffer.getInt()]);
+      default:
+        throw new IOException("Unexpected node type " + nodeType);
+    }
+  }
+
+  @Nullable
+  private static String getString(@NotNull String[] strings, int index) {
+    return index < 0 ? null : strings[index];
+  }
+
+  @NotNull
+  private static String[] readStringTable(@NotNull ByteBuffer buffer) {
+    String[] strings = new String[buffer.getInt()];
+    for (int i = 0; i < strings.length; i++) {
+      byte[] bytes = new byte[buffer.getInt()];
+      buffer.get(bytes);
+      strings[i] = new String(bytes, StandardCharsets.UTF_8);
+    }
+    return strings;
+  }
+
+  /** Interns the strings of a snapshot; names, namespaces and qualifiers are heavily repeated across items. */
+  private static class StringTable {
+    private final Map<String, Integer> myIndices = Maps.newHashMap();
+    private final List<String> myStrings = Lists.newArrayList();
+
+    int indexOf(@Nullable String string) {
+      if (string == null) {
+        return -1;
+      }
+      Integer index = myIndices.get(string);
+      if (index == null) {
+        index = myStrings.size();
+        myStrings.add(string);
+        myIndices.put(string, index);
+      }
+      return index;
+    }
+
+    void writeTo(@NotNull DataOutputStream out) throws IOException {
+      out.writeInt(myStrings.size());
+      for (String string : myStrings) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+    }
+  }
+}
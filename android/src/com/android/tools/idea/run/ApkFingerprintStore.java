@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.run;
+
+import com.android.annotations.VisibleForTesting;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent store of APK hashes, keyed by the path, size, modification time and file key (the inode on Unix) of the
+ * APK. An APK is only read again when one of these has changed; otherwise its hash is taken from the store, which
+ * survives IDE restarts. Large APKs are hashed in chunks on several threads.
+ */
+final class ApkFingerprintStore {
+  private static final Logger LOG = Logger.getInstance(ApkFingerprintStore.class);
+  private static final int VERSION = 1;
+  private static final int MAX_ENTRIES = 200;
+  @VisibleForTesting static final int CHUNK_SIZE = 8 * 1024 * 1024;
+  private static final int MAX_HASH_THREADS = 4;
+  // Unlike Hashing.goodFastHash, which is seeded differently in each process, this gives the same hash after a restart.
+  private static final HashFunction HASH = Hashing.murmur3_128();
+
+  @NotNull private final File myStoreFile;
+  private final AtomicInteger myHits = new AtomicInteger();
+  private final AtomicInteger myMisses = new AtomicInteger();
+  // Access ordered, so that the least recently used entries are dropped first.
+  private final Map<String, Entry> myEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+      return size() > MAX_ENTRIES;
+    }
+  };
+  private boolean myLoaded;
+
+  ApkFingerprintStore(@NotNull File storeFile) {
+    myStoreFile = storeFile;
+  }
+
+  /** Returns the hash of the file, computing it only if the file has changed since it was last hashed. */
+  @NotNull
+  HashCode getHash(@NotNull File file) throws IOException {
+    Fingerprint fingerprint = Fingerprint.of(file);
+    synchronized (myEntries) {
+      load();
+      Entry entry = myEntries.get(fingerprint.path);
+      if (entry != null && entry.fingerprint.equals(fingerprint)) {
+        myHits.incrementAndGet();
+        return entry.hash;
+      }
+    }
+
+    myMisses.incrementAndGet();
+    long start = System.currentTimeMillis();
+    HashCode hash = computeHash(file);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(String.format("Hashed %1$s (%2$d bytes) in %3$d ms; %4$d hits, %5$d misses", file, fingerprint.length,
+                              System.currentTimeMillis() - start, myHits.get(), myMisses.get()));
+    }
+
+    // Only keep the hash if the file didn't change while it was read
+    if (fingerprint.equals(Fingerprint.of(file))) {
+      synchronized (myEntries) {
+        myEntries.put(fingerprint.path, new Entry(fingerprint, hash));
+        save();
+      }
+    }
+    return hash;
+  }
+
+  /** Returns the number of times a hash was found in the store. */
+  int getHitCount() {
+    return myHits.get();
+  }
+
+  /** Returns the number of times a file had to be hashed. */
+  int getMissCount() {
+    return myMisses.get();
+  }
+
+  /**
+   * Hashes the file, in chunks on a bounded pool if it has more than one chunk. The hash of the file is the hash of the
+   * hashes of its chunks, so it doesn't depend on how many threads were used.
+   */
+  @VisibleForTesting
+  @NotNull
+  static HashCode computeHash(@NotNull File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      int chunkCount = (int)Math.max(1, (size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+      Hasher hasher = HASH.newHasher().putLong(size);
+      if (chunkCount == 1) {
+        return hasher.putBytes(hashChunk(channel, 0, size).asBytes()).hash();
+      }
+
+      BoundedTaskExecutor executor = new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, MAX_HASH_THREADS);
+      List<Future<HashCode>> chunks = new ArrayList<>(chunkCount);
+      for (int i = 0; i < chunkCount; i++) {
+        long position = (long)i * CHUNK_SIZE;
+        long length = Math.min(CHUNK_SIZE, size - position);
+        chunks.add(executor.submit(() -> hashChunk(channel, position, length)));
+      }
+      for (Future<HashCode> chunk : chunks) {
+        try {
+          hasher.putBytes(chunk.get().asBytes());
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while hashing " + file);
+        }
+        catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          throw cause instanceof IOException ? (IOException)cause : new IOException(cause);
+        }
+      }
+      return hasher.hash();
+    }
+  }
+
+  @NotNull
+  private static HashCode hashChunk(@NotNull FileChannel channel, long position, long length) throws IOException {
+    Hasher hasher = HASH.newHasher();
+    ByteBuffer buffer = ByteBuffer.allocate((int)Math.min(length, 64 * 1024));
+    long offset = position;
+    long end = position + length;
+    while (offset < end) {
+      buffer.clear();
+      buffer.limit((int)Math.min(buffer.capacity(), end - offset));
+      // Positional reads don't change the position of the channel, so they can be done from several threads
+      int read = channel.read(buffer, offset);
+      if (read < 0) {
+        throw new EOFException();
+      }
+      hasher.putBytes(buffer.array(), 0, read);
+      offset += read;
+    }
+    return hasher.hash();
+  }
+
+  private void load() {
+    if (myLoaded) {
+      return;
+    }
+    myLoaded = true;
+    if (!myStoreFile.isFile()) {
+      return;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(myStoreFile)))) {
+      if (in.readInt() != VERSION) {
+        return;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String path = in.readUTF();
+        long length = in.readLong();
+        long lastModified = in.readLong();
+        String fileKey = in.readUTF();
+        byte[] hash = new byte[in.readUnsignedByte()];
+        in.readFully(hash);
+        Fingerprint fingerprint = new Fingerprint(path, length, lastModified, fileKey.isEmpty() ? null : fileKey);
+        myEntries.put(path, new Entry(fingerprint, HashCode.fromBytes(hash)));
+      }
+    }
+    catch (IOException | IllegalArgumentException e) {
+      LOG.warn("Could not read APK fingerprints from " + myStoreFile, e);
+      myEntries.clear();
+    }
+  }
+
+  private void save() {
+    File tempFile = new File(myStoreFile.getPath() + ".tmp");
+    try {
+      FileUtil.ensureExists(myStoreFile.getParentFile());
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+        out.writeInt(VERSION);
+        out.writeInt(myEntries.size());
+        for (Entry entry : myEntries.values()) {
+          Fingerprint fingerprint = entry.fingerprint;
+          out.writeUTF(fingerprint.path);
+          out.writeLong(fingerprint.length);
+          out.writeLong(fingerprint.lastModified);
+          out.writeUTF(fingerprint.fileKey != null ? fingerprint.fileKey : "");
+          byte[] hash = entry.hash.asBytes();
+          out.writeByte(hash.length);
+          out.write(hash);
+        }
+      }
+      FileUtil.rename(tempFile, myStoreFile);
+    }
+    catch (IOException e) {
+      LOG.warn("Could not write APK fingerprints to " + myStoreFile, e);
+      FileUtil.delete(tempFile);
+    }
+  }
+
+  /** What identifies a version of a file without reading it. */
+  static final class Fingerprint {
+    @NotNull final String path;
+    final long length;
+    final long lastModified;
+    @Nullable final String fileKey;
+
+    private Fingerprint(@NotNull String path, long length, long lastModified, @Nullable String fileKey) {
+      this.path = path;
+      this.length = length;
+      this.lastModified = lastModified;
+      this.fileKey = fileKey;
+    }
+
+    @NotNull
+    static Fingerprint of(@NotNull File file) throws IOException {
+      BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+      Object fileKey = attributes.fileKey();
+      return new Fingerprint(file.getAbsolutePath(), attributes.size(), attributes.lastModifiedTime().toMillis(),
+                             fileKey != null ? fileKey.toString() : null);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      Fingerprint that = (Fingerprint)o;
+      return length == that.length && lastModified == that.lastModified && path.equals(that.path) &&
+             Objects.equals(fileKey, that.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(path, length, lastModified, fileKey);
+    }
+  }
+
+  private static final class Entry {
+    @NotNull final Fingerprint fingerprint;
+    @NotNull final HashCode hash;
+
+    Entry(@NotNull Fingerprint fingerprint, @NotNull HashCode hash) {
+      this.fingerprint = fingerprint;
+      this.hash = hash;
+    }
+  }
+}
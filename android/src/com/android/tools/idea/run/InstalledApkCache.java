@@ -20,9 +20,8 @@ import com.android.ddmlib.*;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Sets;
 import com.google.common.hash.HashCode;
-import com.google.common.hash.Hashing;
-import com.google.common.io.Files;
 import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.text.StringUtil;
 import org.jetbrains.annotations.NotNull;
@@ -30,18 +29,32 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 
 public class InstalledApkCache implements Disposable {
   private final DeviceStateCache<CacheData> myCache;
+  private final ConcurrentMap<File, ApkHash> myApkHashes = new ConcurrentHashMap<>();
+  private final ApkFingerprintStore myFingerprints;
 
   /** Diagnostic output set by {@link #getLastUpdateTime(com.android.ddmlib.IDevice, String)} */
   private String myDiagnosticOutput;
 
   public InstalledApkCache() {
+    this(new ApkFingerprintStore(new File(PathManager.getSystemPath(), "apk-fingerprints")));
+  }
+
+  @VisibleForTesting
+  InstalledApkCache(@NotNull ApkFingerprintStore fingerprints) {
     myCache = new DeviceStateCache<CacheData>(this);
+    myFingerprints = fingerprints;
   }
 
   @Override
@@ -83,9 +96,37 @@ public class InstalledApkCache implements Disposable {
     myCache.put(device, pkgName, new CacheData(installState, hash(apk)));
   }
 
+  /**
+   * Returns the hash of the APK. The hash is computed once for all devices: when several devices are launched at the
+   * same time, the first one to get here looks up or computes the hash and the others wait for its result. Hashes are
+   * kept in a persistent {@link ApkFingerprintStore}, so an unchanged APK is not read again, even after a restart.
+   */
   @NotNull
-  private static HashCode hash(@NotNull File apk) throws IOException {
-    return Files.hash(apk, Hashing.goodFastHash(32));
+  private HashCode hash(@NotNull File apk) throws IOException {
+    ApkFingerprintStore.Fingerprint fingerprint = ApkFingerprintStore.Fingerprint.of(apk);
+    ApkHash apkHash =
+      myApkHashes.compute(apk, (file, previous) -> previous != null && previous.fingerprint.equals(fingerprint)
+                                                   ? previous
+                                                   : new ApkHash(fingerprint, () -> myFingerprints.getHash(file)));
+    apkHash.task.run(); // does nothing if another thread already computes or has computed the hash
+    try {
+      return apkHash.task.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while hashing " + apk);
+    }
+    catch (ExecutionException e) {
+      myApkHashes.remove(apk, apkHash);
+      Throwable cause = e.getCause();
+      throw cause instanceof IOException ? (IOException)cause : new IOException(cause);
+    }
+  }
+
+  @VisibleForTesting
+  @NotNull
+  ApkFingerprintStore getFingerprints() {
+    return myFingerprints;
   }
 
   @VisibleForTesting
@@ -173,6 +214,17 @@ public class InstalledApkCache implements Disposable {
     }
   }
 
+  /** The hash of an APK, valid as long as the APK has the same fingerprint. */
+  private static class ApkHash {
+    @NotNull private final ApkFingerprintStore.Fingerprint fingerprint;
+    @NotNull private final FutureTask<HashCode> task;
+
+    private ApkHash(@NotNull ApkFingerprintStore.Fingerprint fingerprint, @NotNull Callable<HashCode> hash) {
+      this.fingerprint = fingerprint;
+      task = new FutureTask<>(hash);
+    }
+  }
+
   private static class CacheData {
     @NotNull private final InstallState installState;
     @NotNull private final HashCode hash;
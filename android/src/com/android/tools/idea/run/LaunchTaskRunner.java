@@ -30,25 +30,32 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
 
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 public class LaunchTaskRunner extends Task.Backgroundable {
+  /** Maximum number of devices which are deployed to at the same time. */
+  private static final int MAX_PARALLEL_DEVICES = 4;
+
   @NotNull private final String myConfigName;
   @NotNull private final LaunchInfo myLaunchInfo;
   @NotNull private final ProcessHandler myProcessHandler;
   @NotNull private final DeviceFutures myDeviceFutures;
   @NotNull private final LaunchTasksProvider myLaunchTasksProvider;
 
-  @Nullable private String myError;
+  @Nullable private volatile String myError;
 
   public LaunchTaskRunner(@NotNull Project project,
                           @NotNull String configName,
@@ -90,66 +97,146 @@ public class LaunchTaskRunner extends Task.Backgroundable {
     DateFormat dateFormat = new SimpleDateFormat("MM/dd HH:mm:ss");
     consolePrinter.stdout("\n" + dateFormat.format(new Date()) + ": Launching " + myConfigName);
 
-    for (ListenableFuture<IDevice> deviceFuture : listenableDeviceFutures) {
-      indicator.setText("Waiting for target device to come online");
-      IDevice device = waitForDevice(deviceFuture, indicator, launchStatus);
-      if (device == null) {
-        return;
-      }
+    if (listenableDeviceFutures.size() > 1 && debugSessionTask == null) {
+      launchInParallel(listenableDeviceFutures, indicator, launchStatus, consolePrinter);
+      return;
+    }
 
-      List<LaunchTask> launchTasks = null;
-      try {
-        launchTasks = myLaunchTasksProvider.getTasks(device, launchStatus, consolePrinter);
-      }
-      catch (com.intellij.execution.ExecutionException e) {
-        launchStatus.terminateLaunch(e.getMessage());
-        return;
-      }
-      catch (IllegalStateException e) {
-        launchStatus.terminateLaunch(e.getMessage());
-        Logger.getInstance(LaunchTaskRunner.class).error(e);
+    LaunchProgress progress = new LaunchProgress(indicator, listenableDeviceFutures.size());
+    for (int i = 0; i < listenableDeviceFutures.size(); i++) {
+      if (!launchOnDevice(listenableDeviceFutures.get(i), i, progress, launchStatus, consolePrinter, debugSessionTask, false)) {
         return;
       }
+    }
+  }
 
-      int totalDuration = listenableDeviceFutures.size() * getTotalDuration(launchTasks, debugSessionTask);
-      int elapsed = 0;
+  /**
+   * Runs the task chains of the devices concurrently on a bounded pool. Each device gets its own section of the console
+   * (lines prefixed with its serial number) and its own share of the progress bar. Like in a sequential launch, a failure
+   * on any device terminates the whole launch.
+   */
+  private void launchInParallel(@NotNull List<ListenableFuture<IDevice>> deviceFutures,
+                                @NotNull ProgressIndicator indicator,
+                                @NotNull LaunchStatus launchStatus,
+                                @NotNull ConsolePrinter consolePrinter) {
+    indicator.setText("Launching on " + deviceFutures.size() + " devices");
+    LaunchProgress progress = new LaunchProgress(indicator, deviceFutures.size());
+    BoundedTaskExecutor executor =
+      new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, Math.min(deviceFutures.size(), MAX_PARALLEL_DEVICES));
+    List<Future<?>> chains = new ArrayList<>(deviceFutures.size());
+    for (int i = 0; i < deviceFutures.size(); i++) {
+      ListenableFuture<IDevice> deviceFuture = deviceFutures.get(i);
+      int index = i;
+      chains.add(executor.submit(() -> launchOnDevice(deviceFuture, index, progress, launchStatus, consolePrinter, null, true)));
+    }
 
-      for (LaunchTask task : launchTasks) {
-        // perform each task
-        indicator.setText(task.getDescription());
-        if (!task.perform(device, launchStatus, consolePrinter)) {
-          myError = "Error " + task.getDescription();
-          launchStatus.terminateLaunch("Error while " + task.getDescription());
+    for (Future<?> chain : chains) {
+      while (true) {
+        try {
+          chain.get(1, TimeUnit.SECONDS);
+          break;
+        }
+        catch (TimeoutException ignored) {
+        }
+        catch (InterruptedException e) {
+          launchStatus.terminateLaunch("Interrupted while launching");
+          Thread.currentThread().interrupt();
           return;
         }
+        catch (ExecutionException e) {
+          myError = "Error while launching";
+          launchStatus.terminateLaunch("Error while launching: " + e.getCause().getMessage());
+          Logger.getInstance(LaunchTaskRunner.class).warn(e.getCause());
+          break;
+        }
 
-        // update progress
-        elapsed += task.getDuration();
-        indicator.setFraction((double)elapsed / totalDuration);
-
-        // check for cancellation via progress bar
-        if (indicator.isCanceled()) {
+        // The chains notice cancellation on their own, between tasks; make sure they do when cancelled from the progress bar
+        if (indicator.isCanceled() && !launchStatus.isLaunchTerminated()) {
           launchStatus.terminateLaunch("User cancelled launch");
-          return;
         }
+      }
+    }
+  }
 
-        // check for cancellation via stop button
-        if (launchStatus.isLaunchTerminated()) {
-          return;
-        }
+  /**
+   * Waits for the device and performs its launch tasks, returning false if the launch was terminated.
+   *
+   * @param prefixOutput whether to prefix the console output with the device, when other devices are launched at the same time
+   */
+  private boolean launchOnDevice(@NotNull ListenableFuture<IDevice> deviceFuture,
+                                 int deviceIndex,
+                                 @NotNull LaunchProgress progress,
+                                 @NotNull LaunchStatus launchStatus,
+                                 @NotNull ConsolePrinter consolePrinter,
+                                 @Nullable DebugConnectorTask debugSessionTask,
+                                 boolean prefixOutput) {
+    ProgressIndicator indicator = progress.getIndicator();
+    progress.setText("Waiting for target device to come online");
+    IDevice device = waitForDevice(deviceFuture, indicator, launchStatus);
+    if (device == null) {
+      return false;
+    }
+
+    ConsolePrinter printer = prefixOutput ? new DeviceConsolePrinter(consolePrinter, device) : consolePrinter;
+    if (prefixOutput) {
+      printer.stdout("Launching on " + device.getName());
+    }
+
+    List<LaunchTask> launchTasks = null;
+    try {
+      launchTasks = myLaunchTasksProvider.getTasks(device, launchStatus, printer);
+    }
+    catch (com.intellij.execution.ExecutionException e) {
+      launchStatus.terminateLaunch(e.getMessage());
+      return false;
+    }
+    catch (IllegalStateException e) {
+      launchStatus.terminateLaunch(e.getMessage());
+      Logger.getInstance(LaunchTaskRunner.class).error(e);
+      return false;
+    }
+
+    int totalDuration = getTotalDuration(launchTasks, debugSessionTask);
+    int elapsed = 0;
+
+    for (LaunchTask task : launchTasks) {
+      // perform each task
+      progress.setText(prefixOutput ? device.getSerialNumber() + ": " + task.getDescription() : task.getDescription());
+      if (!task.perform(device, launchStatus, printer)) {
+        myError = "Error " + task.getDescription();
+        launchStatus.terminateLaunch("Error while " + task.getDescription());
+        return false;
       }
 
-      if (debugSessionTask != null) {
-        debugSessionTask
-          .perform(myLaunchInfo, device, (ProcessHandlerLaunchStatus)launchStatus, (ProcessHandlerConsolePrinter)consolePrinter);
+      // update progress
+      elapsed += task.getDuration();
+      progress.setFraction(deviceIndex, (double)elapsed / totalDuration);
+
+      // check for cancellation via progress bar
+      if (indicator.isCanceled()) {
+        launchStatus.terminateLaunch("User cancelled launch");
+        return false;
+      }
+
+      // check for cancellation via stop button
+      if (launchStatus.isLaunchTerminated()) {
+        return false;
       }
-      else { // we only need to inform the process handler if certain scenarios
-        if (myLaunchTasksProvider.createsNewProcess() // we are not doing a hot swap (in which case we are creating a new process)
-            && myProcessHandler instanceof AndroidProcessHandler) { // we aren't debugging (in which case its a DebugProcessHandler)
+    }
+
+    if (debugSessionTask != null) {
+      debugSessionTask
+        .perform(myLaunchInfo, device, (ProcessHandlerLaunchStatus)launchStatus, (ProcessHandlerConsolePrinter)consolePrinter);
+    }
+    else { // we only need to inform the process handler if certain scenarios
+      if (myLaunchTasksProvider.createsNewProcess() // we are not doing a hot swap (in which case we are creating a new process)
+          && myProcessHandler instanceof AndroidProcessHandler) { // we aren't debugging (in which case its a DebugProcessHandler)
+        synchronized (myProcessHandler) {
           ((AndroidProcessHandler)myProcessHandler).addTargetDevice(device);
         }
       }
     }
+    return true;
   }
 
   @Override
@@ -204,4 +291,59 @@ public class LaunchTaskRunner extends Task.Backgroundable {
 
     return total;
   }
+
+  /** Combines the progress of the devices of a launch, each of which takes an equal share of the progress bar. */
+  private static class LaunchProgress {
+    @NotNull private final ProgressIndicator myIndicator;
+    @NotNull private final double[] myFractions;
+
+    LaunchProgress(@NotNull ProgressIndicator indicator, int deviceCount) {
+      myIndicator = indicator;
+      myFractions = new double[Math.max(1, deviceCount)];
+    }
+
+    @NotNull
+    ProgressIndicator getIndicator() {
+      return myIndicator;
+    }
+
+    void setText(@NotNull String text) {
+      if (myFractions.length == 1) {
+        myIndicator.setText(text);
+      }
+      else {
+        myIndicator.setText2(text);
+      }
+    }
+
+    synchronized void setFraction(int deviceIndex, double fraction) {
+      myFractions[deviceIndex] = fraction;
+      double total = 0;
+      for (double deviceFraction : myFractions) {
+        total += deviceFraction;
+      }
+      myIndicator.setFraction(total / myFractions.length);
+    }
+  }
+
+  /** Prefixes the output for one device with its serial number, so that concurrent launches can be told apart. */
+  private static class DeviceConsolePrinter implements ConsolePrinter {
+    @NotNull private final ConsolePrinter myDelegate;
+    @NotNull private final String myPrefix;
+
+    DeviceConsolePrinter(@NotNull ConsolePrinter delegate, @NotNull IDevice device) {
+      myDelegate = delegate;
+      myPrefix = "[" + device.getSerialNumber() + "] ";
+    }
+
+    @Override
+    public void stdout(@NotNull String message) {
+      myDelegate.stdout(myPrefix + message);
+    }
+
+    @Override
+    public void stderr(@NotNull String message) {
+      myDelegate.stderr(myPrefix + message);
+    }
+  }
 }
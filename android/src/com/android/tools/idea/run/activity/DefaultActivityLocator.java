@@ -73,7 +73,7 @@ public class DefaultActivityLocator extends ActivityLocator {
   @VisibleForTesting
   static String computeDefaultActivity(@NotNull final AndroidFacet facet, @Nullable final IDevice device) {
     assert !facet.getProperties().USE_CUSTOM_COMPILER_MANIFEST;
-    final MergedManifest mergedManifest = MergedManifest.get(facet);
+    final MergedManifest mergedManifest = MergedManifest.get(facet).awaitUpToDate();
 
     return DumbService.getInstance(facet.getModule().getProject()).runReadActionInSmartMode(
       () -> computeDefaultActivity(ActivityWrapper.get(mergedManifest.getActivities(), mergedManifest.getActivityAliases()), device));
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.sdk;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A cache of downloaded SDK archives, shared by all projects and SDKs, keyed by the checksum of the archive. Partial
+ * downloads are kept in the cache directory too, so that an interrupted download can be resumed. When the cache
+ * grows beyond its size limit, the least recently used archives are removed.
+ */
+final class DownloadCache {
+  private static final Logger LOG = Logger.getInstance(DownloadCache.class);
+  private static final long DEFAULT_MAX_BYTES = 4L * 1024 * 1024 * 1024;
+  private static final String PARTIAL_SUFFIX = ".part";
+
+  private static final DownloadCache ourInstance =
+    new DownloadCache(new File(PathManager.getSystemPath(), "sdk-downloads"), DEFAULT_MAX_BYTES);
+
+  @NotNull private final File myDir;
+  private final long myMaxBytes;
+  private final ConcurrentMap<String, Object> myLocks = new ConcurrentHashMap<>();
+
+  DownloadCache(@NotNull File dir, long maxBytes) {
+    myDir = dir;
+    myMaxBytes = maxBytes;
+  }
+
+  @NotNull
+  static DownloadCache getInstance() {
+    return ourInstance;
+  }
+
+  /** Returns the cached archive with the given checksum, or null if it isn't cached. */
+  @Nullable
+  File get(@NotNull String checksum) {
+    File file = new File(myDir, checksum);
+    if (!file.isFile()) {
+      return null;
+    }
+    //noinspection ResultOfMethodCallIgnored
+    file.setLastModified(System.currentTimeMillis());
+    return file;
+  }
+
+  /**
+   * Returns the lock to hold while downloading the archive with the given checksum into its {@link #getPartialFile partial file}.
+   */
+  @NotNull
+  Object getLock(@NotNull String checksum) {
+    return myLocks.computeIfAbsent(checksum, key -> new Object());
+  }
+
+  /** Returns where the download of the archive with the given checksum is written to until it is complete. */
+  @NotNull
+  File getPartialFile(@NotNull String checksum) throws IOException {
+    FileUtil.ensureExists(myDir);
+    return new File(myDir, checksum + PARTIAL_SUFFIX);
+  }
+
+  /** Adds a complete, verified download to the cache and returns its cached file. */
+  @NotNull
+  synchronized File put(@NotNull String checksum, @NotNull File download) throws IOException {
+    File file = new File(myDir, checksum);
+    FileUtil.ensureExists(myDir);
+    FileUtil.rename(download, file);
+    prune();
+    return file;
+  }
+
+  /**
+   * Makes the cached file available at the target location, as a hard link where the file system supports it so that
+   * large archives are not copied.
+   */
+  static void copyTo(@NotNull File cached, @NotNull File target) throws IOException {
+    FileUtil.delete(target);
+    FileUtil.ensureExists(target.getParentFile());
+    try {
+      Files.createLink(target.toPath(), cached.toPath());
+    }
+    catch (IOException | UnsupportedOperationException e) {
+      FileUtil.copy(cached, target);
+    }
+  }
+
+  private void prune() {
+    File[] files = myDir.listFiles(file -> file.isFile() && !file.getName().endsWith(PARTIAL_SUFFIX));
+    if (files == null) {
+      return;
+    }
+    long total = 0;
+    for (File file : files) {
+      total += file.length();
+    }
+    if (total <= myMaxBytes) {
+      return;
+    }
+    Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+    for (File file : files) {
+      if (total <= myMaxBytes) {
+        break;
+      }
+      long length = file.length();
+      if (FileUtil.delete(file)) {
+        total -= length;
+      }
+      else {
+        LOG.warn("Could not remove " + file + " from the download cache");
+      }
+    }
+  }
+}
@@ -16,22 +16,36 @@
 package com.android.tools.idea.sdk;
 
 import com.android.annotations.Nullable;
+import com.android.annotations.VisibleForTesting;
 import com.android.repository.api.Downloader;
 import com.android.repository.api.ProgressIndicator;
 import com.android.tools.idea.sdk.progress.StudioProgressIndicatorAdapter;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.util.io.HttpRequests;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
 
 /**
  * A {@link Downloader} that uses Studio's {@link HttpRequests} to download files. Saves the file to a temp location and returns a
- * stream from that file.
+ * stream from that file. Downloads with a checksum go through a {@link DownloadCache}, and interrupted downloads are resumed.
  */
 public class StudioDownloader implements Downloader {
+  private static final Logger LOG = Logger.getInstance(StudioDownloader.class);
+  private static final int MAX_ATTEMPTS = 5;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_PARALLEL_DOWNLOADS = 3;
+  private static final long SLOW_LINK_BYTES_PER_SECOND = 256 * 1024;
+  private static final long MIN_THROUGHPUT_SAMPLE_BYTES = 1024 * 1024;
+
+  // Average throughput of recent downloads, or -1 before the first one
+  private static double ourBytesPerSecond = -1;
+
   private com.intellij.openapi.progress.ProgressIndicator myStudioProgressIndicator;
 
   /**
@@ -69,11 +83,44 @@ public class StudioDownloader implements Downloader {
   public void downloadFully(@NotNull URL url, @NotNull File target, @Nullable String checksum, @NotNull ProgressIndicator indicator)
     throws IOException {
     if (target.exists() && checksum != null) {
-      if (checksum.equals(Downloader.hash(new BufferedInputStream(new FileInputStream(target)), target.length(), indicator))) {
+      if (checksum.equals(hash(target, indicator))) {
         return;
       }
     }
 
+    if (checksum == null) {
+      File partialFile = new File(target.getPath() + ".part");
+      // Without a checksum nothing can tell whether a partial file left by an earlier run is from the same archive
+      FileUtil.delete(partialFile);
+      download(url, partialFile, createProgress(url, indicator));
+      FileUtil.rename(partialFile, target);
+      return;
+    }
+
+    DownloadCache cache = DownloadCache.getInstance();
+    // Concurrent downloads of the same archive would write to the same partial file, so the later ones wait and then
+    // find the archive in the cache
+    synchronized (cache.getLock(checksum)) {
+      File cached = cache.get(checksum);
+      if (cached != null) {
+        indicator.logInfo("Using cached download of " + url);
+        DownloadCache.copyTo(cached, target);
+        return;
+      }
+
+      File partialFile = cache.getPartialFile(checksum);
+      download(url, partialFile, createProgress(url, indicator));
+      String actual = hash(partialFile, indicator);
+      if (!checksum.equals(actual)) {
+        FileUtil.delete(partialFile);
+        throw new IOException("Checksum mismatch for " + url + ": expected " + checksum + ", got " + actual);
+      }
+      DownloadCache.copyTo(cache.put(checksum, partialFile), target);
+    }
+  }
+
+  @NotNull
+  private com.intellij.openapi.progress.ProgressIndicator createProgress(@NotNull URL url, @NotNull ProgressIndicator indicator) {
     // We don't use the settings here explicitly, since HttpRequests picks up the network settings from studio directly.
     indicator.logInfo("Downloading " + url);
     indicator.setText("Downloading...");
@@ -82,15 +129,111 @@ public class StudioDownloader implements Downloader {
     if (studioProgress == null) {
       studioProgress = ProgressManager.getInstance().getProgressIndicator();
     }
-    HttpRequests.request(url.toExternalForm())
-      .saveToFile(target, new StudioProgressIndicatorAdapter(indicator, studioProgress));
+    return new StudioProgressIndicatorAdapter(indicator, studioProgress);
+  }
+
+  /** Returns the checksum of the file, closing it before returning so that it can be moved or deleted afterwards. */
+  @NotNull
+  private static String hash(@NotNull File file, @NotNull ProgressIndicator indicator) throws IOException {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+      return Downloader.hash(in, file.length(), indicator);
+    }
+  }
+
+  /**
+   * Downloads the URL into the given file. If the file already has content, e.g. from a download that was interrupted,
+   * only the rest is requested with an HTTP range request. A dropped connection is retried the same way, a few times.
+   */
+  @VisibleForTesting
+  static void download(@NotNull URL url, @NotNull File partialFile, @NotNull com.intellij.openapi.progress.ProgressIndicator progress)
+    throws IOException {
+    IOException lastError = null;
+    for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+      long offset = partialFile.length();
+      try {
+        long start = System.nanoTime();
+        long received = downloadFrom(url, partialFile, offset, progress);
+        recordThroughput(received, System.nanoTime() - start);
+        return;
+      }
+      catch (IOException e) {
+        lastError = e;
+        progress.checkCanceled();
+        if (partialFile.length() == offset && offset > 0) {
+          // No progress at all from a resumed download: the partial file may be from another version of the archive
+          FileUtil.delete(partialFile);
+        }
+        LOG.info("Download of " + url + " interrupted at " + partialFile.length() + " bytes, retrying", e);
+      }
+    }
+    throw lastError;
+  }
+
+  /** Appends the content of the URL from the offset onwards to the file, and returns the number of bytes received. */
+  private static long downloadFrom(@NotNull URL url,
+                                   @NotNull File file,
+                                   long offset,
+                                   @NotNull com.intellij.openapi.progress.ProgressIndicator progress) throws IOException {
+    return HttpRequests.request(url.toExternalForm())
+      .tuner(connection -> {
+        if (offset > 0) {
+          connection.setRequestProperty("Range", "bytes=" + offset + "-");
+        }
+      })
+      .connect(request -> {
+        URLConnection connection = request.getConnection();
+        boolean resumed = offset > 0 && connection instanceof HttpURLConnection &&
+                          ((HttpURLConnection)connection).getResponseCode() == HttpURLConnection.HTTP_PARTIAL;
+        long start = resumed ? offset : 0;
+        long contentLength = connection.getContentLengthLong();
+        long total = contentLength >= 0 ? start + contentLength : -1;
+        progress.setIndeterminate(total <= 0);
+        long received = 0;
+        // Without a partial response the server sends everything again, so the file is rewritten from the start
+        try (InputStream in = request.getInputStream(); OutputStream out = new FileOutputStream(file, resumed)) {
+          byte[] buffer = new byte[BUFFER_SIZE];
+          int read;
+          while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            received += read;
+            progress.checkCanceled();
+            if (total > 0) {
+              progress.setFraction((double)(start + received) / total);
+            }
+          }
+        }
+        if (total > 0 && start + received < total) {
+          throw new EOFException("Connection closed after " + (start + received) + " of " + total + " bytes");
+        }
+        return received;
+      });
+  }
+
+  private static synchronized void recordThroughput(long bytes, long nanos) {
+    // Tiny downloads are dominated by latency and say nothing about the bandwidth
+    if (bytes < MIN_THROUGHPUT_SAMPLE_BYTES || nanos <= 0) {
+      return;
+    }
+    double bytesPerSecond = bytes * 1e9 / nanos;
+    ourBytesPerSecond = ourBytesPerSecond < 0 ? bytesPerSecond : (ourBytesPerSecond + bytesPerSecond) / 2;
+  }
+
+  /**
+   * Returns how many downloads should run at the same time, based on the throughput of recent downloads. A slow link is
+   * already saturated by one download, while on a fast link several downloads get more out of it than one.
+   */
+  public static synchronized int getSuggestedParallelDownloads() {
+    if (ourBytesPerSecond < 0) {
+      return 2;
+    }
+    return ourBytesPerSecond < SLOW_LINK_BYTES_PER_SECOND ? 1 : MAX_PARALLEL_DOWNLOADS;
   }
 
   @Nullable
   @Override
   public File downloadFully(@NotNull URL url,
                             @NotNull ProgressIndicator indicator) throws IOException {
-    // TODO: caching
+    // There is no checksum for these (e.g. repository manifests), so they are neither cached nor resumed across calls.
     String suffix = url.getPath();
     suffix = suffix.substring(suffix.lastIndexOf("/") + 1);
     File tempFile = FileUtil.createTempFile("StudioDownloader", suffix, true);
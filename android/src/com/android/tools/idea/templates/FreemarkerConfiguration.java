@@ -17,14 +17,24 @@ package com.android.tools.idea.templates;
 
 import com.android.tools.idea.templates.propertyAdapters.PropertyObjectWrapper;
 import com.google.common.base.Charsets;
+import com.intellij.util.containers.ContainerUtil;
+import freemarker.cache.TemplateLoader;
 import freemarker.template.Configuration;
 import freemarker.template.TemplateExceptionHandler;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.Map;
 
 /**
  * A Freemarker {@link Configuration} initialized with sensible built-in values for instantiating
  * Android project templates.
  */
 public final class FreemarkerConfiguration extends Configuration {
+  // One configuration per template root folder, so that parsed templates are reused by all renderings
+  private static final Map<File, FreemarkerConfiguration> ourSharedConfigurations = ContainerUtil.newConcurrentMap();
+
   public FreemarkerConfiguration() {
     setDefaultEncoding(Charsets.UTF_8.name());
     setLocalizedLookup(false);
@@ -32,4 +42,55 @@ public final class FreemarkerConfiguration extends Configuration {
     setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
     setObjectWrapper(new PropertyObjectWrapper());
   }
+
+  /**
+   * Returns a configuration for the templates under the given root folder, shared by the whole application. Its template
+   * cache holds the parsed templates, keyed by name and checked against the last modified time of their file on every
+   * lookup, so a template is only parsed again after it has been edited.
+   * <p/>
+   * Templates are looked up by their "root://" names (see {@link StudioTemplateLoader#findTemplate}), which don't depend on
+   * the state of the loader of a rendering, and Freemarker resolves relative includes against the name of the including
+   * template, so the configuration can be used for all renderings, also from several threads.
+   */
+  @NotNull
+  public static FreemarkerConfiguration getShared(@NotNull File templateRootFolder) {
+    return ourSharedConfigurations.computeIfAbsent(templateRootFolder, folder -> {
+      FreemarkerConfiguration configuration = new FreemarkerConfiguration();
+      configuration.setTemplateLoader(new RootFolderTemplateLoader(folder));
+      configuration.setTemplateUpdateDelay(0);
+      return configuration;
+    });
+  }
+
+  /** A stateless {@link TemplateLoader} for "root://" names. */
+  private static final class RootFolderTemplateLoader implements TemplateLoader {
+    @NotNull private final File myRootFolder;
+
+    private RootFolderTemplateLoader(@NotNull File rootFolder) {
+      myRootFolder = rootFolder;
+    }
+
+    @Override
+    @Nullable
+    public Object findTemplateSource(@NotNull String name) throws IOException {
+      String path = name.startsWith(StudioTemplateLoader.ROOT) ? name.substring(StudioTemplateLoader.ROOT.length()) : name;
+      File file = new File(myRootFolder, path).getCanonicalFile();
+      return file.isFile() ? file : null;
+    }
+
+    @Override
+    public long getLastModified(@NotNull Object source) {
+      return ((File)source).lastModified();
+    }
+
+    @Override
+    @NotNull
+    public Reader getReader(@NotNull Object source, @NotNull String encoding) throws IOException {
+      return new InputStreamReader(new FileInputStream((File)source), encoding);
+    }
+
+    @Override
+    public void closeTemplateSource(@NotNull Object source) {
+    }
+  }
 }
@@ -15,24 +15,41 @@
  */
 package com.android.tools.idea.templates;
 
+import com.android.annotations.VisibleForTesting;
 import com.android.tools.idea.templates.recipe.RenderingContext;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.LinkedHashMultimap;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
+import freemarker.template.Configuration;
 import freemarker.template.TemplateException;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Various utility methods to help classes interact with and initialize freemarker with Android
  * specific extensions.
  */
 public final class FreemarkerUtils {
+  private static final int MAX_RENDER_THREADS = 4;
+
+  /** Parameters of {@link #createParameterMap} which read the project model */
+  private static final List<String> PROJECT_MODEL_PARAMETERS =
+    ImmutableList.of("hasDependency", "getApplicationTheme", "getAppManifestDir", "isGradleComponentPluginUsed");
+  /** Includes and imports in the canonical form of a template, and the ones of a literal name */
+  private static final Pattern INCLUDE = Pattern.compile("#(?:include|import)\\b");
+  private static final Pattern LITERAL_INCLUDE = Pattern.compile("#(?:include|import) \"([^\"]*)\"");
 
   /**
    * Create a parameter map that represents a data model which should be passed into
@@ -112,6 +129,134 @@ public final class FreemarkerUtils {
     }
   }
 
+  /**
+   * Processes several independent template files and returns their contents in the order of the files. Rendering a
+   * template has no side effects, so the caller can write the results afterwards, in one batch.
+   * <p/>
+   * The templates are rendered on a bounded pool of threads, except the ones which use the project model (see
+   * {@link #usesProjectModel}): reading it may need a read lock, which a pooled thread can't get while the calling thread
+   * holds the write lock, so those are rendered on the calling thread, while the others render on the pool.
+   */
+  @NotNull
+  public static List<String> processFreemarkerTemplates(@NotNull RenderingContext context, @NotNull List<File> files)
+    throws TemplateProcessingException {
+    List<String> contents = new ArrayList<>(Collections.nCopies(files.size(), null));
+    List<Integer> pooled = new ArrayList<>();
+    if (files.size() > 1) {
+      for (int i = 0; i < files.size(); i++) {
+        if (!usesProjectModel(context, files.get(i))) {
+          pooled.add(i);
+        }
+      }
+    }
+    List<Future<String>> jobs = new ArrayList<>(pooled.size());
+    if (pooled.size() > 1) {
+      int threads = Math.max(1, Math.min(MAX_RENDER_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+      BoundedTaskExecutor executor = new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, threads);
+      for (int i : pooled) {
+        File file = files.get(i);
+        jobs.add(executor.submit(() -> processFreemarkerTemplate(context, file, null)));
+      }
+    }
+    else {
+      pooled.clear();
+    }
+    try {
+      for (int i = 0; i < files.size(); i++) {
+        if (!pooled.contains(i)) {
+          contents.set(i, processFreemarkerTemplate(context, files.get(i), null));
+        }
+      }
+      for (int i = 0; i < jobs.size(); i++) {
+        contents.set(pooled.get(i), jobs.get(i).get());
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TemplateProcessingException(e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof TemplateProcessingException) {
+        throw (TemplateProcessingException)cause;
+      }
+      throw new TemplateProcessingException(cause instanceof Exception ? (Exception)cause : new RuntimeException(cause));
+    }
+    finally {
+      for (Future<String> job : jobs) {
+        job.cancel(false);
+      }
+    }
+    return contents;
+  }
+
+  private static boolean usesProjectModel(@NotNull RenderingContext context, @NotNull File file) throws TemplateProcessingException {
+    try {
+      return usesProjectModel(context.getFreemarkerConfiguration(), context.getLoader().findTemplate(file));
+    }
+    catch (IOException e) {
+      throw new TemplateProcessingException(e);
+    }
+  }
+
+  /**
+   * Returns true if the template, or a template it includes or imports, may use one of the parameters of
+   * {@link #createParameterMap} which read the project model. The (cached) parsed templates are searched for the names of
+   * these parameters; a template which includes a computed name, or a template which can't be found, is assumed to use
+   * them.
+   */
+  @VisibleForTesting
+  static boolean usesProjectModel(@NotNull Configuration configuration, @NotNull String name) throws IOException {
+    return usesProjectModel(configuration, name, new HashSet<>());
+  }
+
+  private static boolean usesProjectModel(@NotNull Configuration configuration, @NotNull String name, @NotNull Set<String> visited)
+    throws IOException {
+    if (!visited.add(name)) {
+      return false;
+    }
+    freemarker.template.Template template;
+    try {
+      template = configuration.getTemplate(name);
+    }
+    catch (FileNotFoundException e) {
+      return true;
+    }
+    // The canonical form of the template; it has the names of the variables and the literal names of the includes
+    String text = template.toString();
+    for (String parameter : PROJECT_MODEL_PARAMETERS) {
+      if (text.contains(parameter)) {
+        return true;
+      }
+    }
+    int includes = 0;
+    Matcher matcher = LITERAL_INCLUDE.matcher(text);
+    while (matcher.find()) {
+      includes++;
+      if (usesProjectModel(configuration, getIncludedName(template.getName(), matcher.group(1)), visited)) {
+        return true;
+      }
+    }
+    Matcher allIncludes = INCLUDE.matcher(text);
+    while (allIncludes.find()) {
+      includes--;
+    }
+    return includes < 0;
+  }
+
+  /** Resolves the name of an included template the way Freemarker does, against the name of the including template. */
+  @NotNull
+  private static String getIncludedName(@NotNull String parentName, @NotNull String name) {
+    if (name.indexOf("://") > 0) {
+      return name;
+    }
+    if (name.startsWith("/")) {
+      int schemeEnd = parentName.indexOf("://");
+      return schemeEnd > 0 ? parentName.substring(0, schemeEnd + 2) + name : name.substring(1);
+    }
+    return parentName.substring(0, parentName.lastIndexOf('/') + 1) + name;
+  }
+
   /**
    * Callback for processing the content of a template file.
    * Use this if the content may contain file paths relative to the template file.
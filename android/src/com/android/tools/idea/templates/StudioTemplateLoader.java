@@ -36,7 +36,7 @@ public final class StudioTemplateLoader implements TemplateLoader {
   // Initially this is set to the folder of the main template.
   private final Stack<File> myLastTemplateFolders;
   // Specify the root folder as a prefix
-  private final static String ROOT = "root://";
+  final static String ROOT = "root://";
 
   /**
    * A {@link TemplateLoader} that is loading files for FreeMarker template engine.
@@ -48,6 +48,14 @@ public final class StudioTemplateLoader implements TemplateLoader {
     myLastTemplateFolders.push(templateFolder);
   }
 
+  /**
+   * Returns the root folder of the set of templates this loader loads from; "root://" names are relative to it.
+   */
+  @NotNull
+  public File getTemplateRootFolder() {
+    return myTemplateRootFolder;
+  }
+
   /**
    * Push the folder of the last template loaded as a temporary relative reference.
    * This can be useful if we need to resolve other references that are (or could be) relative
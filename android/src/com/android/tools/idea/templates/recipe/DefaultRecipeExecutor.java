@@ -27,6 +27,7 @@ import com.android.tools.idea.templates.GradleFilePsiMerger;
 import com.android.tools.idea.templates.GradleFileSimpleMerger;
 import com.android.tools.idea.templates.RecipeMergeUtils;
 import com.android.tools.idea.templates.TemplateMetadata;
+import com.google.common.collect.Lists;
 import com.google.common.collect.SetMultimap;
 import com.intellij.diff.comparison.ComparisonManager;
 import com.intellij.diff.comparison.ComparisonPolicy;
@@ -47,6 +48,7 @@ import org.jetbrains.annotations.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import static com.android.SdkConstants.*;
@@ -55,6 +57,7 @@ import static com.android.tools.idea.gradle.util.GradleUtil.getGradleBuildFilePa
 import static com.android.tools.idea.gradle.util.Projects.getBaseDirPath;
 import static com.android.tools.idea.gradle.util.Projects.isBuildWithGradle;
 import static com.android.tools.idea.templates.FreemarkerUtils.processFreemarkerTemplate;
+import static com.android.tools.idea.templates.FreemarkerUtils.processFreemarkerTemplates;
 import static com.android.tools.idea.templates.TemplateUtils.*;
 import static com.google.common.base.Strings.nullToEmpty;
 import static com.intellij.openapi.vfs.VfsUtil.findFileByIoFile;
@@ -247,15 +250,44 @@ final class DefaultRecipeExecutor implements RecipeExecutor {
         File sourceFile = myContext.getLoader().getSourceFile(from);
         File targetFile = getTargetFile(to);
         String content = processFreemarkerTemplate(myContext, sourceFile, null);
-        if (targetFile.exists()) {
-          if (!compareTextFile(targetFile, content)) {
-            addFileAlreadyExistWarning(targetFile);
-          }
+        writeInstantiated(sourceFile, targetFile, content);
+      }
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Instantiates the given template files into the given output files. The templates are rendered concurrently first, and
+   * the results are then written in order, in one batch.
+   */
+  @Override
+  public void instantiate(@NotNull List<File> from, @NotNull List<File> to) throws TemplateProcessingException {
+    try {
+      // Resolve all the files up front, on this thread, since relative paths depend on the state of the loader
+      List<File> sourceFiles = Lists.newArrayList();
+      List<File> targetFiles = Lists.newArrayList();
+      List<File> templates = Lists.newArrayList();
+      for (int i = 0; i < from.size(); i++) {
+        boolean isDirectory = from.get(i).getName().indexOf('.') == -1;
+        sourceFiles.add(isDirectory ? null : myContext.getLoader().getSourceFile(from.get(i)));
+        targetFiles.add(isDirectory ? null : getTargetFile(to.get(i)));
+        if (!isDirectory) {
+          templates.add(sourceFiles.get(i));
+        }
+      }
+
+      List<String> contents = processFreemarkerTemplates(myContext, templates);
+
+      int rendered = 0;
+      for (int i = 0; i < from.size(); i++) {
+        File sourceFile = sourceFiles.get(i);
+        if (sourceFile == null) {
+          copyTemplateResource(from.get(i), to.get(i));
         }
         else {
-          myIO.writeFile(this, content, targetFile);
-          myReferences.addSourceFile(sourceFile);
-          myReferences.addTargetFile(targetFile);
+          writeInstantiated(sourceFile, targetFiles.get(i), contents.get(rendered++));
         }
       }
     }
@@ -264,6 +296,19 @@ final class DefaultRecipeExecutor implements RecipeExecutor {
     }
   }
 
+  private void writeInstantiated(@NotNull File sourceFile, @NotNull File targetFile, @NotNull String content) throws IOException {
+    if (targetFile.exists()) {
+      if (!compareTextFile(targetFile, content)) {
+        addFileAlreadyExistWarning(targetFile);
+      }
+    }
+    else {
+      myIO.writeFile(this, content, targetFile);
+      myReferences.addSourceFile(sourceFile);
+      myReferences.addTargetFile(targetFile);
+    }
+  }
+
   /**
    * Merges the given source file into the given destination file (or it just copies it over if
    * the destination file does not exist).
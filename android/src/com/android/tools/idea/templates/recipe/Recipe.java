@@ -116,9 +116,33 @@ public class Recipe implements RecipeInstruction {
   }
 
   private void executeInstructions(@NotNull RecipeExecutor executor) throws TemplateProcessingException {
+    // Consecutive instantiate instructions are independent of each other, so they are handed to the executor together
+    List<File> instantiateFrom = Lists.newArrayList();
+    List<File> instantiateTo = Lists.newArrayList();
     for (RecipeInstruction instruction : instructions) {
+      if (instruction instanceof InstantiateInstruction) {
+        InstantiateInstruction instantiate = (InstantiateInstruction)instruction;
+        assert instantiate.to != null; // Will be non-null after afterUnmarshal is called
+        instantiateFrom.add(instantiate.from);
+        instantiateTo.add(instantiate.to);
+        continue;
+      }
+      instantiate(executor, instantiateFrom, instantiateTo);
       instruction.execute(executor);
     }
+    instantiate(executor, instantiateFrom, instantiateTo);
+  }
+
+  private static void instantiate(@NotNull RecipeExecutor executor, @NotNull List<File> from, @NotNull List<File> to)
+    throws TemplateProcessingException {
+    if (from.size() == 1) {
+      executor.instantiate(from.get(0), to.get(0));
+    }
+    else if (!from.isEmpty()) {
+      executor.instantiate(from, to);
+    }
+    from.clear();
+    to.clear();
   }
 
   /**
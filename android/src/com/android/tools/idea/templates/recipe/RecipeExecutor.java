@@ -19,6 +19,7 @@ import com.android.tools.idea.templates.FreemarkerUtils.TemplateProcessingExcept
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
+import java.util.List;
 
 /**
  * Execution engine for the instructions in a Recipe.
@@ -38,6 +39,16 @@ public interface RecipeExecutor {
    */
   void instantiate(@NotNull File from, @NotNull File to) throws TemplateProcessingException;
 
+  /**
+   * Instantiates several template files, like calling {@link #instantiate(File, File)} for each pair of files in order.
+   * The files are independent of each other, so implementations may render them concurrently.
+   */
+  default void instantiate(@NotNull List<File> from, @NotNull List<File> to) throws TemplateProcessingException {
+    for (int i = 0; i < from.size(); i++) {
+      instantiate(from.get(i), to.get(i));
+    }
+  }
+
   /**
    * Merges the given source file into the given destination file (or it just copies it over if
    * the destination file does not exist).
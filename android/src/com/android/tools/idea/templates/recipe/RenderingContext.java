@@ -96,8 +96,7 @@ public class RenderingContext {
     myDryRun = dryRun;
     myShowErrors = showErrors;
     myLoader = new StudioTemplateLoader(initialTemplatePath);
-    myFreemarker = new FreemarkerConfiguration();
-    myFreemarker.setTemplateLoader(myLoader);
+    myFreemarker = FreemarkerConfiguration.getShared(myLoader.getTemplateRootFolder());
     mySourceFiles = outSourceFiles != null ? outSourceFiles : Lists.newArrayList();
     myTargetFiles = outTargetFiles != null ? outTargetFiles : Lists.newArrayList();
     myFilesToOpen = outOpenFiles != null ? outOpenFiles : Lists.newArrayList();
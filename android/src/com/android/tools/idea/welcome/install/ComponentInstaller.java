@@ -24,9 +24,13 @@ import com.android.tools.idea.sdk.progress.StudioLoggerProgressIndicator;
 import com.android.tools.idea.sdk.wizard.SdkQuickfixUtils;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.ide.PooledThreadExecutor;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Installs SDK components.
@@ -57,20 +61,59 @@ public final class ComponentInstaller {
     return result;
   }
 
+  /**
+   * Installs the packages. Packages are downloaded and prepared concurrently, as many at a time as the bandwidth seen in
+   * earlier downloads suggests, and then installed into the SDK one after another, in order.
+   */
   public void installPackages(@NotNull List<RemotePackage> packages, ProgressIndicator progress) throws WizardException {
     RepoManager sdkManager = mySdkHandler.getSdkManager(progress);
+    List<Installer> installers = Lists.newArrayList();
     for (RemotePackage request : packages) {
       // Intentionally don't register any listeners on the installer, so we don't recurse on haxm
       // TODO: This is a hack. Any future rewrite of this shouldn't require this behavior.
       InstallerFactory factory = new BasicInstallerFactory();
-      Installer installer = factory.createInstaller(request, sdkManager, new StudioDownloader(), mySdkHandler.getFileOp());
-      if (installer.prepare(progress)) {
-        installer.complete(progress);
+      installers.add(factory.createInstaller(request, sdkManager, new StudioDownloader(), mySdkHandler.getFileOp()));
+    }
+
+    int parallelDownloads = Math.min(installers.size(), StudioDownloader.getSuggestedParallelDownloads());
+    if (parallelDownloads <= 1) {
+      for (Installer installer : installers) {
+        if (installer.prepare(progress)) {
+          installer.complete(progress);
+        }
+      }
+    }
+    else {
+      BoundedTaskExecutor executor = new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, parallelDownloads);
+      List<Future<Boolean>> prepared = Lists.newArrayList();
+      for (Installer installer : installers) {
+        prepared.add(executor.submit(() -> installer.prepare(progress)));
+      }
+      for (int i = 0; i < installers.size(); i++) {
+        if (isPrepared(prepared.get(i), packages.get(i), progress)) {
+          installers.get(i).complete(progress);
+        }
       }
     }
     sdkManager.loadSynchronously(RepoManager.DEFAULT_EXPIRATION_PERIOD_MS, progress, null, null);
   }
 
+  private static boolean isPrepared(@NotNull Future<Boolean> prepared, @NotNull RemotePackage request, @NotNull ProgressIndicator progress)
+    throws WizardException {
+    try {
+      return prepared.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new WizardException("Interrupted while installing " + request.getDisplayName(), e);
+    }
+    catch (ExecutionException e) {
+      // Like a failed prepare: the package is reported as not installed afterwards
+      progress.logWarning("Failed to prepare " + request.getDisplayName(), e.getCause());
+      return false;
+    }
+  }
+
   public void ensureSdkPackagesUninstalled(@NotNull Collection<String> packageNames, ProgressIndicator progress) throws WizardException {
     RepoManager sdkManager = mySdkHandler.getSdkManager(progress);
     RepositoryPackages packages = sdkManager.getPackages();
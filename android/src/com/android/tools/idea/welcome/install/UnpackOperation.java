@@ -29,7 +29,6 @@ import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.io.FileUtilRt;
 import com.intellij.openapi.util.text.StringUtil;
-import com.intellij.platform.templates.github.ZipUtil;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
@@ -51,7 +50,10 @@ public final class UnpackOperation extends InstallOperation<File, File> {
 
   @NotNull
   private static File unzip(File archive, File destination, @NotNull InstallContext context, ProgressIndicator progressIndicator) throws IOException {
-    ZipUtil.unzip(progressIndicator, destination, archive, null, null, true);
+    long start = System.currentTimeMillis();
+    ZipExtractor extractor = new ZipExtractor();
+    extractor.extract(archive, destination, true, progressIndicator);
+    printThroughput(context, extractor.getFileCount() + " files", extractor.getBytesWritten(), System.currentTimeMillis() - start);
     if (archive.getCanonicalPath().startsWith(context.getTempDirectory().getCanonicalPath())) {
       FileUtil.delete(archive); // Even if this fails, there's nothing we can do, and the folder should be deleted on exit anyways
     }
@@ -93,9 +95,11 @@ public final class UnpackOperation extends InstallOperation<File, File> {
           }
         }
       });
+      long start = System.currentTimeMillis();
       if (handler.runProcess().getExitCode() != 0) {
         throw new IOException("Unable to unpack archive file");
       }
+      printThroughput(context, "archive", archive.length(), System.currentTimeMillis() - start);
       return destination;
     }
     catch (ExecutionException e) {
@@ -107,6 +111,12 @@ public final class UnpackOperation extends InstallOperation<File, File> {
     }
   }
 
+  private static void printThroughput(@NotNull InstallContext context, @NotNull String what, long bytes, long millis) {
+    long bytesPerSecond = millis > 0 ? bytes * 1000 / millis : bytes;
+    context.print(String.format("Unpacked %1$s (%2$s) in %3$.1f s, %4$s/s\n", what, WelcomeUIUtils.getSizeLabel(bytes), millis / 1000.0,
+                                WelcomeUIUtils.getSizeLabel(bytesPerSecond)), ConsoleViewContentType.SYSTEM_OUTPUT);
+  }
+
   @NotNull
   private static String getTarExecutablePath() {
     File file = new File(DEFAULT_TAR_EXECUTABLE_PATH);
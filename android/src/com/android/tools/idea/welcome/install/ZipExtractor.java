@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.welcome.install;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts a zip archive with several threads. Entries are independent of each other in a zip file, so they are split
+ * into batches of about the same uncompressed size which are inflated and written in parallel. The CRC of each entry is
+ * checked while it is written, so there is no separate integrity pass over the archive.
+ */
+final class ZipExtractor {
+  private static final int MAX_THREADS = 4;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final AtomicLong myBytesWritten = new AtomicLong();
+  private int myFileCount;
+
+  /** Returns the number of uncompressed bytes written by {@link #extract}. */
+  long getBytesWritten() {
+    return myBytesWritten.get();
+  }
+
+  /** Returns the number of files written by {@link #extract}. */
+  int getFileCount() {
+    return myFileCount;
+  }
+
+  /**
+   * Extracts the archive into the destination directory.
+   *
+   * @param unwrapSingleTopLevelFolder if all the entries are in one top-level folder, extract the contents of that folder
+   *                                   into the destination rather than the folder itself
+   */
+  void extract(@NotNull File archive, @NotNull File destination, boolean unwrapSingleTopLevelFolder,
+               @NotNull ProgressIndicator indicator) throws IOException {
+    // ZipFile reads the central directory once and can then read the entries from several threads
+    try (ZipFile zip = new ZipFile(archive)) {
+      List<ZipEntry> files = new ArrayList<>();
+      String prefix = null;
+      boolean singleFolder = unwrapSingleTopLevelFolder;
+      for (ZipEntry entry : Collections.list(zip.entries())) {
+        String name = entry.getName();
+        int slash = name.indexOf('/');
+        String topLevel = slash >= 0 ? name.substring(0, slash + 1) : null;
+        if (topLevel == null || (prefix != null && !prefix.equals(topLevel))) {
+          singleFolder = false;
+        }
+        prefix = topLevel;
+        if (!entry.isDirectory()) {
+          files.add(entry);
+        }
+      }
+      String stripped = singleFolder && prefix != null ? prefix : "";
+      for (ZipEntry entry : Collections.list(zip.entries())) {
+        if (entry.isDirectory() && entry.getName().length() > stripped.length()) {
+          FileUtil.ensureExists(getTarget(destination, entry, stripped));
+        }
+      }
+      myFileCount = files.size();
+      extractFiles(zip, files, destination, stripped, indicator);
+    }
+  }
+
+  private void extractFiles(@NotNull ZipFile zip, @NotNull List<ZipEntry> files, @NotNull File destination,
+                            @NotNull String stripped, @NotNull ProgressIndicator indicator) throws IOException {
+    long totalSize = 0;
+    for (ZipEntry entry : files) {
+      totalSize += Math.max(0, entry.getSize());
+    }
+    long total = Math.max(1, totalSize);
+    int threads = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+    List<List<ZipEntry>> batches = split(files, totalSize / threads / 4 + 1);
+
+    BoundedTaskExecutor executor = new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, threads);
+    List<Future<?>> jobs = new ArrayList<>(batches.size());
+    for (List<ZipEntry> batch : batches) {
+      jobs.add(executor.submit(() -> {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (ZipEntry entry : batch) {
+          indicator.checkCanceled();
+          extractFile(zip, entry, getTarget(destination, entry, stripped), buffer);
+          indicator.setFraction((double)myBytesWritten.get() / total);
+        }
+        return null;
+      }));
+    }
+
+    IOException failure = null;
+    for (Future<?> job : jobs) {
+      try {
+        job.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while unpacking " + zip.getName());
+      }
+      catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof ProcessCanceledException) {
+          throw (ProcessCanceledException)cause;
+        }
+        if (failure == null) {
+          failure = cause instanceof IOException ? (IOException)cause : new IOException(cause);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void extractFile(@NotNull ZipFile zip, @NotNull ZipEntry entry, @NotNull File target, @NotNull byte[] buffer)
+    throws IOException {
+    FileUtil.ensureExists(target.getParentFile());
+    CRC32 crc = new CRC32();
+    try (InputStream in = zip.getInputStream(entry); OutputStream out = new FileOutputStream(target)) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+        crc.update(buffer, 0, read);
+        myBytesWritten.addAndGet(read);
+      }
+    }
+    if (entry.getCrc() != -1 && crc.getValue() != entry.getCrc()) {
+      throw new IOException("Corrupt archive " + zip.getName() + ": CRC mismatch for " + entry.getName());
+    }
+    if (entry.getTime() != -1) {
+      //noinspection ResultOfMethodCallIgnored
+      target.setLastModified(entry.getTime());
+    }
+  }
+
+  /** Splits the entries, in archive order, into batches of at least the given uncompressed size (except for the last one). */
+  @NotNull
+  private static List<List<ZipEntry>> split(@NotNull List<ZipEntry> entries, long batchSize) {
+    List<List<ZipEntry>> batches = new ArrayList<>();
+    List<ZipEntry> batch = new ArrayList<>();
+    long size = 0;
+    for (ZipEntry entry : entries) {
+      batch.add(entry);
+      size += Math.max(0, entry.getSize());
+      if (size >= batchSize) {
+        batches.add(batch);
+        batch = new ArrayList<>();
+        size = 0;
+      }
+    }
+    if (!batch.isEmpty()) {
+      batches.add(batch);
+    }
+    return batches;
+  }
+
+  /** Returns where the entry is extracted to, refusing entries which would end up outside of the destination. */
+  @NotNull
+  private static File getTarget(@NotNull File destination, @NotNull ZipEntry entry, @Nullable String stripped) throws IOException {
+    String name = entry.getName();
+    if (stripped != null && name.startsWith(stripped)) {
+      name = name.substring(stripped.length());
+    }
+    File target = new File(destination, name);
+    if (!FileUtil.isAncestor(destination.getCanonicalFile(), target.getCanonicalFile(), false)) {
+      throw new IOException("Invalid entry " + entry.getName() + " in archive");
+    }
+    return target;
+  }
+}
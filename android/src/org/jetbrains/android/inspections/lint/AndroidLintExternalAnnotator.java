@@ -6,7 +6,6 @@ import com.android.tools.idea.project.AndroidProjectInfo;
 import com.android.tools.idea.res.PsiProjectListener;
 import com.android.tools.lint.checks.DeprecationDetector;
 import com.android.tools.lint.checks.GradleDetector;
-import com.android.tools.lint.client.api.IssueRegistry;
 import com.android.tools.lint.client.api.LintDriver;
 import com.android.tools.lint.client.api.LintRequest;
 import com.android.tools.lint.detector.api.Issue;
@@ -37,8 +36,8 @@ import com.intellij.openapi.module.ModuleUtilCore;
 import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.*;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
-import com.intellij.profile.codeInspection.InspectionProjectProfileManager;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.util.IncorrectOperationException;
@@ -53,10 +52,13 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.plugins.groovy.GroovyFileType;
 
 import javax.swing.*;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.android.SdkConstants.*;
 import static com.android.tools.lint.detector.api.TextFormat.HTML;
@@ -123,14 +125,15 @@ public class AndroidLintExternalAnnotator extends ExternalAnnotator<State, State
     if (issues.size() == 0) {
       return null;
     }
-    return new State(module, vFile, file.getText(), issues);
+    // The contents of a file's view provider are an immutable snapshot; State only copies them if lint reads the file.
+    return new State(module, vFile, file.getViewProvider().getContents(), issues);
   }
 
   @Override
   public State doAnnotate(final State state) {
     final LintIdeClient client = LintIdeClient.forEditor(state);
     try {
-      final LintDriver lint = new LintDriver(new LintIdeIssueRegistry(), client);
+      final LintDriver lint = new LintDriver(AndroidLintIssueCache.REGISTRY, client);
 
       EnumSet<Scope> scope;
       VirtualFile mainFile = state.getMainFile();
@@ -161,12 +164,40 @@ public class AndroidLintExternalAnnotator extends ExternalAnnotator<State, State
         return state;
       }
 
+      // Reuse the results of an earlier run on the same contents, issues and module configuration, e.g. after
+      // reopening a file or undoing an edit.
+      AndroidLintResultCache.CacheKey cacheKey =
+        AndroidLintResultCache.forFile(state.getModule(), mainFile, state.getMainFileChars(), state.getIssues());
+      Map<Issue, Map<File, List<ProblemData>>> cached = AndroidLintResultCache.get(cacheKey);
+      if (cached != null) {
+        for (Map<File, List<ProblemData>> fileProblems : cached.values()) {
+          for (List<ProblemData> problems : fileProblems.values()) {
+            state.getProblems().addAll(problems);
+          }
+        }
+        return state;
+      }
+
       List<VirtualFile> files = Collections.singletonList(mainFile);
       LintRequest request = new LintIdeRequest(client, project, files,
                                                Collections.singletonList(state.getModule()), true /* incremental */);
       request.setScope(scope);
 
+      long start = System.nanoTime();
       lint.analyze(request);
+      if (AndroidLintTimings.isEnabled()) {
+        AndroidLintTimings.record(fileType.getName() + " " + scope + ", " + state.getIssues().size() + " issues", System.nanoTime() - start);
+      }
+
+      if (!state.isDirty()) {
+        File ioFile = VfsUtilCore.virtualToIoFile(mainFile);
+        Map<Issue, Map<File, List<ProblemData>>> problems = new HashMap<>();
+        for (ProblemData problem : state.getProblems()) {
+          problems.computeIfAbsent(problem.getIssue(), issue -> new HashMap<>())
+            .computeIfAbsent(ioFile, file -> new ArrayList<>()).add(problem);
+        }
+        AndroidLintResultCache.put(cacheKey, problems);
+      }
     }
     finally {
       Disposer.dispose(client);
@@ -176,35 +207,7 @@ public class AndroidLintExternalAnnotator extends ExternalAnnotator<State, State
 
   @NotNull
   static List<Issue> getIssuesFromInspections(@NotNull Project project, @Nullable PsiElement context) {
-    final List<Issue> result = new ArrayList<>();
-    final IssueRegistry fullRegistry = new LintIdeIssueRegistry();
-
-    for (Issue issue : fullRegistry.getIssues()) {
-      final String inspectionShortName = AndroidLintInspectionBase.getInspectionShortNameByIssue(project, issue);
-      if (inspectionShortName == null) {
-        continue;
-      }
-
-      final HighlightDisplayKey key = HighlightDisplayKey.find(inspectionShortName);
-      if (key == null) {
-        continue;
-      }
-
-      final InspectionProfile profile = InspectionProjectProfileManager.getInstance(project).getCurrentProfile();
-      final boolean enabled = context != null ? profile.isToolEnabled(key, context) : profile.isToolEnabled(key);
-
-      if (!enabled) {
-        continue;
-      } else if (!issue.isEnabledByDefault()) {
-        // If an issue is marked as not enabled by default, lint won't run it, even if it's in the set
-        // of issues provided by an issue registry. Since in the IDE we're enforcing the enabled-state via
-        // inspection profiles, mark the issue as enabled to allow users to turn on a lint check directly
-        // via the inspections UI.
-        issue.setEnabledByDefault(true);
-      }
-      result.add(issue);
-    }
-    return result;
+    return AndroidLintIssueCache.getEnabledIssues(project, context);
   }
 
   @Override
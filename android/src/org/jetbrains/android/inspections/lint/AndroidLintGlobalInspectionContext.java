@@ -28,8 +28,10 @@ import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleManager;
 import com.intellij.openapi.module.ModuleUtilCore;
 import com.intellij.openapi.module.impl.scopes.ModuleWithDependenciesScope;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressIndicatorBase;
 import com.intellij.openapi.progress.util.ProgressWrapper;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Key;
@@ -40,18 +42,31 @@ import com.intellij.psi.PsiElementVisitor;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.search.LocalSearchScope;
 import com.intellij.psi.search.SearchScope;
+import com.intellij.util.SystemProperties;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
 import com.intellij.util.containers.HashMap;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import static org.jetbrains.android.inspections.lint.AndroidLintInspectionBase.LINT_INSPECTION_PREFIX;
 
 class AndroidLintGlobalInspectionContext implements GlobalInspectionContextExtension<AndroidLintGlobalInspectionContext> {
   static final Key<AndroidLintGlobalInspectionContext> ID = Key.create("AndroidLintGlobalInspectionContext");
+  /** Whether batch lint over several modules runs one lint driver per module in parallel; see {@link #analyzeSharded}. */
+  private static final boolean SHARDED_BATCH_LINT = SystemProperties.getBooleanProperty("android.lint.sharded.batch", true);
+  private static final int MAX_SHARD_THREADS = 4;
+  private static final Comparator<ProblemData> PROBLEM_ORDER =
+    Comparator.comparingInt((ProblemData problem) -> problem.getTextRange().getStartOffset())
+      .thenComparingInt(problem -> problem.getTextRange().getEndOffset())
+      .thenComparing(ProblemData::getMessage);
   private Map<Issue, Map<File, List<ProblemData>>> myResults;
   private LintBaseline myBaseline;
   private Issue myEnabledIssue;
@@ -106,7 +121,7 @@ class AndroidLintGlobalInspectionContext implements GlobalInspectionContextExten
     }
 
     final LintIdeClient client = LintIdeClient.forBatch(project, problemMap, scope, issues);
-    final LintDriver lint = new LintDriver(new LintIdeIssueRegistry(), client);
+    final LintDriver lint = new LintDriver(AndroidLintIssueCache.REGISTRY, client);
 
     final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
     if (indicator != null) {
@@ -272,11 +287,197 @@ class AndroidLintGlobalInspectionContext implements GlobalInspectionContextExten
       }
     }
 
-    lint.analyze(request);
+    long start = System.nanoTime();
+    Map<Issue, Map<File, List<ProblemData>>> results;
+    // A baseline collects what all checks report, so it can only be used with a single driver.
+    if (SHARDED_BATCH_LINT && files == null && modules.size() > 1 && myBaseline == null) {
+      results = analyzeSharded(project, scope, issues, modules, lintScope, indicator);
+    }
+    else {
+      lint.analyze(request);
+      results = problemMap;
+    }
+    if (AndroidLintTimings.isEnabled()) {
+      AndroidLintTimings.record("Batch " + (lintScope != null ? lintScope : "files") + ", " + issues.size() + " issues",
+                                System.nanoTime() - start);
+    }
 
     AndroidLintLintBaselineInspection.clearNextRunState();
 
-    myResults = problemMap;
+    myResults = results;
+  }
+
+  /**
+   * Runs lint with one driver per module on a bounded pool, plus one driver over all the modules for the issues which
+   * need to see the whole project. The results are merged in module order, without duplicates (a library module is
+   * also analyzed as part of the modules depending on it), and sorted, so that they don't depend on thread timing.
+   * <p>
+   * The drivers share the issue registry, whose issues per scope are cached in a thread-safe map by
+   * {@link LintIdeIssueRegistry}. Each shard has its own {@link ShardProgressIndicator}, and only this thread reports
+   * progress on the indicator of the inspection.
+   * <p>
+   * If a shard fails or this thread is interrupted, the other shards are cancelled and the failure is rethrown, rather than
+   * returning the problems of the remaining shards as if the failed modules were clean.
+   */
+  @NotNull
+  private static Map<Issue, Map<File, List<ProblemData>>> analyzeSharded(@NotNull Project project,
+                                                                         @NotNull AnalysisScope scope,
+                                                                         @NotNull List<Issue> issues,
+                                                                         @NotNull List<Module> modules,
+                                                                         @Nullable EnumSet<Scope> lintScope,
+                                                                         @Nullable ProgressIndicator indicator) {
+    List<Issue> projectIssues = new ArrayList<>();
+    List<Issue> moduleIssues = new ArrayList<>();
+    for (Issue issue : issues) {
+      (isProjectWide(issue) ? projectIssues : moduleIssues).add(issue);
+    }
+    List<Module> sortedModules = new ArrayList<>(modules);
+    sortedModules.sort(Comparator.comparing(Module::getName));
+
+    List<Callable<Map<Issue, Map<File, List<ProblemData>>>>> shards = new ArrayList<>();
+    if (!projectIssues.isEmpty()) {
+      shards.add(() -> analyzeShard(project, scope, projectIssues, sortedModules, lintScope, indicator));
+    }
+    if (!moduleIssues.isEmpty()) {
+      for (Module module : sortedModules) {
+        shards.add(() -> analyzeShard(project, scope, moduleIssues, Collections.singletonList(module), lintScope, indicator));
+      }
+    }
+
+    int maxThreads = Math.max(1, Math.min(MAX_SHARD_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+    BoundedTaskExecutor executor = new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, maxThreads);
+    List<Future<Map<Issue, Map<File, List<ProblemData>>>>> jobs = new ArrayList<>(shards.size());
+    for (Callable<Map<Issue, Map<File, List<ProblemData>>>> shard : shards) {
+      jobs.add(executor.submit(shard));
+    }
+
+    Map<Issue, Map<File, List<ProblemData>>> results = new HashMap<>();
+    Map<Issue, Map<File, Set<String>>> seen = new HashMap<>();
+    int done = 0;
+    for (Future<Map<Issue, Map<File, List<ProblemData>>>> job : jobs) {
+      try {
+        mergeProblems(results, seen, job.get());
+      }
+      catch (InterruptedException e) {
+        cancel(jobs);
+        Thread.currentThread().interrupt();
+        throw new ProcessCanceledException(e);
+      }
+      catch (ExecutionException e) {
+        cancel(jobs);
+        Throwable cause = e.getCause();
+        if (cause instanceof ProcessCanceledException) {
+          throw (ProcessCanceledException)cause;
+        }
+        if (cause instanceof Error) {
+          throw (Error)cause;
+        }
+        throw new RuntimeException("Lint shard failed", cause);
+      }
+      done++;
+      if (indicator != null) {
+        indicator.setFraction((double)done / jobs.size());
+      }
+    }
+    if (indicator != null) {
+      // Cancelled shards stop early and return what they found so far
+      indicator.checkCanceled();
+    }
+    for (Map<File, List<ProblemData>> fileProblems : results.values()) {
+      for (List<ProblemData> problems : fileProblems.values()) {
+        problems.sort(PROBLEM_ORDER);
+      }
+    }
+    return results;
+  }
+
+  private static void cancel(@NotNull List<? extends Future<?>> jobs) {
+    for (Future<?> job : jobs) {
+      job.cancel(true);
+    }
+  }
+
+  @NotNull
+  private static Map<Issue, Map<File, List<ProblemData>>> analyzeShard(@NotNull Project project,
+                                                                       @NotNull AnalysisScope scope,
+                                                                       @NotNull List<Issue> issues,
+                                                                       @NotNull List<Module> modules,
+                                                                       @Nullable EnumSet<Scope> lintScope,
+                                                                       @Nullable ProgressIndicator indicator) {
+    // A shard whose modules, issues and configuration are unchanged since the last run gets the same results again
+    AndroidLintResultCache.CacheKey cacheKey =
+      AndroidLintResultCache.forModules(project, modules, issues, scope.getDisplayName() + ":" + lintScope);
+    Map<Issue, Map<File, List<ProblemData>>> cached = AndroidLintResultCache.get(cacheKey);
+    if (cached != null) {
+      return cached;
+    }
+
+    Map<Issue, Map<File, List<ProblemData>>> problemMap = new HashMap<>();
+    LintIdeClient client = LintIdeClient.forBatch(project, problemMap, scope, issues);
+    LintDriver lint = new LintDriver(AndroidLintIssueCache.REGISTRY, client);
+    LintRequest request = new LintIdeRequest(client, project, null, modules, false);
+    request.setScope(lintScope);
+    if (indicator != null) {
+      ProgressManager.getInstance().executeProcessUnderProgress(() -> lint.analyze(request), new ShardProgressIndicator(indicator));
+    }
+    else {
+      lint.analyze(request);
+    }
+    if (indicator == null || !indicator.isCanceled()) {
+      AndroidLintResultCache.put(cacheKey, problemMap);
+    }
+    return problemMap;
+  }
+
+  /**
+   * Progress indicator of one shard: it is cancelled with the indicator of the inspection, but the text and fraction set
+   * by the shard's driver stay in the shard, so concurrent drivers don't overwrite each other's progress.
+   */
+  private static class ShardProgressIndicator extends ProgressIndicatorBase {
+    private final ProgressIndicator myParent;
+
+    private ShardProgressIndicator(@NotNull ProgressIndicator parent) {
+      myParent = parent;
+    }
+
+    @Override
+    public boolean isCanceled() {
+      return super.isCanceled() || myParent.isCanceled();
+    }
+
+    @Override
+    public void checkCanceled() {
+      myParent.checkCanceled();
+      super.checkCanceled();
+    }
+  }
+
+  /**
+   * Returns true if the issue has to be analyzed with all the modules at once, because its detector looks at all the files
+   * of a kind together rather than at files one by one.
+   */
+  private static boolean isProjectWide(@NotNull Issue issue) {
+    EnumSet<Scope> issueScope = issue.getImplementation().getScope();
+    return issueScope.contains(Scope.ALL_RESOURCE_FILES) || issueScope.contains(Scope.ALL_JAVA_FILES) ||
+           issueScope.contains(Scope.ALL_CLASS_FILES) || issueScope.contains(Scope.JAVA_LIBRARIES) ||
+           issueScope.contains(Scope.OTHER);
+  }
+
+  private static void mergeProblems(@NotNull Map<Issue, Map<File, List<ProblemData>>> results,
+                                    @NotNull Map<Issue, Map<File, Set<String>>> seen,
+                                    @NotNull Map<Issue, Map<File, List<ProblemData>>> shardResults) {
+    for (Map.Entry<Issue, Map<File, List<ProblemData>>> issueEntry : shardResults.entrySet()) {
+      Issue issue = issueEntry.getKey();
+      for (Map.Entry<File, List<ProblemData>> fileEntry : issueEntry.getValue().entrySet()) {
+        File file = fileEntry.getKey();
+        Set<String> seenProblems = seen.computeIfAbsent(issue, i -> new HashMap<>()).computeIfAbsent(file, f -> new HashSet<>());
+        for (ProblemData problem : fileEntry.getValue()) {
+          if (seenProblems.add(problem.getTextRange() + problem.getMessage())) {
+            results.computeIfAbsent(issue, i -> new HashMap<>()).computeIfAbsent(file, f -> new ArrayList<>()).add(problem);
+          }
+        }
+      }
+    }
   }
 
   @Nullable
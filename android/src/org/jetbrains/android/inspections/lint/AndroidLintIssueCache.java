@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.android.inspections.lint;
+
+import com.android.tools.idea.lint.LintIdeIssueRegistry;
+import com.android.tools.lint.detector.api.Issue;
+import com.intellij.codeInsight.daemon.HighlightDisplayKey;
+import com.intellij.codeInspection.InspectionProfile;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.UserDataHolderEx;
+import com.intellij.profile.Profile;
+import com.intellij.profile.ProfileChangeAdapter;
+import com.intellij.profile.codeInspection.InspectionProjectProfileManager;
+import com.intellij.psi.PsiElement;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches, per inspection profile, the lint issues whose inspections are enabled, along with their highlight keys.
+ * Without this, every highlighting pass of {@link AndroidLintExternalAnnotator} maps each lint issue to its inspection
+ * and looks it up in the profile. The cache is cleared whenever an inspection profile of a project is changed or
+ * another profile is activated.
+ */
+final class AndroidLintIssueCache {
+  private static final Key<Boolean> LISTENING = Key.create("AndroidLintIssueCache.listening");
+
+  /** Shared registry; the issue list and the issues per scope are cached thread-safely, so one instance can serve concurrent runs. */
+  static final LintIdeIssueRegistry REGISTRY = new LintIdeIssueRegistry();
+
+  private static final Map<InspectionProfile, List<Pair<Issue, HighlightDisplayKey>>> ourEnabledIssues =
+    ContainerUtil.createConcurrentWeakMap();
+
+  private AndroidLintIssueCache() {
+  }
+
+  /**
+   * Returns the issues whose inspections are enabled in the current profile of the project.
+   *
+   * @param context if not null, only issues whose inspections are enabled for this element (in scoped profiles) are returned
+   */
+  @NotNull
+  static List<Issue> getEnabledIssues(@NotNull Project project, @Nullable PsiElement context) {
+    InspectionProfile profile = InspectionProjectProfileManager.getInstance(project).getCurrentProfile();
+    List<Pair<Issue, HighlightDisplayKey>> candidates = ourEnabledIssues.get(profile);
+    if (candidates == null) {
+      listenForProfileChanges(project);
+      candidates = computeEnabledIssues(project, profile);
+      ourEnabledIssues.put(profile, candidates);
+    }
+    if (context == null) {
+      return ContainerUtil.map(candidates, pair -> pair.getFirst());
+    }
+    List<Issue> result = new ArrayList<>(candidates.size());
+    for (Pair<Issue, HighlightDisplayKey> pair : candidates) {
+      if (profile.isToolEnabled(pair.getSecond(), context)) {
+        result.add(pair.getFirst());
+      }
+    }
+    return result;
+  }
+
+  static void clear() {
+    ourEnabledIssues.clear();
+  }
+
+  /** Returns the issues enabled in at least one scope of the profile; a tool that is off is off for every element. */
+  @NotNull
+  private static List<Pair<Issue, HighlightDisplayKey>> computeEnabledIssues(@NotNull Project project,
+                                                                             @NotNull InspectionProfile profile) {
+    List<Pair<Issue, HighlightDisplayKey>> result = new ArrayList<>();
+    for (Issue issue : REGISTRY.getIssues()) {
+      final String inspectionShortName = AndroidLintInspectionBase.getInspectionShortNameByIssue(project, issue);
+      if (inspectionShortName == null) {
+        continue;
+      }
+
+      final HighlightDisplayKey key = HighlightDisplayKey.find(inspectionShortName);
+      if (key == null || !profile.isToolEnabled(key)) {
+        continue;
+      }
+
+      if (!issue.isEnabledByDefault()) {
+        // If an issue is marked as not enabled by default, lint won't run it, even if it's in the set
+        // of issues provided by an issue registry. Since in the IDE we're enforcing the enabled-state via
+        // inspection profiles, mark the issue as enabled to allow users to turn on a lint check directly
+        // via the inspections UI.
+        issue.setEnabledByDefault(true);
+      }
+      result.add(Pair.create(issue, key));
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  private static void listenForProfileChanges(@NotNull Project project) {
+    if (!((UserDataHolderEx)project).replace(LISTENING, null, Boolean.TRUE)) {
+      return;
+    }
+    InspectionProjectProfileManager.getInstance(project).addProfilesListener(new ProfileChangeAdapter() {
+      @Override
+      public void profileChanged(Profile profile) {
+        clear();
+      }
+
+      @Override
+      public void profileActivated(@Nullable Profile oldProfile, @Nullable Profile profile) {
+        clear();
+      }
+    }, project);
+  }
+}
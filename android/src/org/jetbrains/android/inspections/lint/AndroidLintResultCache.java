@@ -0,0 +1,446 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.android.inspections.lint;
+
+import com.android.annotations.VisibleForTesting;
+import com.android.tools.idea.gradle.util.GradleUtil;
+import com.android.tools.idea.lint.LintIdeIssueRegistry;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.Severity;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentAdapter;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.android.facet.AndroidFacet;
+import org.jetbrains.android.facet.AndroidRootUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent cache of lint results, so that lint doesn't have to run again on inputs which have not changed since the
+ * last run. A cache unit is a single file for on-the-fly lint in {@link AndroidLintExternalAnnotator}, and the set of
+ * modules of one lint driver for batch lint in {@link AndroidLintGlobalInspectionContext}. An entry is only used if all
+ * of these are unchanged:
+ * <ul>
+ *   <li>a hash of the contents of the unit's files, and of all the content files of their modules and of the modules these
+ *   depend on: lint checks of a file also read resources and other classes, so a change in any of them may change the
+ *   results</li>
+ *   <li>a hash of the set of enabled issues</li>
+ *   <li>a hash of the configuration of the modules: their manifest and Gradle build files, which determine things like
+ *   the minimum SDK version that many checks depend on</li>
+ * </ul>
+ * Entries are stored in the system directory, one file per unit, and also kept in memory until collected. The first
+ * time entries of a project are used in a session, the entries not used for {@link #MAX_ENTRY_AGE_MS} are deleted, and
+ * then the least recently used ones beyond {@link #MAX_ENTRIES}.
+ * <p>
+ * Lint reads the text of open documents, so file contents are hashed from the document when it has unsaved changes and
+ * from the disk otherwise. The hash of a module's contents is kept until a file or document changes somewhere, or the
+ * project roots change.
+ */
+final class AndroidLintResultCache {
+  private static final Logger LOG = Logger.getInstance(AndroidLintResultCache.class);
+  private static final int VERSION = 1;
+  @VisibleForTesting
+  static final int MAX_ENTRIES = 2000;
+  @VisibleForTesting
+  static final long MAX_ENTRY_AGE_MS = TimeUnit.DAYS.toMillis(30);
+  private static final HashFunction HASH = Hashing.murmur3_128();
+  // Content hash of a file or document, for the modification stamp it was computed for.
+  private static final Key<Pair<Long, Long>> CONTENT_HASH = Key.create("AndroidLintResultCache.contentHash");
+  // Content hash of a module: the content version and the project roots modification count it was computed for, and the hash.
+  private static final Key<long[]> MODULE_CONTENT_HASH = Key.create("AndroidLintResultCache.moduleContentHash");
+
+  /** Incremented on every file or document change, see {@link #listenForChanges()}. */
+  private static final AtomicLong ourContentVersion = new AtomicLong();
+  private static final AtomicBoolean ourListening = new AtomicBoolean();
+
+  private static final Map<File, Entry> ourEntries = ContainerUtil.createConcurrentSoftValueMap();
+  /** The entry directories pruned in this session. */
+  private static final Set<File> ourPrunedDirs = ContainerUtil.newConcurrentSet();
+
+  private AndroidLintResultCache() {
+  }
+
+  /** The key of a cache entry. */
+  static final class CacheKey {
+    private final File myEntryFile;
+    private final long myContentHash;
+    private final long myIssuesHash;
+    private final long myConfigHash;
+
+    private CacheKey(@NotNull File entryFile, long contentHash, long issuesHash, long configHash) {
+      myEntryFile = entryFile;
+      myContentHash = contentHash;
+      myIssuesHash = issuesHash;
+      myConfigHash = configHash;
+    }
+
+    private boolean matches(@NotNull Entry entry) {
+      return entry.contentHash == myContentHash && entry.issuesHash == myIssuesHash && entry.configHash == myConfigHash;
+    }
+  }
+
+  /**
+   * Returns the cache key for on-the-fly lint of the given file contents. Lint checks of one file also look at the
+   * resources and classes of its module and of the modules this depends on, so their contents are part of the key too.
+   */
+  @NotNull
+  static CacheKey forFile(@NotNull Module module, @NotNull VirtualFile file, @NotNull CharSequence contents,
+                          @NotNull List<Issue> issues) {
+    List<Module> modules = Collections.singletonList(module);
+    long contentHash = HASH.newHasher()
+      .putLong(HASH.hashUnencodedChars(contents).asLong())
+      .putLong(hashContents(modules))
+      .hash().asLong();
+    String unit = "file:" + file.getPath();
+    return new CacheKey(getEntryFile(module.getProject(), unit), contentHash, hashIssues(issues), hashConfiguration(modules));
+  }
+
+  /**
+   * Returns the cache key for batch lint of all the content files of the given modules. Since lint also looks at the
+   * modules these depend on, directly or not, their contents are part of the key too.
+   *
+   * @param variant describes what else the results depend on, such as the analysis scope; runs with different variants
+   *                use different entries
+   */
+  @NotNull
+  static CacheKey forModules(@NotNull Project project, @NotNull List<Module> modules, @NotNull List<Issue> issues,
+                             @NotNull String variant) {
+    StringBuilder unit = new StringBuilder("modules:").append(variant).append(':');
+    for (Module module : modules) {
+      unit.append(module.getName()).append(',');
+    }
+    return new CacheKey(getEntryFile(project, unit.toString()), hashContents(modules), hashIssues(issues),
+                        hashConfiguration(modules));
+  }
+
+  /**
+   * Returns the cached problems for the key, by issue and by file, or null if there is no up to date entry.
+   */
+  @Nullable
+  static Map<Issue, Map<File, List<ProblemData>>> get(@NotNull CacheKey key) {
+    Entry entry = ourEntries.get(key.myEntryFile);
+    if (entry == null) {
+      entry = readEntry(key.myEntryFile);
+      if (entry == null) {
+        return null;
+      }
+      ourEntries.put(key.myEntryFile, entry);
+    }
+    return key.matches(entry) ? entry.problems : null;
+  }
+
+  static void put(@NotNull CacheKey key, @NotNull Map<Issue, Map<File, List<ProblemData>>> problems) {
+    Entry entry = new Entry(key.myContentHash, key.myIssuesHash, key.myConfigHash, problems);
+    ourEntries.put(key.myEntryFile, entry);
+    try {
+      writeEntry(key.myEntryFile, entry);
+    }
+    catch (IOException e) {
+      LOG.warn("Failed to write lint results to " + key.myEntryFile, e);
+      FileUtil.delete(key.myEntryFile);
+    }
+  }
+
+  @NotNull
+  private static File getEntryFile(@NotNull Project project, @NotNull String unit) {
+    File dir = new File(PathManager.getSystemPath(), "android-lint-results" + File.separator + project.getLocationHash());
+    if (ourPrunedDirs.add(dir)) {
+      ApplicationManager.getApplication().executeOnPooledThread(() -> prune(dir, System.currentTimeMillis()));
+    }
+    return new File(dir, HASH.hashUnencodedChars(unit).toString());
+  }
+
+  /**
+   * Deletes the entries of the directory not used for {@link #MAX_ENTRY_AGE_MS}, and then the least recently used ones
+   * beyond {@link #MAX_ENTRIES}. Entries are touched when they are read, so their timestamp is the time they were last used.
+   */
+  @VisibleForTesting
+  static void prune(@NotNull File dir, long now) {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      return;
+    }
+    List<Pair<File, Long>> entries = new ArrayList<>(files.length);
+    for (File file : files) {
+      long lastModified = file.lastModified();
+      if (now - lastModified > MAX_ENTRY_AGE_MS) {
+        FileUtil.delete(file);
+      }
+      else {
+        entries.add(Pair.create(file, lastModified));
+      }
+    }
+    if (entries.size() > MAX_ENTRIES) {
+      entries.sort(Comparator.comparing(entry -> entry.getSecond()));
+      for (Pair<File, Long> entry : entries.subList(0, entries.size() - MAX_ENTRIES)) {
+        FileUtil.delete(entry.getFirst());
+      }
+    }
+  }
+
+  private static long hashIssues(@NotNull List<Issue> issues) {
+    Hasher hasher = HASH.newHasher();
+    for (Issue issue : issues) {
+      hasher.putUnencodedChars(issue.getId()).putBoolean(issue.isEnabledByDefault());
+    }
+    return hasher.hash().asLong();
+  }
+
+  private static long hashConfiguration(@NotNull List<Module> modules) {
+    Hasher hasher = HASH.newHasher();
+    for (Module module : modules) {
+      hasher.putUnencodedChars(module.getName());
+      AndroidFacet facet = AndroidFacet.getInstance(module);
+      VirtualFile manifest = facet != null ? AndroidRootUtil.getPrimaryManifestFile(facet) : null;
+      hasher.putLong(manifest != null ? hashFileContents(manifest) : 0);
+      VirtualFile buildFile = GradleUtil.getGradleBuildFile(module);
+      hasher.putLong(buildFile != null ? hashFileContents(buildFile) : 0);
+    }
+    return hasher.hash().asLong();
+  }
+
+  /** Returns a hash of the contents of the given modules and of all the modules they depend on, directly or not. */
+  private static long hashContents(@NotNull List<Module> modules) {
+    Set<Module> inputs = new TreeSet<>(Comparator.comparing(Module::getName));
+    Deque<Module> queue = new ArrayDeque<>(modules);
+    while (!queue.isEmpty()) {
+      Module module = queue.remove();
+      if (inputs.add(module)) {
+        Collections.addAll(queue, ModuleRootManager.getInstance(module).getDependencies());
+      }
+    }
+    listenForChanges();
+    Hasher hasher = HASH.newHasher();
+    for (Module module : inputs) {
+      hasher.putUnencodedChars(module.getName()).putLong(hashModuleContents(module));
+    }
+    return hasher.hash().asLong();
+  }
+
+  private static long hashModuleContents(@NotNull Module module) {
+    long version = ourContentVersion.get();
+    long rootsCount = ProjectRootManager.getInstance(module.getProject()).getModificationCount();
+    long[] cached = module.getUserData(MODULE_CONTENT_HASH);
+    if (cached != null && cached[0] == version && cached[1] == rootsCount) {
+      return cached[2];
+    }
+    List<VirtualFile> files = ApplicationManager.getApplication().runReadAction((Computable<List<VirtualFile>>)() -> {
+      List<VirtualFile> contentFiles = new ArrayList<>();
+      ModuleRootManager.getInstance(module).getFileIndex().iterateContent(file -> {
+        if (!file.isDirectory()) {
+          contentFiles.add(file);
+        }
+        return true;
+      });
+      return contentFiles;
+    });
+    files.sort(Comparator.comparing(VirtualFile::getPath));
+    Hasher hasher = HASH.newHasher();
+    for (VirtualFile file : files) {
+      hasher.putUnencodedChars(file.getPath()).putLong(hashFileContents(file));
+    }
+    long hash = hasher.hash().asLong();
+    module.putUserData(MODULE_CONTENT_HASH, new long[]{version, rootsCount, hash});
+    return hash;
+  }
+
+  /**
+   * Returns a hash of the contents lint sees for the file: the text of its document if it has unsaved changes, the
+   * contents on disk otherwise. The hash is only recomputed when the document or the file has been modified.
+   */
+  private static long hashFileContents(@NotNull VirtualFile file) {
+    FileDocumentManager documentManager = FileDocumentManager.getInstance();
+    Document document = documentManager.getCachedDocument(file);
+    if (document != null && documentManager.isDocumentUnsaved(document)) {
+      long stamp = document.getModificationStamp();
+      Pair<Long, Long> cached = document.getUserData(CONTENT_HASH);
+      if (cached != null && cached.getFirst() == stamp) {
+        return cached.getSecond();
+      }
+      long hash = HASH.hashUnencodedChars(document.getImmutableCharSequence()).asLong();
+      document.putUserData(CONTENT_HASH, Pair.create(stamp, hash));
+      return hash;
+    }
+
+    long stamp = file.getModificationStamp();
+    Pair<Long, Long> cached = file.getUserData(CONTENT_HASH);
+    if (cached != null && cached.getFirst() == stamp) {
+      return cached.getSecond();
+    }
+    long hash;
+    try {
+      hash = HASH.hashBytes(file.contentsToByteArray()).asLong();
+    }
+    catch (IOException e) {
+      // Treat unreadable files as changed.
+      hash = stamp;
+    }
+    file.putUserData(CONTENT_HASH, Pair.create(stamp, hash));
+    return hash;
+  }
+
+  /**
+   * Starts tracking file and document changes, which invalidate the memoized module content hashes.
+   */
+  private static void listenForChanges() {
+    if (!ourListening.compareAndSet(false, true)) {
+      return;
+    }
+    Application application = ApplicationManager.getApplication();
+    application.getMessageBus().connect(application).subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+      @Override
+      public void after(@NotNull List<? extends VFileEvent> events) {
+        ourContentVersion.incrementAndGet();
+      }
+    });
+    EditorFactory.getInstance().getEventMulticaster().addDocumentListener(new DocumentAdapter() {
+      @Override
+      public void documentChanged(DocumentEvent event) {
+        ourContentVersion.incrementAndGet();
+      }
+    }, application);
+  }
+
+  @Nullable
+  private static Entry readEntry(@NotNull File entryFile) {
+    if (!entryFile.isFile()) {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entryFile)))) {
+      if (in.readInt() != VERSION) {
+        return null;
+      }
+      long contentHash = in.readLong();
+      long issuesHash = in.readLong();
+      long configHash = in.readLong();
+      Map<Issue, Map<File, List<ProblemData>>> problems = new HashMap<>();
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String issueId = in.readUTF();
+        File file = new File(in.readUTF());
+        int start = in.readInt();
+        int end = in.readInt();
+        String message = in.readUTF();
+        String severityName = in.readUTF();
+        Issue issue = findIssue(issueId);
+        if (issue == null) {
+          // The issue is gone (e.g. after an update); the entry can't be used.
+          return null;
+        }
+        Severity severity = severityName.isEmpty() ? null : Severity.valueOf(severityName);
+        problems.computeIfAbsent(issue, k -> new HashMap<>()).computeIfAbsent(file, k -> new ArrayList<>())
+          .add(new ProblemData(issue, message, new TextRange(start, end), severity));
+      }
+      // The timestamp of an entry is the time it was last used, see prune()
+      //noinspection ResultOfMethodCallIgnored
+      entryFile.setLastModified(System.currentTimeMillis());
+      return new Entry(contentHash, issuesHash, configHash, problems);
+    }
+    catch (IOException | IllegalArgumentException e) {
+      LOG.warn("Failed to read lint results from " + entryFile, e);
+      return null;
+    }
+  }
+
+  private static void writeEntry(@NotNull File entryFile, @NotNull Entry entry) throws IOException {
+    FileUtil.ensureExists(entryFile.getParentFile());
+    File tempFile = new File(entryFile.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      out.writeInt(VERSION);
+      out.writeLong(entry.contentHash);
+      out.writeLong(entry.issuesHash);
+      out.writeLong(entry.configHash);
+      int count = 0;
+      for (Map<File, List<ProblemData>> fileProblems : entry.problems.values()) {
+        for (List<ProblemData> problems : fileProblems.values()) {
+          count += problems.size();
+        }
+      }
+      out.writeInt(count);
+      for (Map.Entry<Issue, Map<File, List<ProblemData>>> issueEntry : entry.problems.entrySet()) {
+        for (Map.Entry<File, List<ProblemData>> fileEntry : issueEntry.getValue().entrySet()) {
+          for (ProblemData problem : fileEntry.getValue()) {
+            out.writeUTF(issueEntry.getKey().getId());
+            out.writeUTF(fileEntry.getKey().getPath());
+            out.writeInt(problem.getTextRange().getStartOffset());
+            out.writeInt(problem.getTextRange().getEndOffset());
+            out.writeUTF(problem.getMessage());
+            Severity severity = problem.getConfiguredSeverity();
+            out.writeUTF(severity != null ? severity.name() : "");
+          }
+        }
+      }
+    }
+    if (!FileUtil.delete(entryFile) || !tempFile.renameTo(entryFile)) {
+      FileUtil.delete(tempFile);
+      throw new IOException("Could not replace " + entryFile);
+    }
+  }
+
+  @Nullable
+  private static Issue findIssue(@NotNull String id) {
+    if (LintIdeIssueRegistry.CUSTOM_WARNING.getId().equals(id)) {
+      return LintIdeIssueRegistry.CUSTOM_WARNING;
+    }
+    if (LintIdeIssueRegistry.CUSTOM_ERROR.getId().equals(id)) {
+      return LintIdeIssueRegistry.CUSTOM_ERROR;
+    }
+    return AndroidLintIssueCache.REGISTRY.getIssue(id);
+  }
+
+  private static final class Entry {
+    final long contentHash;
+    final long issuesHash;
+    final long configHash;
+    final Map<Issue, Map<File, List<ProblemData>>> problems;
+
+    Entry(long contentHash, long issuesHash, long configHash, @NotNull Map<Issue, Map<File, List<ProblemData>>> problems) {
+      this.contentHash = contentHash;
+      this.issuesHash = issuesHash;
+      this.configHash = configHash;
+      this.problems = problems;
+    }
+  }
+}
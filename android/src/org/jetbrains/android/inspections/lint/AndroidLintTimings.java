@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.android.inspections.lint;
+
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accumulates how long lint runs take, per kind of run (e.g. the detectors of one scope on one kind of file).
+ * A summary is written to the IDE log at debug level, which can be enabled from Help | Debug Log Settings with
+ * {@code #org.jetbrains.android.inspections.lint.AndroidLintTimings}.
+ */
+final class AndroidLintTimings {
+  private static final Logger LOG = Logger.getInstance(AndroidLintTimings.class);
+  // Number of recorded runs between two summaries in the log.
+  private static final int SUMMARY_INTERVAL = 100;
+
+  private static final Map<String, Entry> ourEntries = new TreeMap<>();
+  private static int ourRunsSinceSummary;
+
+  private AndroidLintTimings() {
+  }
+
+  static boolean isEnabled() {
+    return LOG.isDebugEnabled();
+  }
+
+  static void record(@NotNull String kind, long nanos) {
+    String summary = null;
+    synchronized (ourEntries) {
+      Entry entry = ourEntries.get(kind);
+      if (entry == null) {
+        entry = new Entry();
+        ourEntries.put(kind, entry);
+      }
+      entry.count++;
+      entry.totalNanos += nanos;
+      entry.maxNanos = Math.max(entry.maxNanos, nanos);
+      if (++ourRunsSinceSummary >= SUMMARY_INTERVAL) {
+        ourRunsSinceSummary = 0;
+        summary = getSummary();
+      }
+    }
+    if (summary != null) {
+      LOG.debug(summary);
+    }
+  }
+
+  @NotNull
+  static String getSummary() {
+    StringBuilder sb = new StringBuilder("Android Lint timings:");
+    synchronized (ourEntries) {
+      for (Map.Entry<String, Entry> entry : ourEntries.entrySet()) {
+        Entry timing = entry.getValue();
+        sb.append(String.format("\n  %1$s: %2$d runs, %3$d ms total, %4$d ms average, %5$d ms max", entry.getKey(), timing.count,
+                                TimeUnit.NANOSECONDS.toMillis(timing.totalNanos),
+                                TimeUnit.NANOSECONDS.toMillis(timing.totalNanos / timing.count),
+                                TimeUnit.NANOSECONDS.toMillis(timing.maxNanos)));
+      }
+    }
+    return sb.toString();
+  }
+
+  private static class Entry {
+    int count;
+    long totalNanos;
+    long maxNanos;
+  }
+}
@@ -15,7 +15,8 @@ public class State {
   private final Module myModule;
   private final VirtualFile myMainFile;
 
-  private final String myMainFileContent;
+  private final CharSequence myMainFileContent;
+  private String myMainFileText;
   private final List<ProblemData> myProblems = new ArrayList<ProblemData>();
   private final List<Issue> myIssues;
 
@@ -23,7 +24,7 @@ public class State {
 
   State(@NotNull Module module,
         @NotNull VirtualFile mainFile,
-        @NotNull String mainFileContent,
+        @NotNull CharSequence mainFileContent,
         @NotNull List<Issue> issues) {
     myModule = module;
     myMainFile = mainFile;
@@ -37,7 +38,16 @@ public class State {
   }
 
   @NotNull
-  public String getMainFileContent() {
+  public synchronized String getMainFileContent() {
+    if (myMainFileText == null) {
+      myMainFileText = myMainFileContent.toString();
+    }
+    return myMainFileText;
+  }
+
+  /** Returns the contents of the main file without copying them. */
+  @NotNull
+  CharSequence getMainFileChars() {
     return myMainFileContent;
   }
 
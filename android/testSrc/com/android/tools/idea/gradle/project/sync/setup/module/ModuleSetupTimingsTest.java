@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.gradle.project.sync.setup.module;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link ModuleSetupTimings}.
+ */
+public class ModuleSetupTimingsTest {
+  private ModuleSetupTimings myTimings;
+
+  @Before
+  public void setUp() {
+    myTimings = new ModuleSetupTimings();
+  }
+
+  @Test
+  public void addAccumulatesPerStepAndModule() {
+    myTimings.add("Content roots", "app", TimeUnit.MILLISECONDS.toNanos(10));
+    myTimings.add("Content roots", "app", TimeUnit.MILLISECONDS.toNanos(5));
+    myTimings.add("Content roots", "lib", TimeUnit.MILLISECONDS.toNanos(20));
+    myTimings.add("Dependencies", "app", TimeUnit.MILLISECONDS.toNanos(100));
+
+    assertThat(myTimings.getSteps()).containsExactly("Content roots", "Dependencies");
+    Map<String, Long> contentRoots = myTimings.getDurationsByModule("Content roots");
+    assertEquals(15L, contentRoots.get("app").longValue());
+    assertEquals(20L, contentRoots.get("lib").longValue());
+    assertEquals(35L, myTimings.getTotalDuration("Content roots"));
+    assertEquals(0L, myTimings.getTotalDuration("Facets"));
+    assertTrue(myTimings.getDurationsByModule("Facets").isEmpty());
+  }
+
+  @Test
+  public void reportListsSlowestStepFirst() {
+    assertNull(myTimings.getReport());
+
+    myTimings.add("Content roots", "app", TimeUnit.MILLISECONDS.toNanos(10));
+    myTimings.add("Dependencies", "app", TimeUnit.MILLISECONDS.toNanos(100));
+    myTimings.add("Dependencies", "lib", TimeUnit.MILLISECONDS.toNanos(300));
+
+    String report = myTimings.getReport();
+    assertNotNull(report);
+    assertThat(report).contains("Dependencies: 400 ms (slowest module 'lib': 300 ms)");
+    assertThat(report.indexOf("Dependencies")).isLessThan(report.indexOf("Content roots"));
+  }
+
+  @Test
+  public void clear() {
+    myTimings.add("Dependencies", "app", 1);
+    myTimings.clear();
+    assertTrue(myTimings.isEmpty());
+    assertNull(myTimings.getReport());
+  }
+}
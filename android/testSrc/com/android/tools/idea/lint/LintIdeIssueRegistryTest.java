@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.lint;
+
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.Scope;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class LintIdeIssueRegistryTest extends TestCase {
+  private static final List<EnumSet<Scope>> SCOPES = new ArrayList<>();
+
+  static {
+    SCOPES.add(Scope.JAVA_FILE_SCOPE);
+    SCOPES.add(Scope.RESOURCE_FILE_SCOPE);
+    SCOPES.add(Scope.MANIFEST_SCOPE);
+    SCOPES.add(EnumSet.of(Scope.JAVA_FILE, Scope.RESOURCE_FILE));
+    SCOPES.add(Scope.ALL);
+  }
+
+  private static class TestRegistry extends LintIdeIssueRegistry {
+    List<Issue> getIssuesFor(EnumSet<Scope> scope) {
+      return getIssuesForScope(scope);
+    }
+  }
+
+  public void testIssuesForScope() {
+    TestRegistry registry = new TestRegistry();
+    for (EnumSet<Scope> scope : SCOPES) {
+      List<Issue> issues = registry.getIssuesFor(scope);
+      for (Issue issue : registry.getIssues()) {
+        assertEquals(issue.getImplementation().isAdequate(scope), issues.contains(issue));
+      }
+      assertSame(issues, registry.getIssuesFor(EnumSet.copyOf(scope)));
+    }
+  }
+
+  public void testScopeChangedAfterLookup() {
+    TestRegistry registry = new TestRegistry();
+    EnumSet<Scope> scope = EnumSet.of(Scope.JAVA_FILE);
+    List<Issue> javaIssues = registry.getIssuesFor(scope);
+    scope.add(Scope.RESOURCE_FILE);
+    assertSame(javaIssues, registry.getIssuesFor(EnumSet.of(Scope.JAVA_FILE)));
+  }
+
+  public void testConcurrentDrivers() throws Exception {
+    TestRegistry expected = new TestRegistry();
+    TestRegistry shared = new TestRegistry();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<List<List<Issue>>>> jobs = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        jobs.add(executor.submit(() -> {
+          List<List<Issue>> result = new ArrayList<>();
+          for (EnumSet<Scope> scope : SCOPES) {
+            result.add(shared.getIssuesFor(scope));
+          }
+          return result;
+        }));
+      }
+      for (Future<List<List<Issue>>> job : jobs) {
+        List<List<Issue>> result = job.get();
+        for (int i = 0; i < SCOPES.size(); i++) {
+          assertEquals(expected.getIssuesFor(SCOPES.get(i)), result.get(i));
+        }
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+}
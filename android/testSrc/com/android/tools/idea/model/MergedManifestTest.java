@@ -24,6 +24,7 @@ import com.android.tools.idea.res.ResourceHelper;
 import com.android.tools.lint.checks.PermissionHolder;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.module.Module;
+import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.android.AndroidTestCase;
 import org.jetbrains.annotations.NotNull;
@@ -233,6 +234,33 @@ public class MergedManifestTest extends AndroidTestCase {
     return info;
   }
 
+  public void testAwaitUpToDateAfterEdit() throws Exception {
+    MergedManifest info = getMergedManifest("<manifest xmlns:android='http://schemas.android.com/apk/res/android'\n" +
+                                            "    package='com.android.unittest'>\n" +
+                                            "</manifest>\n");
+    assertEquals("com.android.unittest", info.getPackage());
+    long modificationCount = info.getModificationCount();
+
+    final VirtualFile manifest = myFixture.findFileInTempDir("AndroidManifest.xml");
+    ApplicationManager.getApplication().runWriteAction(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          VfsUtil.saveText(manifest, "<manifest xmlns:android='http://schemas.android.com/apk/res/android'\n" +
+                                     "    package='com.android.edited'>\n" +
+                                     "</manifest>\n");
+        }
+        catch (IOException e) {
+          fail("Could not write manifest");
+        }
+      }
+    });
+
+    assertThat(info.getModificationCount()).isGreaterThan(modificationCount);
+    assertEquals("com.android.edited", info.awaitUpToDate().getPackage());
+    assertEquals(info.getModificationCount(), info.awaitUpToDate().getModificationCount());
+  }
+
   @SuppressWarnings("SpellCheckingInspection")
   public void testGetMinSdkVersionName() throws Exception {
     MergedManifest info;
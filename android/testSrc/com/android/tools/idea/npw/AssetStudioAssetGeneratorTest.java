@@ -333,4 +333,22 @@ public class AssetStudioAssetGeneratorTest extends AndroidTestCase {
 
     assertImagesSimilar("PaddedImage", expectedImage, argument.getValue().sourceImage, 5.0f);
   }
+
+  public void testSourceImageReused() throws Exception {
+    myState.put(ATTR_SOURCE_TYPE, SourceType.IMAGE);
+    myState.put(ATTR_ASSET_TYPE, AssetType.ACTIONBAR.name());
+    ArgumentCaptor<ActionBarIconGenerator.ActionBarOptions> argument =
+      ArgumentCaptor.forClass(ActionBarIconGenerator.ActionBarOptions.class);
+
+    myAssetGenerator.generateImages(true);
+    myAssetGenerator.generateImages(true);
+    myState.put(ATTR_PADDING, 25);
+    myAssetGenerator.generateImages(true);
+
+    verify(myActionBarIconGenerator, times(3))
+      .generate(isNull(String.class), any(Map.class), eq(myAssetGenerator),
+                argument.capture(), anyString());
+    assertSame(argument.getAllValues().get(0).sourceImage, argument.getAllValues().get(1).sourceImage);
+    assertNotSame(argument.getAllValues().get(1).sourceImage, argument.getAllValues().get(2).sourceImage);
+  }
 }
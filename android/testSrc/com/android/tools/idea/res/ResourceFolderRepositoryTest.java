@@ -51,6 +51,7 @@ import org.picocontainer.MutablePicoContainer;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -3823,6 +3824,87 @@ public class ResourceFolderRepositoryTest extends AndroidTestCase {
     assertTrue(fromBlob.equalFilesItems(resources));
   }
 
+  public void testParallelValueScan() throws Exception {
+    myFixture.copyFileToProject(LAYOUT1, "res/layout/layout.xml");
+    int numValueFiles = ResourceFolderRepository.PARALLEL_SCAN_MIN_FILES + 1;
+    for (int i = 0; i < numValueFiles; i++) {
+      myFixture.copyFileToProject(STRINGS, "res/values-v" + (i + 14) + "/strings.xml");
+    }
+    final ResourceFolderRepository resources = createRepository();
+    assertNotNull(resources);
+    assertEquals(numValueFiles + 1, resources.getInitialScanState().numXml);
+    assertEquals(resources.getInitialScanState().numXml, resources.getInitialScanState().numXmlReparsed);
+    assertEquals(numValueFiles, resources.getResourceItem(ResourceType.STRING, "hello_world").size());
+    assertTrue(resources.hasResourceItem(ResourceType.ID, "noteArea"));
+    resources.saveStateToFile();
+
+    // Items parsed in parallel must make it into the file cache as well.
+    ResourceFolderRegistry.reset();
+    final ResourceFolderRepository fromBlob = createRepository();
+    assertNotNull(fromBlob);
+    assertTrue(fromBlob.hasFreshFileCache());
+    assertEquals(0, fromBlob.getInitialScanState().numXmlReparsed);
+    assertTrue(fromBlob.equalFilesItems(resources));
+  }
+
+  public void testFileCacheValidatedByContent() throws Exception {
+    VirtualFile strings = myFixture.copyFileToProject(STRINGS, "res/values/strings.xml");
+    myFixture.copyFileToProject(VALUES1, "res/values/myvalues.xml");
+    myFixture.copyFileToProject(LAYOUT1, "res/layout/layout.xml");
+    final ResourceFolderRepository resources = createRepository();
+    assertNotNull(resources);
+    resources.saveStateToFile();
+
+    // Touching a file without changing it doesn't invalidate its cache entry.
+    File stringsFile = VfsUtilCore.virtualToIoFile(strings);
+    assertTrue(stringsFile.setLastModified(stringsFile.lastModified() + 10000));
+    ResourceFolderRegistry.reset();
+    ResourceFolderRepository touched = createRepository();
+    assertEquals(3, touched.getInitialScanState().numXml);
+    assertEquals(0, touched.getInitialScanState().numXmlReparsed);
+    assertTrue(touched.equalFilesItems(resources));
+
+    // Changing the contents does, even if the timestamp is unchanged.
+    long lastModified = stringsFile.lastModified();
+    String text = FileUtil.loadFile(stringsFile);
+    FileUtil.writeToFile(stringsFile, text.replace("hello_world", "hello_there"));
+    assertTrue(stringsFile.setLastModified(lastModified));
+    ResourceFolderRegistry.reset();
+    ResourceFolderRepository changed = createRepository();
+    assertEquals(3, changed.getInitialScanState().numXml);
+    assertEquals(1, changed.getInitialScanState().numXmlReparsed);
+    assertTrue(changed.hasResourceItem(ResourceType.STRING, "hello_there"));
+    assertFalse(changed.hasResourceItem(ResourceType.STRING, "hello_world"));
+  }
+
+  public void testCorruptFileCache() throws Exception {
+    myFixture.copyFileToProject(STRINGS, "res/values/strings.xml");
+    myFixture.copyFileToProject(LAYOUT1, "res/layout/layout.xml");
+    final ResourceFolderRepository resources = createRepository();
+    assertNotNull(resources);
+    resources.saveStateToFile();
+
+    // A negative string count in an otherwise valid header
+    File cacheDir = ResourceFolderRepositoryFileCacheService.get().getResourceDir(getProject(), getResourceDirectory());
+    assertNotNull(cacheDir);
+    File snapshotFile = new File(cacheDir, ResourceFolderRepositorySnapshot.FILE_NAME);
+    try (RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw")) {
+      file.seek(8);
+      file.writeInt(-5);
+    }
+    ResourceFolderRegistry.reset();
+    ResourceFolderRepository rescanned = createRepository();
+    assertEquals(2, rescanned.getInitialScanState().numXmlReparsed);
+    assertTrue(rescanned.equalFilesItems(resources));
+
+    // The snapshot read above doesn't prevent replacing it
+    rescanned.saveStateToFile();
+    ResourceFolderRegistry.reset();
+    ResourceFolderRepository reloaded = createRepository();
+    assertEquals(0, reloaded.getInitialScanState().numXmlReparsed);
+    assertTrue(reloaded.equalFilesItems(resources));
+  }
+
   public void testInvalidateCache() throws Exception {
     myFixture.copyFileToProject(LAYOUT1, "res/layout/layout.xml");
     myFixture.copyFileToProject(LAYOUT1, "res/layout-xlarge-land/layout.xml");
@@ -4063,8 +4145,9 @@ public class ResourceFolderRepositoryTest extends AndroidTestCase {
     ResourceFolderRegistry.reset();
     final ResourceFolderRepository fromBlob = createRepository();
     assertNotNull(fromBlob);
-    // We don't count files that we explicitly skip against freshness.
+    // Density-based files are cached like any other XML file.
     assertTrue(fromBlob.hasFreshFileCache());
+    assertEquals(0, fromBlob.getInitialScanState().numXmlReparsed);
 
     assertNotSame(resources, fromBlob);
     assertTrue(fromBlob.equalFilesItems(resources));
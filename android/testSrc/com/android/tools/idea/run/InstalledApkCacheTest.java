@@ -38,6 +38,7 @@ public class InstalledApkCacheTest extends TestCase {
   private File myFile;
   private String myPkgName;
   private String myDumpSysOutput;
+  private File myFingerprintFile;
 
   @Override
   public void setUp() throws Exception {
@@ -61,7 +62,8 @@ public class InstalledApkCacheTest extends TestCase {
     EasyMock.expectLastCall().anyTimes();
 
     myDumpSysOutput = "Package [com.foo.bar]";
-    myService = new InstalledApkCache() {
+    myFingerprintFile = new File(FileUtil.createTempDirectory("apk-fingerprints", null), "fingerprints");
+    myService = new InstalledApkCache(new ApkFingerprintStore(myFingerprintFile)) {
       @Override
       protected String executeShellCommand(@NotNull IDevice device, @NotNull String cmd, long timeout, @NotNull TimeUnit timeUnit)
         throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException, IOException, InterruptedException {
@@ -75,6 +77,7 @@ public class InstalledApkCacheTest extends TestCase {
   @Override
   protected void tearDown() throws Exception {
     Disposer.dispose(myService);
+    FileUtil.delete(myFingerprintFile.getParentFile());
     super.tearDown();
   }
 
@@ -108,6 +111,23 @@ public class InstalledApkCacheTest extends TestCase {
     assertTrue(myService.isInstalled(myDevice2, myFile, myPkgName, null));
   }
 
+  public void testFingerprintsAvoidRehashing() throws Exception {
+    ApkFingerprintStore fingerprints = myService.getFingerprints();
+    myService.setInstalled(myDevice1, myFile, myPkgName);
+    assertTrue(myService.isInstalled(myDevice1, myFile, myPkgName, null));
+    assertEquals(1, fingerprints.getMissCount());
+
+    // A new store with the same file (e.g. after a restart) doesn't need to read the APK again
+    ApkFingerprintStore reloaded = new ApkFingerprintStore(myFingerprintFile);
+    assertEquals(fingerprints.getHash(myFile), reloaded.getHash(myFile));
+    assertEquals(1, reloaded.getHitCount());
+    assertEquals(0, reloaded.getMissCount());
+
+    FileUtil.writeToFile(myFile, "changed!");
+    assertFalse(myService.isInstalled(myDevice1, myFile, myPkgName, null));
+    assertEquals(2, fingerprints.getMissCount());
+  }
+
   public void testUninstallFromCommandLine() throws Exception {
     assertFalse(myService.isInstalled(myDevice1, myFile, myPkgName, null));
     myService.setInstalled(myDevice1, myFile, myPkgName);
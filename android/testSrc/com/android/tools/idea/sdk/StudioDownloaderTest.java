@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.sdk;
+
+import com.android.repository.testframework.FakeProgressIndicator;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.IdeaTestCase;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tests for {@link StudioDownloader}, against a local server which sends slowly and drops connections.
+ */
+public class StudioDownloaderTest extends IdeaTestCase {
+  private static final int CONTENT_SIZE = 256 * 1024;
+  private static final int SEND_CHUNK_SIZE = 8 * 1024;
+
+  private HttpServer myServer;
+  private byte[] myContent;
+  private final List<String> myRanges = new CopyOnWriteArrayList<>();
+  // Number of bytes after which the server drops the connection of the next request, or -1 not to drop it
+  private volatile int myDropAfter = -1;
+  private volatile boolean mySupportsRanges = true;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myContent = new byte[CONTENT_SIZE];
+    for (int i = 0; i < myContent.length; i++) {
+      myContent[i] = (byte)(i * 31);
+    }
+    myServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    myServer.createContext("/archive.zip", this::serve);
+    myServer.start();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myServer.stop(0);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  private void serve(HttpExchange exchange) throws IOException {
+    String range = exchange.getRequestHeaders().getFirst("Range");
+    myRanges.add(String.valueOf(range));
+    int start = 0;
+    if (range != null && mySupportsRanges) {
+      start = Integer.parseInt(range.substring("bytes=".length(), range.indexOf('-')));
+      exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + (CONTENT_SIZE - 1) + "/" + CONTENT_SIZE);
+      exchange.sendResponseHeaders(206, CONTENT_SIZE - start);
+    }
+    else {
+      exchange.sendResponseHeaders(200, CONTENT_SIZE);
+    }
+    int dropAfter = myDropAfter;
+    myDropAfter = -1;
+    try (OutputStream out = exchange.getResponseBody()) {
+      for (int offset = start; offset < CONTENT_SIZE; offset += SEND_CHUNK_SIZE) {
+        if (dropAfter >= 0 && offset - start >= dropAfter) {
+          // Closing the body before all the announced bytes are written makes the server drop the connection
+          return;
+        }
+        out.write(myContent, offset, Math.min(SEND_CHUNK_SIZE, CONTENT_SIZE - offset));
+        out.flush();
+        try {
+          Thread.sleep(1); // throttle
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  private URL getUrl() throws IOException {
+    return new URL("http://127.0.0.1:" + myServer.getAddress().getPort() + "/archive.zip");
+  }
+
+  public void testDownload() throws Exception {
+    File file = FileUtil.createTempFile("download", ".part", true);
+    StudioDownloader.download(getUrl(), file, new EmptyProgressIndicator());
+    assertTrue(Arrays.equals(myContent, Files.readAllBytes(file.toPath())));
+    assertEquals(Arrays.asList("null"), myRanges);
+  }
+
+  public void testResumeAfterDroppedConnection() throws Exception {
+    File file = FileUtil.createTempFile("download", ".part", true);
+    myDropAfter = CONTENT_SIZE / 2;
+    StudioDownloader.download(getUrl(), file, new EmptyProgressIndicator());
+    assertTrue(Arrays.equals(myContent, Files.readAllBytes(file.toPath())));
+    assertEquals(2, myRanges.size());
+    assertEquals("null", myRanges.get(0));
+    assertEquals("bytes=" + CONTENT_SIZE / 2 + "-", myRanges.get(1));
+  }
+
+  public void testResumePartialFile() throws Exception {
+    File file = FileUtil.createTempFile("download", ".part", true);
+    Files.write(file.toPath(), Arrays.copyOf(myContent, 1000));
+    StudioDownloader.download(getUrl(), file, new EmptyProgressIndicator());
+    assertTrue(Arrays.equals(myContent, Files.readAllBytes(file.toPath())));
+    assertEquals(Arrays.asList("bytes=1000-"), myRanges);
+  }
+
+  public void testStalePartialFileWithoutChecksum() throws Exception {
+    File target = new File(FileUtil.createTempDirectory("download", null, true), "archive.zip");
+    // Left by an interrupted download of another version of the archive
+    Files.write(new File(target.getPath() + ".part").toPath(), new byte[1000]);
+    new StudioDownloader(new EmptyProgressIndicator()).downloadFully(getUrl(), target, null, new FakeProgressIndicator());
+    assertTrue(Arrays.equals(myContent, Files.readAllBytes(target.toPath())));
+    assertEquals(Arrays.asList("null"), myRanges);
+  }
+
+  public void testServerWithoutRangeSupport() throws Exception {
+    File file = FileUtil.createTempFile("download", ".part", true);
+    Files.write(file.toPath(), new byte[1000]);
+    mySupportsRanges = false;
+    StudioDownloader.download(getUrl(), file, new EmptyProgressIndicator());
+    assertTrue(Arrays.equals(myContent, Files.readAllBytes(file.toPath())));
+  }
+}
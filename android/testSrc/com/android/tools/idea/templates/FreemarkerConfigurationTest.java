@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.templates;
+
+import com.intellij.openapi.util.io.FileUtil;
+import freemarker.template.Template;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+
+public class FreemarkerConfigurationTest extends TestCase {
+  private File myRootFolder;
+  private File myTemplateFile;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myRootFolder = new File(FileUtil.createTempDirectory("freemarker", null), "templates");
+    myTemplateFile = new File(myRootFolder, "activities/Test/root/test.ftl");
+    FileUtil.writeToFile(myTemplateFile, "first ${name}");
+    assertTrue(myTemplateFile.setLastModified(System.currentTimeMillis() - 60000));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myRootFolder.getParentFile());
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  private static String render(Template template) throws Exception {
+    StringWriter writer = new StringWriter();
+    template.process(Collections.singletonMap("name", "test"), writer);
+    return writer.toString();
+  }
+
+  public void testSharedAcrossContexts() throws IOException {
+    FreemarkerConfiguration configuration = FreemarkerConfiguration.getShared(myRootFolder);
+    assertSame(configuration, FreemarkerConfiguration.getShared(new File(myRootFolder.getPath())));
+    assertNotSame(configuration, FreemarkerConfiguration.getShared(myRootFolder.getParentFile()));
+
+    Template template = configuration.getTemplate("root://activities/Test/root/test.ftl");
+    assertSame(template, FreemarkerConfiguration.getShared(myRootFolder).getTemplate("root://activities/Test/root/test.ftl"));
+    // Relative names are resolved the same way
+    assertSame(template, configuration.getTemplate("root://activities/Test/globals/../root/test.ftl"));
+  }
+
+  public void testParsedAgainAfterEdit() throws Exception {
+    FreemarkerConfiguration configuration = FreemarkerConfiguration.getShared(myRootFolder);
+    Template template = configuration.getTemplate("root://activities/Test/root/test.ftl");
+    assertEquals("first test", render(template));
+
+    FileUtil.writeToFile(myTemplateFile, "second ${name}");
+    assertTrue(myTemplateFile.setLastModified(System.currentTimeMillis()));
+    Template edited = configuration.getTemplate("root://activities/Test/root/test.ftl");
+    assertNotSame(template, edited);
+    assertEquals("second test", render(edited));
+    assertSame(edited, configuration.getTemplate("root://activities/Test/root/test.ftl"));
+  }
+
+  public void testMissingTemplate() {
+    try {
+      FreemarkerConfiguration.getShared(myRootFolder).getTemplate("root://activities/Test/root/missing.ftl");
+      fail();
+    }
+    catch (IOException expected) {
+    }
+  }
+}
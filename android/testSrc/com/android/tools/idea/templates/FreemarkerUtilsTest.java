@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.templates;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+
+public class FreemarkerUtilsTest extends TestCase {
+  private File myRootFolder;
+  private FreemarkerConfiguration myConfiguration;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myRootFolder = new File(FileUtil.createTempDirectory("freemarker", null), "templates");
+    myConfiguration = FreemarkerConfiguration.getShared(myRootFolder);
+    createTemplate("activities/common/theme.xml.ftl", "<style parent=\"${getApplicationTheme().name}\"/>");
+    createTemplate("activities/common/plain.xml.ftl", "<resources/>");
+    createTemplate("activities/Test/root/plain.java.ftl", "package ${packageName};");
+    createTemplate("activities/Test/root/dependency.gradle.ftl",
+                   "<#if hasDependency(\"com.android.support:appcompat-v7\")>appcompat</#if>");
+    createTemplate("activities/Test/root/relative.xml.ftl", "<#include \"../../common/theme.xml.ftl\">");
+    createTemplate("activities/Test/root/absolute.xml.ftl", "<#include \"root://activities/common/theme.xml.ftl\" />");
+    createTemplate("activities/Test/root/import.xml.ftl", "<#import \"/activities/common/theme.xml.ftl\" as theme>");
+    createTemplate("activities/Test/root/included.xml.ftl", "<#include \"../../common/plain.xml.ftl\">${packageName}");
+    createTemplate("activities/Test/root/computed.xml.ftl", "<#include \"../../common/${name}.xml.ftl\">");
+    createTemplate("activities/Test/root/missing.xml.ftl", "<#include \"../../common/missing.xml.ftl\">");
+    createTemplate("activities/Test/root/cycle.xml.ftl", "<#include \"cycle.xml.ftl\">");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myRootFolder.getParentFile());
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  private void createTemplate(String path, String text) throws IOException {
+    FileUtil.writeToFile(new File(myRootFolder, path), text);
+  }
+
+  private boolean usesProjectModel(String path) throws IOException {
+    return FreemarkerUtils.usesProjectModel(myConfiguration, StudioTemplateLoader.ROOT + path);
+  }
+
+  public void testUsesProjectModel() throws IOException {
+    assertTrue(usesProjectModel("activities/common/theme.xml.ftl"));
+    assertTrue(usesProjectModel("activities/Test/root/dependency.gradle.ftl"));
+    assertFalse(usesProjectModel("activities/common/plain.xml.ftl"));
+    assertFalse(usesProjectModel("activities/Test/root/plain.java.ftl"));
+  }
+
+  public void testIncludes() throws IOException {
+    assertTrue(usesProjectModel("activities/Test/root/relative.xml.ftl"));
+    assertTrue(usesProjectModel("activities/Test/root/absolute.xml.ftl"));
+    assertTrue(usesProjectModel("activities/Test/root/import.xml.ftl"));
+    assertFalse(usesProjectModel("activities/Test/root/included.xml.ftl"));
+    assertFalse(usesProjectModel("activities/Test/root/cycle.xml.ftl"));
+  }
+
+  public void testUnknownIncludes() throws IOException {
+    assertTrue(usesProjectModel("activities/Test/root/computed.xml.ftl"));
+    assertTrue(usesProjectModel("activities/Test/root/missing.xml.ftl"));
+  }
+}
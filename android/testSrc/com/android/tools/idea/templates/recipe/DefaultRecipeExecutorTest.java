@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.templates.recipe;
+
+import com.android.tools.idea.templates.TemplateProcessingException;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.IdeaTestCase;
+import freemarker.template.SimpleScalar;
+import freemarker.template.TemplateMethodModelEx;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class DefaultRecipeExecutorTest extends IdeaTestCase {
+  private File myTemplateFolder;
+  private File myOutputRoot;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myTemplateFolder = new File(createTempDirectory(), FileUtil.join("templates", "Test"));
+    myOutputRoot = createTempDirectory();
+  }
+
+  private File createTemplate(String path, String text) throws IOException {
+    File file = new File(myTemplateFolder, FileUtil.join("root", path));
+    FileUtil.writeToFile(file, text);
+    return file;
+  }
+
+  private RenderingContext instantiate(Map<String, Object> params, List<File> from, List<File> to) {
+    RenderingContext context = RenderingContext.Builder.newContext(myTemplateFolder, myProject)
+      .withOutputRoot(myOutputRoot).withModuleRoot(myOutputRoot).withParams(params).build();
+    WriteCommandAction.runWriteCommandAction(myProject, () -> {
+      try {
+        new DefaultRecipeExecutor(context, false).instantiate(from, to);
+      }
+      catch (TemplateProcessingException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    return context;
+  }
+
+  private void assertOutput(String path, String expected) throws IOException {
+    assertEquals(expected, FileUtil.loadFile(new File(myOutputRoot, path)));
+  }
+
+  public void testInstantiateInOrder() throws IOException {
+    List<File> from = Lists.newArrayList();
+    List<File> to = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      from.add(createTemplate("file" + i + ".txt.ftl", "${name} " + i));
+      to.add(new File("file" + i + ".txt"));
+    }
+    RenderingContext context = instantiate(ImmutableMap.of("name", "test"), from, to);
+    List<File> targetFiles = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      assertOutput("file" + i + ".txt", "test " + i);
+      targetFiles.add(new File(myOutputRoot, to.get(i).getPath()));
+    }
+    assertEquals(targetFiles, Lists.newArrayList(context.getTargetFiles()));
+  }
+
+  public void testInstantiateDirectories() throws IOException {
+    createTemplate("res/values/strings.xml", "<resources/>");
+    List<File> from = Arrays.asList(createTemplate("first.txt.ftl", "first ${name}"),
+                                    new File(myTemplateFolder, FileUtil.join("root", "res")),
+                                    createTemplate("second.txt.ftl", "second ${name}"));
+    List<File> to = Arrays.asList(new File("first.txt"), new File("res"), new File("second.txt"));
+    instantiate(ImmutableMap.of("name", "test"), from, to);
+    assertOutput("first.txt", "first test");
+    assertOutput(FileUtil.join("res", "values", "strings.xml"), "<resources/>");
+    assertOutput("second.txt", "second test");
+  }
+
+  public void testProjectModelOnCallingThread() throws IOException {
+    // Stands in for the template method which finds the manifest of the app module
+    List<Thread> calls = new CopyOnWriteArrayList<>();
+    TemplateMethodModelEx getAppManifestDir = arguments -> {
+      calls.add(Thread.currentThread());
+      return new SimpleScalar("manifest");
+    };
+    List<File> from = Arrays.asList(createTemplate("first.txt.ftl", "first ${name}"),
+                                    createTemplate("manifest.txt.ftl", "${getAppManifestDir()}"),
+                                    createTemplate("second.txt.ftl", "second ${name}"),
+                                    createTemplate("included.txt.ftl", "<#include \"manifest.txt.ftl\"> ${name}"));
+    List<File> to = Arrays.asList(new File("first.txt"), new File("manifest.txt"), new File("second.txt"), new File("included.txt"));
+    instantiate(ImmutableMap.of("name", "test", "getAppManifestDir", getAppManifestDir), from, to);
+    assertOutput("first.txt", "first test");
+    assertOutput("manifest.txt", "manifest");
+    assertOutput("second.txt", "second test");
+    assertOutput("included.txt", "manifest test");
+    // Rendered once each, by the thread holding the write lock
+    assertEquals(Arrays.asList(Thread.currentThread(), Thread.currentThread()), calls);
+  }
+}
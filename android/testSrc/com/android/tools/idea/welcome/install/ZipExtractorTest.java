@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.welcome.install;
+
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class ZipExtractorTest extends TestCase {
+  private File myDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("zip-extractor", null);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  private File createArchive(String... namesAndContents) throws IOException {
+    File archive = new File(myDir, "archive.zip");
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(archive))) {
+      for (int i = 0; i < namesAndContents.length; i += 2) {
+        out.putNextEntry(new ZipEntry(namesAndContents[i]));
+        if (namesAndContents[i + 1] != null) {
+          out.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+        }
+        out.closeEntry();
+      }
+    }
+    return archive;
+  }
+
+  public void testExtractManyEntries() throws Exception {
+    String[] entries = new String[200];
+    for (int i = 0; i < entries.length; i += 2) {
+      entries[i] = "dir" + (i % 7) + "/file" + i + ".txt";
+      entries[i + 1] = "content of file " + i;
+    }
+    File destination = new File(myDir, "out");
+    ZipExtractor extractor = new ZipExtractor();
+    extractor.extract(createArchive(entries), destination, true, new EmptyProgressIndicator());
+
+    assertEquals(100, extractor.getFileCount());
+    for (int i = 0; i < entries.length; i += 2) {
+      assertEquals(entries[i + 1], FileUtil.loadFile(new File(destination, entries[i])));
+    }
+  }
+
+  public void testUnwrapSingleTopLevelFolder() throws Exception {
+    File archive = createArchive("sdk/", null, "sdk/tools/android", "tool", "sdk/README", "readme");
+    File destination = new File(myDir, "out");
+    new ZipExtractor().extract(archive, destination, true, new EmptyProgressIndicator());
+    assertEquals("tool", FileUtil.loadFile(new File(destination, "tools/android")));
+    assertEquals("readme", FileUtil.loadFile(new File(destination, "README")));
+
+    File wrapped = new File(myDir, "wrapped");
+    new ZipExtractor().extract(archive, wrapped, false, new EmptyProgressIndicator());
+    assertEquals("readme", FileUtil.loadFile(new File(wrapped, "sdk/README")));
+  }
+
+  public void testRejectEntryOutsideOfDestination() throws Exception {
+    File archive = createArchive("../evil", "evil");
+    try {
+      new ZipExtractor().extract(archive, new File(myDir, "out"), false, new EmptyProgressIndicator());
+      fail();
+    }
+    catch (IOException expected) {
+    }
+    assertFalse(new File(myDir, "evil").exists());
+  }
+}
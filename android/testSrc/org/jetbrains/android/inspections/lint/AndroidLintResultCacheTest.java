@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.android.inspections.lint;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.jetbrains.android.inspections.lint.AndroidLintResultCache.MAX_ENTRIES;
+import static org.jetbrains.android.inspections.lint.AndroidLintResultCache.MAX_ENTRY_AGE_MS;
+
+public class AndroidLintResultCacheTest extends TestCase {
+  private static final long NOW = 1_500_000_000_000L;
+
+  private File myDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("lint-results", null);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  private File createEntry(String name, long lastUsed) throws IOException {
+    File file = new File(myDir, name);
+    FileUtil.writeToFile(file, name);
+    assertTrue(file.setLastModified(lastUsed));
+    return file;
+  }
+
+  public void testPruneOldEntries() throws IOException {
+    File recent = createEntry("recent", NOW - 1000);
+    File old = createEntry("old", NOW - MAX_ENTRY_AGE_MS - 1000);
+    AndroidLintResultCache.prune(myDir, NOW);
+    assertTrue(recent.exists());
+    assertFalse(old.exists());
+  }
+
+  public void testPruneLeastRecentlyUsedEntries() throws IOException {
+    File[] entries = new File[MAX_ENTRIES + 10];
+    for (int i = 0; i < entries.length; i++) {
+      // Whole seconds, since some file systems don't keep milliseconds
+      entries[i] = createEntry("entry" + i, NOW - (entries.length - i) * 1000L);
+    }
+    AndroidLintResultCache.prune(myDir, NOW);
+    for (int i = 0; i < entries.length; i++) {
+      assertEquals(entries[i].getName(), i >= 10, entries[i].exists());
+    }
+  }
+
+  public void testPruneMissingDirectory() {
+    AndroidLintResultCache.prune(new File(myDir, "missing"), NOW);
+  }
+}
@@ -49,6 +49,9 @@ public class DBSCANClusterer implements Clusterer{
   private PointType[] myPointTypes;
   ProgressListener listener;
 
+  private boolean myUseSpatialIndex = true;
+  private PointGrid myGrid;
+
   /**
    * Create a new DBSCAN clusterer
    *
@@ -72,10 +75,19 @@ public class DBSCANClusterer implements Clusterer{
     this.listener = listener;
   }
 
+  /**
+   * Disable the grid used to find the neighbors of a point, so all the points are scanned for each neighborhood query.
+   * The clusters are the same either way.
+   */
+  void setUseSpatialIndex(boolean useSpatialIndex) {
+    myUseSpatialIndex = useSpatialIndex;
+  }
+
   @Override
   public List<List<double[]>> cluster(double[][] input) {
     List<double[]> cluster = new ArrayList<>();
     myPointTypes = new PointType[input.length];
+    myGrid = myUseSpatialIndex ? PointGrid.create(input, myEps) : null;
 
     for (int i = 0; i < input.length; i++) {
       if (myPointTypes[i] == null) { // If point is unclassified
@@ -122,9 +134,10 @@ public class DBSCANClusterer implements Clusterer{
       }
 
       // We now expand the search to all the neighbors,
-      // if they have also have neighbors, they become core point
-      while (!seeds.isEmpty()) {
-        int currentP = seeds.get(0);
+      // if they have also have neighbors, they become core point.
+      // The seeds are consumed in order, like a queue.
+      for (int seedIndex = 0; seedIndex < seeds.size(); seedIndex++) {
+        int currentP = seeds.get(seedIndex);
         List<Integer> result = regionQuery(input, currentP);
 
         if (result.size() >= myMinPts) {
@@ -142,7 +155,6 @@ public class DBSCANClusterer implements Clusterer{
             }
           }
         }
-        seeds.remove(0);
       }
       return true;
     }
@@ -157,16 +169,27 @@ public class DBSCANClusterer implements Clusterer{
   /**
    * Find all the point at a distance less or equal to eps.
    *
-   * The distance measure is the euclidean distance.
+   * The distance measure is the euclidean distance. Only the points in the cells around the point are checked when the
+   * input could be indexed in a {@link PointGrid}, otherwise all the points are checked.
    * @param input The input data.
    * @param pointIndex The index of the point in input that we have to find the neighbors of.
    * @return A list of index of the point that are neighbor of input[pointIndex]
    */
   private List<Integer> regionQuery(double[][] input, int pointIndex) {
-    List<Integer> seeds = new ArrayList<>();
     double[] current = input[pointIndex];
+    float epsSquare = myEps * myEps;
+
+    if (myGrid != null) {
+      int[] neighbors = myGrid.query(pointIndex, i -> input[i] != current && distance(input[i], current) <= epsSquare);
+      List<Integer> seeds = new ArrayList<>(neighbors.length);
+      for (int i = 0; i < neighbors.length; i++) {
+        seeds.add(neighbors[i]);
+      }
+      return seeds;
+    }
+
+    List<Integer> seeds = new ArrayList<>();
     for (int i = 0; i < input.length; i++) {
-      float epsSquare = myEps * myEps;
       if (input[i] != current && distance(input[i], current) <= epsSquare) {
         seeds.add(i);
       }
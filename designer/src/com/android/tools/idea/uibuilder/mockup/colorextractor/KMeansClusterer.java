@@ -16,34 +16,67 @@
 package com.android.tools.idea.uibuilder.mockup.colorextractor;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
 
 /**
  * Use tge KMeans to clusterize a set of points into k clusters
+ *
+ * The initial centers are chosen with the k-means++ seeding, then the passes run until no point changes of cluster or until
+ * {@link #PASS_NUMBER} passes have been done.
+ *
+ * Each pass is split in chunks of {@link #CHUNK_SIZE} points processed in parallel. The partial sums of the chunks are always
+ * added in the same order, so the result only depends on the input and the seed, not on the number of threads.
  */
 @SuppressWarnings("ForLoopReplaceableByForEach")
 public final class KMeansClusterer implements Clusterer {
 
   public static final int PASS_NUMBER = 100;
+  public static final long DEFAULT_SEED = 0;
+  static final int CHUNK_SIZE = 4096;
+
   private final int myK;
+  private final long mySeed;
   private int myInputDataSize;
+  private int myDimension;
   private double[][] myData;
   private double[][] myOutputColors;
 
+  /**
+   * Index of the output color closest to each point, -1 before the first pass
+   */
+  private int[] myAssignments;
+  private int myPassCount;
+
   public KMeansClusterer(int k) {
+    this(k, DEFAULT_SEED);
+  }
+
+  /**
+   * @param k    The number of clusters
+   * @param seed The seed used to pick the initial centers
+   */
+  public KMeansClusterer(int k, long seed) {
     myK = k;
-    myOutputColors = new double[myK][3];
+    mySeed = seed;
+    myOutputColors = new double[0][];
   }
 
   @Override
   public List<List<double[]>> cluster(double[][] points) {
     myData = points;
     myInputDataSize = points.length;
+    myDimension = points.length == 0 ? 0 : points[0].length;
+    myAssignments = new int[myInputDataSize];
+    Arrays.fill(myAssignments, -1);
     getInitialColors();
-    for (int i = 0; i < PASS_NUMBER; i++) {
-      int dist = pass();
-      if (dist == 0) break;
+    myPassCount = 0;
+    while (myPassCount < PASS_NUMBER) {
+      myPassCount++;
+      int changed = pass();
+      if (changed == 0) break;
     }
     List<List<double[]>> clusters = new ArrayList<>(myOutputColors.length);
     for (int i = 0; i < myOutputColors.length; i++) {
@@ -54,76 +87,142 @@ public final class KMeansClusterer implements Clusterer {
     return clusters;
   }
 
+  /**
+   * @return The number of passes done by the last call to {@link #cluster(double[][])}
+   */
+  int getPassCount() {
+    return myPassCount;
+  }
+
+  /**
+   * Assign each point to the closest output color, then move each output color to the center of its points.
+   *
+   * @return The number of points which have changed of cluster
+   */
   int pass() {
-    // Reset center and count
-    double[][] centers = new double[myK][3];
-    int[] count = new int[myK];
-
-    for (int pointIndex = 0; pointIndex < myInputDataSize; pointIndex++) {
-      double minDist = Double.MAX_VALUE;
-      int closestColor = 0;
-
-      // Foreach point in the input data, find the output color which is the closest
-      for (int outputIndex = 0; outputIndex < myOutputColors.length; outputIndex++) {
-        double distance = distance(myOutputColors[outputIndex], myData[pointIndex]);
-        if (distance < minDist) {
-          minDist = distance;
-          closestColor = outputIndex;
+    int chunkCount = (myInputDataSize + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    double[][][] chunkCenters = new double[chunkCount][][];
+    int[][] chunkCounts = new int[chunkCount][];
+    int[] chunkChanged = new int[chunkCount];
+
+    IntStream.range(0, chunkCount).parallel().forEach(chunk -> {
+      double[][] centers = new double[myOutputColors.length][myDimension];
+      int[] count = new int[myOutputColors.length];
+      int changed = 0;
+
+      for (int pointIndex = chunk * CHUNK_SIZE; pointIndex < Math.min(myInputDataSize, (chunk + 1) * CHUNK_SIZE); pointIndex++) {
+        double[] point = myData[pointIndex];
+        int closestColor = findClosestColor(point);
+        if (myAssignments[pointIndex] != closestColor) {
+          myAssignments[pointIndex] = closestColor;
+          changed++;
+        }
+
+        // Add the value to compute the new center (find the average)
+        for (int d = 0; d < myDimension; d++) {
+          centers[closestColor][d] += point[d];
         }
+        count[closestColor]++;
       }
+      chunkCenters[chunk] = centers;
+      chunkCounts[chunk] = count;
+      chunkChanged[chunk] = changed;
+    });
 
-      // Add the value to compute the new center (find the average)
-      centers[closestColor][0] += myData[pointIndex][0];
-      centers[closestColor][1] += myData[pointIndex][1];
-      centers[closestColor][2] += myData[pointIndex][2];
-      count[closestColor]++;
+    int changed = 0;
+    for (int chunk = 0; chunk < chunkCount; chunk++) {
+      changed += chunkChanged[chunk];
+    }
+    if (changed == 0) {
+      // Same clusters as the previous pass, so the same centers
+      return 0;
     }
-
-    int dist = 0;
 
     // Update each output color to the new center
     for (int j = 0; j < myOutputColors.length; j++) {
-      if (count[j] == 0) continue;
-      int l = (int)centers[j][0] / count[j];
-      int a = (int)centers[j][1] / count[j];
-      int b = (int)centers[j][2] / count[j];
-      double[] oldColor = new double[3];
-      System.arraycopy(myOutputColors[j], 0, oldColor, 0, 3);
-
-      myOutputColors[j][0] = l;
-      myOutputColors[j][1] = a;
-      myOutputColors[j][2] = b;
-      dist += distance(oldColor, myOutputColors[j]);
+      double[] center = new double[myDimension];
+      int count = 0;
+      for (int chunk = 0; chunk < chunkCount; chunk++) {
+        for (int d = 0; d < myDimension; d++) {
+          center[d] += chunkCenters[chunk][j][d];
+        }
+        count += chunkCounts[chunk][j];
+      }
+      if (count == 0) continue;
+      for (int d = 0; d < myDimension; d++) {
+        myOutputColors[j][d] = center[d] / count;
+      }
+    }
+    return changed;
+  }
+
+  private int findClosestColor(double[] point) {
+    double minDist = Double.MAX_VALUE;
+    int closestColor = 0;
+
+    // Find the output color which is the closest to the point
+    for (int outputIndex = 0; outputIndex < myOutputColors.length; outputIndex++) {
+      double distance = distance(myOutputColors[outputIndex], point);
+      if (distance < minDist) {
+        minDist = distance;
+        closestColor = outputIndex;
+      }
     }
-    return dist;
+    return closestColor;
   }
 
   private static double distance(double[] neighbor, double[] point) {
     double squares = 0;
     for (int i = 0; i < Math.min(neighbor.length, point.length); i++) {
-      squares += Math.pow(neighbor[i] - point[i], 2);
+      double delta = neighbor[i] - point[i];
+      squares += delta * delta;
     }
     return squares;
   }
 
+  /**
+   * k-means++ seeding: the first center is a random point, then each next center is a point picked with a probability
+   * proportional to the square of its distance to the closest center already picked.
+   *
+   * Less than k centers are picked if the input has less than k distinct points.
+   */
   void getInitialColors() {
-    HashSet<double[]> set = new HashSet<>();
-    for (int step = 256; step > 0; step /= 2) {
-      for (int i = 0; i < myInputDataSize; i += step) {
-        double[] v = myData[i];
-        set.add(v);
-        if (set.size() == myK) {
-          break;
-        }
+    if (myInputDataSize == 0 || myK <= 0) {
+      myOutputColors = new double[0][];
+      return;
+    }
+    Random random = new Random(mySeed);
+    List<double[]> centers = new ArrayList<>(myK);
+    centers.add(myData[random.nextInt(myInputDataSize)].clone());
+
+    double[] closestDistances = new double[myInputDataSize];
+    Arrays.fill(closestDistances, Double.MAX_VALUE);
+
+    while (centers.size() < myK) {
+      double[] lastCenter = centers.get(centers.size() - 1);
+      double total = 0;
+      for (int i = 0; i < myInputDataSize; i++) {
+        closestDistances[i] = Math.min(closestDistances[i], distance(lastCenter, myData[i]));
+        total += closestDistances[i];
       }
-      if (set.size() == myK) {
+      if (total == 0) {
+        // All the points are already centers
         break;
       }
+
+      double target = random.nextDouble() * total;
+      int picked = -1;
+      for (int i = 0; i < myInputDataSize; i++) {
+        if (closestDistances[i] > 0) {
+          picked = i;
+          target -= closestDistances[i];
+          if (target < 0) {
+            break;
+          }
+        }
+      }
+      centers.add(myData[picked].clone());
     }
-    double[][] c = set.toArray(new double[set.size()][3]);
-    if (myOutputColors.length < set.size()) {
-      myOutputColors = new double[set.size()][3];
-    }
-    System.arraycopy(c, 0, myOutputColors, 0, c.length);
+    myOutputColors = centers.toArray(new double[centers.size()][]);
   }
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.mockup.colorextractor;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Uniform grid over points with up to 3 coordinates, used to find the neighbors of a point without scanning all the points.
+ *
+ * The cells are slightly larger than the query radius, so the neighbors of a point are always in the cell of the point or in one
+ * of the adjacent cells.
+ */
+@SuppressWarnings("ForLoopReplaceableByForEach")
+class PointGrid {
+  private static final int MAX_DIMENSION = 3;
+  private static final int BITS_PER_DIMENSION = 21;
+  private static final long MAX_CELL = (1L << (BITS_PER_DIMENSION - 1)) - 1;
+
+  private final double[][] myPoints;
+  private final int myDimension;
+  private final double myCellSize;
+
+  /**
+   * Indices of the points in each cell, in ascending order
+   */
+  private final Map<Long, int[]> myCells;
+
+  private PointGrid(double[][] points, int dimension, double cellSize, Map<Long, int[]> cells) {
+    myPoints = points;
+    myDimension = dimension;
+    myCellSize = cellSize;
+    myCells = cells;
+  }
+
+  /**
+   * Build the grid of the given points
+   *
+   * @param points The points, all with the same number of coordinates
+   * @param radius The maximum distance between a point and the neighbors returned by {@link #query}
+   * @return The grid, or null if the points cannot be indexed in a grid (too many dimensions, coordinates out of range...)
+   */
+  @Nullable
+  static PointGrid create(@NotNull double[][] points, double radius) {
+    if (points.length == 0 || !(radius > 0)) {
+      return null;
+    }
+    int dimension = points[0].length;
+    if (dimension == 0 || dimension > MAX_DIMENSION) {
+      return null;
+    }
+    // Leave some margin so rounding errors never put a neighbor two cells away
+    double cellSize = radius * (1 + 1e-6);
+
+    long[] keys = new long[points.length];
+    Map<Long, int[]> counts = new HashMap<>();
+    for (int i = 0; i < points.length; i++) {
+      if (points[i].length != dimension) {
+        return null;
+      }
+      long key = 0;
+      for (int d = 0; d < dimension; d++) {
+        double cell = Math.floor(points[i][d] / cellSize);
+        if (!(Math.abs(cell) <= MAX_CELL)) {
+          return null;
+        }
+        key = pack(key, (long)cell);
+      }
+      keys[i] = key;
+      int[] count = counts.get(key);
+      if (count == null) {
+        counts.put(key, new int[]{1});
+      }
+      else {
+        count[0]++;
+      }
+    }
+
+    Map<Long, int[]> cells = new HashMap<>(counts.size() * 2);
+    for (Map.Entry<Long, int[]> entry : counts.entrySet()) {
+      cells.put(entry.getKey(), new int[entry.getValue()[0]]);
+      entry.getValue()[0] = 0;
+    }
+    for (int i = 0; i < points.length; i++) {
+      int[] count = counts.get(keys[i]);
+      cells.get(keys[i])[count[0]++] = i;
+    }
+    return new PointGrid(points, dimension, cellSize, cells);
+  }
+
+  private static long pack(long key, long cell) {
+    return (key << BITS_PER_DIMENSION) | (cell & ((1L << BITS_PER_DIMENSION) - 1));
+  }
+
+  /**
+   * Find the indices of the points accepted by the filter among the points in the cell of the given point and in the adjacent cells.
+   *
+   * @return The indices in ascending order
+   */
+  @NotNull
+  int[] query(int pointIndex, @NotNull Filter filter) {
+    double[] point = myPoints[pointIndex];
+    long[] cells = new long[myDimension];
+    for (int d = 0; d < myDimension; d++) {
+      cells[d] = (long)Math.floor(point[d] / myCellSize);
+    }
+
+    int[] result = new int[16];
+    int size = 0;
+    int neighborCellCount = (int)Math.pow(3, myDimension);
+    for (int n = 0; n < neighborCellCount; n++) {
+      long key = 0;
+      int offsets = n;
+      for (int d = 0; d < myDimension; d++) {
+        key = pack(key, cells[d] + offsets % 3 - 1);
+        offsets /= 3;
+      }
+      int[] cell = myCells.get(key);
+      if (cell == null) {
+        continue;
+      }
+      for (int i = 0; i < cell.length; i++) {
+        if (filter.accept(cell[i])) {
+          if (size == result.length) {
+            result = Arrays.copyOf(result, size * 2);
+          }
+          result[size++] = cell[i];
+        }
+      }
+    }
+    result = Arrays.copyOf(result, size);
+    Arrays.sort(result);
+    return result;
+  }
+
+  interface Filter {
+    boolean accept(int pointIndex);
+  }
+}
@@ -17,6 +17,8 @@ package com.android.tools.idea.uibuilder.model;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.List;
+
 /**
  * Interface implemented by listeners on model changes
  */
@@ -29,4 +31,21 @@ public interface ModelListener {
 
   /** The model changed due to a layout pass */
   void modelChangedOnLayout(@NotNull NlModel model, boolean animate);
+
+  /**
+   * The model finished rendering after updates, and only the subtrees rooted at {@code changedComponents} changed in
+   * the component hierarchy since the listeners were last notified. By default this calls {@link #modelRendered(NlModel)}.
+   */
+  default void modelRendered(@NotNull NlModel model, @NotNull List<NlComponent> changedComponents) {
+    modelRendered(model);
+  }
+
+  /**
+   * The model changed due to a layout pass, and only the subtrees rooted at {@code changedComponents} changed in the
+   * component hierarchy since the listeners were last notified. By default this calls
+   * {@link #modelChangedOnLayout(NlModel, boolean)}.
+   */
+  default void modelChangedOnLayout(@NotNull NlModel model, boolean animate, @NotNull List<NlComponent> changedComponents) {
+    modelChangedOnLayout(model, animate);
+  }
 }
\ No newline at end of file
@@ -132,6 +132,12 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
   private RenderResult myRenderResult;
   private Configuration myConfiguration;
   private final List<ModelListener> myListeners = Lists.newArrayList();
+  /**
+   * Roots of the component subtrees changed by the hierarchy updates since the listeners were last notified, or null
+   * if the listeners have to consider the whole hierarchy changed
+   */
+  @GuardedBy("myListeners")
+  private List<NlComponent> myChangedComponents;
   private List<NlComponent> myComponents = Lists.newArrayList();
   private final SelectionModel mySelectionModel;
   private LintAnnotationsModel myLintAnnotationsModel;
@@ -400,6 +406,7 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
   private void updateHierarchy(@Nullable RenderResult result) {
     if (result == null || !result.getRenderResult().isSuccess()) {
       myComponents = Collections.emptyList();
+      recordChangedComponents(null);
     }
     else {
       XmlTag rootTag = AndroidPsiUtils.getRootTagSafely(getFile());
@@ -418,6 +425,63 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
   public void updateHierarchy(@Nullable XmlTag rootTag, @NotNull Iterable<ViewInfo> rootViews) {
     ModelUpdater updater = new ModelUpdater(this);
     updater.update(rootTag, rootViews);
+    recordChangedComponents(updater.getChangedComponents());
+  }
+
+  /**
+   * Adds the subtrees changed by a hierarchy update to the ones the listeners will be notified about.
+   *
+   * @param changed the roots of the changed subtrees, or null if the whole hierarchy changed
+   */
+  private void recordChangedComponents(@Nullable List<NlComponent> changed) {
+    synchronized (myListeners) {
+      if (changed == null) {
+        myChangedComponents = null;
+      }
+      else if (myChangedComponents != null) {
+        myChangedComponents.addAll(changed);
+      }
+    }
+  }
+
+  /**
+   * Returns the roots of the component subtrees changed since the last call, leaving out the components which are
+   * no longer in the hierarchy and the ones within another changed subtree.
+   *
+   * @return the changed subtrees, or null if the whole hierarchy has to be considered changed
+   */
+  @VisibleForTesting
+  @Nullable
+  List<NlComponent> takeChangedComponents() {
+    List<NlComponent> changed;
+    synchronized (myListeners) {
+      changed = myChangedComponents;
+      myChangedComponents = new ArrayList<>();
+    }
+    List<NlComponent> components = myComponents;
+    if (changed == null || components.isEmpty()) {
+      return null;
+    }
+    NlComponent root = components.get(0);
+    Set<NlComponent> changedSet = Sets.newIdentityHashSet();
+    changedSet.addAll(changed);
+    Set<NlComponent> seen = Sets.newIdentityHashSet();
+    List<NlComponent> roots = new ArrayList<>();
+    for (NlComponent component : changed) {
+      if (!seen.add(component)) {
+        continue;
+      }
+      NlComponent ancestor = component;
+      boolean nested = false;
+      while (ancestor.getParent() != null && !nested) {
+        ancestor = ancestor.getParent();
+        nested = changedSet.contains(ancestor);
+      }
+      if (!nested && ancestor == root) {
+        roots.add(component);
+      }
+    }
+    return roots;
   }
 
   /**
@@ -663,24 +727,34 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
     synchronized (myListeners) {
       listeners = ImmutableList.copyOf(myListeners);
     }
+    // The listeners look at the whole model
+    takeChangedComponents();
 
     listeners.forEach(listener -> listener.modelChanged(this));
   }
 
   /**
-   * Calls all the listeners {@link ModelListener#modelRendered(NlModel)} method.
+   * Calls all the listeners {@link ModelListener#modelRendered(NlModel, List)} method, or
+   * {@link ModelListener#modelRendered(NlModel)} when the changed components are not known.
    */
   private void notifyListenersRenderComplete() {
     List<ModelListener> listeners;
     synchronized (myListeners) {
       listeners = ImmutableList.copyOf(myListeners);
     }
+    List<NlComponent> changed = takeChangedComponents();
 
-    listeners.forEach(listener -> listener.modelRendered(this));
+    if (changed != null) {
+      listeners.forEach(listener -> listener.modelRendered(this, changed));
+    }
+    else {
+      listeners.forEach(listener -> listener.modelRendered(this));
+    }
   }
 
   /**
-   * Calls all the listeners {@link ModelListener#modelChangedOnLayout(NlModel, boolean)} method.
+   * Calls all the listeners {@link ModelListener#modelChangedOnLayout(NlModel, boolean, List)} method, or
+   * {@link ModelListener#modelChangedOnLayout(NlModel, boolean)} when the changed components are not known.
    *
    * @param animate if true, warns the listeners to animate the layout update
    */
@@ -689,8 +763,14 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
     synchronized (myListeners) {
       listeners = ImmutableList.copyOf(myListeners);
     }
+    List<NlComponent> changed = takeChangedComponents();
 
-    listeners.forEach(listener -> listener.modelChangedOnLayout(this, animate));
+    if (changed != null) {
+      listeners.forEach(listener -> listener.modelChangedOnLayout(this, animate, changed));
+    }
+    else {
+      listeners.forEach(listener -> listener.modelChangedOnLayout(this, animate));
+    }
   }
 
   @Nullable
@@ -874,6 +954,14 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
      * Map from tags in the view render tree to the corresponding snapshots
      */
     private final Map<XmlTag, TagSnapshot> myTagToSnapshot = Maps.newHashMap();
+    /**
+     * State of the old components before the update, to find the ones changed by the update
+     */
+    private final Map<NlComponent, ComponentState> myPreviousState = Maps.newIdentityHashMap();
+    /**
+     * Roots of the subtrees changed by the update, null if not known
+     */
+    private List<NlComponent> myChangedComponents;
 
     public ModelUpdater(@NotNull NlModel model) {
       myModel = model;
@@ -948,6 +1036,32 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
       // Finally, fix up bounds: ensure that all components not found in the view
       // info hierarchy inherit position from parent
       fixBounds(root);
+
+      myChangedComponents = new ArrayList<>();
+      findChangedComponents(root);
+    }
+
+    /**
+     * @return the roots of the component subtrees changed by {@link #update}, or null if it is not known
+     */
+    @Nullable
+    public List<NlComponent> getChangedComponents() {
+      return myChangedComponents;
+    }
+
+    /**
+     * Finds the topmost components which are new or differ from their previous state. The components below them are
+     * not compared, their whole subtree is reported as changed.
+     */
+    private void findChangedComponents(@NotNull NlComponent component) {
+      ComponentState previous = myPreviousState.get(component);
+      if (previous == null || !previous.matches(component)) {
+        myChangedComponents.add(component);
+        return;
+      }
+      for (NlComponent child : component.getChildren()) {
+        findChangedComponents(child);
+      }
     }
 
     private static void fixBounds(NlComponent root) {
@@ -1129,6 +1243,7 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
 
       recordComponentMapping(tag, component);
       mySnapshotToComponent.put(component.getSnapshot(), component);
+      myPreviousState.put(component, new ComponentState(component));
 
       for (NlComponent child : component.getChildren()) {
         gatherTagsAndSnapshots(child);
@@ -1239,6 +1354,51 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
     }
   }
 
+  /**
+   * The properties of a component compared by {@link ModelUpdater} to find the components changed by an update
+   */
+  private static class ComponentState {
+    private final XmlTag myTag;
+    private final TagSnapshot mySnapshot;
+    private final int myX;
+    private final int myY;
+    private final int myWidth;
+    private final int myHeight;
+    private final List<NlComponent> myChildren;
+
+    private ComponentState(@NotNull NlComponent component) {
+      myTag = component.getTag();
+      mySnapshot = component.getSnapshot();
+      myX = component.x;
+      myY = component.y;
+      myWidth = component.w;
+      myHeight = component.h;
+      myChildren = ImmutableList.copyOf(component.getChildren());
+    }
+
+    private boolean matches(@NotNull NlComponent component) {
+      if (myTag != component.getTag() ||
+          myX != component.x || myY != component.y || myWidth != component.w || myHeight != component.h) {
+        return false;
+      }
+      List<NlComponent> children = component.getChildren();
+      if (children.size() != myChildren.size()) {
+        return false;
+      }
+      for (int i = 0; i < children.size(); i++) {
+        if (children.get(i) != myChildren.get(i)) {
+          return false;
+        }
+      }
+      // Each render creates new snapshots, compare their tag name and attributes
+      TagSnapshot snapshot = component.getSnapshot();
+      if (mySnapshot == null || snapshot == null) {
+        return mySnapshot == snapshot;
+      }
+      return mySnapshot == snapshot || mySnapshot.getSignature() == snapshot.getSignature();
+    }
+  }
+
   @Nullable
   public List<NlComponent> findByOffset(int offset) {
     XmlTag tag = PsiTreeUtil.findElementOfClassAtOffset(getFile(), offset, XmlTag.class, false);
@@ -1978,6 +2138,11 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
     }
     myModelVersion.increase(reason);
     myModificationTrigger = reason;
+    if (reason != ChangeType.EDIT) {
+      // The components were edited directly, or resources, build or configuration changed what any of them look like,
+      // so the next hierarchy update can't tell what changed. Document edits are found by the hierarchy update itself.
+      recordChangedComponents(null);
+    }
     requestModelUpdate();
   }
 
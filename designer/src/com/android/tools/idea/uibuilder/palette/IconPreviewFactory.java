@@ -50,12 +50,13 @@ import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 
 import static com.android.SdkConstants.*;
@@ -101,6 +102,10 @@ public class IconPreviewFactory implements Disposable {
 
   private RenderTask myRenderTask;
 
+  /** The atlas of the last configuration previews were requested for, and its file */
+  private PreviewAtlas myAtlas;
+  private File myAtlasFile;
+
   @Nullable
   public BufferedImage getImage(@NotNull Palette.Item item, @NotNull Configuration configuration, double scale) {
     BufferedImage image = readImage(item.getId(), configuration);
@@ -200,29 +205,34 @@ public class IconPreviewFactory implements Disposable {
                              Math.min(view.getBottom() + shadowIncrement, image.getHeight()));
   }
 
-  private static BufferedImage readImage(@NotNull String id, @NotNull Configuration configuration) {
-    File file = new File(getPreviewCacheDirForConfiguration(configuration), id + DOT_PNG);
-    if (!file.exists()) {
-      return null;
-    }
-    try {
-      return ImageIO.read(file);
-    }
-    catch (Throwable ignore) {
-      // corrupt cached image, e.g. I've seen
-      //  java.lang.IndexOutOfBoundsException
-      //  at java.io.RandomAccessFile.readBytes(Native Method)
-      //  at java.io.RandomAccessFile.read(RandomAccessFile.java:338)
-      //  at javax.imageio.stream.FileImageInputStream.read(FileImageInputStream.java:101)
-      //  at com.sun.imageio.plugins.common.SubImageInputStream.read(SubImageInputStream.java:46)
+  @Nullable
+  private BufferedImage readImage(@NotNull String id, @NotNull Configuration configuration) {
+    File file = getAtlasFile(configuration);
+    if (myAtlas == null || !file.equals(myAtlasFile)) {
+      myAtlas = null;
+      myAtlasFile = file;
+      if (!file.exists()) {
+        return null;
+      }
+      try {
+        myAtlas = PreviewAtlas.read(file);
+      }
+      catch (IOException e) {
+        // corrupt cached atlas, the previews will be generated again
+        LOG.debug(e);
+        FileUtil.delete(file);
+        return null;
+      }
     }
-    return null;
+    return myAtlas.getImage(id);
   }
 
   /**
    * Drop the preview cache for this configuration.
    */
   public void dropCache() {
+    myAtlas = null;
+    myAtlasFile = null;
     FileUtil.delete(getPreviewCacheDir());
   }
 
@@ -243,7 +253,8 @@ public class IconPreviewFactory implements Disposable {
 
   /**
    * Load preview images for each component into a file cache.
-   * Each combination of theme, device density, and API level will have its own cache.
+   * Each combination of theme, device density, and API level will have its own cache, holding the images of all
+   * the components in a single {@link PreviewAtlas}.
    *
    * @param configuration a hardware configuration to generate previews for
    * @param palette a palette with the components to generate previews of
@@ -258,28 +269,41 @@ public class IconPreviewFactory implements Disposable {
                boolean reload,
                @Nullable final List<String> requestedIds,
                @Nullable final List<String> generatedIds) {
-    File cacheDir = getPreviewCacheDirForConfiguration(configuration);
-    String[] files = cacheDir.list();
-    if (files != null && files.length > 0) {
+    File atlasFile = getAtlasFile(configuration);
+    if (atlasFile.exists() && !reload) {
       // The previews have already been generated.
-      if (!reload) {
-        return false;
-      }
-      FileUtil.delete(cacheDir);
+      return false;
+    }
+    if (atlasFile.equals(myAtlasFile)) {
+      myAtlas = null;
+      myAtlasFile = null;
     }
+    // Also removes the individual images cached by older versions
+    FileUtil.delete(atlasFile.getParentFile());
+    Map<String, BufferedImage> images = new LinkedHashMap<>();
     ApplicationManager.getApplication().runReadAction(new Computable<Void>() {
       @Override
       public Void compute() {
         List<StringBuilder> sources = Lists.newArrayList();
         loadSources(sources, requestedIds, palette.getItems());
+        RenderTask renderTask = getRenderTask(configuration);
         for (StringBuilder source : sources) {
           String preview = String.format(LINEAR_LAYOUT, CONTAINER_ID, source);
-          addResultToCache(renderImage(myExecutorService, myRenderTimeoutSeconds, getRenderTask(configuration), preview), generatedIds,
-                           configuration);
+          addResultToCache(renderImage(myExecutorService, myRenderTimeoutSeconds, renderTask, preview), generatedIds, images);
         }
         return null;
       }
     });
+    if (!images.isEmpty()) {
+      //noinspection ResultOfMethodCallIgnored
+      atlasFile.getParentFile().mkdirs();
+      try {
+        PreviewAtlas.write(atlasFile, images);
+      }
+      catch (IOException e) {
+        LOG.warn("Could not save the palette previews", e);
+      }
+    }
     return true;
   }
 
@@ -320,6 +344,11 @@ public class IconPreviewFactory implements Disposable {
       "image-cache");
   }
 
+  @NotNull
+  private static File getAtlasFile(@NotNull Configuration configuration) {
+    return new File(getPreviewCacheDirForConfiguration(configuration), PreviewAtlas.FILE_NAME);
+  }
+
   @NotNull
   private static File getPreviewCacheDirForConfiguration(@NotNull Configuration configuration) {
     int density = configuration.getDensity().getDpiValue();
@@ -366,11 +395,17 @@ public class IconPreviewFactory implements Disposable {
   }
 
   @Nullable
-  private static BufferedImage addResultToCache(@Nullable RenderResult result, @Nullable List<String> ids, @NotNull Configuration configuration) {
+  private static BufferedImage addResultToCache(@Nullable RenderResult result,
+                                                @Nullable List<String> ids,
+                                                @NotNull Map<String, BufferedImage> images) {
     if (result == null || result.getRenderedImage() == null || result.getRootViews().isEmpty()) {
       return null;
     }
-    ImageAccumulator accumulator = new ImageAccumulator(result.getRenderedImage().getCopy(), ids, configuration);
+    BufferedImage image = result.getRenderedImage().getCopy();
+    if (image == null) {
+      return null;
+    }
+    ImageAccumulator accumulator = new ImageAccumulator(image, ids, images);
     accumulator.run(result.getRootViews(), 0, null);
     return null;
   }
@@ -417,14 +452,14 @@ public class IconPreviewFactory implements Disposable {
   private static class ImageAccumulator {
     private final BufferedImage myImage;
     private final List<String> myIds;
-    private final File myCacheDir;
+    private final Map<String, BufferedImage> myImages;
     private final int myHeight;
     private final int myWidth;
 
-    private ImageAccumulator(@NotNull BufferedImage image, @Nullable List<String> ids, @NotNull Configuration configuration) {
+    private ImageAccumulator(@NotNull BufferedImage image, @Nullable List<String> ids, @NotNull Map<String, BufferedImage> images) {
       myImage = image;
       myIds = ids;
-      myCacheDir = getPreviewCacheDirForConfiguration(configuration);
+      myImages = images;
       myHeight = image.getRaster().getHeight();
       myWidth = image.getRaster().getWidth();
     }
@@ -443,7 +478,7 @@ public class IconPreviewFactory implements Disposable {
               if (id == null) {
                 id = tag.getName();
               }
-              saveImage(id, image);
+              myImages.put(id, image);
               if (myIds != null) {
                 myIds.add(id);
               }
@@ -470,23 +505,6 @@ public class IconPreviewFactory implements Disposable {
       }
       return id;
     }
-
-
-    private void saveImage(@NotNull String id, @NotNull BufferedImage image) {
-      //noinspection ResultOfMethodCallIgnored
-      myCacheDir.mkdirs();
-      File file = new File(myCacheDir, id + DOT_PNG);
-      try {
-        ImageIO.write(image, "PNG", file);
-      }
-      catch (IOException e) {
-        // pass
-        if (file.exists()) {
-          //noinspection ResultOfMethodCallIgnored
-          file.delete();
-        }
-      }
-    }
   }
 
   private interface RenderResultHandler {
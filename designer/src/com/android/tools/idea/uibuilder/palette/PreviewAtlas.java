@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.palette;
+
+import com.android.annotations.VisibleForTesting;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.List;
+
+/**
+ * The preview images of all the palette items for one configuration, packed in a single file.
+ * <p>
+ * Layout of the file (all numbers big-endian):
+ * <pre>
+ *   int magic, int version, int width, int height
+ *   int imageCount, { int byteLength, utf-8 bytes of the id, int x, int y, int width, int height }*
+ *   int argb[width * height]                                 -- the atlas pixels, row by row
+ * </pre>
+ * The file is read in a single heap buffer and is not kept open, so it can be deleted or replaced while the atlas is in use
+ * (a memory mapped file can't be deleted on Windows). The pixels of an image are only copied out of the buffer the first time
+ * the image is requested.
+ */
+final class PreviewAtlas {
+  static final String FILE_NAME = "preview-atlas.bin";
+
+  private static final int MAGIC = 0x50524154; // "PRAT"
+  @VisibleForTesting
+  static final int VERSION = 1;
+  /** Minimum width of the atlas, the images are packed in rows of this width */
+  private static final int MIN_WIDTH = 1024;
+
+  private final ByteBuffer myBuffer;
+  private final int myWidth;
+  private final int myPixelOffset;
+  private final Map<String, Rectangle> myBounds;
+  private final Map<String, BufferedImage> myImages = new HashMap<>();
+
+  private PreviewAtlas(@NotNull ByteBuffer buffer, int width, int pixelOffset, @NotNull Map<String, Rectangle> bounds) {
+    myBuffer = buffer;
+    myWidth = width;
+    myPixelOffset = pixelOffset;
+    myBounds = bounds;
+  }
+
+  @NotNull
+  Set<String> getIds() {
+    return Collections.unmodifiableSet(myBounds.keySet());
+  }
+
+  /**
+   * @return the preview image of the given palette item, or null if the atlas doesn't have one
+   */
+  @Nullable
+  synchronized BufferedImage getImage(@NotNull String id) {
+    BufferedImage image = myImages.get(id);
+    if (image == null) {
+      Rectangle bounds = myBounds.get(id);
+      if (bounds == null) {
+        return null;
+      }
+      //noinspection UndesirableClassUsage
+      image = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+      int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+      ByteBuffer buffer = myBuffer.duplicate();
+      buffer.position(myPixelOffset);
+      IntBuffer atlasPixels = buffer.slice().asIntBuffer();
+      for (int row = 0; row < bounds.height; row++) {
+        atlasPixels.position((bounds.y + row) * myWidth + bounds.x);
+        atlasPixels.get(pixels, row * bounds.width, bounds.width);
+      }
+      myImages.put(id, image);
+    }
+    return image;
+  }
+
+  /**
+   * Packs the given images in an atlas file, replacing any previous atlas.
+   */
+  static void write(@NotNull File atlasFile, @NotNull Map<String, BufferedImage> images) throws IOException {
+    // Shelf packing: the images sorted by height are placed left to right in rows
+    List<String> ids = new ArrayList<>(images.keySet());
+    ids.sort((id1, id2) -> Integer.compare(images.get(id2).getHeight(), images.get(id1).getHeight()));
+    int width = MIN_WIDTH;
+    for (BufferedImage image : images.values()) {
+      width = Math.max(width, image.getWidth());
+    }
+    Map<String, Rectangle> bounds = new LinkedHashMap<>();
+    List<List<String>> shelves = new ArrayList<>();
+    int x = width;
+    int shelfY = 0;
+    int shelfHeight = 0;
+    for (String id : ids) {
+      BufferedImage image = images.get(id);
+      if (x + image.getWidth() > width) {
+        // Start a new shelf, as high as its first image
+        shelves.add(new ArrayList<>());
+        shelfY += shelfHeight;
+        shelfHeight = image.getHeight();
+        x = 0;
+      }
+      bounds.put(id, new Rectangle(x, shelfY, image.getWidth(), image.getHeight()));
+      shelves.get(shelves.size() - 1).add(id);
+      x += image.getWidth();
+    }
+    int height = shelfY + shelfHeight;
+
+    File tempFile = new File(atlasFile.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(width);
+      out.writeInt(height);
+      out.writeInt(bounds.size());
+      for (Map.Entry<String, Rectangle> entry : bounds.entrySet()) {
+        byte[] bytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        Rectangle rect = entry.getValue();
+        out.writeInt(rect.x);
+        out.writeInt(rect.y);
+        out.writeInt(rect.width);
+        out.writeInt(rect.height);
+      }
+
+      // Write the pixels a line at a time, without building the whole atlas image in memory
+      int[] line = new int[width];
+      ByteBuffer lineBytes = ByteBuffer.allocate(width * 4);
+      for (List<String> shelf : shelves) {
+        for (int y = 0; y < bounds.get(shelf.get(0)).height; y++) {
+          Arrays.fill(line, 0);
+          for (String id : shelf) {
+            Rectangle rect = bounds.get(id);
+            if (y < rect.height) {
+              images.get(id).getRGB(0, y, rect.width, 1, line, rect.x, width);
+            }
+          }
+          lineBytes.clear();
+          lineBytes.asIntBuffer().put(line);
+          out.write(lineBytes.array());
+        }
+      }
+    }
+    if (!FileUtil.delete(atlasFile) || !tempFile.renameTo(atlasFile)) {
+      FileUtil.delete(tempFile);
+      throw new IOException("Could not replace " + atlasFile);
+    }
+  }
+
+  /**
+   * Reads an atlas written by {@link #write}. The file is closed when this returns.
+   *
+   * @throws IOException if the atlas can't be read, or was written with a different format version
+   */
+  @NotNull
+  static PreviewAtlas read(@NotNull File atlasFile) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(atlasFile.toPath()));
+    try {
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        throw new IOException("Unexpected preview atlas format in " + atlasFile);
+      }
+      int width = buffer.getInt();
+      int height = buffer.getInt();
+      int count = buffer.getInt();
+      Map<String, Rectangle> bounds = new HashMap<>();
+      for (int i = 0; i < count; i++) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        Rectangle rect = new Rectangle(buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+        if (rect.x < 0 || rect.y < 0 || rect.width <= 0 || rect.height <= 0 ||
+            rect.x + rect.width > width || rect.y + rect.height > height) {
+          throw new IOException("Corrupt preview atlas " + atlasFile);
+        }
+        bounds.put(new String(bytes, StandardCharsets.UTF_8), rect);
+      }
+      if (buffer.remaining() != (long)width * height * 4) {
+        throw new IOException("Truncated preview atlas " + atlasFile);
+      }
+      return new PreviewAtlas(buffer, width, buffer.position(), bounds);
+    }
+    catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+      throw new IOException("Truncated or corrupt preview atlas " + atlasFile, e);
+    }
+  }
+}
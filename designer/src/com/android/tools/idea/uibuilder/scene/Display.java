@@ -18,18 +18,50 @@ package com.android.tools.idea.uibuilder.scene;
 import com.android.tools.idea.uibuilder.handlers.constraint.ConstraintLayoutHandler;
 import com.android.tools.idea.uibuilder.scene.draw.DisplayList;
 import com.android.tools.idea.uibuilder.surface.DesignSurface;
+import com.android.tools.sherpa.drawing.ColorSet;
+import com.intellij.openapi.diagnostic.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Display a layout Scene
+ *
+ * The display list is painted in a retained layer. When the list is rebuilt, it is compared with the previous one and only
+ * the area painted differently is painted again in the layer, along with the animated commands.
  */
 public class Display {
+  private static final Logger LOG = Logger.getInstance(Display.class);
+  private static final int STATISTICS_FRAMES = 100;
+  private static final int MAX_LAYER_PIXELS = 4096 * 4096;
+
   private long mTime;
   private DisplayList myDisplayList = new DisplayList();
+  private DisplayList myPreviousDisplayList = new DisplayList();
   private boolean myNeedsDisplayListRebuild;
   double myScale = 0;
+
+  // retained layer, in device pixels
+  private BufferedImage myLayer;
+  private final Rectangle myLayerBounds = new Rectangle();
+  private double myLayerScale;
+  private ColorSet myLayerColorSet;
+  private boolean myLayerValid;
+  private Rectangle myDirtyBounds = new Rectangle(); // area of the layer to paint again, in swing coordinates
+  private Rectangle myAnimatedBounds; // painted on every frame, null if not known
+
+  // frame statistics
+  private int myFrameCount;
+  private int myPartialFrameCount;
+  private long myBuildNanos;
+  private long myPaintNanos;
+  private long myPaintedArea;
+  private long myLayerArea;
+
   void reLayout() {
     myNeedsDisplayListRebuild = true;
   }
@@ -44,14 +76,25 @@ public class Display {
       myNeedsDisplayListRebuild = true;
     }
     myNeedsDisplayListRebuild |= myDisplayList.getCommands().size() == 0;
+    long start = System.nanoTime();
     if (myNeedsDisplayListRebuild) {
+      DisplayList previous = myDisplayList;
+      myDisplayList = myPreviousDisplayList;
+      myPreviousDisplayList = previous;
       myDisplayList.clear();
       myNeedsDisplayListRebuild = scene.buildDisplayList(myDisplayList, mTime, sceneContext);
       scene.clearNeedsRebuildList();
+      addDirtyBounds(myDisplayList.getChangedBounds(myPreviousDisplayList));
+      myAnimatedBounds = myDisplayList.getAnimatedBounds();
     }
+    long built = System.nanoTime();
     if (ConstraintLayoutHandler.USE_SCENE_INTERACTION) {
-      draw(sceneContext, g, myDisplayList);
+      if (!drawLayer(sceneContext, g)) {
+        myLayerValid = false;
+        draw(sceneContext, g, myDisplayList);
+      }
     }
+    addFrame(built - start, System.nanoTime() - built);
     if (myNeedsDisplayListRebuild) {
       DesignSurface designSurface = sceneContext.getSurface();
       if (designSurface != null) {
@@ -64,4 +107,115 @@ public class Display {
     sceneContext.setTime(System.currentTimeMillis());
     list.paint(g, sceneContext);
   }
+
+  private void addDirtyBounds(@Nullable Rectangle bounds) {
+    if (bounds == null) {
+      myLayerValid = false;
+    }
+    else if (!bounds.isEmpty()) {
+      if (myDirtyBounds.isEmpty()) {
+        myDirtyBounds.setBounds(bounds);
+      }
+      else {
+        myDirtyBounds.add(bounds);
+      }
+    }
+  }
+
+  /**
+   * Paint the display list through the retained layer, painting again only the dirty area of the layer
+   *
+   * @return false if the layer cannot be used for this frame
+   */
+  private boolean drawLayer(@NotNull SceneContext sceneContext, @NotNull Graphics2D g) {
+    AffineTransform transform = g.getTransform();
+    if ((transform.getType() & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE)) != 0) {
+      return false;
+    }
+    // only keep the layer when its pixels are aligned with the device pixels
+    double scale = transform.getScaleX();
+    if (scale != Math.rint(scale) || transform.getTranslateX() != Math.rint(transform.getTranslateX()) ||
+        transform.getTranslateY() != Math.rint(transform.getTranslateY()) || scale < 1) {
+      return false;
+    }
+    Rectangle bounds = myDisplayList.getBounds();
+    if (bounds == null || bounds.isEmpty() || (long)bounds.width * bounds.height * scale * scale > MAX_LAYER_PIXELS) {
+      return false;
+    }
+    if (myAnimatedBounds == null) {
+      myLayerValid = false;
+    }
+    else {
+      addDirtyBounds(myAnimatedBounds);
+    }
+    if (!bounds.equals(myLayerBounds) || scale != myLayerScale || sceneContext.getColorSet() != myLayerColorSet) {
+      myLayerValid = false;
+    }
+
+    int width = (int)(bounds.width * scale);
+    int height = (int)(bounds.height * scale);
+    if (myLayer == null || myLayer.getWidth() != width || myLayer.getHeight() != height) {
+      myLayer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+      myLayerValid = false;
+    }
+    Rectangle dirty = myLayerValid ? myDirtyBounds.intersection(bounds) : bounds;
+    if (!dirty.isEmpty()) {
+      Graphics2D lg = myLayer.createGraphics();
+      try {
+        lg.setRenderingHints(g.getRenderingHints());
+        lg.scale(scale, scale);
+        lg.translate(-bounds.x, -bounds.y);
+        lg.setComposite(AlphaComposite.Clear);
+        lg.fill(dirty);
+        lg.setComposite(AlphaComposite.SrcOver);
+        lg.clip(dirty);
+        draw(sceneContext, lg, myDisplayList);
+      }
+      finally {
+        lg.dispose();
+      }
+    }
+    if (myLayerValid) {
+      myPartialFrameCount++;
+    }
+    myPaintedArea += (long)dirty.width * dirty.height;
+    myLayerArea += (long)bounds.width * bounds.height;
+    myLayerBounds.setBounds(bounds);
+    myLayerScale = scale;
+    myLayerColorSet = sceneContext.getColorSet();
+    myLayerValid = true;
+    myDirtyBounds = new Rectangle();
+
+    Graphics2D bg = (Graphics2D)g.create();
+    try {
+      bg.setTransform(new AffineTransform());
+      bg.drawImage(myLayer, (int)Math.round(transform.getTranslateX() + bounds.x * scale),
+                   (int)Math.round(transform.getTranslateY() + bounds.y * scale), null);
+    }
+    finally {
+      bg.dispose();
+    }
+    return true;
+  }
+
+  private void addFrame(long buildNanos, long paintNanos) {
+    myFrameCount++;
+    myBuildNanos += buildNanos;
+    myPaintNanos += paintNanos;
+    if (myFrameCount < STATISTICS_FRAMES) {
+      return;
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(String.format("%1$d frames: %2$.2f ms building, %3$.2f ms painting per frame, %4$d partial repaints, %5$d%% of the layer painted",
+                              myFrameCount, TimeUnit.NANOSECONDS.toMicros(myBuildNanos) / 1000. / myFrameCount,
+                              TimeUnit.NANOSECONDS.toMicros(myPaintNanos) / 1000. / myFrameCount, myPartialFrameCount,
+                              myLayerArea == 0 ? 100 : myPaintedArea * 100 / myLayerArea));
+    }
+    myFrameCount = 0;
+    myPartialFrameCount = 0;
+    myBuildNanos = 0;
+    myPaintNanos = 0;
+    myPaintedArea = 0;
+    myLayerArea = 0;
+  }
 }
@@ -379,6 +379,62 @@ public class Scene implements ModelListener, SelectionListener {
     }
   }
 
+  /**
+   * Update the Scene with the given subtrees of the NlModel, the rest of its components being unchanged since the
+   * Scene was last updated. Falls back to {@link #updateFrom(NlModel)} if the Scene doesn't have the changed subtrees.
+   *
+   * @param model             the NlModel to update from
+   * @param changedComponents the roots of the changed subtrees
+   */
+  private void updateFrom(@NotNull NlModel model, @NotNull List<NlComponent> changedComponents) {
+    List<NlComponent> components = model.getComponents();
+    if (myRoot == null || components.isEmpty() || myRoot.getNlComponent() != components.get(0).getRoot()) {
+      updateFrom(model);
+      return;
+    }
+    List<SceneComponent> candidates = new ArrayList<>();
+    for (NlComponent component : changedComponents) {
+      SceneComponent sceneComponent = mySceneComponents.get(component);
+      if (sceneComponent == null) {
+        updateFrom(model);
+        return;
+      }
+      collectSubtree(sceneComponent, candidates);
+    }
+    if (candidates.isEmpty()) {
+      return;
+    }
+    for (SceneComponent component : candidates) {
+      component.used = false;
+    }
+    if (!isManualDpiFactor) {
+      myDpiFactor = model.getConfiguration().getDensity().getDpiValue() / 160f;
+    }
+    for (NlComponent component : changedComponents) {
+      updateFromComponent(component);
+    }
+    for (SceneComponent component : candidates) {
+      if (!component.used) {
+        component.removeFromParent();
+        mySceneComponents.remove(component.getNlComponent());
+      }
+    }
+    if (myScreenView != null && myScreenView.getSelectionModel().isEmpty()) {
+      addTargets(myRoot);
+    }
+    // Makes sure the selection is correct
+    if (myScreenView != null) {
+      selectionChanged(myScreenView.getSelectionModel().getSelection(), false);
+    }
+  }
+
+  private static void collectSubtree(@NotNull SceneComponent component, @NotNull List<SceneComponent> components) {
+    components.add(component);
+    for (SceneComponent child : component.getChildren()) {
+      collectSubtree(child, components);
+    }
+  }
+
   /**
    * Update (and if necessary, create) the SceneComponent paired to the given NlComponent
    *
@@ -507,6 +563,21 @@ public class Scene implements ModelListener, SelectionListener {
     myAnimate = previous;
   }
 
+  @Override
+  public void modelRendered(@NotNull NlModel model, @NotNull List<NlComponent> changedComponents) {
+    ApplicationManager.getApplication().runReadAction(() -> {
+      updateFrom(model, changedComponents);
+    });
+  }
+
+  @Override
+  public void modelChangedOnLayout(@NotNull NlModel model, boolean animate, @NotNull List<NlComponent> changedComponents) {
+    boolean previous = myAnimate;
+    myAnimate = animate;
+    updateFrom(model, changedComponents);
+    myAnimate = previous;
+  }
+
   //endregion
   /////////////////////////////////////////////////////////////////////////////
   //region Painting
@@ -667,11 +738,34 @@ public class Scene implements ModelListener, SelectionListener {
   //region Mouse Handling
   /////////////////////////////////////////////////////////////////////////////
 
+  /**
+   * Called when components or targets are added or removed: the hit listeners get the whole tree again on their
+   * next search
+   */
+  void hitRegionsChanged() {
+    myHoverListener.invalidate();
+    myHitListener.invalidate();
+  }
+
+  /**
+   * Called when a component has been laid out, to move it and its targets in the hit listeners
+   */
+  void hitRegionsMoved(@NotNull SceneComponent component) {
+    myHoverListener.move(component);
+    myHitListener.move(component);
+  }
+
   /**
    * Hit listener implementation (used for hover / click detection)
    */
   class HitListener implements ScenePicker.HitElementListener {
     private ScenePicker myPicker = new ScenePicker();
+    // The picker keeps the components and targets of this root, in the swing coordinates of this transform
+    private SceneComponent myPickerRoot;
+    private SceneContext myPickerTransform;
+    private double myPickerScale;
+    private int myPickerOriginX;
+    private int myPickerOriginY;
     double myClosestComponentDistance = Double.MAX_VALUE;
     double myClosestTargetDistance = Double.MAX_VALUE;
     ArrayList<SceneComponent> myHitComponents = new ArrayList<>();
@@ -689,11 +783,57 @@ public class Scene implements ModelListener, SelectionListener {
       myHitTargets.clear();
       myClosestComponentDistance = Double.MAX_VALUE;
       myClosestTargetDistance = Double.MAX_VALUE;
-      myPicker.reset();
-      root.addHit(transform, myPicker);
+      if (!isPickerValid(transform, root)) {
+        myPicker.reset();
+        root.addHit(transform, myPicker);
+        myPickerRoot = root;
+        myPickerTransform = transform;
+        myPickerScale = transform.getScale();
+        myPickerOriginX = transform.getSwingX(0);
+        myPickerOriginY = transform.getSwingY(0);
+      }
       myPicker.find(transform.getSwingX(x), transform.getSwingY(y));
     }
 
+    private boolean isPickerValid(@NotNull SceneContext transform, @NotNull SceneComponent root) {
+      return myPickerRoot == root
+             && myPickerTransform == transform
+             && myPickerScale == transform.getScale()
+             && myPickerOriginX == transform.getSwingX(0)
+             && myPickerOriginY == transform.getSwingY(0);
+    }
+
+    /**
+     * Empties the picker, which gets the whole tree again on the next search
+     */
+    void invalidate() {
+      if (myPickerRoot != null) {
+        myPickerRoot = null;
+        myPickerTransform = null;
+        myPicker.reset();
+      }
+    }
+
+    /**
+     * Moves the rectangles of a component and of its targets in the picker
+     */
+    void move(@NotNull SceneComponent component) {
+      if (myPickerRoot != null && !component.moveHit(myPickerTransform, myPicker)) {
+        invalidate();
+      }
+    }
+
+    @Override
+    public boolean accept(Object candidate) {
+      if (candidate instanceof SceneComponent) {
+        ((SceneComponent)candidate).clearHover();
+      }
+      else if (candidate instanceof Target) {
+        return allowsTarget((Target)candidate);
+      }
+      return true;
+    }
+
     @Override
     public void over(Object over, double dist) {
       if (over instanceof Target) {
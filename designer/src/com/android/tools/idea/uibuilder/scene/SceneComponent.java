@@ -226,6 +226,7 @@ public class SceneComponent {
 
   public void removeTarget(int pos) {
     myTargets.remove(pos);
+    myScene.hitRegionsChanged();
   }
 
   /**
@@ -452,6 +453,7 @@ public class SceneComponent {
     if (myViewGroupHandler != null) {
       myViewGroupHandler.addTargets(this, isParent);
     }
+    myScene.hitRegionsChanged();
   }
 
   /**
@@ -489,6 +491,7 @@ public class SceneComponent {
   public Target addTarget(@NotNull Target target) {
     target.setComponent(this);
     myTargets.add(target);
+    myScene.hitRegionsChanged();
     return target;
   }
 
@@ -496,6 +499,7 @@ public class SceneComponent {
     child.removeFromParent();
     child.setParent(this);
     myChildren.add(child);
+    myScene.hitRegionsChanged();
   }
 
   public void removeFromParent() {
@@ -506,6 +510,7 @@ public class SceneComponent {
 
   private void remove(@NotNull SceneComponent component) {
     myChildren.remove(component);
+    myScene.hitRegionsChanged();
   }
 
   /**
@@ -573,6 +578,7 @@ public class SceneComponent {
       Target target = myTargets.get(i);
       needsRepaint |= target.layout(sceneTransform, myCurrentLeft, myCurrentTop, myCurrentRight, myCurrentBottom);
     }
+    myScene.hitRegionsMoved(this);
     int childCount = myChildren.size();
     for (int i = 0; i < childCount; i++) {
       SceneComponent child = myChildren.get(i);
@@ -588,10 +594,11 @@ public class SceneComponent {
     rectangle.height = myCurrentBottom - myCurrentTop;
   }
 
+  /**
+   * Adds this component, its targets and its children to the picker. They stay in the picker until the components
+   * or the targets of the scene change, and move with {@link #moveHit} when the component is laid out.
+   */
   public void addHit(@NotNull SceneContext sceneTransform, @NotNull ScenePicker picker) {
-    if (myDrawState == DrawState.HOVER) {
-      myDrawState = DrawState.NORMAL;
-    }
     picker.addRect(this, 0, sceneTransform.getSwingX(myCurrentLeft),
                    sceneTransform.getSwingY(myCurrentTop),
                    sceneTransform.getSwingX(myCurrentRight),
@@ -608,8 +615,38 @@ public class SceneComponent {
     }
   }
 
+  /**
+   * Moves the rectangles of this component and of its targets in the picker to their current bounds
+   *
+   * @return false if the component or one of its targets hasn't been added to the picker
+   */
+  public boolean moveHit(@NotNull SceneContext sceneTransform, @NotNull ScenePicker picker) {
+    boolean moved = picker.moveRect(this, 0, sceneTransform.getSwingX(myCurrentLeft),
+                                    sceneTransform.getSwingY(myCurrentTop),
+                                    sceneTransform.getSwingX(myCurrentRight),
+                                    sceneTransform.getSwingY(myCurrentBottom));
+    int num = myTargets.size();
+    for (int i = 0; i < num; i++) {
+      Target target = myTargets.get(i);
+      moved &= target.moveHit(sceneTransform, picker);
+    }
+    return moved;
+  }
+
+  /**
+   * Called when the component is found under the mouse, before it is tested: the hover state is set again
+   * on the closest component once the search is done.
+   */
+  void clearHover() {
+    if (myDrawState == DrawState.HOVER) {
+      myDrawState = DrawState.NORMAL;
+    }
+  }
+
   public void buildDisplayList(long time, @NotNull DisplayList list, SceneContext sceneContext) {
+    Object previousOwner = list.setOwner(this);
     myDecorator.buildList(list, time, sceneContext, this);
+    list.setOwner(previousOwner);
   }
 
   //endregion
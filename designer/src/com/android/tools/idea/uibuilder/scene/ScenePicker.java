@@ -16,9 +16,15 @@
 package com.android.tools.idea.uibuilder.scene;
 
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 
 /**
  * This class provides efficient detection of many objects
+ *
+ * The bounding rectangles of the objects are kept in a uniform grid, so a search only tests the objects
+ * around the location. The objects stay registered until {@link #reset()}, and a rectangle added with
+ * {@link #addRect} can be moved with {@link #moveRect}, which only updates the cells it leaves and enters.
  */
 public class ScenePicker {
   private final static int MAX_DATA_SIZE = 10;
@@ -32,6 +38,14 @@ public class ScenePicker {
   private Object[] mObjects = new Object[INITAL_OBJECT_STORE];
   HitElementListener mHitElementListener;
 
+  private final static int CELL_SIZE = 64;
+  private final static int MAX_CELLS_PER_OBJECT = 256;
+  private boolean mUseIndex = true;
+  private final HashMap<Long, Cell> mCells = new HashMap<>();
+  private final Cell mLargeObjects = new Cell(); // objects covering too many cells, always tested
+  private final IdentityHashMap<Object, Integer> mRectangles = new IdentityHashMap<>(); // rectangles that can be moved
+  private int[] mCandidates = new int[INITAL_OBJECT_STORE];
+
   private int mObjectCount = 0;
   private final static int OBJECT_LINE = 0;
   private final static int OBJECT_POINT = 1;
@@ -57,21 +71,132 @@ public class ScenePicker {
    * @param y location y
    */
   public void find(int x, int y) {
-    for (int i = 0; i < mObjectCount; i++) {
-      int p = i * 4;
-      int x1 = mRect[p++];
-      int y1 = mRect[p++];
-      int x2 = mRect[p++];
-      int y2 = mRect[p];
-      if (inRect(x, y, x1, y1, x2, y2)) {
-        SelectionEngine selector = myEngines[mTypes[i]];
-        if (selector.inRange(i, x, y)) {
-          mHitElementListener.over(mObjects[i], selector.distance());
+    if (!mUseIndex) {
+      for (int i = 0; i < mObjectCount; i++) {
+        test(i, x, y);
+      }
+      return;
+    }
+    int count = 0;
+    Cell cell = mCells.get(cellKey(Math.floorDiv(x, CELL_SIZE), Math.floorDiv(y, CELL_SIZE)));
+    if (cell != null) {
+      mCandidates = ensureCapacity(mCandidates, cell.mCount);
+      System.arraycopy(cell.mObjects, 0, mCandidates, 0, cell.mCount);
+      count = cell.mCount;
+    }
+    if (mLargeObjects.mCount > 0) {
+      mCandidates = ensureCapacity(mCandidates, count + mLargeObjects.mCount);
+      System.arraycopy(mLargeObjects.mObjects, 0, mCandidates, count, mLargeObjects.mCount);
+      count += mLargeObjects.mCount;
+      Arrays.sort(mCandidates, 0, count);
+    }
+    // objects are reported in the order they were added, as without the index
+    for (int i = 0; i < count; i++) {
+      test(mCandidates[i], x, y);
+    }
+  }
+
+  private void test(int i, int x, int y) {
+    int p = i * 4;
+    int x1 = mRect[p++];
+    int y1 = mRect[p++];
+    int x2 = mRect[p++];
+    int y2 = mRect[p];
+    if (inRect(x, y, x1, y1, x2, y2) && mHitElementListener.accept(mObjects[i])) {
+      SelectionEngine selector = myEngines[mTypes[i]];
+      if (selector.inRange(i, x, y)) {
+        mHitElementListener.over(mObjects[i], selector.distance());
+      }
+    }
+  }
+
+  /**
+   * Enable or disable the grid index (used to compare with the exhaustive search)
+   */
+  void setUseIndex(boolean useIndex) {
+    mUseIndex = useIndex;
+  }
+
+  /**
+   * Add or remove an object in all the cells covered by its rectangle
+   */
+  private void updateCells(int object, boolean add) {
+    int p = object * 4;
+    int cellX1 = Math.floorDiv(Math.min(mRect[p], mRect[p + 2]), CELL_SIZE);
+    int cellY1 = Math.floorDiv(Math.min(mRect[p + 1], mRect[p + 3]), CELL_SIZE);
+    int cellX2 = Math.floorDiv(Math.max(mRect[p], mRect[p + 2]), CELL_SIZE);
+    int cellY2 = Math.floorDiv(Math.max(mRect[p + 1], mRect[p + 3]), CELL_SIZE);
+    if ((long)(cellX2 - cellX1 + 1) * (cellY2 - cellY1 + 1) > MAX_CELLS_PER_OBJECT) {
+      if (add) {
+        mLargeObjects.add(object);
+      }
+      else {
+        mLargeObjects.remove(object);
+      }
+      return;
+    }
+    for (int cellX = cellX1; cellX <= cellX2; cellX++) {
+      for (int cellY = cellY1; cellY <= cellY2; cellY++) {
+        long key = cellKey(cellX, cellY);
+        Cell cell = mCells.get(key);
+        if (add) {
+          if (cell == null) {
+            cell = new Cell();
+            mCells.put(key, cell);
+          }
+          cell.add(object);
+        }
+        else if (cell != null) {
+          cell.remove(object);
+          if (cell.mCount == 0) {
+            mCells.remove(key);
+          }
         }
       }
     }
   }
 
+  private static long cellKey(int cellX, int cellY) {
+    return ((long)cellX << 32) | (cellY & 0xFFFFFFFFL);
+  }
+
+  private static int[] ensureCapacity(int[] array, int capacity) {
+    return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+  }
+
+  /**
+   * Indices of the objects in a cell of the grid, in ascending order
+   */
+  private static class Cell {
+    int[] mObjects = new int[4];
+    int mCount;
+
+    void add(int object) {
+      int index = Arrays.binarySearch(mObjects, 0, mCount, object);
+      if (index >= 0) {
+        return;
+      }
+      index = -index - 1;
+      mObjects = ensureCapacity(mObjects, mCount + 1);
+      System.arraycopy(mObjects, index, mObjects, index + 1, mCount - index);
+      mObjects[index] = object;
+      mCount++;
+    }
+
+    void remove(int object) {
+      int index = Arrays.binarySearch(mObjects, 0, mCount, object);
+      if (index < 0) {
+        return;
+      }
+      System.arraycopy(mObjects, index + 1, mObjects, index, mCount - index - 1);
+      mCount--;
+    }
+
+    void clear() {
+      mCount = 0;
+    }
+  }
+
   /**
    * set the listener to be notified of the objects in range
    *
@@ -103,6 +228,16 @@ public class ScenePicker {
    */
   public interface HitElementListener {
     void over(Object over, double dist);
+
+    /**
+     * Called before testing an object whose bounding rectangle contains the location
+     *
+     * @param candidate the object
+     * @return false to skip the object
+     */
+    default boolean accept(Object candidate) {
+      return true;
+    }
   }
 
   /**
@@ -112,6 +247,9 @@ public class ScenePicker {
     mObjectCount = 0;
     mObjectDataUsed = 0;
     Arrays.fill(mObjects, null);// delete references
+    mCells.clear();
+    mLargeObjects.clear();
+    mRectangles.clear();
   }
 
   /**
@@ -158,6 +296,26 @@ public class ScenePicker {
     mRectangle.add(e, range, x1, y1, x2, y2);
   }
 
+  /**
+   * Move the rectangle added for an object, keeping its place in the order of the objects
+   *
+   * @param e
+   * @param range
+   * @param x1
+   * @param y1
+   * @param x2
+   * @param y2
+   * @return false if no rectangle was added for the object
+   */
+  public boolean moveRect(Object e, int range, int x1, int y1, int x2, int y2) {
+    Integer object = mRectangles.get(e);
+    if (object == null) {
+      return false;
+    }
+    mRectangle.move(object, range, x1, y1, x2, y2);
+    return true;
+  }
+
   /**
    * Add a Point
    *
@@ -202,7 +360,12 @@ public class ScenePicker {
     protected int mDataOffset;
 
     protected void addRect(int x1, int y1, int x2, int y2) {
-      int off = mObjectCount * 4;
+      setRect(mObjectCount, x1, y1, x2, y2);
+      updateCells(mObjectCount, true);
+    }
+
+    protected void setRect(int object, int x1, int y1, int x2, int y2) {
+      int off = object * 4;
       mRect[off++] = x1;
       mRect[off++] = y1;
       mRect[off++] = x2;
@@ -346,9 +509,36 @@ public class ScenePicker {
       addRect(x1 - range, y1 - range, x2 + range, y2 + range);
       mObjects[mObjectCount] = select;
       mTypes[mObjectCount] = OBJECT_RECTANGLE;
+      mRectangles.put(select, mObjectCount);
       mObjectCount++;
     }
 
+    public void move(int object, int range, int x1, int y1, int x2, int y2) {
+      if (x1 > x2) {
+        int t = x1;
+        x1 = x2;
+        x2 = t;
+      }
+      if (y1 > y2) {
+        int t = y1;
+        y1 = y2;
+        y2 = t;
+      }
+      int offset = mObjectOffset[object];
+      if (mObjectData[offset] == range && mObjectData[offset + 1] == x1 && mObjectData[offset + 2] == y1
+          && mObjectData[offset + 3] == x2 && mObjectData[offset + 4] == y2) {
+        return;
+      }
+      mObjectData[offset] = range;
+      mObjectData[offset + 1] = x1;
+      mObjectData[offset + 2] = y1;
+      mObjectData[offset + 3] = x2;
+      mObjectData[offset + 4] = y2;
+      updateCells(object, false);
+      setRect(object, x1 - range, y1 - range, x2 + range, y2 + range);
+      updateCells(object, true);
+    }
+
     /**
      *
      *
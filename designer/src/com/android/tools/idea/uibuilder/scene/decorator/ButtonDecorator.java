@@ -26,6 +26,7 @@ import com.android.tools.sherpa.drawing.ColorSet;
 import org.jetbrains.annotations.NotNull;
 
 import java.awt.*;
+import java.util.Objects;
 
 /**
  * Support Buttons
@@ -86,6 +87,20 @@ public class ButtonDecorator extends SceneDecorator {
              "\"";
     }
 
+    @Override
+    public boolean equals(Object o) {
+      if (!super.equals(o) || getClass() != o.getClass()) {
+        return false;
+      }
+      DrawButton that = (DrawButton)o;
+      return Float.compare(mScale, that.mScale) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(super.hashCode(), mScale);
+    }
+
     @Override
     public void paint(Graphics2D g, SceneContext sceneContext) {
       super.paint(g, sceneContext);
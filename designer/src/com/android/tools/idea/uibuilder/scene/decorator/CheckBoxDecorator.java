@@ -25,6 +25,7 @@ import com.android.tools.sherpa.drawing.ColorSet;
 import org.jetbrains.annotations.NotNull;
 
 import java.awt.*;
+import java.util.Objects;
 
 /**
  * Support Buttons
@@ -80,6 +81,20 @@ public class CheckBoxDecorator extends SceneDecorator {
              "\"";
     }
 
+    @Override
+    public boolean equals(Object o) {
+      if (!super.equals(o) || getClass() != o.getClass()) {
+        return false;
+      }
+      DrawCheckbox that = (DrawCheckbox)o;
+      return Float.compare(mScale, that.mScale) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(super.hashCode(), mScale);
+    }
+
     @Override
     public void paint(Graphics2D g, SceneContext sceneContext) {
       int margin = height / 5;
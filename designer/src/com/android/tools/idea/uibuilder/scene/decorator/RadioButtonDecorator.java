@@ -24,6 +24,7 @@ import com.android.tools.sherpa.drawing.ColorSet;
 import org.jetbrains.annotations.NotNull;
 
 import java.awt.*;
+import java.util.Objects;
 
 /**
  * Support Buttons
@@ -79,6 +80,20 @@ public class RadioButtonDecorator extends SceneDecorator {
              "\"";
     }
 
+    @Override
+    public boolean equals(Object o) {
+      if (!super.equals(o) || getClass() != o.getClass()) {
+        return false;
+      }
+      DrawRadioButton that = (DrawRadioButton)o;
+      return Float.compare(mScale, that.mScale) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(super.hashCode(), mScale);
+    }
+
     @Override
     public void paint(Graphics2D g, SceneContext sceneContext) {
       int margin = height / 5;
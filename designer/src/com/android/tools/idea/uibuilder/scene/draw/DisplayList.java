@@ -19,12 +19,13 @@ import com.android.annotations.VisibleForTesting;
 import com.android.tools.idea.uibuilder.scene.SceneContext;
 import com.android.tools.idea.uibuilder.scene.decorator.*;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
 import java.awt.geom.GeneralPath;
 import java.lang.reflect.Constructor;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.*;
+import java.util.List;
 
 
 /**
@@ -34,9 +35,27 @@ import java.util.HashMap;
 public class DisplayList {
   private final static boolean DEBUG = false;
   private ArrayList<DrawCommand> myCommands = new ArrayList<DrawCommand>();
+  private ArrayList<Object> myOwners = new ArrayList<Object>(); // component which added each command
+  private Object myOwner;
+  private CommandSet mySortedCommands; // commands in painting order, kept until the list changes
+  private int mySortedCount;
 
   public void clear() {
     myCommands.clear();
+    myOwners.clear();
+    myOwner = null;
+    mySortedCommands = null;
+  }
+
+  /**
+   * Set the component adding the next commands, used to compare display lists component by component.
+   *
+   * @return the previous owner, to restore once the component is done
+   */
+  public Object setOwner(Object owner) {
+    Object previous = myOwner;
+    myOwner = owner;
+    return previous;
   }
 
   public ArrayList<DrawCommand> getCommands() {
@@ -93,6 +112,35 @@ public class DisplayList {
       myDirection = direction;
     }
 
+    @Override
+    public Rectangle getPaintBounds() {
+      Rectangle bounds = new Rectangle(x1, y1, 0, 0);
+      bounds.add(x2, y2);
+      bounds.grow(20 + DrawConnectionUtils.CONNECTION_ARROW_SIZE + 2, 20 + DrawConnectionUtils.CONNECTION_ARROW_SIZE + 2);
+      return bounds;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Connection that = (Connection)o;
+      return x1 == that.x1 &&
+             y1 == that.y1 &&
+             x2 == that.x2 &&
+             y2 == that.y2 &&
+             myDirection == that.myDirection;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(x1, y1, x2, y2, myDirection);
+    }
+
     @Override
     public void paint(Graphics2D g, SceneContext sceneContext) {
       g.setColor(sceneContext.getColorSet().getFrames());
@@ -181,6 +229,27 @@ public class DisplayList {
       return Integer.compare(getLevel(), ((DrawCommand)o).getLevel());
     }
 
+    @Override
+    public Rectangle getPaintBounds() {
+      Rectangle bounds = new Rectangle(this);
+      bounds.grow(2, 2); // the outline is drawn on the right and bottom edges, antialiased
+      return bounds;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!super.equals(o) || getClass() != o.getClass()) {
+        return false;
+      }
+      Rect that = (Rect)o;
+      return Objects.equals(color, that.color);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(super.hashCode(), color);
+    }
+
     @Override
     public void paint(Graphics2D g, SceneContext sceneContext) {
       g.setColor(color);
@@ -223,6 +292,11 @@ public class DisplayList {
       return myOriginal;
     }
 
+    @Override
+    public Rectangle getPaintBounds() {
+      return new Rectangle(this); // what is painted inside changes when the clip changes
+    }
+
     @Override
     public void paint(Graphics2D g, SceneContext sceneContext) {
       myOriginal = g.getClip();
@@ -255,6 +329,17 @@ public class DisplayList {
       lastClip = s;
     }
 
+    @Override
+    public boolean equals(Object o) {
+      // the clip restored is compared with its own Clip command
+      return o != null && getClass() == o.getClass();
+    }
+
+    @Override
+    public int hashCode() {
+      return UNClip.class.hashCode();
+    }
+
     @Override
     public void paint(Graphics2D g, SceneContext sceneContext) {
       g.setClip(lastClip.getOriginalShape());
@@ -263,6 +348,11 @@ public class DisplayList {
     public void setClip(Clip clip) {
       lastClip = clip;
     }
+
+    @Override
+    public Rectangle getPaintBounds() {
+      return new Rectangle();
+    }
   }
 
   static class Line implements DrawCommand {
@@ -305,6 +395,35 @@ public class DisplayList {
       this.color = c;
     }
 
+    @Override
+    public Rectangle getPaintBounds() {
+      Rectangle bounds = new Rectangle(x1, y1, 0, 0);
+      bounds.add(x2, y2);
+      bounds.grow(2, 2);
+      return bounds;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Line that = (Line)o;
+      return Objects.equals(color, that.color) &&
+             x1 == that.x1 &&
+             y1 == that.y1 &&
+             x2 == that.x2 &&
+             y2 == that.y2;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(color, x1, y1, x2, y2);
+    }
+
     @Override
     public void paint(Graphics2D g, SceneContext sceneContext) {
       g.setColor(color);
@@ -317,6 +436,8 @@ public class DisplayList {
   /////////////////////////////////////////////////////////////////////////////
   public void add(DrawCommand cmd) {
     myCommands.add(cmd);
+    myOwners.add(myOwner);
+    mySortedCommands = null;
   }
 
   public UNClip addClip(SceneContext transform, Rectangle r) {
@@ -325,7 +446,7 @@ public class DisplayList {
     int w = transform.getSwingDimension(r.width);
     int h = transform.getSwingDimension(r.height);
     Clip c = new Clip(l, t, w, h);
-    myCommands.add(c);
+    add(c);
     return new UNClip(c);
   }
 
@@ -334,7 +455,7 @@ public class DisplayList {
     int t = transform.getSwingY(r.y);
     int w = transform.getSwingDimension(r.width);
     int h = transform.getSwingDimension(r.height);
-    myCommands.add(new Rect(l, t, w, h, color));
+    add(new Rect(l, t, w, h, color));
   }
 
   public void addRect(SceneContext transform, float left, float top, float right, float bottom, Color color) {
@@ -489,17 +610,207 @@ public class DisplayList {
       System.out.println("<");
     }
     Graphics2D g = (Graphics2D)g2.create();
-    DrawCommand[] array = myCommands.toArray(new DrawCommand[myCommands.size()]);
-    CommandSet set = new CommandSet(array, 0, array.length - 1);
-    set.sort();
+    if (mySortedCommands == null || mySortedCount != count) {
+      DrawCommand[] array = myCommands.toArray(new DrawCommand[myCommands.size()]);
+      mySortedCommands = new CommandSet(array, 0, array.length - 1);
+      mySortedCommands.sort();
+      mySortedCount = count;
+    }
     if (DEBUG) {
-      set.print(">");
+      mySortedCommands.print(">");
       System.out.println("-end-");
     }
-    set.paint(g, sceneContext);
+    mySortedCommands.paint(g, sceneContext);
     g.dispose();
   }
 
+  /////////////////////////////////////////////////////////////////////////////
+  // Comparing display lists
+  /////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Compare this list with the list painted on the previous frame. The commands are matched component by component,
+   * using {@link #sameCommand}.
+   *
+   * @param previous the list painted on the previous frame
+   * @return the area painted differently by the two lists (empty if they paint the same),
+   * or null if it is not known and everything needs to be painted again
+   */
+  @Nullable
+  public Rectangle getChangedBounds(@NotNull DisplayList previous) {
+    if (myOwners.size() != myCommands.size() || previous.myOwners.size() != previous.myCommands.size()) {
+      return null; // commands added without an owner
+    }
+    // the components need to be painted in the same order
+    if (!getOwnerRuns().equals(previous.getOwnerRuns())) {
+      return null;
+    }
+    Rectangle[] clips = getClips();
+    Rectangle[] previousClips = previous.getClips();
+    Map<Object, List<Integer>> commands = getCommandsByOwner();
+    Map<Object, List<Integer>> previousCommands = previous.getCommandsByOwner();
+
+    Rectangle changed = new Rectangle();
+    for (Map.Entry<Object, List<Integer>> entry : commands.entrySet()) {
+      List<Integer> indices = entry.getValue();
+      List<Integer> previousIndices = previousCommands.get(entry.getKey());
+      if (indices.size() == previousIndices.size()) {
+        for (int i = 0; i < indices.size(); i++) {
+          int index = indices.get(i);
+          int previousIndex = previousIndices.get(i);
+          if (!sameCommand(myCommands.get(index), previous.myCommands.get(previousIndex))) {
+            if (!addPaintBounds(changed, myCommands.get(index), clips[index]) ||
+                !addPaintBounds(changed, previous.myCommands.get(previousIndex), previousClips[previousIndex])) {
+              return null;
+            }
+          }
+        }
+        continue;
+      }
+      // commands were added or removed, repaint all the commands of the component unless the clips changed
+      for (int index : indices) {
+        DrawCommand command = myCommands.get(index);
+        if (command instanceof Clip || command instanceof UNClip || !addPaintBounds(changed, command, clips[index])) {
+          return null;
+        }
+      }
+      for (int index : previousIndices) {
+        DrawCommand command = previous.myCommands.get(index);
+        if (command instanceof Clip || command instanceof UNClip || !addPaintBounds(changed, command, previousClips[index])) {
+          return null;
+        }
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * @return the area painted by the whole list, or null if it is not known
+   */
+  @Nullable
+  public Rectangle getBounds() {
+    Rectangle bounds = new Rectangle();
+    Rectangle[] clips = getClips();
+    for (int i = 0; i < myCommands.size(); i++) {
+      if (!addPaintBounds(bounds, myCommands.get(i), clips[i])) {
+        return null;
+      }
+    }
+    return bounds;
+  }
+
+  /**
+   * @return the area of the commands which need to be painted on every frame (empty if none),
+   * or null if it is not known
+   */
+  @Nullable
+  public Rectangle getAnimatedBounds() {
+    Rectangle animated = new Rectangle();
+    Rectangle[] clips = null;
+    for (int i = 0; i < myCommands.size(); i++) {
+      DrawCommand command = myCommands.get(i);
+      if (command instanceof DrawAnchor && ((DrawAnchor)command).isAnimated()) {
+        if (clips == null) {
+          clips = getClips();
+        }
+        if (!addPaintBounds(animated, command, clips[i])) {
+          return null;
+        }
+      }
+    }
+    return animated;
+  }
+
+  /**
+   * Add the bounds of a command, using the clip it is painted in if its own bounds are not known
+   *
+   * @return false if the area painted by the command is not known
+   */
+  private static boolean addPaintBounds(@NotNull Rectangle bounds, @NotNull DrawCommand command, @Nullable Rectangle clip) {
+    Rectangle paintBounds = command.getPaintBounds();
+    if (paintBounds == null) {
+      if (clip == null) {
+        return false;
+      }
+      paintBounds = clip;
+    }
+    else if (clip != null) {
+      paintBounds = paintBounds.intersection(clip);
+    }
+    if (paintBounds.isEmpty()) {
+      return true;
+    }
+    if (bounds.isEmpty()) {
+      bounds.setBounds(paintBounds);
+    }
+    else {
+      bounds.add(paintBounds);
+    }
+    return true;
+  }
+
+  /**
+   * @return the clip each command is painted in, null outside of any clip
+   */
+  @NotNull
+  private Rectangle[] getClips() {
+    Rectangle[] clips = new Rectangle[myCommands.size()];
+    ArrayDeque<Rectangle> stack = new ArrayDeque<>();
+    Rectangle current = null;
+    for (int i = 0; i < clips.length; i++) {
+      DrawCommand command = myCommands.get(i);
+      if (command instanceof UNClip) {
+        current = stack.isEmpty() ? null : stack.pop();
+        if (current != null && current.width < 0) {
+          current = null;
+        }
+      }
+      clips[i] = current;
+      if (command instanceof Clip) {
+        stack.push(current == null ? new Rectangle(0, 0, -1, -1) : current);
+        current = current == null ? new Rectangle((Clip)command) : current.intersection((Clip)command);
+      }
+    }
+    return clips;
+  }
+
+  /**
+   * @return the owners in painting order, with consecutive commands of the same owner merged
+   */
+  @NotNull
+  private List<Object> getOwnerRuns() {
+    List<Object> runs = new ArrayList<>();
+    for (Object owner : myOwners) {
+      if (runs.isEmpty() || runs.get(runs.size() - 1) != owner) {
+        runs.add(owner);
+      }
+    }
+    return runs;
+  }
+
+  @NotNull
+  private Map<Object, List<Integer>> getCommandsByOwner() {
+    Map<Object, List<Integer>> commands = new IdentityHashMap<>();
+    for (int i = 0; i < myOwners.size(); i++) {
+      Object owner = myOwners.get(i);
+      List<Integer> indices = commands.get(owner);
+      if (indices == null) {
+        indices = new ArrayList<>();
+        commands.put(owner, indices);
+      }
+      indices.add(i);
+    }
+    return commands;
+  }
+
+  /**
+   * Compare two commands with their equals methods, which unlike {@link DrawCommand#serialize()} also cover
+   * the state only used when painting, such as the hover state of actions.
+   */
+  static boolean sameCommand(@NotNull DrawCommand command1, @NotNull DrawCommand command2) {
+    return command1 == command2 || command1.getClass() == command2.getClass() && command1.equals(command2);
+  }
+
   @VisibleForTesting
   public String generateSortedDisplayList(SceneContext sceneContext) {
     DrawCommand[] array = myCommands.toArray(new DrawCommand[myCommands.size()]);
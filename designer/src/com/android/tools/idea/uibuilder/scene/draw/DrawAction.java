@@ -19,6 +19,7 @@ import com.android.tools.idea.uibuilder.scene.SceneContext;
 import com.android.tools.sherpa.drawing.ColorSet;
 
 import java.awt.*;
+import java.util.Objects;
 
 import com.android.tools.sherpa.drawing.decorator.WidgetDecorator;
 import icons.AndroidIcons.SherpaIcons;
@@ -56,6 +57,21 @@ public class DrawAction extends DrawRegion {
     myIsOver = isOver;
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (!super.equals(o) || getClass() != o.getClass()) {
+      return false;
+    }
+    DrawAction that = (DrawAction)o;
+    return myMode == that.myMode &&
+           myIsOver == that.myIsOver;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), myMode, myIsOver);
+  }
+
   @Override
   public void paint(Graphics2D g, SceneContext sceneContext) {
     int r = (int)(width * 0.3);
@@ -21,6 +21,7 @@ import com.android.tools.sherpa.drawing.ColorSet;
 import org.jetbrains.annotations.NotNull;
 
 import java.awt.*;
+import java.util.Objects;
 
 /**
  * Draws an Anchor
@@ -59,6 +60,22 @@ public class DrawAnchor extends DrawRegion {
      return TARGET_LEVEL;
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (!super.equals(o) || getClass() != o.getClass()) {
+      return false;
+    }
+    DrawAnchor that = (DrawAnchor)o;
+    return myMode == that.myMode &&
+           myIsConnected == that.myIsConnected &&
+           myType == that.myType;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), myMode, myIsConnected, myType);
+  }
+
   @Override
   public void paint(Graphics2D g, SceneContext sceneContext) {
     if (myType == TYPE_BASELINE) {
@@ -144,6 +161,21 @@ public class DrawAnchor extends DrawRegion {
     }
   }
 
+  /**
+   * The pulse of an anchor under the mouse depends on the time, it needs to be painted on every frame
+   */
+  boolean isAnimated() {
+    return myMode == OVER;
+  }
+
+  @Override
+  public Rectangle getPaintBounds() {
+    Rectangle bounds = new Rectangle(this);
+    int delta = width / 3 + 2; // circle drawn around the anchor under the mouse
+    bounds.grow(delta, delta);
+    return bounds;
+  }
+
   @Override
   public String serialize() {
     return this.getClass().getSimpleName() + "," + x + "," + y + "," + width + "," + height + "," + myMode;
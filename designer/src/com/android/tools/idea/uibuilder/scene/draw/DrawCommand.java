@@ -16,6 +16,7 @@
 package com.android.tools.idea.uibuilder.scene.draw;
 
 import com.android.tools.idea.uibuilder.scene.SceneContext;
+import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
 
@@ -23,6 +24,8 @@ import java.awt.*;
  * Paint interface for draw commands
  * This interface also implies a constructor that takes a String
  * Which can expand the serialization of the of the command
+ * Commands are compared with equals to find what changed between two display lists,
+ * so equals needs to cover everything the command paints
  */
 public interface DrawCommand extends Comparable {
   public final static int COMPONENT_LEVEL = 20;
@@ -35,4 +38,14 @@ public interface DrawCommand extends Comparable {
   int getLevel(); // things are drawn 0 first
   void paint(Graphics2D g, SceneContext sceneContext);
   String serialize();
+
+  /**
+   * Area the command can paint in, used to only repaint the parts of the display list that changed.
+   *
+   * @return the bounds of the painted area, or null if they are not known
+   */
+  @Nullable
+  default Rectangle getPaintBounds() {
+    return null;
+  }
 }
@@ -19,6 +19,7 @@ import com.android.tools.idea.uibuilder.scene.SceneContext;
 import com.android.tools.sherpa.drawing.ColorSet;
 
 import java.awt.*;
+import java.util.Objects;
 
 /**
  * Draw the background of a SceneComponent
@@ -52,6 +53,20 @@ public class DrawComponentBackground extends DrawRegion {
     myMode = mode;
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (!super.equals(o) || getClass() != o.getClass()) {
+      return false;
+    }
+    DrawComponentBackground that = (DrawComponentBackground)o;
+    return myMode == that.myMode;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), myMode);
+  }
+
   @Override
   public void paint(Graphics2D g, SceneContext sceneContext) {
     ColorSet colorSet = sceneContext.getColorSet();
@@ -62,6 +77,13 @@ public class DrawComponentBackground extends DrawRegion {
     }
   }
 
+  @Override
+  public Rectangle getPaintBounds() {
+    Rectangle bounds = new Rectangle(this);
+    bounds.grow(1, 1);
+    return bounds;
+  }
+
   @Override
   public String serialize() {
     return super.serialize() + "," + myMode;
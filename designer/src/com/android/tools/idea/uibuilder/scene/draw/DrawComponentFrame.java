@@ -19,6 +19,7 @@ import com.android.tools.idea.uibuilder.scene.SceneContext;
 import com.android.tools.sherpa.drawing.ColorSet;
 
 import java.awt.*;
+import java.util.Objects;
 
 /**
  * Draw the frame of a SceneComponent
@@ -61,6 +62,22 @@ public class DrawComponentFrame extends DrawRegion {
     myHasVerticalConstraints = hasVerticalConstraints;
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (!super.equals(o) || getClass() != o.getClass()) {
+      return false;
+    }
+    DrawComponentFrame that = (DrawComponentFrame)o;
+    return myMode == that.myMode &&
+           myHasHorizontalConstraints == that.myHasHorizontalConstraints &&
+           myHasVerticalConstraints == that.myHasVerticalConstraints;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), myMode, myHasHorizontalConstraints, myHasVerticalConstraints);
+  }
+
   @Override
   public void paint(Graphics2D g, SceneContext sceneContext) {
     ColorSet colorSet = sceneContext.getColorSet();
@@ -96,6 +113,13 @@ public class DrawComponentFrame extends DrawRegion {
     g.setStroke(previousStroke);
   }
 
+  @Override
+  public Rectangle getPaintBounds() {
+    Rectangle bounds = new Rectangle(this);
+    bounds.grow(2, 2); // half of the problem stroke, and antialiasing
+    return bounds;
+  }
+
   @Override
   public String serialize() {
     return super.serialize() + "," + myMode;
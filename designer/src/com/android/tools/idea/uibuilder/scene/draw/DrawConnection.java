@@ -21,6 +21,7 @@ import org.jetbrains.annotations.NotNull;
 
 import java.awt.*;
 import java.awt.geom.GeneralPath;
+import java.util.Objects;
 
 /**
  * This class is the display list entry for drawing a connection
@@ -87,6 +88,15 @@ public class DrawConnection implements DrawCommand {
            myIsMarginReference + "," + myBias;
   }
 
+  @Override
+  public Rectangle getPaintBounds() {
+    // the path goes around the source and beyond the destination, margins and bias are drawn along it
+    Rectangle bounds = mySource.union(myDest);
+    int delta = Math.max(mySource.width, mySource.height) / 2 + 4 * GAP + 2 * OVER_HANG;
+    bounds.grow(delta, delta);
+    return bounds;
+  }
+
   private static String rectToString(Rectangle r) {
     return r.x + "x" + r.y + "x" + r.width + "x" + r.height;
   }
@@ -118,6 +128,34 @@ public class DrawConnection implements DrawCommand {
     myBias = Float.parseFloat(sp[c++]);
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    DrawConnection that = (DrawConnection)o;
+    return myConnectionType == that.myConnectionType &&
+           Objects.equals(mySource, that.mySource) &&
+           mySourceDirection == that.mySourceDirection &&
+           Objects.equals(myDest, that.myDest) &&
+           myDestDirection == that.myDestDirection &&
+           myDestType == that.myDestType &&
+           myShift == that.myShift &&
+           myMargin == that.myMargin &&
+           myMarginDistance == that.myMarginDistance &&
+           myIsMarginReference == that.myIsMarginReference &&
+           Float.compare(myBias, that.myBias) == 0;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(myConnectionType, mySource, mySourceDirection, myDest, myDestDirection, myDestType, myShift, myMargin,
+                        myMarginDistance, myIsMarginReference, myBias);
+  }
+
   @Override
   public void paint(Graphics2D g, SceneContext sceneContext) {
     ColorSet color = sceneContext.getColorSet();
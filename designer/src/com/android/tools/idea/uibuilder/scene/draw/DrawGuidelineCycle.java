@@ -19,6 +19,7 @@ import com.android.tools.idea.uibuilder.scene.SceneContext;
 import com.android.tools.sherpa.drawing.ColorSet;
 
 import java.awt.*;
+import java.util.Objects;
 
 /**
  *  Drawing of the guideline cycle
@@ -64,6 +65,22 @@ public class DrawGuidelineCycle extends DrawRegion {
     return this.getClass().getSimpleName() + "," + x + "," + y + "," + width + "," + height + "," + myMode + "," + myIsHorizontal + "," + myIsSelected;
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (!super.equals(o) || getClass() != o.getClass()) {
+      return false;
+    }
+    DrawGuidelineCycle that = (DrawGuidelineCycle)o;
+    return myMode == that.myMode &&
+           myIsHorizontal == that.myIsHorizontal &&
+           myIsSelected == that.myIsSelected;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), myMode, myIsHorizontal, myIsSelected);
+  }
+
   @Override
   public void paint(Graphics2D g, SceneContext sceneContext) {
     ColorSet colorSet = sceneContext.getColorSet();
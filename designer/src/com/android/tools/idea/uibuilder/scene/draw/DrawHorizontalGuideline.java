@@ -19,6 +19,7 @@ import com.android.tools.idea.uibuilder.scene.SceneContext;
 import com.android.tools.sherpa.drawing.ColorSet;
 
 import java.awt.*;
+import java.util.Objects;
 
 /**
  * Horizontal Guideline
@@ -60,6 +61,26 @@ public class DrawHorizontalGuideline extends DrawRegion {
     myIsSelected = selected;
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (!super.equals(o) || getClass() != o.getClass()) {
+      return false;
+    }
+    DrawHorizontalGuideline that = (DrawHorizontalGuideline)o;
+    return myBegin == that.myBegin &&
+           myEnd == that.myEnd &&
+           Float.compare(myPercent, that.myPercent) == 0 &&
+           myOriginX == that.myOriginX &&
+           myOriginY == that.myOriginY &&
+           myOriginHeight == that.myOriginHeight &&
+           myIsSelected == that.myIsSelected;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), myBegin, myEnd, myPercent, myOriginX, myOriginY, myOriginHeight, myIsSelected);
+  }
+
   @Override
   public void paint(Graphics2D g, SceneContext sceneContext) {
     ColorSet colorSet = sceneContext.getColorSet();
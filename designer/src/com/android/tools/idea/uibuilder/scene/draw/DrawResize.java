@@ -19,6 +19,7 @@ import com.android.tools.idea.uibuilder.scene.SceneContext;
 import com.android.tools.sherpa.drawing.ColorSet;
 
 import java.awt.*;
+import java.util.Objects;
 
 /**
  * Draw Anchors
@@ -41,6 +42,20 @@ public class DrawResize extends DrawRegion {
     myMode = mode;
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (!super.equals(o) || getClass() != o.getClass()) {
+      return false;
+    }
+    DrawResize that = (DrawResize)o;
+    return myMode == that.myMode;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), myMode);
+  }
+
   @Override
   public void paint(Graphics2D g, SceneContext sceneContext) {
     ColorSet colorSet = sceneContext.getColorSet();
@@ -49,6 +64,13 @@ public class DrawResize extends DrawRegion {
     g.fillRect(x, y, width, height);
   }
 
+  @Override
+  public Rectangle getPaintBounds() {
+    Rectangle bounds = new Rectangle(this);
+    bounds.grow(1, 1);
+    return bounds;
+  }
+
   @Override
   public String serialize() {
     return super.serialize() + "," + myMode;
@@ -23,6 +23,7 @@ import javax.swing.text.SimpleAttributeSet;
 import javax.swing.text.StyleConstants;
 import javax.swing.text.StyledDocument;
 import java.awt.*;
+import java.util.Objects;
 
 /**
  * Base Class for drawing text components
@@ -70,6 +71,17 @@ public class DrawTextRegion extends DrawRegion {
     mText = string.substring(string.indexOf('\"') + 1, string.lastIndexOf('\"'));
   }
 
+  @Override
+  public Rectangle getPaintBounds() {
+    if (getClass() != DrawTextRegion.class || mSingleLine) {
+      // decorations of the subclasses are not known, and single line text can go past the region
+      return null;
+    }
+    Rectangle bounds = new Rectangle(this);
+    bounds.grow(2, mFont.getSize());
+    return bounds;
+  }
+
   @Override
   public String serialize() {
     return this.getClass().getSimpleName() +
@@ -127,6 +139,31 @@ public class DrawTextRegion extends DrawRegion {
     return Math.round((fontSize * 2f + 4.5f) / 2.41f);
   }
 
+  @Override
+  public boolean equals(Object o) {
+    if (!super.equals(o) || getClass() != o.getClass()) {
+      return false;
+    }
+    DrawTextRegion that = (DrawTextRegion)o;
+    return myBaseLineOffset == that.myBaseLineOffset &&
+           mHorizontalPadding == that.mHorizontalPadding &&
+           mVerticalPadding == that.mVerticalPadding &&
+           mVerticalMargin == that.mVerticalMargin &&
+           mHorizontalMargin == that.mHorizontalMargin &&
+           mToUpperCase == that.mToUpperCase &&
+           mAlignmentX == that.mAlignmentX &&
+           mAlignmentY == that.mAlignmentY &&
+           Objects.equals(mText, that.mText) &&
+           Objects.equals(mFont, that.mFont) &&
+           mSingleLine == that.mSingleLine;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(super.hashCode(), myBaseLineOffset, mHorizontalPadding, mVerticalPadding, mVerticalMargin, mHorizontalMargin,
+                        mToUpperCase, mAlignmentX, mAlignmentY, mText, mFont, mSingleLine);
+  }
+
   @Override
   public void paint(Graphics2D g, SceneContext sceneContext) {
     int tx = x;
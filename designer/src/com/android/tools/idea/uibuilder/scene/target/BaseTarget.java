@@ -81,12 +81,15 @@ public abstract class BaseTarget implements Target {
 
   @Override
   public void addHit(@NotNull SceneContext transform, @NotNull ScenePicker picker) {
-    if (!myComponent.getScene().allowsTarget(this)) {
-      return;
-    }
     picker.addRect(this, 0, transform.getSwingX(myLeft), transform.getSwingY(myTop),
                    transform.getSwingX(myRight), transform.getSwingY(myBottom));
   }
 
+  @Override
+  public boolean moveHit(@NotNull SceneContext transform, @NotNull ScenePicker picker) {
+    return picker.moveRect(this, 0, transform.getSwingX(myLeft), transform.getSwingY(myTop),
+                           transform.getSwingX(myRight), transform.getSwingY(myBottom));
+  }
+
   //endregion
 }
@@ -36,6 +36,7 @@ public interface Target {
   int getPreferenceLevel();
   boolean layout(@NotNull SceneContext context, int l, int t, int r, int b);
   void addHit(@NotNull SceneContext context, @NotNull ScenePicker picker);
+  boolean moveHit(@NotNull SceneContext context, @NotNull ScenePicker picker);
   void setComponent(@NotNull SceneComponent component);
   void render(@NotNull DisplayList list, @NotNull SceneContext sceneContext);
   void setOver(boolean over);
@@ -0,0 +1,459 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.surface;
+
+import com.android.tools.idea.rendering.ImageUtils;
+import com.intellij.util.ui.UIUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.*;
+import java.util.List;
+
+import static java.awt.RenderingHints.*;
+
+/**
+ * Tiled cache of the scaled copies of a rendered image.
+ *
+ * The image is kept as a chain of mip levels, each half the size of the previous one, filled tile by tile when needed.
+ * A scaled copy is drawn from the level closest above the requested scale, so the last step is never below half
+ * the size like in {@link ImageUtils#scale(BufferedImage, double, double)}. The scaled copies of the last few scales are
+ * kept in tiles, which are only created when visible.
+ *
+ * When a new image of the same size is set, only the tiles whose pixels changed are dropped.
+ */
+class ScaledImageTileCache {
+  static final int TILE_SIZE = 256;
+  /** Number of scales kept in the cache */
+  static final int MAX_SCALES = 3;
+  /** Source pixels around a tile used for the interpolation, so the tiles join without seams */
+  private static final int MARGIN = 2;
+
+  @Nullable private BufferedImage mySource;
+  /** The mip levels, level 0 is the source */
+  private final List<MipLevel> myLevels = new ArrayList<>();
+  /** The scaled copies, the most recently used last */
+  private final LinkedHashMap<Long, ScaledTiles> myScales = new LinkedHashMap<Long, ScaledTiles>(MAX_SCALES + 1, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, ScaledTiles> eldest) {
+      return size() > MAX_SCALES;
+    }
+  };
+
+  // statistics, for tests and debugging
+  private int myScaledTileCount;
+  private int myChangedTileCount;
+
+  @Nullable
+  BufferedImage getSource() {
+    return mySource;
+  }
+
+  /**
+   * Set the image to scale. If it has the same size as the previous one, only the tiles covering pixels
+   * which changed are dropped from the cache.
+   */
+  void setImage(@NotNull BufferedImage image) {
+    BufferedImage previous = mySource;
+    mySource = image;
+    if (previous == null || previous.getWidth() != image.getWidth() || previous.getHeight() != image.getHeight()) {
+      myLevels.clear();
+      myLevels.add(new MipLevel(image));
+      myScales.clear();
+      return;
+    }
+    myLevels.get(0).myImage = image;
+    List<Rectangle> changed = findChangedTiles(previous, image);
+    myChangedTileCount += changed.size();
+    for (Rectangle rect : changed) {
+      invalidate(rect);
+    }
+  }
+
+  void clear() {
+    mySource = null;
+    myLevels.clear();
+    myScales.clear();
+  }
+
+  /**
+   * Paint the image scaled to the given size. Only the tiles intersecting the clip are scaled.
+   *
+   * @param g      graphics to paint on, in the coordinates of the scaled image
+   * @param width  width of the scaled image
+   * @param height height of the scaled image
+   * @param clip   area of the scaled image to paint
+   */
+  void paint(@NotNull Graphics2D g, int width, int height, @NotNull Rectangle clip) {
+    ScaledTiles tiles = getScaledTiles(width, height);
+    if (tiles == null) {
+      return;
+    }
+    Rectangle visible = clip.intersection(new Rectangle(0, 0, width, height));
+    if (visible.isEmpty()) {
+      return;
+    }
+    for (int ty = visible.y / TILE_SIZE; ty <= (visible.y + visible.height - 1) / TILE_SIZE; ty++) {
+      for (int tx = visible.x / TILE_SIZE; tx <= (visible.x + visible.width - 1) / TILE_SIZE; tx++) {
+        UIUtil.drawImage(g, tiles.getTile(tx, ty), tx * TILE_SIZE, ty * TILE_SIZE, null);
+      }
+    }
+  }
+
+  /**
+   * Same as {@link #paint(Graphics2D, int, int, Rectangle)}, with tiles scaled at twice the resolution and
+   * painted as retina images
+   *
+   * @param width  width of the scaled image, in device pixels
+   * @param height height of the scaled image, in device pixels
+   * @param clip   area to paint, in the coordinates of the graphics
+   */
+  void paintRetina(@NotNull Graphics2D g, int width, int height, @NotNull Rectangle clip) {
+    ScaledTiles tiles = getScaledTiles(width, height);
+    if (tiles == null) {
+      return;
+    }
+    Rectangle visible = new Rectangle(clip.x * 2, clip.y * 2, clip.width * 2, clip.height * 2)
+      .intersection(new Rectangle(0, 0, width, height));
+    if (visible.isEmpty()) {
+      return;
+    }
+    for (int ty = visible.y / TILE_SIZE; ty <= (visible.y + visible.height - 1) / TILE_SIZE; ty++) {
+      for (int tx = visible.x / TILE_SIZE; tx <= (visible.x + visible.width - 1) / TILE_SIZE; tx++) {
+        BufferedImage retinaTile = tiles.getRetinaTile(tx, ty);
+        if (retinaTile != null) {
+          UIUtil.drawImage(g, retinaTile, tx * TILE_SIZE / 2, ty * TILE_SIZE / 2, null);
+        }
+        else {
+          BufferedImage tile = tiles.getTile(tx, ty);
+          g.drawImage(tile, tx * TILE_SIZE / 2, ty * TILE_SIZE / 2, (tile.getWidth() + 1) / 2, (tile.getHeight() + 1) / 2, null);
+        }
+      }
+    }
+  }
+
+  /**
+   * Paint the image scaled to the given size without going through the cache, for the fast scaling used while resizing
+   */
+  void paintFast(@NotNull Graphics2D g, int width, int height) {
+    if (mySource == null) {
+      return;
+    }
+    Graphics2D g2 = (Graphics2D)g.create();
+    try {
+      g2.setRenderingHint(KEY_RENDERING, VALUE_RENDER_SPEED);
+      g2.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+      g2.drawImage(mySource, 0, 0, width, height, null);
+    }
+    finally {
+      g2.dispose();
+    }
+  }
+
+  int getScaledTileCount() {
+    return myScaledTileCount;
+  }
+
+  int getChangedTileCount() {
+    return myChangedTileCount;
+  }
+
+  @Nullable
+  private ScaledTiles getScaledTiles(int width, int height) {
+    if (mySource == null || width <= 0 || height <= 0) {
+      return null;
+    }
+    // the key only depends on the size, so it is the same for all the scales giving the same size
+    long key = ((long)width << 32) | height;
+    ScaledTiles tiles = myScales.get(key);
+    if (tiles == null) {
+      tiles = new ScaledTiles(width, height);
+      myScales.put(key, tiles);
+    }
+    return tiles;
+  }
+
+  /**
+   * Drop the tiles computed from the given area of the source
+   */
+  private void invalidate(@NotNull Rectangle sourceRect) {
+    Rectangle rect = new Rectangle(sourceRect);
+    for (int level = 1; level < myLevels.size(); level++) {
+      // each pixel of a level is computed from 2x2 pixels of the previous one, or 3 on the last row and column
+      rect.grow(1, 1);
+      rect = new Rectangle(rect.x / 2, rect.y / 2, (rect.x + rect.width + 1) / 2 - rect.x / 2,
+                           (rect.y + rect.height + 1) / 2 - rect.y / 2);
+      myLevels.get(level).invalidate(rect);
+    }
+    int sourceWidth = myLevels.get(0).getWidth();
+    int sourceHeight = myLevels.get(0).getHeight();
+    for (ScaledTiles tiles : myScales.values()) {
+      double xScale = tiles.myWidth / (double)sourceWidth;
+      double yScale = tiles.myHeight / (double)sourceHeight;
+      // the interpolation from a mip level reaches one level pixel away
+      int reach = 1 << (tiles.myLevel + 1);
+      int x1 = (int)Math.floor((sourceRect.x - reach) * xScale);
+      int y1 = (int)Math.floor((sourceRect.y - reach) * yScale);
+      int x2 = (int)Math.ceil((sourceRect.x + sourceRect.width + reach) * xScale);
+      int y2 = (int)Math.ceil((sourceRect.y + sourceRect.height + reach) * yScale);
+      tiles.invalidate(new Rectangle(x1, y1, x2 - x1, y2 - y1));
+    }
+  }
+
+  /**
+   * @return the source tiles with at least one pixel different between the two images
+   */
+  @NotNull
+  static List<Rectangle> findChangedTiles(@NotNull BufferedImage previous, @NotNull BufferedImage image) {
+    List<Rectangle> changed = new ArrayList<>();
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] previousRow = new int[TILE_SIZE];
+    int[] row = new int[TILE_SIZE];
+    for (int y = 0; y < height; y += TILE_SIZE) {
+      int tileHeight = Math.min(TILE_SIZE, height - y);
+      for (int x = 0; x < width; x += TILE_SIZE) {
+        int tileWidth = Math.min(TILE_SIZE, width - x);
+        for (int line = y; line < y + tileHeight; line++) {
+          previous.getRGB(x, line, tileWidth, 1, previousRow, 0, TILE_SIZE);
+          image.getRGB(x, line, tileWidth, 1, row, 0, TILE_SIZE);
+          if (!Arrays.equals(previousRow, row)) {
+            changed.add(new Rectangle(x, y, tileWidth, tileHeight));
+            break;
+          }
+        }
+      }
+    }
+    return changed;
+  }
+
+  @NotNull
+  private static BufferedImage createImage(int width, int height) {
+    //noinspection UndesirableClassUsage
+    return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+  }
+
+  private static void setQualityHints(@NotNull Graphics2D g) {
+    g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR);
+    g.setRenderingHint(KEY_RENDERING, VALUE_RENDER_QUALITY);
+    g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+  }
+
+  /**
+   * @return the mip level, created if needed, with the given pixels filled
+   */
+  @NotNull
+  private MipLevel getLevel(int level, @NotNull Rectangle rect) {
+    while (myLevels.size() <= level) {
+      MipLevel previous = myLevels.get(myLevels.size() - 1);
+      myLevels.add(new MipLevel(Math.max(1, previous.getWidth() / 2), Math.max(1, previous.getHeight() / 2)));
+    }
+    MipLevel mipLevel = myLevels.get(level);
+    if (level > 0) {
+      Rectangle bounds = rect.intersection(new Rectangle(0, 0, mipLevel.getWidth(), mipLevel.getHeight()));
+      if (!bounds.isEmpty()) {
+        for (int ty = bounds.y / TILE_SIZE; ty <= (bounds.y + bounds.height - 1) / TILE_SIZE; ty++) {
+          for (int tx = bounds.x / TILE_SIZE; tx <= (bounds.x + bounds.width - 1) / TILE_SIZE; tx++) {
+            if (!mipLevel.isFilled(tx, ty)) {
+              fillLevelTile(level, tx, ty);
+            }
+          }
+        }
+      }
+    }
+    return mipLevel;
+  }
+
+  /**
+   * Fill a tile of a mip level by halving the pixels of the previous level
+   */
+  private void fillLevelTile(int level, int tx, int ty) {
+    MipLevel mipLevel = myLevels.get(level);
+    int x = tx * TILE_SIZE;
+    int y = ty * TILE_SIZE;
+    int width = Math.min(TILE_SIZE, mipLevel.getWidth() - x);
+    int height = Math.min(TILE_SIZE, mipLevel.getHeight() - y);
+    MipLevel previousLevel = getLevel(level - 1, new Rectangle(x * 2, y * 2, width * 2, height * 2));
+    // the previous level can have an odd size, its last pixels are then squeezed in the last pixels of this level
+    int sx2 = x + width == mipLevel.getWidth() ? previousLevel.getWidth() : (x + width) * 2;
+    int sy2 = y + height == mipLevel.getHeight() ? previousLevel.getHeight() : (y + height) * 2;
+
+    Graphics2D g = mipLevel.myImage.createGraphics();
+    try {
+      g.setComposite(AlphaComposite.Src);
+      setQualityHints(g);
+      g.drawImage(previousLevel.myImage, x, y, x + width, y + height, x * 2, y * 2, sx2, sy2, null);
+    }
+    finally {
+      g.dispose();
+    }
+    mipLevel.setFilled(tx, ty, true);
+  }
+
+  /**
+   * One image of the mip chain, filled tile by tile
+   */
+  private static class MipLevel {
+    @NotNull private BufferedImage myImage;
+    @Nullable private final BitSet myFilled; // null for the source, always filled
+    private final int myColumns;
+
+    MipLevel(@NotNull BufferedImage source) {
+      myImage = source;
+      myFilled = null;
+      myColumns = 0;
+    }
+
+    MipLevel(int width, int height) {
+      myImage = createImage(width, height);
+      myColumns = (width + TILE_SIZE - 1) / TILE_SIZE;
+      myFilled = new BitSet(myColumns * ((height + TILE_SIZE - 1) / TILE_SIZE));
+    }
+
+    int getWidth() {
+      return myImage.getWidth();
+    }
+
+    int getHeight() {
+      return myImage.getHeight();
+    }
+
+    boolean isFilled(int tx, int ty) {
+      return myFilled == null || myFilled.get(ty * myColumns + tx);
+    }
+
+    void setFilled(int tx, int ty, boolean filled) {
+      if (myFilled != null) {
+        myFilled.set(ty * myColumns + tx, filled);
+      }
+    }
+
+    void invalidate(@NotNull Rectangle rect) {
+      Rectangle bounds = rect.intersection(new Rectangle(0, 0, getWidth(), getHeight()));
+      if (myFilled == null || bounds.isEmpty()) {
+        return;
+      }
+      for (int ty = bounds.y / TILE_SIZE; ty <= (bounds.y + bounds.height - 1) / TILE_SIZE; ty++) {
+        for (int tx = bounds.x / TILE_SIZE; tx <= (bounds.x + bounds.width - 1) / TILE_SIZE; tx++) {
+          setFilled(tx, ty, false);
+        }
+      }
+    }
+  }
+
+  /**
+   * The tiles of the image scaled to one size
+   */
+  private class ScaledTiles {
+    private final int myWidth;
+    private final int myHeight;
+    /** The mip level the tiles are scaled from, and its size */
+    private final int myLevel;
+    private final int myLevelWidth;
+    private final int myLevelHeight;
+    private final Map<Integer, BufferedImage> myTiles = new HashMap<>();
+    private final Map<Integer, BufferedImage> myRetinaTiles = new HashMap<>();
+    private final int myColumns;
+
+    ScaledTiles(int width, int height) {
+      myWidth = width;
+      myHeight = height;
+      myColumns = (width + TILE_SIZE - 1) / TILE_SIZE;
+      // use the smallest level which is at least the size, so the last scaling is never below half the size
+      int level = 0;
+      int levelWidth = myLevels.get(0).getWidth();
+      int levelHeight = myLevels.get(0).getHeight();
+      while (width <= levelWidth / 2 && height <= levelHeight / 2) {
+        levelWidth /= 2;
+        levelHeight /= 2;
+        level++;
+      }
+      myLevel = level;
+      myLevelWidth = levelWidth;
+      myLevelHeight = levelHeight;
+    }
+
+    @NotNull
+    BufferedImage getTile(int tx, int ty) {
+      int key = ty * myColumns + tx;
+      BufferedImage tile = myTiles.get(key);
+      if (tile == null) {
+        tile = scaleTile(tx, ty);
+        myTiles.put(key, tile);
+        myScaledTileCount++;
+      }
+      return tile;
+    }
+
+    @Nullable
+    BufferedImage getRetinaTile(int tx, int ty) {
+      int key = ty * myColumns + tx;
+      BufferedImage retinaTile = myRetinaTiles.get(key);
+      if (retinaTile == null && !myRetinaTiles.containsKey(key)) {
+        retinaTile = ImageUtils.convertToRetina(getTile(tx, ty));
+        myRetinaTiles.put(key, retinaTile);
+      }
+      return retinaTile;
+    }
+
+    void invalidate(@NotNull Rectangle rect) {
+      Rectangle bounds = rect.intersection(new Rectangle(0, 0, myWidth, myHeight));
+      if (bounds.isEmpty()) {
+        return;
+      }
+      for (int ty = bounds.y / TILE_SIZE; ty <= (bounds.y + bounds.height - 1) / TILE_SIZE; ty++) {
+        for (int tx = bounds.x / TILE_SIZE; tx <= (bounds.x + bounds.width - 1) / TILE_SIZE; tx++) {
+          myTiles.remove(ty * myColumns + tx);
+          myRetinaTiles.remove(ty * myColumns + tx);
+        }
+      }
+    }
+
+    @NotNull
+    private BufferedImage scaleTile(int tx, int ty) {
+      int x = tx * TILE_SIZE;
+      int y = ty * TILE_SIZE;
+      int width = Math.min(TILE_SIZE, myWidth - x);
+      int height = Math.min(TILE_SIZE, myHeight - y);
+
+      // scale factors from the level to the whole scaled image, the same for all the tiles
+      double xScale = myWidth / (double)myLevelWidth;
+      double yScale = myHeight / (double)myLevelHeight;
+
+      int sx1 = Math.max(0, (int)Math.floor(x / xScale) - MARGIN);
+      int sy1 = Math.max(0, (int)Math.floor(y / yScale) - MARGIN);
+      int sx2 = Math.min(myLevelWidth, (int)Math.ceil((x + width) / xScale) + MARGIN);
+      int sy2 = Math.min(myLevelHeight, (int)Math.ceil((y + height) / yScale) + MARGIN);
+      MipLevel level = getLevel(myLevel, new Rectangle(sx1, sy1, sx2 - sx1, sy2 - sy1));
+
+      BufferedImage tile = createImage(width, height);
+      Graphics2D g = tile.createGraphics();
+      try {
+        g.setComposite(AlphaComposite.Src);
+        setQualityHints(g);
+        g.translate(-x, -y);
+        g.scale(xScale, yScale);
+        g.drawImage(level.myImage.getSubimage(sx1, sy1, sx2 - sx1, sy2 - sy1), sx1, sy1, null);
+      }
+      finally {
+        g.dispose();
+      }
+      return tile;
+    }
+  }
+}
@@ -31,12 +31,10 @@ public class ScreenViewLayer extends Layer {
   private final ScreenView myScreenView;
   /** The source image we scaled from */
   @Nullable private ImagePool.Image myImage;
-  /** Cached scaled image */
-  @Nullable private BufferedImage myScaledImage;
+  /** Cached scaled tiles of the image */
+  private final ScaledImageTileCache myTileCache = new ScaledImageTileCache();
   /** Cached last render result */
   @Nullable private RenderResult myLastRenderResult;
-  /** The scale at which we cached the scaled image  */
-  private double myCachedScale;
 
   private Rectangle mySizeRectangle = new Rectangle();
   private Dimension myScreenViewSize = new Dimension();
@@ -45,45 +43,14 @@ public class ScreenViewLayer extends Layer {
     myScreenView = screenView;
   }
 
-  @Nullable
-  private static BufferedImage getRetinaScaledImage(@NotNull BufferedImage original, double scale, boolean fastScaling) {
-    if (scale > 1.01) {
-      // When scaling up significantly, use normal painting logic; no need to pixel double into a
-      // double res image buffer!
-      return null;
-    }
-
-    // No scaling if very close to 1.0 (we check for 0.5 since we're doubling the output)
-    if (Math.abs(scale - 0.5) > 0.001) {
-      double retinaScale = 2 * scale;
-      if (fastScaling) {
-        original = ImageUtils.lowQualityFastScale(original, retinaScale, retinaScale);
-      }
-      else {
-        original = ImageUtils.scale(original, retinaScale, retinaScale);
-      }
-    }
-
-    return ImageUtils.convertToRetina(original);
-  }
-
-  private void setNewImage(@NotNull ImagePool.Image newImage, double newScale) {
-    myCachedScale = newScale;
+  private void setNewImage(@NotNull ImagePool.Image newImage) {
     myImage = newImage;
-    myScaledImage = null;
-    boolean fastScaling = myScreenView.getSurface().isCanvasResizing(); // Fast scaling if in the middle of resizing
-
-    if (UIUtil.isRetina() && ImageUtils.supportsRetina()) {
-      myScaledImage = getRetinaScaledImage(newImage.getCopy(), newScale, fastScaling);
+    BufferedImage copy = newImage.getCopy();
+    if (copy != null) {
+      myTileCache.setImage(copy);
     }
-    if (myScaledImage == null) {
-      // Fallback to normal scaling
-      if (fastScaling) {
-        myScaledImage = ImageUtils.lowQualityFastScale(newImage.getCopy(), newScale, newScale);
-      }
-      else {
-        myScaledImage = ImageUtils.scale(newImage.getCopy(), newScale, newScale);
-      }
+    else {
+      myTileCache.clear();
     }
   }
 
@@ -100,30 +67,43 @@ public class ScreenViewLayer extends Layer {
     RenderResult renderResult = myScreenView.getModel().getRenderResult();
     if (renderResult != null && renderResult.hasImage() && renderResult != myLastRenderResult) {
       myLastRenderResult = renderResult;
-      myImage = renderResult.getRenderedImage();
-      myScaledImage = null;
+      setNewImage(renderResult.getRenderedImage());
     }
 
     if (myImage == null) {
       return;
     }
 
-    double scale = myScreenView.getScale();
-    if (myScaledImage == null || myCachedScale != scale) {
-      setNewImage(myImage, scale);
-    }
-
-    Shape prevClip = null;
-    Shape screenShape = myScreenView.getScreenShape();
-    if (screenShape != null) {
-      prevClip = g.getClip();
-      g.clip(screenShape);
+    Graphics2D g2 = (Graphics2D)g.create();
+    try {
+      Shape screenShape = myScreenView.getScreenShape();
+      if (screenShape != null) {
+        g2.clip(screenShape);
+      }
+      g2.translate(myScreenView.getX(), myScreenView.getY());
+      Rectangle clip = new Rectangle(mySizeRectangle);
+      clip.translate(-myScreenView.getX(), -myScreenView.getY());
+
+      // Same sizes as ImageUtils.scale
+      double scale = myScreenView.getScale();
+      int width = Math.max(1, (int)(scale * myImage.getWidth()));
+      int height = Math.max(1, (int)(scale * myImage.getHeight()));
+      if (myScreenView.getSurface().isCanvasResizing()) {
+        // Fast scaling if in the middle of resizing
+        myTileCache.paintFast(g2, width, height);
+      }
+      else if (UIUtil.isRetina() && ImageUtils.supportsRetina() && scale <= 1.01) {
+        // When scaling up significantly, use normal painting logic; no need to pixel double into a
+        // double res image buffer!
+        myTileCache.paintRetina(g2, Math.max(1, (int)(2 * scale * myImage.getWidth())),
+                                Math.max(1, (int)(2 * scale * myImage.getHeight())), clip);
+      }
+      else {
+        myTileCache.paint(g2, width, height, clip);
+      }
     }
-
-    UIUtil.drawImage(g, myScaledImage, myScreenView.getX(), myScreenView.getY(), null);
-
-    if (prevClip != null) {
-      g.setClip(prevClip);
+    finally {
+      g2.dispose();
     }
   }
 }
@@ -15,14 +15,28 @@
  */
 package com.android.tools.idea.uibuilder.mockup.colorextractor;
 
+import com.android.tools.idea.uibuilder.LayoutTestCase;
 import org.junit.Test;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.HashMap;
 import java.util.List;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 public class DBSCANClustererTest {
+  /**
+   * Set to true to run the benchmarks, e.g. -Dandroid.mockup.colorextractor.benchmark=true
+   */
+  static final String BENCHMARK_PROPERTY = "android.mockup.colorextractor.benchmark";
+
+  //The first runs warm up the JIT
+  static final int BENCHMARK_RUNS = 3;
+
+  private static final String[] MOCKUPS = {"4.png", "gray.png"};
 
   static double[][] DATA = new double[][]{
     //                           eps     | 1 | 1
@@ -65,4 +79,69 @@ public class DBSCANClustererTest {
     assertNotNull(cluster3);
     assertEquals(4, cluster3.size());
   }
-}
\ No newline at end of file
+
+  /**
+   * Cluster the pixels of real mockups with and without the spatial index and check that the clusters are the same.
+   */
+  @Test
+  public void testSpatialIndexOnMockups() throws Exception {
+    for (String imageName : MOCKUPS) {
+      BufferedImage image = getMockup(imageName);
+      double[][] input = getLABPixels(image);
+      int minClusterSize = DBSCANColorExtractor.getMinClusterSize(image);
+
+      List<List<double[]>> expected = createClusterer(minClusterSize, false).cluster(input);
+      List<List<double[]>> actual = createClusterer(minClusterSize, true).cluster(input);
+
+      assertEquals(imageName, expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertArrayEquals(imageName, expected.get(i).toArray(), actual.get(i).toArray());
+      }
+    }
+  }
+
+  /**
+   * Print the best time spent clustering the pixels of real mockups with the brute force neighbor search and with the
+   * spatial index. Only runs when {@link #BENCHMARK_PROPERTY} is set.
+   */
+  @Test
+  public void benchmarkSpatialIndexOnMockups() throws Exception {
+    assumeTrue(Boolean.getBoolean(BENCHMARK_PROPERTY));
+    for (String imageName : MOCKUPS) {
+      BufferedImage image = getMockup(imageName);
+      double[][] input = getLABPixels(image);
+      int minClusterSize = DBSCANColorExtractor.getMinClusterSize(image);
+
+      long bruteForceTime = Long.MAX_VALUE;
+      long indexedTime = Long.MAX_VALUE;
+      for (int i = 0; i < BENCHMARK_RUNS; i++) {
+        DBSCANClusterer bruteForce = createClusterer(minClusterSize, false);
+        long start = System.nanoTime();
+        bruteForce.cluster(input);
+        bruteForceTime = Math.min(bruteForceTime, System.nanoTime() - start);
+
+        DBSCANClusterer indexed = createClusterer(minClusterSize, true);
+        start = System.nanoTime();
+        indexed.cluster(input);
+        indexedTime = Math.min(indexedTime, System.nanoTime() - start);
+      }
+      System.out.println(String.format("DBSCAN on %1$s (%2$d points): %3$.1f ms without index, %4$.1f ms with index", imageName,
+                                       input.length, bruteForceTime / 1e6, indexedTime / 1e6));
+    }
+  }
+
+  private static DBSCANClusterer createClusterer(int minClusterSize, boolean useSpatialIndex) {
+    DBSCANClusterer clusterer = new DBSCANClusterer(DBSCANColorExtractor.DEFAULT_EPS, minClusterSize);
+    clusterer.setUseSpatialIndex(useSpatialIndex);
+    return clusterer;
+  }
+
+  private static BufferedImage getMockup(String imageName) throws Exception {
+    return ImageIO.read(new File(LayoutTestCase.getTestDataPath(), "mockup/" + imageName));
+  }
+
+  private static double[][] getLABPixels(BufferedImage image) {
+    List<double[]> labPixels = DoublesColorExtractor.getLABPixels(image, new HashMap<>(), new HashMap<>(), null);
+    return labPixels.toArray(new double[labPixels.size()][]);
+  }
+}
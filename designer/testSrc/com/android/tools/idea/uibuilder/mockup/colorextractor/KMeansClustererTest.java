@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.mockup.colorextractor;
+
+import com.android.tools.idea.uibuilder.LayoutTestCase;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.android.tools.idea.uibuilder.mockup.colorextractor.DBSCANClustererTest.BENCHMARK_PROPERTY;
+import static com.android.tools.idea.uibuilder.mockup.colorextractor.DBSCANClustererTest.BENCHMARK_RUNS;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class KMeansClustererTest {
+
+  @Test
+  public void testCluster() throws Exception {
+    double[][] data = new double[][]{
+      new double[]{0., 0., 0.},
+      new double[]{1., 0., 0.},
+      new double[]{0., 1., 0.},
+      new double[]{50., 50., 50.},
+      new double[]{51., 50., 50.},
+      new double[]{50., 51., 50.},
+    };
+    KMeansClusterer clusterer = new KMeansClusterer(2);
+    List<List<double[]>> clusters = clusterer.cluster(data);
+    assertEquals(2, clusters.size());
+
+    double[] first = clusters.get(0).get(0);
+    double[] second = clusters.get(1).get(0);
+    double[] low = first[0] < second[0] ? first : second;
+    double[] high = first[0] < second[0] ? second : first;
+    assertArrayEquals(new double[]{1. / 3, 1. / 3, 0.}, low, 1e-9);
+    assertArrayEquals(new double[]{50. + 1. / 3, 50. + 1. / 3, 50.}, high, 1e-9);
+    assertTrue(clusterer.getPassCount() < KMeansClusterer.PASS_NUMBER);
+
+    // The input points are not modified
+    assertArrayEquals(new double[]{0., 0., 0.}, data[0], 0);
+    assertArrayEquals(new double[]{51., 50., 50.}, data[4], 0);
+  }
+
+  @Test
+  public void testLessDistinctPointsThanK() throws Exception {
+    double[][] data = new double[][]{
+      new double[]{1., 1., 1.},
+      new double[]{1., 1., 1.},
+      new double[]{2., 2., 2.},
+    };
+    List<List<double[]>> clusters = new KMeansClusterer(5).cluster(data);
+    assertEquals(2, clusters.size());
+  }
+
+  /**
+   * The chunks of a pass are processed by as many threads as the pool has, which must not change the result.
+   */
+  @Test
+  public void testDeterministic() throws Exception {
+    double[][] data = getMockupPixels("inbox.png");
+    List<List<double[]>> expected = clusterInPool(data, 1);
+    List<List<double[]>> actual = clusterInPool(data, 4);
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertArrayEquals(expected.get(i).get(0), actual.get(i).get(0), 0);
+    }
+  }
+
+  /**
+   * Print the best time spent clustering real mockups by the previous implementation, with a fixed seeding and always
+   * single threaded, and by the current one. Only runs when {@link DBSCANClustererTest#BENCHMARK_PROPERTY} is set.
+   */
+  @Test
+  public void benchmarkMockups() throws Exception {
+    assumeTrue(Boolean.getBoolean(BENCHMARK_PROPERTY));
+    for (String imageName : new String[]{"4.png", "grid_500x500.png", "inbox.png"}) {
+      double[][] data = getMockupPixels(imageName);
+
+      long legacyTime = Long.MAX_VALUE;
+      long time = Long.MAX_VALUE;
+      int passCount = 0;
+      for (int i = 0; i < BENCHMARK_RUNS; i++) {
+        double[][] legacyData = copy(data);
+        long start = System.nanoTime();
+        new LegacyKMeansClusterer(10).cluster(legacyData);
+        legacyTime = Math.min(legacyTime, System.nanoTime() - start);
+
+        KMeansClusterer clusterer = new KMeansClusterer(10);
+        start = System.nanoTime();
+        clusterer.cluster(data);
+        time = Math.min(time, System.nanoTime() - start);
+        passCount = clusterer.getPassCount();
+      }
+      System.out.println(String.format("KMeans on %1$s (%2$d points): %3$.1f ms before, %4$.1f ms now in %5$d passes", imageName,
+                                       data.length, legacyTime / 1e6, time / 1e6, passCount));
+    }
+  }
+
+  private static List<List<double[]>> clusterInPool(double[][] data, int parallelism) throws Exception {
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      return pool.submit(() -> new KMeansClusterer(10, 42).cluster(data)).get();
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+
+  private static double[][] getMockupPixels(String imageName) throws Exception {
+    BufferedImage image = ImageIO.read(new File(LayoutTestCase.getTestDataPath(), "mockup/" + imageName));
+    List<double[]> labPixels = DoublesColorExtractor.getLABPixels(image, new HashMap<>(), new HashMap<>(), null);
+    return labPixels.toArray(new double[labPixels.size()][]);
+  }
+
+  private static double[][] copy(double[][] data) {
+    double[][] copy = new double[data.length][];
+    for (int i = 0; i < data.length; i++) {
+      copy[i] = data[i].clone();
+    }
+    return copy;
+  }
+
+  /**
+   * The single threaded implementation with a fixed number of passes, kept as a reference for the benchmark.
+   * It modifies the points used as initial centers.
+   */
+  @SuppressWarnings("ForLoopReplaceableByForEach")
+  private static class LegacyKMeansClusterer {
+    private final int myK;
+    private double[][] myData;
+    private double[][] myOutputColors;
+
+    LegacyKMeansClusterer(int k) {
+      myK = k;
+      myOutputColors = new double[myK][3];
+    }
+
+    void cluster(double[][] points) {
+      myData = points;
+      getInitialColors();
+      for (int i = 0; i < KMeansClusterer.PASS_NUMBER; i++) {
+        int dist = pass();
+        if (dist == 0) break;
+      }
+    }
+
+    int pass() {
+      double[][] centers = new double[myK][3];
+      int[] count = new int[myK];
+
+      for (int pointIndex = 0; pointIndex < myData.length; pointIndex++) {
+        double minDist = Double.MAX_VALUE;
+        int closestColor = 0;
+        for (int outputIndex = 0; outputIndex < myOutputColors.length; outputIndex++) {
+          double distance = distance(myOutputColors[outputIndex], myData[pointIndex]);
+          if (distance < minDist) {
+            minDist = distance;
+            closestColor = outputIndex;
+          }
+        }
+        centers[closestColor][0] += myData[pointIndex][0];
+        centers[closestColor][1] += myData[pointIndex][1];
+        centers[closestColor][2] += myData[pointIndex][2];
+        count[closestColor]++;
+      }
+
+      int dist = 0;
+      for (int j = 0; j < myOutputColors.length; j++) {
+        if (count[j] == 0) continue;
+        double[] oldColor = myOutputColors[j].clone();
+        myOutputColors[j][0] = (int)centers[j][0] / count[j];
+        myOutputColors[j][1] = (int)centers[j][1] / count[j];
+        myOutputColors[j][2] = (int)centers[j][2] / count[j];
+        dist += distance(oldColor, myOutputColors[j]);
+      }
+      return dist;
+    }
+
+    private static double distance(double[] neighbor, double[] point) {
+      double squares = 0;
+      for (int i = 0; i < Math.min(neighbor.length, point.length); i++) {
+        squares += Math.pow(neighbor[i] - point[i], 2);
+      }
+      return squares;
+    }
+
+    void getInitialColors() {
+      HashSet<double[]> set = new HashSet<>();
+      for (int step = 256; step > 0; step /= 2) {
+        for (int i = 0; i < myData.length; i += step) {
+          set.add(myData[i]);
+          if (set.size() == myK) {
+            break;
+          }
+        }
+        if (set.size() == myK) {
+          break;
+        }
+      }
+      double[][] c = set.toArray(new double[set.size()][3]);
+      System.arraycopy(c, 0, myOutputColors, 0, c.length);
+    }
+  }
+}
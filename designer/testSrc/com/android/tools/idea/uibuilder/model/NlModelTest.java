@@ -195,6 +195,54 @@ public class NlModelTest extends LayoutTestCase {
                  myTreeDumper.toTree(model.getComponents()));
   }
 
+  public void testChangedComponents() throws Exception {
+    ModelBuilder modelBuilder = createDefaultModelBuilder(false);
+    NlModel model = modelBuilder.build();
+    // The listeners have not been told about the first hierarchy yet
+    assertNull(model.takeChangedComponents());
+
+    modelBuilder.updateModel(model, true);
+    assertThat(model.takeChangedComponents()).isEmpty();
+
+    ComponentDescriptor button = modelBuilder.findByPath(LINEAR_LAYOUT, BUTTON);
+    assertThat(button).isNotNull();
+    button.withBounds(100, 300, 100, 100);
+    modelBuilder.updateModel(model, true);
+    NlComponent root = model.getComponents().get(0);
+    assertThat(model.takeChangedComponents()).containsExactly(root.getChild(1));
+
+    // Changes are accumulated until the listeners are notified, and nested ones are only reported once
+    button.withBounds(100, 400, 100, 100);
+    modelBuilder.updateModel(model, true);
+    modelBuilder.findByPath(LINEAR_LAYOUT).withBounds(0, 0, 800, 1000);
+    modelBuilder.updateModel(model, true);
+    assertThat(model.takeChangedComponents()).containsExactly(root);
+
+    // New XML tags
+    modelBuilder.updateModel(model, false);
+    assertThat(model.takeChangedComponents()).containsExactly(model.getComponents().get(0));
+  }
+
+  public void testChangedComponentsAfterXmlEdit() throws Exception {
+    ModelBuilder modelBuilder = createDefaultModelBuilder(false);
+    NlModel model = modelBuilder.build();
+    modelBuilder.updateModel(model, true);
+    assertThat(model.takeChangedComponents()).isEmpty();
+
+    NlComponent root = model.getComponents().get(0);
+    NlComponent button = root.getChild(1);
+    assertThat(button).isNotNull();
+    XmlTag buttonTag = button.getTag();
+    WriteCommandAction.runWriteCommandAction(model.getProject(), () -> {
+      buttonTag.setAttribute(ATTR_TEXT, ANDROID_URI, "Hello");
+      PsiDocumentManager.getInstance(model.getProject()).commitAllDocuments();
+    });
+    modelBuilder.updateModel(model, true);
+
+    assertThat(model.getComponents().get(0)).isSameAs(root);
+    assertThat(model.takeChangedComponents()).containsExactly(button);
+  }
+
   @SuppressWarnings("ConstantConditions")
   public void testChangedPropertiesWithIds() throws Exception {
     boolean preserveXmlTags = false;
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.palette;
+
+import com.google.common.collect.ImmutableSet;
+import junit.framework.TestCase;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class PreviewAtlasTest extends TestCase {
+  private File myFile;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myFile = File.createTempFile("preview", ".bin");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      //noinspection ResultOfMethodCallIgnored
+      myFile.delete();
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  private static BufferedImage createImage(int width, int height, long seed) {
+    Random random = new Random(seed);
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        image.setRGB(x, y, random.nextInt());
+      }
+    }
+    return image;
+  }
+
+  private static void assertSameImage(BufferedImage expected, BufferedImage actual) {
+    assertNotNull(actual);
+    assertEquals(expected.getWidth(), actual.getWidth());
+    assertEquals(expected.getHeight(), actual.getHeight());
+    for (int y = 0; y < expected.getHeight(); y++) {
+      for (int x = 0; x < expected.getWidth(); x++) {
+        assertEquals("pixel at " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+      }
+    }
+  }
+
+  private Map<String, BufferedImage> createImages() {
+    Map<String, BufferedImage> images = new LinkedHashMap<>();
+    images.put("TextView", createImage(300, 40, 1));
+    images.put("Button", createImage(250, 90, 2));
+    images.put("ImageView", createImage(600, 400, 3));
+    images.put("Switch", createImage(500, 40, 4));
+    images.put("ProgressBar", createImage(1, 1, 5));
+    images.put("Toolbar", createImage(1200, 56, 6));
+    return images;
+  }
+
+  public void testReadWrittenImages() throws IOException {
+    Map<String, BufferedImage> images = createImages();
+    PreviewAtlas.write(myFile, images);
+    PreviewAtlas atlas = PreviewAtlas.read(myFile);
+    assertEquals(images.keySet(), atlas.getIds());
+    for (Map.Entry<String, BufferedImage> entry : images.entrySet()) {
+      assertSameImage(entry.getValue(), atlas.getImage(entry.getKey()));
+    }
+    assertNull(atlas.getImage("CheckBox"));
+    assertSame(atlas.getImage("Button"), atlas.getImage("Button"));
+  }
+
+  public void testReplaceAtlas() throws IOException {
+    PreviewAtlas.write(myFile, createImages());
+    BufferedImage image = createImage(20, 20, 7);
+    Map<String, BufferedImage> images = new LinkedHashMap<>();
+    images.put("CheckBox", image);
+    PreviewAtlas.write(myFile, images);
+    PreviewAtlas atlas = PreviewAtlas.read(myFile);
+    assertEquals(ImmutableSet.of("CheckBox"), atlas.getIds());
+    assertSameImage(image, atlas.getImage("CheckBox"));
+    assertFalse(new File(myFile.getPath() + ".tmp").exists());
+  }
+
+  public void testReplaceAtlasInUse() throws IOException {
+    Map<String, BufferedImage> images = createImages();
+    PreviewAtlas.write(myFile, images);
+    PreviewAtlas atlas = PreviewAtlas.read(myFile);
+
+    BufferedImage image = createImage(20, 20, 7);
+    Map<String, BufferedImage> newImages = new LinkedHashMap<>();
+    newImages.put("CheckBox", image);
+    PreviewAtlas.write(myFile, newImages);
+    assertSameImage(image, PreviewAtlas.read(myFile).getImage("CheckBox"));
+
+    assertTrue(myFile.delete());
+    for (Map.Entry<String, BufferedImage> entry : images.entrySet()) {
+      assertSameImage(entry.getValue(), atlas.getImage(entry.getKey()));
+    }
+  }
+
+  public void testTruncatedAtlas() throws IOException {
+    PreviewAtlas.write(myFile, createImages());
+    long length = myFile.length();
+    for (long truncated : new long[]{length - 4, 100, 10, 0}) {
+      try (RandomAccessFile file = new RandomAccessFile(myFile, "rw")) {
+        file.setLength(truncated);
+      }
+      try {
+        PreviewAtlas.read(myFile);
+        fail("Expected an IOException for a file of " + truncated + " bytes");
+      }
+      catch (IOException ignore) {
+      }
+    }
+  }
+
+  public void testOtherVersion() throws IOException {
+    PreviewAtlas.write(myFile, createImages());
+    try (RandomAccessFile file = new RandomAccessFile(myFile, "rw")) {
+      file.seek(4);
+      file.writeInt(PreviewAtlas.VERSION + 1);
+    }
+    try {
+      PreviewAtlas.read(myFile);
+      fail("Expected an IOException for another version");
+    }
+    catch (IOException ignore) {
+    }
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.scene;
+
+import com.android.tools.idea.uibuilder.scene.draw.DisplayList;
+import com.android.tools.idea.uibuilder.scene.draw.DrawAction;
+import com.android.tools.idea.uibuilder.scene.draw.DrawAnchor;
+import junit.framework.TestCase;
+
+import java.awt.*;
+
+/**
+ * Test the comparison of display lists used to repaint only the changed area
+ */
+public class DisplayListDiffTest extends TestCase {
+  private final Object myRoot = new Object();
+  private final Object myChild1 = new Object();
+  private final Object myChild2 = new Object();
+
+  private static void addRect(DisplayList list, Object owner, int x, int y) {
+    Object previous = list.setOwner(owner);
+    list.addRect(SceneContext.get(), new Rectangle(x, y, 20, 10), Color.BLUE);
+    list.setOwner(previous);
+  }
+
+  private DisplayList buildList(int child1X, boolean child2First) {
+    return buildList(child1X, child2First, false);
+  }
+
+  private DisplayList buildList(int child1X, boolean child2First, boolean child2Extra) {
+    DisplayList list = new DisplayList();
+    list.setOwner(myRoot);
+    list.addRect(SceneContext.get(), new Rectangle(0, 0, 200, 200), Color.BLUE);
+    DisplayList.UNClip unClip = list.addClip(SceneContext.get(), new Rectangle(0, 0, 200, 200));
+    if (child2First) {
+      addRect(list, myChild2, 100, 100);
+    }
+    addRect(list, myChild1, child1X, 10);
+    if (!child2First) {
+      addRect(list, myChild2, 100, 100);
+    }
+    if (child2Extra) {
+      addRect(list, myChild2, 120, 120);
+    }
+    list.add(unClip);
+    list.setOwner(null);
+    return list;
+  }
+
+  public void testSameList() {
+    Rectangle changed = buildList(10, false).getChangedBounds(buildList(10, false));
+    assertNotNull(changed);
+    assertTrue(changed.isEmpty());
+  }
+
+  public void testMovedComponent() {
+    Rectangle changed = buildList(50, false).getChangedBounds(buildList(10, false));
+    assertNotNull(changed);
+    assertTrue(changed.contains(new Rectangle(10, 10, 21, 11)));
+    assertTrue(changed.contains(new Rectangle(50, 10, 21, 11)));
+    assertFalse(changed.intersects(new Rectangle(100, 100, 20, 10)));
+  }
+
+  public void testReorderedComponents() {
+    assertNull(buildList(10, true).getChangedBounds(buildList(10, false)));
+  }
+
+  public void testCommandWithoutBoundsUsesClip() {
+    DisplayList previous = buildList(10, false);
+    DisplayList list = buildList(10, false);
+    Object owner = previous.setOwner(myChild1);
+    previous.add(new DrawAction(150, 150, 10, 10, DrawAction.CLEAR, false));
+    previous.setOwner(owner);
+    owner = list.setOwner(myChild1);
+    list.add(new DrawAction(150, 150, 10, 10, DrawAction.CLEAR, true));
+    list.setOwner(owner);
+    // the action is added after the clip is removed, so its area is not known
+    assertNull(list.getChangedBounds(previous));
+
+    previous = new DisplayList();
+    list = new DisplayList();
+    for (DisplayList l : new DisplayList[]{previous, list}) {
+      l.setOwner(myRoot);
+      DisplayList.UNClip unClip = l.addClip(SceneContext.get(), new Rectangle(0, 0, 200, 200));
+      l.add(new DrawAction(150, 150, 10, 10, DrawAction.CLEAR, l == list));
+      l.add(unClip);
+    }
+    assertEquals(new Rectangle(0, 0, 200, 200), list.getChangedBounds(previous));
+  }
+
+  public void testAddedCommand() {
+    DisplayList previous = buildList(10, false);
+    DisplayList list = buildList(10, false, true);
+    Rectangle changed = list.getChangedBounds(previous);
+    assertNotNull(changed);
+    assertTrue(changed.contains(new Rectangle(100, 100, 40, 30)));
+    assertFalse(changed.intersects(new Rectangle(10, 10, 20, 10)));
+  }
+
+  public void testStateLeftOutOfSerialization() {
+    DrawAnchor anchor = new DrawAnchor(50, 50, 10, 10, DrawAnchor.TYPE_NORMAL, false, DrawAnchor.NORMAL);
+    DrawAnchor connected = new DrawAnchor(50, 50, 10, 10, DrawAnchor.TYPE_NORMAL, true, DrawAnchor.NORMAL);
+    // whether an anchor is connected is painted, but not serialized
+    assertEquals(anchor.serialize(), connected.serialize());
+
+    DisplayList previous = buildList(10, false);
+    DisplayList list = buildList(10, false);
+    previous.setOwner(myChild1);
+    previous.add(anchor);
+    list.setOwner(myChild1);
+    list.add(new DrawAnchor(50, 50, 10, 10, DrawAnchor.TYPE_NORMAL, false, DrawAnchor.NORMAL));
+    Rectangle changed = list.getChangedBounds(previous);
+    assertNotNull(changed);
+    assertTrue(changed.isEmpty());
+
+    list = buildList(10, false);
+    list.setOwner(myChild1);
+    list.add(connected);
+    changed = list.getChangedBounds(previous);
+    assertNotNull(changed);
+    assertTrue(changed.contains(new Rectangle(50, 50, 10, 10)));
+    assertFalse(changed.intersects(new Rectangle(100, 100, 20, 10)));
+  }
+
+  public void testAnimatedBounds() {
+    DisplayList list = buildList(10, false);
+    Rectangle animated = list.getAnimatedBounds();
+    assertNotNull(animated);
+    assertTrue(animated.isEmpty());
+
+    list.add(new DrawAnchor(300, 300, 10, 10, DrawAnchor.TYPE_NORMAL, false, DrawAnchor.OVER));
+    animated = list.getAnimatedBounds();
+    assertNotNull(animated);
+    assertTrue(animated.contains(new Rectangle(300, 300, 10, 10)));
+  }
+}
@@ -19,6 +19,9 @@ import junit.framework.TestCase;
 
 import java.awt.*;
 import java.awt.geom.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 /**
  * Test ScenePicker
@@ -308,4 +311,131 @@ public class ScenePickerTest extends TestCase {
       scenePicker.find((int)x, (int)y);
     }
   }
+
+  public void testIndexMatchesExhaustiveSearch() {
+    ScenePicker indexed = new ScenePicker();
+    ScenePicker exhaustive = new ScenePicker();
+    exhaustive.setUseIndex(false);
+    List<Object> indexedHits = new ArrayList<>();
+    List<Object> exhaustiveHits = new ArrayList<>();
+    indexed.setSelectListener((obj, dist) -> indexedHits.add(obj));
+    exhaustive.setSelectListener((obj, dist) -> exhaustiveHits.add(obj));
+
+    Random random = new Random(42);
+    int[][] shapes = new int[300][];
+    Integer[] objects = new Integer[shapes.length];
+    for (int i = 0; i < shapes.length; i++) {
+      objects[i] = new Integer(i);
+      shapes[i] = new int[]{random.nextInt(4), random.nextInt(1000) - 100, random.nextInt(1000) - 100,
+        random.nextInt(1000) - 100, random.nextInt(1000) - 100};
+    }
+    for (ScenePicker picker : new ScenePicker[]{indexed, exhaustive}) {
+      for (int i = 0; i < shapes.length; i++) {
+        addShape(picker, objects[i], shapes[i]);
+      }
+    }
+    // the shapes are registered once, and rectangles are moved between searches
+    for (int round = 0; round < 20; round++) {
+      for (int i = 0; i < 20; i++) {
+        int index = random.nextInt(shapes.length);
+        int[] shape = shapes[index];
+        if (shape[0] != 2) {
+          continue;
+        }
+        int dx = random.nextInt(300) - 150;
+        int dy = random.nextInt(300) - 150;
+        shape[1] += dx;
+        shape[2] += dy;
+        shape[3] += dx + random.nextInt(20) - 10;
+        shape[4] += dy + random.nextInt(20) - 10;
+        for (ScenePicker picker : new ScenePicker[]{indexed, exhaustive}) {
+          assertTrue(picker.moveRect(objects[index], 3, shape[1], shape[2], shape[3], shape[4]));
+        }
+      }
+      for (int i = 0; i < 200; i++) {
+        int x = random.nextInt(1200) - 200;
+        int y = random.nextInt(1200) - 200;
+        indexedHits.clear();
+        exhaustiveHits.clear();
+        indexed.find(x, y);
+        exhaustive.find(x, y);
+        assertEquals(x + "," + y, exhaustiveHits, indexedHits);
+      }
+    }
+  }
+
+  private static void addShape(ScenePicker picker, Object object, int[] s) {
+    switch (s[0]) {
+      case 0:
+        picker.addLine(object, 5, s[1], s[2], s[3], s[4]);
+        break;
+      case 1:
+        picker.addPoint(object, 8, s[1], s[2]);
+        break;
+      case 2:
+        picker.addRect(object, 3, s[1], s[2], s[3], s[4]);
+        break;
+      default:
+        picker.addCurveTo(object, 5, s[1], s[2], s[3], s[2], s[1], s[4], s[3], s[4]);
+        break;
+    }
+  }
+
+  public void testMoveRect() {
+    ScenePicker scenePicker = new ScenePicker();
+    List<Object> hits = new ArrayList<>();
+    scenePicker.setSelectListener((obj, dist) -> hits.add(obj));
+    scenePicker.addRect("a", 0, 10, 10, 20, 20);
+    scenePicker.addRect("b", 0, 15, 15, 30, 30);
+    assertFalse(scenePicker.moveRect("c", 0, 0, 0, 10, 10));
+
+    assertTrue(scenePicker.moveRect("a", 0, 500, 500, 520, 520));
+    scenePicker.find(12, 12);
+    assertTrue(hits.isEmpty());
+    scenePicker.find(510, 510);
+    assertEquals(1, hits.size());
+    assertEquals("a", hits.get(0));
+
+    // moving a rectangle keeps its registration order
+    assertTrue(scenePicker.moveRect("a", 0, 20, 20, 25, 25));
+    hits.clear();
+    scenePicker.find(22, 22);
+    assertEquals(2, hits.size());
+    assertEquals("a", hits.get(0));
+    assertEquals("b", hits.get(1));
+
+    scenePicker.reset();
+    hits.clear();
+    assertFalse(scenePicker.moveRect("a", 0, 20, 20, 25, 25));
+    scenePicker.find(22, 22);
+    assertTrue(hits.isEmpty());
+  }
+
+  public void testAcceptCandidates() {
+    ScenePicker scenePicker = new ScenePicker();
+    List<Object> candidates = new ArrayList<>();
+    List<Object> hits = new ArrayList<>();
+    scenePicker.setSelectListener(new ScenePicker.HitElementListener() {
+      @Override
+      public void over(Object over, double dist) {
+        hits.add(over);
+      }
+
+      @Override
+      public boolean accept(Object candidate) {
+        candidates.add(candidate);
+        return !"rejected".equals(candidate);
+      }
+    });
+    scenePicker.addRect("accepted", 0, 10, 10, 20, 20);
+    scenePicker.addRect("rejected", 0, 10, 10, 20, 20);
+    scenePicker.addRect("far", 0, 1000, 1000, 1020, 1020);
+
+    scenePicker.find(15, 15);
+    assertEquals(2, candidates.size());
+    assertEquals("accepted", candidates.get(0));
+    assertEquals("rejected", candidates.get(1));
+    assertEquals(1, hits.size());
+    assertEquals("accepted", hits.get(0));
+  }
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.surface;
+
+import junit.framework.TestCase;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static java.awt.RenderingHints.*;
+
+public class ScaledImageTileCacheTest extends TestCase {
+  private static BufferedImage createImage(int width, int height, long seed) {
+    Random random = new Random(seed);
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    for (int i = 0; i < 200; i++) {
+      //noinspection UseJBColor
+      g.setColor(new Color(random.nextInt(), true));
+      g.fillRect(random.nextInt(width), random.nextInt(height), random.nextInt(width / 4), random.nextInt(height / 4));
+    }
+    g.dispose();
+    return image;
+  }
+
+  private static BufferedImage paint(ScaledImageTileCache cache, int width, int height, Rectangle clip) {
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = result.createGraphics();
+    g.setComposite(AlphaComposite.Src);
+    cache.paint(g, width, height, clip);
+    g.dispose();
+    return result;
+  }
+
+  /**
+   * Scale the whole image the same way as the cache, without tiles: halve it while it stays above the size, then scale it
+   */
+  private static BufferedImage scaleWithoutTiles(BufferedImage image, int width, int height) {
+    while (width <= image.getWidth() / 2 && height <= image.getHeight() / 2) {
+      image = drawScaled(image, image.getWidth() / 2, image.getHeight() / 2);
+    }
+    return drawScaled(image, width, height);
+  }
+
+  private static BufferedImage drawScaled(BufferedImage image, int width, int height) {
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = result.createGraphics();
+    g.setComposite(AlphaComposite.Src);
+    g.setRenderingHint(KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR);
+    g.setRenderingHint(KEY_RENDERING, VALUE_RENDER_QUALITY);
+    g.setRenderingHint(KEY_ANTIALIASING, VALUE_ANTIALIAS_ON);
+    g.scale(width / (double)image.getWidth(), height / (double)image.getHeight());
+    g.drawImage(image, 0, 0, null);
+    g.dispose();
+    return result;
+  }
+
+  private static void assertSameImage(BufferedImage expected, BufferedImage actual, int tolerance) {
+    assertEquals(expected.getWidth(), actual.getWidth());
+    assertEquals(expected.getHeight(), actual.getHeight());
+    for (int y = 0; y < expected.getHeight(); y++) {
+      for (int x = 0; x < expected.getWidth(); x++) {
+        int expectedPixel = expected.getRGB(x, y);
+        int actualPixel = actual.getRGB(x, y);
+        for (int shift = 0; shift < 32; shift += 8) {
+          int delta = Math.abs(((expectedPixel >>> shift) & 0xFF) - ((actualPixel >>> shift) & 0xFF));
+          if (delta > tolerance) {
+            fail("Different pixel at " + x + "," + y + ": " + Integer.toHexString(expectedPixel) + " " +
+                 Integer.toHexString(actualPixel));
+          }
+        }
+      }
+    }
+  }
+
+  public void testTilesJoinWithoutSeams() {
+    BufferedImage image = createImage(1200, 1900, 1);
+    ScaledImageTileCache cache = new ScaledImageTileCache();
+    cache.setImage(image);
+    for (double scale : new double[]{1, 0.75, 0.3, 0.11, 1.5}) {
+      int width = (int)(image.getWidth() * scale);
+      int height = (int)(image.getHeight() * scale);
+      BufferedImage tiled = paint(cache, width, height, new Rectangle(0, 0, width, height));
+      // Scaling up a sub-image rounds the sampling positions a little differently
+      assertSameImage(scaleWithoutTiles(image, width, height), tiled, scale > 1 ? 2 : 0);
+    }
+  }
+
+  public void testOnlyVisibleTilesAreScaled() {
+    ScaledImageTileCache cache = new ScaledImageTileCache();
+    cache.setImage(createImage(1200, 1900, 2));
+    paint(cache, 900, 1425, new Rectangle(10, 10, 100, 100));
+    assertEquals(1, cache.getScaledTileCount());
+    paint(cache, 900, 1425, new Rectangle(200, 10, 100, 100));
+    assertEquals(2, cache.getScaledTileCount());
+
+    // Tiles of the previous scales are kept
+    paint(cache, 600, 950, new Rectangle(10, 10, 100, 100));
+    assertEquals(3, cache.getScaledTileCount());
+    paint(cache, 900, 1425, new Rectangle(10, 10, 100, 100));
+    assertEquals(3, cache.getScaledTileCount());
+  }
+
+  public void testOnlyChangedTilesAreInvalidated() {
+    BufferedImage image = createImage(1200, 1900, 3);
+    ScaledImageTileCache cache = new ScaledImageTileCache();
+    cache.setImage(image);
+    Rectangle all = new Rectangle(0, 0, 1080, 1710);
+    paint(cache, 1080, 1710, all);
+    int scaledTileCount = cache.getScaledTileCount();
+    assertEquals(35, scaledTileCount);
+
+    @SuppressWarnings("UndesirableClassUsage")
+    BufferedImage changed = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = changed.createGraphics();
+    g.drawImage(image, 0, 0, null);
+    //noinspection UseJBColor
+    g.setColor(Color.RED);
+    g.fillRect(900, 1700, 30, 30);
+    g.dispose();
+
+    cache.setImage(changed);
+    assertEquals(1, cache.getChangedTileCount());
+    BufferedImage result = paint(cache, 1080, 1710, all);
+    // The changed pixels are close to the corners of 4 scaled tiles
+    assertEquals(scaledTileCount + 4, cache.getScaledTileCount());
+
+    ScaledImageTileCache newCache = new ScaledImageTileCache();
+    newCache.setImage(changed);
+    assertSameImage(paint(newCache, 1080, 1710, all), result, 0);
+
+    // Same with a scale going through the mip levels
+    paint(cache, 300, 475, all);
+    cache.setImage(image);
+    newCache.setImage(image);
+    assertSameImage(paint(newCache, 300, 475, all), paint(cache, 300, 475, all), 0);
+  }
+
+  public void testNewSize() {
+    ScaledImageTileCache cache = new ScaledImageTileCache();
+    cache.setImage(createImage(1200, 1900, 4));
+    paint(cache, 600, 950, new Rectangle(0, 0, 600, 950));
+    BufferedImage image = createImage(1900, 1200, 5);
+    cache.setImage(image);
+    assertEquals(0, cache.getChangedTileCount());
+    assertSameImage(scaleWithoutTiles(image, 950, 600), paint(cache, 950, 600, new Rectangle(0, 0, 950, 600)), 0);
+  }
+}
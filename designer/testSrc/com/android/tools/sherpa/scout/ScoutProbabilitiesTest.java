@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.sherpa.scout;
+
+import android.support.constraint.solver.widgets.ConstraintAnchor;
+import android.support.constraint.solver.widgets.ConstraintWidget;
+import android.support.constraint.solver.widgets.ConstraintWidgetContainer;
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Checks that pruning the centered connection tables does not change the inferred constraints.
+ */
+public class ScoutProbabilitiesTest extends TestCase {
+  private static final int ROOT_WIDTH = 720;
+  private static final int ROOT_HEIGHT = 1280;
+
+  /**
+   * Bounds (x, y, width, height) of the children of the root of each layout
+   */
+  private static final int[][][] LAYOUTS = {
+    // A single centered button
+    {{260, 600, 200, 80}},
+    // A form: title, labels and fields in two columns, two buttons at the bottom
+    {
+      {16, 16, 688, 64},
+      {16, 120, 200, 48}, {232, 120, 472, 48},
+      {16, 184, 200, 48}, {232, 184, 472, 48},
+      {16, 248, 200, 48}, {232, 248, 472, 48},
+      {344, 1184, 176, 80}, {528, 1184, 176, 80},
+    },
+    // A list item: image, two lines of text and a centered icon on the right
+    {
+      {16, 16, 96, 96}, {128, 16, 480, 40}, {128, 64, 480, 32}, {632, 40, 48, 48},
+    },
+    // Overlapping and nested looking widgets
+    {
+      {0, 0, 720, 400}, {40, 40, 640, 320}, {300, 180, 120, 40}, {0, 420, 360, 860}, {360, 420, 360, 860},
+    },
+  };
+
+  private static ConstraintWidget[] createLayout(int[][] bounds) {
+    ConstraintWidgetContainer root = new ConstraintWidgetContainer();
+    root.setDebugName("root");
+    root.setX(0);
+    root.setY(0);
+    root.setWidth(ROOT_WIDTH);
+    root.setHeight(ROOT_HEIGHT);
+
+    ConstraintWidget[] widgets = new ConstraintWidget[bounds.length + 1];
+    widgets[0] = root;
+    for (int i = 0; i < bounds.length; i++) {
+      ConstraintWidget widget = new ConstraintWidget(bounds[i][0], bounds[i][1], bounds[i][2], bounds[i][3]);
+      widget.setDebugName("widget" + i);
+      root.add(widget);
+      widgets[i + 1] = widget;
+    }
+    return widgets;
+  }
+
+  private static int[][] createRandomLayout(Random random, int count) {
+    int[][] bounds = new int[count][];
+    for (int i = 0; i < count; i++) {
+      int width = 40 + random.nextInt(ROOT_WIDTH / 2);
+      int height = 40 + random.nextInt(ROOT_HEIGHT / 8);
+      bounds[i] = new int[]{random.nextInt(ROOT_WIDTH - width), random.nextInt(ROOT_HEIGHT - height), width, height};
+    }
+    return bounds;
+  }
+
+  /**
+   * @return the connections, margins and biases set on the widgets of the layout
+   */
+  private static String inferConstraints(int[][] bounds, boolean pruned) {
+    ConstraintWidget[] widgets = createLayout(bounds);
+    ScoutWidget[] list = ScoutWidget.create(widgets);
+    ScoutProbabilities table = new ScoutProbabilities();
+    table.setPruned(pruned);
+    table.computeConstraints(list);
+    table.applyConstraints(list);
+
+    StringBuilder builder = new StringBuilder();
+    for (ConstraintWidget widget : widgets) {
+      for (ConstraintAnchor anchor : widget.getAnchors()) {
+        if (anchor.isConnected()) {
+          ConstraintAnchor target = anchor.getTarget();
+          builder.append(widget.getDebugName()).append('.').append(anchor.getType()).append(" -> ")
+            .append(target.getOwner().getDebugName()).append('.').append(target.getType())
+            .append(" margin ").append(anchor.getMargin()).append('\n');
+        }
+      }
+      builder.append(widget.getDebugName()).append(" bias ").append(widget.getHorizontalBiasPercent())
+        .append(' ').append(widget.getVerticalBiasPercent()).append('\n');
+    }
+    return builder.toString();
+  }
+
+  public void testPrunedTablesOnLayouts() {
+    for (int[][] layout : LAYOUTS) {
+      assertEquals(inferConstraints(layout, false), inferConstraints(layout, true));
+    }
+  }
+
+  public void testPrunedTablesOnRandomLayouts() {
+    Random random = new Random(42);
+    for (int i = 0; i < 20; i++) {
+      int[][] layout = createRandomLayout(random, 2 + random.nextInt(12));
+      assertEquals("layout " + i, inferConstraints(layout, false), inferConstraints(layout, true));
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.android;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Outputs of build tools, such as pre-dexed jars or crunched PNGs, stored by a hash of the input file contents and of the tool options.
+ * The caches are kept in the build data directory, outside of the output of any target, so they are shared by all the modules and
+ * survive a rebuild.
+ */
+public class AndroidBuildFileCache {
+  private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.android.AndroidBuildFileCache");
+
+  private final File myDir;
+  private final String myExtension;
+  private final int myMaxEntries;
+
+  public AndroidBuildFileCache(@NotNull File dir, @NotNull String extension, int maxEntries) {
+    myDir = dir;
+    myExtension = extension;
+    myMaxEntries = maxEntries;
+  }
+
+  /**
+   * @param options everything besides the input file which affects the output of the tool, such as its path and its flags
+   */
+  @NotNull
+  public static String computeKey(@NotNull File input, @NotNull String options) throws IOException {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+    digest.update(options.getBytes("UTF-8"));
+    digest.update((byte)0);
+
+    final InputStream stream = new FileInputStream(input);
+    try {
+      final byte[] buffer = new byte[64 * 1024];
+      int read;
+      while ((read = stream.read(buffer)) > 0) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    finally {
+      stream.close();
+    }
+    return StringUtil.toHexString(digest.digest());
+  }
+
+  /**
+   * Copies the cached file for the key to the output file.
+   *
+   * @return false if there is no such file in the cache
+   */
+  public boolean restore(@NotNull String key, @NotNull File outputFile) {
+    final File cachedFile = getCachedFile(key);
+
+    if (!cachedFile.isFile()) {
+      return false;
+    }
+    try {
+      FileUtil.copy(cachedFile, outputFile);
+    }
+    catch (IOException e) {
+      LOG.info("Cannot restore " + outputFile.getPath() + " from the build cache", e);
+      return false;
+    }
+    // The last modification time is used to find the least recently used entries
+    //noinspection ResultOfMethodCallIgnored
+    cachedFile.setLastModified(System.currentTimeMillis());
+    return true;
+  }
+
+  /**
+   * Stores a freshly built file. Failures are only logged, since the build itself has succeeded.
+   */
+  public void store(@NotNull String key, @NotNull File dexFile) {
+    final File cachedFile = getCachedFile(key);
+    final File tempFile = new File(myDir, key + ".tmp" + Thread.currentThread().getId());
+
+    try {
+      FileUtil.copy(dexFile, tempFile);
+      // Another build process may have stored the same entry meanwhile, its content is the same
+      FileUtil.delete(cachedFile);
+
+      if (!tempFile.renameTo(cachedFile)) {
+        LOG.info("Cannot store " + dexFile.getPath() + " in the build cache");
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Cannot store " + dexFile.getPath() + " in the build cache", e);
+    }
+    finally {
+      FileUtil.delete(tempFile);
+    }
+  }
+
+  /**
+   * Removes the least recently used entries, so that the cache does not grow with every version of every input ever built.
+   */
+  public void trim() {
+    trim(myMaxEntries);
+  }
+
+  void trim(int maxEntries) {
+    final File[] files = myDir.listFiles();
+
+    if (files == null || files.length <= maxEntries) {
+      return;
+    }
+    final long[] lastModified = new long[files.length];
+    final Integer[] order = new Integer[files.length];
+
+    for (int i = 0; i < files.length; i++) {
+      lastModified[i] = files[i].lastModified();
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return lastModified[o1] < lastModified[o2] ? 1 : lastModified[o1] > lastModified[o2] ? -1 : 0;
+      }
+    });
+
+    for (int i = maxEntries; i < order.length; i++) {
+      FileUtil.delete(files[order[i]]);
+    }
+  }
+
+  @NotNull
+  File getCachedFile(@NotNull String key) {
+    return new File(myDir, key + myExtension);
+  }
+
+  @Nullable
+  public static AndroidBuildFileCache createIfPossible(@NotNull File dir, @NotNull String extension, int maxEntries) {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      LOG.info("Cannot create build cache directory " + dir.getPath());
+      return null;
+    }
+    return new AndroidBuildFileCache(dir, extension, maxEntries);
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.android;
+
+import com.intellij.openapi.util.Key;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jps.incremental.CompileContext;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PNG crunching counters, either of a single resource caching target or of the whole build.
+ */
+public class AndroidCrunchStatistics {
+  private static final Key<AndroidCrunchStatistics> KEY = Key.create("ANDROID_CRUNCH_STATISTICS");
+
+  private final AtomicInteger myUpToDate = new AtomicInteger();
+  private final AtomicInteger myCacheHits = new AtomicInteger();
+  private final AtomicInteger myCacheMisses = new AtomicInteger();
+  private final AtomicLong myCrunchTimeNanos = new AtomicLong();
+
+  @NotNull
+  public static AndroidCrunchStatistics getInstance(@NotNull CompileContext context) {
+    synchronized (KEY) {
+      AndroidCrunchStatistics statistics = context.getUserData(KEY);
+
+      if (statistics == null) {
+        statistics = new AndroidCrunchStatistics();
+        context.putUserData(KEY, statistics);
+      }
+      return statistics;
+    }
+  }
+
+  public void fileUpToDate() {
+    myUpToDate.incrementAndGet();
+  }
+
+  public void cacheHit() {
+    myCacheHits.incrementAndGet();
+  }
+
+  public void fileCrunched(long durationNanos) {
+    myCacheMisses.incrementAndGet();
+    myCrunchTimeNanos.addAndGet(durationNanos);
+  }
+
+  public void add(@NotNull AndroidCrunchStatistics statistics) {
+    myUpToDate.addAndGet(statistics.getUpToDateCount());
+    myCacheHits.addAndGet(statistics.getCacheHitCount());
+    myCacheMisses.addAndGet(statistics.getCacheMissCount());
+    myCrunchTimeNanos.addAndGet(statistics.myCrunchTimeNanos.get());
+  }
+
+  public int getUpToDateCount() {
+    return myUpToDate.get();
+  }
+
+  public int getCacheHitCount() {
+    return myCacheHits.get();
+  }
+
+  public int getCacheMissCount() {
+    return myCacheMisses.get();
+  }
+
+  /**
+   * @return the time spent in aapt, summed over all the worker threads, in milliseconds
+   */
+  public long getCrunchTimeMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(myCrunchTimeNanos.get());
+  }
+
+  @Override
+  public String toString() {
+    return "PNG crunching: " + getUpToDateCount() + " up to date, " + getCacheHitCount() + " cache hits, " +
+           getCacheMissCount() + " crunched in " + getCrunchTimeMillis() + " ms";
+  }
+}
@@ -255,9 +255,33 @@ public class AndroidDexBuilder extends AndroidTargetBuilder<BuildRootDescriptor,
                                @NotNull String builderName,
                                @NotNull String srcTargetName,
                                @Nullable JpsModule module) throws IOException {
+    final Pair<File, List<String>> output =
+      runDexProcess(platform, outFilePath, compileTargets, context, project, builderName, srcTargetName, module);
+
+    if (output == null) {
+      return false;
+    }
+    outputConsumer.registerOutputFile(output.getFirst(), output.getSecond());
+    return true;
+  }
+
+  /**
+   * Runs dx without registering its output, so that it can be invoked from several threads at once.
+   *
+   * @return the output file and the source files it was produced from, or {@code null} if dx failed
+   */
+  @Nullable
+  static Pair<File, List<String>> runDexProcess(@NotNull AndroidPlatform platform,
+                                                @NotNull String outFilePath,
+                                                @NotNull String[] compileTargets,
+                                                @NotNull CompileContext context,
+                                                @NotNull JpsProject project,
+                                                @NotNull String builderName,
+                                                @NotNull String srcTargetName,
+                                                @Nullable JpsModule module) throws IOException {
     BuildToolInfo buildToolInfo = platform.getTarget().getBuildToolInfo();
     if (buildToolInfo == null) {
-      return false;
+      return null;
     }
 
     final String dxJarPath = FileUtil.toSystemDependentName(buildToolInfo.getPath(BuildToolInfo.PathId.DX_JAR));
@@ -267,7 +291,7 @@ public class AndroidDexBuilder extends AndroidTargetBuilder<BuildRootDescriptor,
     if (testingManager == null && !dxJar.isFile()) {
       context.processMessage(
         new CompilerMessage(builderName, BuildMessage.Kind.ERROR, AndroidJpsBundle.message("android.jps.cannot.find.file", dxJarPath)));
-      return false;
+      return null;
     }
 
     boolean multiDex = false;
@@ -335,7 +359,7 @@ public class AndroidDexBuilder extends AndroidTargetBuilder<BuildRootDescriptor,
     final String javaExecutable = getJavaExecutable(platform, context, builderName);
 
     if (javaExecutable == null) {
-      return false;
+      return null;
     }
     final List<String> commandLine = ExternalProcessUtil
       .buildJavaCommandLine(javaExecutable, AndroidDxRunner.class.getName(),
@@ -384,9 +408,9 @@ public class AndroidDexBuilder extends AndroidTargetBuilder<BuildRootDescriptor,
           });
         }
       }
-      outputConsumer.registerOutputFile(outFile, srcFiles);
+      return Pair.create(outFile, srcFiles);
     }
-    return success;
+    return null;
   }
 
   @Nullable
@@ -24,6 +24,7 @@ import org.jetbrains.jps.android.builder.AndroidAarDepsBuildTarget;
 import org.jetbrains.jps.android.model.*;
 import org.jetbrains.jps.android.model.impl.JpsAndroidFinalPackageElement;
 import org.jetbrains.jps.android.model.impl.JpsAndroidModuleExtensionImpl;
+import org.jetbrains.jps.api.CanceledStatus;
 import org.jetbrains.jps.builders.java.JavaModuleBuildTargetType;
 import org.jetbrains.jps.builders.storage.BuildDataPaths;
 import org.jetbrains.jps.incremental.*;
@@ -51,6 +52,8 @@ import org.jetbrains.jps.util.JpsPathUtil;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 
 /**
@@ -65,6 +68,8 @@ public class AndroidJpsUtil {
   @NonNls public static final String ANDROID_STORAGE_DIR = "android";
   @NonNls private static final String RESOURCE_CACHE_STORAGE = "res_cache";
   @NonNls private static final String INTERMEDIATE_ARTIFACTS_STORAGE = "intermediate_artifacts";
+  @NonNls private static final String PRE_DEX_CACHE_STORAGE = "pre_dex_cache";
+  @NonNls private static final String CRUNCH_CACHE_STORAGE = "crunch_cache";
 
   @NonNls public static final String GENERATED_RESOURCES_DIR_NAME = "generated_resources";
   @NonNls public static final String AAPT_GENERATED_SOURCE_ROOT_NAME = "aapt";
@@ -181,6 +186,111 @@ public class AndroidJpsUtil {
     return new File(androidStorage, INTERMEDIATE_ARTIFACTS_STORAGE);
   }
 
+  @NotNull
+  public static File getPreDexCacheDir(@NotNull BuildDataPaths dataPaths) {
+    final File androidStorage = new File(dataPaths.getDataStorageRoot(), ANDROID_STORAGE_DIR);
+    return new File(androidStorage, PRE_DEX_CACHE_STORAGE);
+  }
+
+  @NotNull
+  public static File getCrunchCacheDir(@NotNull BuildDataPaths dataPaths) {
+    final File androidStorage = new File(dataPaths.getDataStorageRoot(), ANDROID_STORAGE_DIR);
+    return new File(androidStorage, CRUNCH_CACHE_STORAGE);
+  }
+
+  /**
+   * Runs the jobs on at most {@code threadCount} threads. No job is started once one of them has failed or the build is canceled.
+   *
+   * @return false if a job has failed
+   */
+  public static boolean runConcurrently(@NotNull List<? extends Callable<Boolean>> jobs,
+                                        int threadCount,
+                                        @NotNull CompileContext context) throws IOException, ProjectBuildException {
+    return runConcurrently(jobs, threadCount, context.getCancelStatus());
+  }
+
+  static boolean runConcurrently(@NotNull List<? extends Callable<Boolean>> jobs,
+                                 int threadCount,
+                                 @NotNull final CanceledStatus cancelStatus) throws IOException, ProjectBuildException {
+    if (threadCount <= 1) {
+      for (Callable<Boolean> job : jobs) {
+        checkCanceled(cancelStatus);
+
+        if (!callJob(job)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    final Queue<Callable<Boolean>> queue = new ConcurrentLinkedQueue<Callable<Boolean>>(jobs);
+    final AtomicBoolean failed = new AtomicBoolean();
+    final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+    try {
+      final List<Future<?>> futures = new ArrayList<Future<?>>(threadCount);
+
+      for (int i = 0; i < threadCount; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            Callable<Boolean> job;
+
+            while (!failed.get() && !cancelStatus.isCanceled() && (job = queue.poll()) != null) {
+              if (!job.call()) {
+                failed.set(true);
+              }
+            }
+            return null;
+          }
+        }));
+      }
+
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new ProjectBuildException(e);
+        }
+        catch (ExecutionException e) {
+          final Throwable cause = e.getCause();
+
+          if (cause instanceof IOException) {
+            throw (IOException)cause;
+          }
+          throw new ProjectBuildException(cause);
+        }
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+    checkCanceled(cancelStatus);
+    return !failed.get();
+  }
+
+  private static void checkCanceled(@NotNull CanceledStatus cancelStatus) throws StopBuildException {
+    if (cancelStatus.isCanceled()) {
+      throw new StopBuildException();
+    }
+  }
+
+  private static boolean callJob(@NotNull Callable<Boolean> job) throws IOException, ProjectBuildException {
+    try {
+      return job.call();
+    }
+    catch (IOException e) {
+      throw e;
+    }
+    catch (ProjectBuildException e) {
+      throw e;
+    }
+    catch (Exception e) {
+      throw new ProjectBuildException(e);
+    }
+  }
+
   @Nullable
   public static File createDirIfNotExist(@NotNull File dir, @NotNull CompileContext context, @NotNull String compilerName) {
     if (!dir.exists()) {
@@ -1,5 +1,6 @@
 package org.jetbrains.jps.android;
 
+import com.android.sdklib.BuildToolInfo;
 import com.android.tools.idea.jps.AndroidTargetBuilder;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.io.FileUtil;
@@ -9,6 +10,8 @@ import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jps.android.builder.AndroidPreDexBuildTarget;
+import org.jetbrains.jps.android.model.JpsAndroidDexCompilerConfiguration;
+import org.jetbrains.jps.android.model.JpsAndroidExtensionService;
 import org.jetbrains.jps.builders.BuildOutputConsumer;
 import org.jetbrains.jps.builders.DirtyFilesHolder;
 import org.jetbrains.jps.builders.FileProcessor;
@@ -26,6 +29,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * @author Eugene.Kudelevsky
@@ -34,6 +38,9 @@ public class AndroidPreDexBuilder extends AndroidTargetBuilder<AndroidPreDexBuil
 
   @NonNls private static final String BUILDER_NAME = "Android Pre Dex";
 
+  private static final int MAX_CONCURRENT_DEX_PROCESSES = 4;
+  private static final int MAX_CACHED_JARS = 500;
+
   protected AndroidPreDexBuilder() {
     super(Collections.singletonList(AndroidPreDexBuildTarget.MyTargetType.INSTANCE));
   }
@@ -91,44 +98,98 @@ public class AndroidPreDexBuilder extends AndroidTargetBuilder<AndroidPreDexBuil
     if (platform == null) {
       return false;
     }
-    if (!filesToPreDex.isEmpty()) {
-      final File outputDir = target.getOutputFile(context);
-
-      for (Pair<File, String> pair : filesToPreDex) {
-        context.checkCanceled();
+    if (filesToPreDex.isEmpty()) {
+      return true;
+    }
+    // The tests check the exact sequence of dx invocations, so they get neither the cache nor the concurrency
+    final boolean testing = AndroidBuildTestingManager.getTestingManager() != null;
+    final AndroidBuildFileCache cache = testing
+                                        ? null
+                                        : AndroidBuildFileCache.createIfPossible(
+                                          AndroidJpsUtil.getPreDexCacheDir(context.getProjectDescriptor().dataManager.getDataPaths()),
+                                          ".jar", MAX_CACHED_JARS);
+    final String dexOptions = getDexOptions(platform, project);
+    final File outputDir = target.getOutputFile(context);
+    final List<PreDexJob> jobs = new ArrayList<PreDexJob>(filesToPreDex.size());
 
-        final File srcFile = pair.getFirst();
-        final String moduleName = pair.getSecond();
-        final String srcFilePath = srcFile.getAbsolutePath();
-        final File outputFile;
+    for (Pair<File, String> pair : filesToPreDex) {
+      final File srcFile = pair.getFirst();
+      final String moduleName = pair.getSecond();
+      final String srcFilePath = srcFile.getAbsolutePath();
+      final File outputFile;
 
-        if (moduleName != null) {
-          context.processMessage(new ProgressMessage("Pre-dex [" + moduleName + "]"));
-          outputFile = new File(new File(outputDir, moduleName), srcFile.getName());
-        }
-        else {
-          context.processMessage(new ProgressMessage("Pre-dex: " + srcFile.getName()));
-          final String outputFileName = getOutputFileNameForExternalJar(srcFile);
-
-          if (outputFileName == null) {
-            context.processMessage(new CompilerMessage(BUILDER_NAME, BuildMessage.Kind.ERROR,
-                                                       "Cannot pre-dex file " + srcFilePath + ": incorrect path", srcFilePath));
-            return false;
-          }
-          outputFile = new File(outputDir, outputFileName);
-        }
+      if (moduleName != null) {
+        outputFile = new File(new File(outputDir, moduleName), srcFile.getName());
+      }
+      else {
+        final String outputFileName = getOutputFileNameForExternalJar(srcFile);
 
-        if (AndroidJpsUtil.createDirIfNotExist(outputFile.getParentFile(), context, BUILDER_NAME) == null) {
+        if (outputFileName == null) {
+          context.processMessage(new CompilerMessage(BUILDER_NAME, BuildMessage.Kind.ERROR,
+                                                     "Cannot pre-dex file " + srcFilePath + ": incorrect path", srcFilePath));
           return false;
         }
+        outputFile = new File(outputDir, outputFileName);
+      }
 
-        if (!AndroidDexBuilder.runDex(platform, outputFile.getPath(), new String[]{srcFilePath}, context,
-          project, outputConsumer, BUILDER_NAME, srcFile.getName(), null)) {
-          return false;
-        }
+      if (AndroidJpsUtil.createDirIfNotExist(outputFile.getParentFile(), context, BUILDER_NAME) == null) {
+        return false;
       }
+      jobs.add(new PreDexJob(srcFile, moduleName, outputFile, platform, project, context, cache, dexOptions));
     }
-    return true;
+    final int threadCount = testing ? 1 : Math.min(jobs.size(), getMaxConcurrentDexProcesses());
+
+    final boolean success = AndroidJpsUtil.runConcurrently(jobs, threadCount, context);
+
+    for (PreDexJob job : jobs) {
+      if (job.myResult != null) {
+        outputConsumer.registerOutputFile(job.myResult.getFirst(), job.myResult.getSecond());
+      }
+    }
+    if (cache != null) {
+      cache.trim();
+    }
+    return success;
+  }
+
+  /**
+   * Each dx process is a JVM with its own heap, so only a few of them are run at once.
+   */
+  private static int getMaxConcurrentDexProcesses() {
+    return Math.max(1, Math.min(MAX_CONCURRENT_DEX_PROCESSES, Runtime.getRuntime().availableProcessors() / 2));
+  }
+
+  /**
+   * Everything besides the jar itself which affects the output of dx.
+   */
+  @NotNull
+  private static String getDexOptions(@NotNull AndroidPlatform platform, @NotNull JpsProject project) {
+    final BuildToolInfo buildToolInfo = platform.getTarget().getBuildToolInfo();
+    final JpsAndroidDexCompilerConfiguration configuration =
+      JpsAndroidExtensionService.getInstance().getDexCompilerConfiguration(project);
+
+    return getDexOptions(buildToolInfo != null ? buildToolInfo.getRevision().toString() : null,
+                         buildToolInfo != null ? buildToolInfo.getPath(BuildToolInfo.PathId.DX_JAR) : null,
+                         configuration != null && configuration.isOptimize(),
+                         configuration != null && configuration.isForceJumbo(),
+                         configuration != null && configuration.isCoreLibrary());
+  }
+
+  @NotNull
+  static String getDexOptions(@Nullable String buildToolsRevision,
+                              @Nullable String dxPath,
+                              boolean optimize,
+                              boolean forceJumbo,
+                              boolean coreLibrary) {
+    final StringBuilder builder = new StringBuilder();
+
+    if (buildToolsRevision != null) {
+      builder.append(buildToolsRevision).append(';').append(dxPath);
+    }
+    builder.append(";optimize=").append(optimize)
+      .append(";forceJumbo=").append(forceJumbo)
+      .append(";coreLibrary=").append(coreLibrary);
+    return builder.toString();
   }
 
   public static boolean canBePreDexed(@NotNull File file) {
@@ -140,4 +201,63 @@ public class AndroidPreDexBuilder extends AndroidTargetBuilder<AndroidPreDexBuil
   public String getPresentableName() {
     return BUILDER_NAME;
   }
+
+  private static class PreDexJob implements Callable<Boolean> {
+    private final File mySrcFile;
+    @Nullable private final String myModuleName;
+    private final File myOutputFile;
+
+    private final AndroidPlatform myPlatform;
+    private final JpsProject myProject;
+    private final CompileContext myContext;
+    @Nullable private final AndroidBuildFileCache myCache;
+    private final String myDexOptions;
+
+    private Pair<File, List<String>> myResult;
+
+    private PreDexJob(@NotNull File srcFile,
+                      @Nullable String moduleName,
+                      @NotNull File outputFile,
+                      @NotNull AndroidPlatform platform,
+                      @NotNull JpsProject project,
+                      @NotNull CompileContext context,
+                      @Nullable AndroidBuildFileCache cache,
+                      @NotNull String dexOptions) {
+      mySrcFile = srcFile;
+      myModuleName = moduleName;
+      myOutputFile = outputFile;
+      myPlatform = platform;
+      myProject = project;
+      myContext = context;
+      myCache = cache;
+      myDexOptions = dexOptions;
+    }
+
+    @Override
+    public Boolean call() throws IOException {
+      final String srcFilePath = mySrcFile.getAbsolutePath();
+
+      if (myModuleName != null) {
+        myContext.processMessage(new ProgressMessage("Pre-dex [" + myModuleName + "]"));
+      }
+      else {
+        myContext.processMessage(new ProgressMessage("Pre-dex: " + mySrcFile.getName()));
+      }
+      final String key = myCache != null ? AndroidBuildFileCache.computeKey(mySrcFile, myDexOptions) : null;
+
+      if (key != null && myCache.restore(key, myOutputFile)) {
+        myResult = Pair.create(myOutputFile, Collections.singletonList(srcFilePath));
+        return true;
+      }
+      myResult = AndroidDexBuilder.runDexProcess(myPlatform, myOutputFile.getPath(), new String[]{srcFilePath}, myContext,
+                                                 myProject, BUILDER_NAME, mySrcFile.getName(), null);
+      if (myResult == null) {
+        return false;
+      }
+      if (key != null) {
+        myCache.store(key, myResult.getFirst());
+      }
+      return true;
+    }
+  }
 }
@@ -1,19 +1,28 @@
 package org.jetbrains.jps.android;
 
+import com.android.repository.Revision;
+import com.android.sdklib.BuildToolInfo;
 import com.android.sdklib.IAndroidTarget;
 import com.android.tools.idea.jps.AndroidTargetBuilder;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.io.FileUtilRt;
 import com.intellij.util.Processor;
 import com.intellij.util.containers.HashMap;
 import org.jetbrains.android.compiler.tools.AndroidApt;
+import org.jetbrains.android.util.AndroidBuildTestingManager;
+import org.jetbrains.android.util.AndroidCommonUtils;
 import org.jetbrains.android.util.AndroidCompilerMessageKind;
+import org.jetbrains.android.util.AndroidExecutionUtil;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jps.android.builder.AndroidResourceCachingBuildTarget;
 import org.jetbrains.jps.android.model.JpsAndroidModuleExtension;
 import org.jetbrains.jps.builders.BuildOutputConsumer;
 import org.jetbrains.jps.builders.BuildRootDescriptor;
 import org.jetbrains.jps.builders.DirtyFilesHolder;
+import org.jetbrains.jps.builders.storage.BuildDataPaths;
 import org.jetbrains.jps.incremental.CompileContext;
 import org.jetbrains.jps.incremental.ProjectBuildException;
 import org.jetbrains.jps.incremental.StopBuildException;
@@ -21,18 +30,23 @@ import org.jetbrains.jps.incremental.messages.BuildMessage;
 import org.jetbrains.jps.incremental.messages.CompilerMessage;
 import org.jetbrains.jps.model.module.JpsModule;
 
-import java.io.File;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Eugene.Kudelevsky
  */
 public class AndroidResourceCachingBuilder extends AndroidTargetBuilder<BuildRootDescriptor, AndroidResourceCachingBuildTarget> {
+  private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.android.AndroidResourceCachingBuilder");
+
   @NonNls private static final String BUILDER_NAME = "Android Resource Caching";
+  @NonNls private static final String CRUNCH_STATE_STORAGE = "crunch_state";
+  @NonNls private static final String COMMAND_SINGLE_CRUNCH = "singleCrunch";
+
+  private static final int MIN_SINGLE_CRUNCH_BUILD_TOOLS_REVISION = 19;
+  private static final int MAX_CACHED_PNGS = 20000;
 
   protected AndroidResourceCachingBuilder() {
     super(Collections.singletonList(AndroidResourceCachingBuildTarget.MyTargetType.INSTANCE));
@@ -54,7 +68,7 @@ public class AndroidResourceCachingBuilder extends AndroidTargetBuilder<BuildRoo
 
   private static boolean runPngCaching(AndroidResourceCachingBuildTarget target,
                                        CompileContext context,
-                                       BuildOutputConsumer outputConsumer) throws IOException {
+                                       BuildOutputConsumer outputConsumer) throws IOException, ProjectBuildException {
     final JpsModule module = target.getModule();
     final JpsAndroidModuleExtension extension = AndroidJpsUtil.getExtension(module);
     assert extension != null;
@@ -101,6 +115,30 @@ public class AndroidResourceCachingBuilder extends AndroidTargetBuilder<BuildRoo
         inputDirs.add(f.getPath());
       }
     }
+    final BuildToolInfo buildToolInfo = androidTarget.getBuildToolInfo();
+
+    // The tests check the exact aapt invocations
+    if (AndroidBuildTestingManager.getTestingManager() != null ||
+        buildToolInfo == null ||
+        !canCrunchSingleFiles(buildToolInfo.getRevision())) {
+      return runDirectoryCrunch(context, outputConsumer, module, resCacheDir, androidTarget, inputDirs);
+    }
+    return runFileCrunch(target, context, outputConsumer, resCacheDir, buildToolInfo, inputDirs);
+  }
+
+  /**
+   * Build tools older than {@link #MIN_SINGLE_CRUNCH_BUILD_TOOLS_REVISION} cannot crunch a single file, so whole directories are crunched.
+   */
+  static boolean canCrunchSingleFiles(@Nullable Revision buildToolsRevision) {
+    return buildToolsRevision != null && buildToolsRevision.getMajor() >= MIN_SINGLE_CRUNCH_BUILD_TOOLS_REVISION;
+  }
+
+  private static boolean runDirectoryCrunch(@NotNull CompileContext context,
+                                            @NotNull BuildOutputConsumer outputConsumer,
+                                            @NotNull JpsModule module,
+                                            @NotNull final File resCacheDir,
+                                            @NotNull IAndroidTarget androidTarget,
+                                            @NotNull List<String> inputDirs) throws IOException {
     final Map<AndroidCompilerMessageKind, List<String>> messages =
       AndroidApt.crunch(androidTarget, inputDirs,resCacheDir.getPath());
     AndroidJpsUtil.addMessages(context, messages, BUILDER_NAME, module.getName());
@@ -124,21 +162,278 @@ public class AndroidResourceCachingBuilder extends AndroidTargetBuilder<BuildRoo
       });
 
       for (Map.Entry<String, File> entry : outputFiles.entrySet()) {
-        final String relativePath = entry.getKey();
-        final File outputFile = entry.getValue();
+        registerOutputFile(outputConsumer, entry.getValue(), entry.getKey(), inputDirs);
+      }
+    }
+    return success;
+  }
 
-        for (String inputDir : inputDirs) {
-          final File srcFile = new File(inputDir, relativePath);
-          outputConsumer.registerOutputFile(outputFile, Collections.singletonList(srcFile.getPath()));
-        }
+  /**
+   * Crunches each changed PNG separately, on several threads. The crunched files are cached by the hash of their source, so that
+   * renamed or moved drawables, or drawables coming back after a branch switch, are restored instead of being crunched again.
+   */
+  private static boolean runFileCrunch(@NotNull AndroidResourceCachingBuildTarget target,
+                                       @NotNull CompileContext context,
+                                       @NotNull BuildOutputConsumer outputConsumer,
+                                       @NotNull File resCacheDir,
+                                       @NotNull BuildToolInfo buildToolInfo,
+                                       @NotNull List<String> inputDirs) throws IOException, ProjectBuildException {
+    final JpsModule module = target.getModule();
+    final BuildDataPaths dataPaths = context.getProjectDescriptor().dataManager.getDataPaths();
+    final AndroidBuildFileCache cache = AndroidBuildFileCache.createIfPossible(
+      AndroidJpsUtil.getCrunchCacheDir(dataPaths), "." + AndroidCommonUtils.PNG_EXTENSION, MAX_CACHED_PNGS);
+    final String aaptPath = buildToolInfo.getPath(BuildToolInfo.PathId.AAPT);
+    final String options = buildToolInfo.getRevision() + ";" + aaptPath;
+
+    final File stateFile = new File(AndroidJpsUtil.getStorageDir(dataPaths.getTargetDataRoot(target), CRUNCH_STATE_STORAGE),
+                                    CRUNCH_STATE_STORAGE);
+    final Map<String, CrunchState> oldStates = CrunchState.load(stateFile);
+    final Map<String, CrunchState> newStates = new ConcurrentHashMap<String, CrunchState>();
+    final Map<String, File> sourceFiles = collectPngFiles(inputDirs);
+    final AndroidCrunchStatistics statistics = new AndroidCrunchStatistics();
+    final List<CrunchJob> jobs = new ArrayList<CrunchJob>();
+
+    for (Map.Entry<String, File> entry : sourceFiles.entrySet()) {
+      final String relativePath = entry.getKey();
+      final File srcFile = entry.getValue();
+      final File outputFile = new File(resCacheDir, FileUtil.toSystemDependentName(relativePath));
+      final CrunchState oldState = oldStates.get(relativePath);
+
+      if (oldState != null && oldState.isUpToDate(srcFile) && outputFile.isFile()) {
+        newStates.put(relativePath, oldState);
+        statistics.fileUpToDate();
+      }
+      else {
+        jobs.add(new CrunchJob(relativePath, srcFile, outputFile, oldState, aaptPath, options, cache, context, module.getName(),
+                               newStates, statistics));
+      }
+    }
+
+    for (String relativePath : oldStates.keySet()) {
+      if (!sourceFiles.containsKey(relativePath)) {
+        FileUtil.delete(new File(resCacheDir, FileUtil.toSystemDependentName(relativePath)));
+      }
+    }
+    final boolean success =
+      AndroidJpsUtil.runConcurrently(jobs, Math.min(jobs.size(), Runtime.getRuntime().availableProcessors()), context);
+    CrunchState.save(stateFile, newStates);
+
+    for (CrunchJob job : jobs) {
+      if (newStates.containsKey(job.myRelativePath)) {
+        registerOutputFile(outputConsumer, job.myOutputFile, job.myRelativePath, inputDirs);
       }
     }
+    if (cache != null) {
+      cache.trim();
+    }
+    final AndroidCrunchStatistics buildStatistics = AndroidCrunchStatistics.getInstance(context);
+    buildStatistics.add(statistics);
+
+    if (!jobs.isEmpty()) {
+      context.processMessage(new CompilerMessage(BUILDER_NAME, BuildMessage.Kind.INFO, statistics + " [" + module.getName() + "]"));
+    }
+    LOG.info(buildStatistics.toString());
     return success;
   }
 
+  /**
+   * @return the PNG files by their path relative to the resource directory. When several resource directories contain the same path,
+   * the first one wins, like in {@link AndroidApt#crunch}.
+   */
+  @NotNull
+  private static Map<String, File> collectPngFiles(@NotNull List<String> inputDirs) {
+    final Map<String, File> result = new LinkedHashMap<String, File>();
+
+    for (String inputDir : inputDirs) {
+      final File root = new File(inputDir);
+
+      FileUtil.processFilesRecursively(root, new Processor<File>() {
+        @Override
+        public boolean process(File file) {
+          if (file.isFile() && FileUtilRt.extensionEquals(file.getName(), AndroidCommonUtils.PNG_EXTENSION)) {
+            final String relativePath = FileUtil.getRelativePath(root, file);
+
+            if (relativePath != null && !result.containsKey(FileUtil.toSystemIndependentName(relativePath))) {
+              result.put(FileUtil.toSystemIndependentName(relativePath), file);
+            }
+          }
+          return true;
+        }
+      });
+    }
+    return result;
+  }
+
+  private static void registerOutputFile(@NotNull BuildOutputConsumer outputConsumer,
+                                         @NotNull File outputFile,
+                                         @NotNull String relativePath,
+                                         @NotNull List<String> inputDirs) throws IOException {
+    for (String inputDir : inputDirs) {
+      final File srcFile = new File(inputDir, relativePath);
+      outputConsumer.registerOutputFile(outputFile, Collections.singletonList(srcFile.getPath()));
+    }
+  }
+
   @NotNull
   @Override
   public String getPresentableName() {
     return BUILDER_NAME;
   }
+
+  private static class CrunchJob implements Callable<Boolean> {
+    private final String myRelativePath;
+    private final File mySrcFile;
+    private final File myOutputFile;
+    @Nullable private final CrunchState myOldState;
+    private final String myAaptPath;
+    private final String myOptions;
+    @Nullable private final AndroidBuildFileCache myCache;
+    private final CompileContext myContext;
+    private final String myModuleName;
+    private final Map<String, CrunchState> myNewStates;
+    private final AndroidCrunchStatistics myStatistics;
+
+    private CrunchJob(@NotNull String relativePath,
+                      @NotNull File srcFile,
+                      @NotNull File outputFile,
+                      @Nullable CrunchState oldState,
+                      @NotNull String aaptPath,
+                      @NotNull String options,
+                      @Nullable AndroidBuildFileCache cache,
+                      @NotNull CompileContext context,
+                      @NotNull String moduleName,
+                      @NotNull Map<String, CrunchState> newStates,
+                      @NotNull AndroidCrunchStatistics statistics) {
+      myRelativePath = relativePath;
+      mySrcFile = srcFile;
+      myOutputFile = outputFile;
+      myOldState = oldState;
+      myAaptPath = aaptPath;
+      myOptions = options;
+      myCache = cache;
+      myContext = context;
+      myModuleName = moduleName;
+      myNewStates = newStates;
+      myStatistics = statistics;
+    }
+
+    @Override
+    public Boolean call() throws IOException {
+      final long lastModified = mySrcFile.lastModified();
+      final long length = mySrcFile.length();
+      final String key = AndroidBuildFileCache.computeKey(mySrcFile, myOptions);
+      final CrunchState newState = new CrunchState(lastModified, length, key);
+
+      // Only the timestamp has changed, e.g. after switching to a branch and back
+      if (myOldState != null && myOldState.hasKey(key) && myOutputFile.isFile()) {
+        myNewStates.put(myRelativePath, newState);
+        myStatistics.fileUpToDate();
+        return true;
+      }
+
+      if (myCache != null && myCache.restore(key, myOutputFile)) {
+        myNewStates.put(myRelativePath, newState);
+        myStatistics.cacheHit();
+        return true;
+      }
+      final File outputDir = myOutputFile.getParentFile();
+
+      if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+        myContext.processMessage(new CompilerMessage(BUILDER_NAME, BuildMessage.Kind.ERROR,
+                                                     AndroidJpsBundle.message("android.jps.cannot.create.directory", outputDir.getPath())));
+        return false;
+      }
+      final long start = System.nanoTime();
+      final Map<AndroidCompilerMessageKind, List<String>> messages = AndroidExecutionUtil.doExecute(
+        myAaptPath, COMMAND_SINGLE_CRUNCH, "-i", mySrcFile.getPath(), "-o", myOutputFile.getPath());
+      myStatistics.fileCrunched(System.nanoTime() - start);
+      AndroidJpsUtil.addMessages(myContext, messages, BUILDER_NAME, myModuleName);
+
+      if (!messages.get(AndroidCompilerMessageKind.ERROR).isEmpty()) {
+        return false;
+      }
+      if (myCache != null) {
+        myCache.store(key, myOutputFile);
+      }
+      myNewStates.put(myRelativePath, newState);
+      return true;
+    }
+  }
+
+  /**
+   * The source file a crunched PNG was produced from, stored between builds by the path relative to the resource directory.
+   */
+  static class CrunchState {
+    private final long myLastModified;
+    private final long myLength;
+    private final String myKey;
+
+    CrunchState(long lastModified, long length, @NotNull String key) {
+      myLastModified = lastModified;
+      myLength = length;
+      myKey = key;
+    }
+
+    boolean isUpToDate(@NotNull File srcFile) {
+      return srcFile.lastModified() == myLastModified && srcFile.length() == myLength;
+    }
+
+    boolean hasKey(@NotNull String key) {
+      return key.equals(myKey);
+    }
+
+    @NotNull
+    static Map<String, CrunchState> load(@NotNull File file) {
+      final Map<String, CrunchState> result = new HashMap<String, CrunchState>();
+
+      if (!file.isFile()) {
+        return result;
+      }
+      try {
+        final DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+          final int count = input.readInt();
+
+          for (int i = 0; i < count; i++) {
+            final String relativePath = input.readUTF();
+            result.put(relativePath, new CrunchState(input.readLong(), input.readLong(), input.readUTF()));
+          }
+        }
+        finally {
+          input.close();
+        }
+      }
+      catch (IOException e) {
+        // Everything is checked against the cache again
+        LOG.info("Cannot read " + file.getPath(), e);
+        result.clear();
+      }
+      return result;
+    }
+
+    static void save(@NotNull File file, @NotNull Map<String, CrunchState> states) {
+      try {
+        FileUtil.createParentDirs(file);
+        final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+          output.writeInt(states.size());
+
+          for (Map.Entry<String, CrunchState> entry : states.entrySet()) {
+            final CrunchState state = entry.getValue();
+            output.writeUTF(entry.getKey());
+            output.writeLong(state.myLastModified);
+            output.writeLong(state.myLength);
+            output.writeUTF(state.myKey);
+          }
+        }
+        finally {
+          output.close();
+        }
+      }
+      catch (IOException e) {
+        LOG.info("Cannot write " + file.getPath(), e);
+        FileUtil.delete(file);
+      }
+    }
+  }
 }
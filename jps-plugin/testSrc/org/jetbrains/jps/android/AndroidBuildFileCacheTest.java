@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.android;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+
+public class AndroidBuildFileCacheTest extends TestCase {
+  private static final String REVISION = "23.0.1";
+  private static final String DX_PATH = "/sdk/build-tools/23.0.1/lib/dx.jar";
+
+  private File myTempDir;
+  private File myJar;
+  private AndroidBuildFileCache myCache;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myTempDir = FileUtil.createTempDirectory("android_build_cache", null);
+    myJar = new File(myTempDir, "lib.jar");
+    FileUtil.writeToFile(myJar, "jar contents");
+    myCache = new AndroidBuildFileCache(new File(myTempDir, "cache"), ".jar", 10);
+    assertTrue(new File(myTempDir, "cache").mkdirs());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myTempDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  private void storeDexed(String options) throws IOException {
+    final File dexed = new File(myTempDir, "dexed.jar");
+    FileUtil.writeToFile(dexed, "dexed with " + options);
+    myCache.store(AndroidBuildFileCache.computeKey(myJar, options), dexed);
+  }
+
+  private boolean restoreDexed(String options) throws IOException {
+    return myCache.restore(AndroidBuildFileCache.computeKey(myJar, options), new File(myTempDir, "restored.jar"));
+  }
+
+  public void testSameDexOptionsHit() throws IOException {
+    storeDexed(AndroidPreDexBuilder.getDexOptions(REVISION, DX_PATH, true, false, false));
+
+    assertTrue(restoreDexed(AndroidPreDexBuilder.getDexOptions(REVISION, DX_PATH, true, false, false)));
+    assertEquals("dexed with " + AndroidPreDexBuilder.getDexOptions(REVISION, DX_PATH, true, false, false),
+                 FileUtil.loadFile(new File(myTempDir, "restored.jar")));
+  }
+
+  public void testChangedDexOptionMisses() throws IOException {
+    storeDexed(AndroidPreDexBuilder.getDexOptions(REVISION, DX_PATH, true, false, false));
+
+    assertFalse(restoreDexed(AndroidPreDexBuilder.getDexOptions("24.0.0", DX_PATH, true, false, false)));
+    assertFalse(restoreDexed(AndroidPreDexBuilder.getDexOptions(REVISION, "/other/dx.jar", true, false, false)));
+    assertFalse(restoreDexed(AndroidPreDexBuilder.getDexOptions(null, null, true, false, false)));
+    assertFalse(restoreDexed(AndroidPreDexBuilder.getDexOptions(REVISION, DX_PATH, false, false, false)));
+    assertFalse(restoreDexed(AndroidPreDexBuilder.getDexOptions(REVISION, DX_PATH, true, true, false)));
+    assertFalse(restoreDexed(AndroidPreDexBuilder.getDexOptions(REVISION, DX_PATH, true, false, true)));
+    assertFalse(new File(myTempDir, "restored.jar").exists());
+  }
+
+  public void testChangedJarMisses() throws IOException {
+    final String options = AndroidPreDexBuilder.getDexOptions(REVISION, DX_PATH, true, false, false);
+    storeDexed(options);
+    FileUtil.writeToFile(myJar, "new jar contents");
+
+    assertFalse(restoreDexed(options));
+  }
+
+  public void testStoreAndRestore() throws IOException {
+    final File output = new File(myTempDir, "output.jar");
+    FileUtil.writeToFile(output, "output");
+    myCache.store("key", output);
+    final File restored = new File(myTempDir, "restored.jar");
+
+    assertTrue(myCache.restore("key", restored));
+    assertEquals("output", FileUtil.loadFile(restored));
+    assertFalse(myCache.restore("other", new File(myTempDir, "other.jar")));
+    assertFalse(new File(myTempDir, "other.jar").exists());
+  }
+
+  public void testStoreReplacesEntry() throws IOException {
+    final File output = new File(myTempDir, "output.jar");
+    FileUtil.writeToFile(output, "old");
+    myCache.store("key", output);
+    FileUtil.writeToFile(output, "new");
+    myCache.store("key", output);
+    final File restored = new File(myTempDir, "restored.jar");
+
+    assertTrue(myCache.restore("key", restored));
+    assertEquals("new", FileUtil.loadFile(restored));
+    assertEquals(1, new File(myTempDir, "cache").listFiles().length);
+  }
+
+  public void testTrimRemovesLeastRecentlyUsed() throws IOException {
+    final File output = new File(myTempDir, "output.jar");
+    FileUtil.writeToFile(output, "output");
+    final long now = System.currentTimeMillis();
+
+    for (int i = 0; i < 5; i++) {
+      myCache.store("key" + i, output);
+      assertTrue(myCache.getCachedFile("key" + i).setLastModified(now - (5 - i) * 60000L));
+    }
+    // Restoring an entry makes it the most recently used one
+    assertTrue(myCache.restore("key0", new File(myTempDir, "restored.jar")));
+    myCache.trim(3);
+
+    assertTrue(myCache.getCachedFile("key0").isFile());
+    assertFalse(myCache.getCachedFile("key1").exists());
+    assertFalse(myCache.getCachedFile("key2").exists());
+    assertTrue(myCache.getCachedFile("key3").isFile());
+    assertTrue(myCache.getCachedFile("key4").isFile());
+  }
+
+  public void testTrimKeepsSmallCache() throws IOException {
+    final File output = new File(myTempDir, "output.jar");
+    FileUtil.writeToFile(output, "output");
+    myCache.store("key0", output);
+    myCache.store("key1", output);
+    myCache.trim();
+
+    assertTrue(myCache.getCachedFile("key0").isFile());
+    assertTrue(myCache.getCachedFile("key1").isFile());
+  }
+}
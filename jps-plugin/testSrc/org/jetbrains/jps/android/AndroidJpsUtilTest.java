@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.android;
+
+import junit.framework.TestCase;
+import org.jetbrains.jps.api.CanceledStatus;
+import org.jetbrains.jps.incremental.ProjectBuildException;
+import org.jetbrains.jps.incremental.StopBuildException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AndroidJpsUtilTest extends TestCase {
+  private static final int JOB_COUNT = 20;
+
+  private final AtomicInteger myCalls = new AtomicInteger();
+
+  private List<Callable<Boolean>> createJobs(final int failingJob, final Exception exception) {
+    final List<Callable<Boolean>> jobs = new ArrayList<Callable<Boolean>>();
+
+    for (int i = 0; i < JOB_COUNT; i++) {
+      final int index = i;
+      jobs.add(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          myCalls.incrementAndGet();
+
+          if (index != failingJob) {
+            return true;
+          }
+          if (exception != null) {
+            throw exception;
+          }
+          return false;
+        }
+      });
+    }
+    return jobs;
+  }
+
+  public void testAllJobsSucceed() throws Exception {
+    for (int threadCount : new int[]{1, 4}) {
+      myCalls.set(0);
+      assertTrue(AndroidJpsUtil.runConcurrently(createJobs(-1, null), threadCount, CanceledStatus.NULL));
+      assertEquals(JOB_COUNT, myCalls.get());
+    }
+  }
+
+  public void testFailedJob() throws Exception {
+    for (int threadCount : new int[]{1, 4}) {
+      assertFalse(AndroidJpsUtil.runConcurrently(createJobs(5, null), threadCount, CanceledStatus.NULL));
+    }
+    // Without concurrency nothing is started after the failed job
+    myCalls.set(0);
+    assertFalse(AndroidJpsUtil.runConcurrently(createJobs(5, null), 1, CanceledStatus.NULL));
+    assertEquals(6, myCalls.get());
+  }
+
+  public void testIOExceptionIsRethrown() throws Exception {
+    final IOException exception = new IOException("cannot crunch");
+
+    for (int threadCount : new int[]{1, 4}) {
+      try {
+        AndroidJpsUtil.runConcurrently(createJobs(5, exception), threadCount, CanceledStatus.NULL);
+        fail("Expected an IOException with " + threadCount + " threads");
+      }
+      catch (IOException e) {
+        assertSame(exception, e);
+      }
+    }
+  }
+
+  public void testOtherExceptionIsWrapped() throws Exception {
+    final IllegalStateException exception = new IllegalStateException("cannot crunch");
+
+    for (int threadCount : new int[]{1, 4}) {
+      try {
+        AndroidJpsUtil.runConcurrently(createJobs(5, exception), threadCount, CanceledStatus.NULL);
+        fail("Expected a ProjectBuildException with " + threadCount + " threads");
+      }
+      catch (ProjectBuildException e) {
+        assertSame(exception, e.getCause());
+      }
+    }
+  }
+
+  public void testCanceledBuild() throws Exception {
+    final CanceledStatus canceled = new CanceledStatus() {
+      @Override
+      public boolean isCanceled() {
+        return true;
+      }
+    };
+
+    for (int threadCount : new int[]{1, 4}) {
+      myCalls.set(0);
+      try {
+        AndroidJpsUtil.runConcurrently(createJobs(-1, null), threadCount, canceled);
+        fail("Expected a StopBuildException with " + threadCount + " threads");
+      }
+      catch (StopBuildException ignore) {
+      }
+      assertEquals(0, myCalls.get());
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.android;
+
+import com.android.repository.Revision;
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+import org.jetbrains.jps.android.AndroidResourceCachingBuilder.CrunchState;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+public class AndroidResourceCachingBuilderTest extends TestCase {
+  private File myTempDir;
+  private File myPng;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myTempDir = FileUtil.createTempDirectory("android_crunch", null);
+    myPng = new File(myTempDir, "res/drawable/icon.png");
+    FileUtil.writeToFile(myPng, "png contents");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myTempDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  private CrunchState createState(File file) throws IOException {
+    return new CrunchState(file.lastModified(), file.length(), AndroidBuildFileCache.computeKey(file, "options"));
+  }
+
+  public void testSaveAndLoad() throws IOException {
+    final File stateFile = new File(myTempDir, "state/crunch_state");
+    final Map<String, CrunchState> states = new HashMap<String, CrunchState>();
+    states.put("drawable/icon.png", createState(myPng));
+    states.put("drawable-hdpi/other.png", new CrunchState(1, 2, "key"));
+    CrunchState.save(stateFile, states);
+
+    final Map<String, CrunchState> loaded = CrunchState.load(stateFile);
+    assertEquals(states.keySet(), loaded.keySet());
+    assertTrue(loaded.get("drawable/icon.png").isUpToDate(myPng));
+    assertTrue(loaded.get("drawable/icon.png").hasKey(AndroidBuildFileCache.computeKey(myPng, "options")));
+    assertTrue(loaded.get("drawable-hdpi/other.png").hasKey("key"));
+  }
+
+  public void testLoadMissingOrCorruptState() throws IOException {
+    final File stateFile = new File(myTempDir, "crunch_state");
+    assertTrue(CrunchState.load(stateFile).isEmpty());
+
+    FileUtil.writeToFile(stateFile, new byte[]{0, 0, 0, 5, 0});
+    assertTrue(CrunchState.load(stateFile).isEmpty());
+  }
+
+  public void testChangedTimestamp() throws IOException {
+    final CrunchState state = createState(myPng);
+    assertTrue(myPng.setLastModified(myPng.lastModified() - 10000));
+
+    assertFalse(state.isUpToDate(myPng));
+    // The content is the same, so the crunched file is reused
+    assertTrue(state.hasKey(AndroidBuildFileCache.computeKey(myPng, "options")));
+  }
+
+  public void testChangedLength() throws IOException {
+    final long lastModified = myPng.lastModified();
+    final CrunchState state = createState(myPng);
+    FileUtil.writeToFile(myPng, "longer png contents");
+    assertTrue(myPng.setLastModified(lastModified));
+
+    assertFalse(state.isUpToDate(myPng));
+    assertFalse(state.hasKey(AndroidBuildFileCache.computeKey(myPng, "options")));
+  }
+
+  public void testChangedContent() throws IOException {
+    final CrunchState state = createState(myPng);
+    FileUtil.writeToFile(myPng, "PNG CONTENTS");
+
+    assertFalse(state.hasKey(AndroidBuildFileCache.computeKey(myPng, "options")));
+    assertFalse(state.hasKey(AndroidBuildFileCache.computeKey(myPng, "other options")));
+  }
+
+  public void testDirectoryCrunchForOldBuildTools() {
+    assertFalse(AndroidResourceCachingBuilder.canCrunchSingleFiles(null));
+    assertFalse(AndroidResourceCachingBuilder.canCrunchSingleFiles(new Revision(17)));
+    assertFalse(AndroidResourceCachingBuilder.canCrunchSingleFiles(new Revision(18, 1, 1)));
+    assertTrue(AndroidResourceCachingBuilder.canCrunchSingleFiles(new Revision(19)));
+    assertTrue(AndroidResourceCachingBuilder.canCrunchSingleFiles(new Revision(23, 0, 1)));
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.tools.sherpa.scout;
+
+import java.util.Arrays;
+
+/**
+ * Probabilities (and biases) of centering one widget between two anchors, in one orientation.
+ * Candidates are 2 per widget (left/right or above/below): candidate c is the side (c & 1) of widget c / 2.
+ *
+ * The table is either dense, with a value for every pair of candidates, or pruned, with values only for
+ * the pairs which can be picked. In a pruned table the other pairs read as the default value, which is
+ * what a dense table holds for pairs which cannot be centered on.
+ */
+class ScoutCenterTable {
+    private final int mSize;
+
+    // dense table
+    private float[][] mProbability;
+    private float[][] mBias;
+
+    // pruned table, keys are candidate1 * size + candidate2 in ascending order
+    private int[] mKeys;
+    private float[] mPrunedProbability;
+    private float[] mPrunedBias;
+    private int mSelf;
+    private float mOtherValue;
+    private float mFill;
+    private boolean mFilled;
+
+    /**
+     * Create a dense table
+     */
+    ScoutCenterTable(float[][] probability, float[][] bias) {
+        mSize = probability.length;
+        mProbability = probability;
+        mBias = bias;
+    }
+
+    /**
+     * Create a pruned table
+     *
+     * @param size        number of candidates
+     * @param self        index of the widget being centered, pairs involving its own sides are 0
+     * @param otherValue  value of the pairs which are neither stored nor involving the widget itself
+     * @param keys        stored pairs, candidate1 * size + candidate2 in ascending order
+     * @param probability probability of the stored pairs
+     * @param bias        bias of the stored pairs
+     */
+    ScoutCenterTable(int size, int self, float otherValue, int[] keys, float[] probability, float[] bias) {
+        mSize = size;
+        mSelf = self;
+        mOtherValue = otherValue;
+        mKeys = keys;
+        mPrunedProbability = probability;
+        mPrunedBias = bias;
+    }
+
+    boolean isPruned() {
+        return mProbability == null;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    float get(int candidate1, int candidate2) {
+        if (!isPruned()) {
+            return mProbability[candidate1][candidate2];
+        }
+        if (mFilled) {
+            return mFill;
+        }
+        int index = Arrays.binarySearch(mKeys, candidate1 * mSize + candidate2);
+        if (index >= 0) {
+            return mPrunedProbability[index];
+        }
+        if (candidate1 / 2 == mSelf || candidate2 / 2 == mSelf) {
+            return 0;
+        }
+        return mOtherValue;
+    }
+
+    float getBias(int candidate1, int candidate2) {
+        if (!isPruned()) {
+            return mBias[candidate1][candidate2];
+        }
+        int index = mFilled ? -1 : Arrays.binarySearch(mKeys, candidate1 * mSize + candidate2);
+        return index >= 0 ? mPrunedBias[index] : 0;
+    }
+
+    /**
+     * Change the probability of a pair. In a pruned table only the stored pairs can be changed.
+     */
+    void set(int candidate1, int candidate2, float value) {
+        if (!isPruned()) {
+            mProbability[candidate1][candidate2] = value;
+            return;
+        }
+        int index = mFilled ? -1 : Arrays.binarySearch(mKeys, candidate1 * mSize + candidate2);
+        if (index < 0) {
+            throw new IllegalStateException("pair " + candidate1 + "," + candidate2 + " is not stored");
+        }
+        mPrunedProbability[index] = value;
+    }
+
+    /**
+     * Set the probability of all the pairs
+     */
+    void fill(float value) {
+        if (!isPruned()) {
+            for (float[] row : mProbability) {
+                Arrays.fill(row, value);
+            }
+            return;
+        }
+        mFilled = true;
+        mFill = value;
+        mKeys = new int[0];
+        mPrunedProbability = new float[0];
+        mPrunedBias = new float[0];
+    }
+
+    /**
+     * Find the pair with the maximum probability, the first one in row order on ties like {@link Utils#max(float[][], int[])}
+     *
+     * @param result the candidates of the maximum filled by the function
+     * @return the maximum probability
+     */
+    float max(int[] result) {
+        if (!isPruned()) {
+            return Utils.max(mProbability, result);
+        }
+        if (mFilled) {
+            result[0] = 0;
+            result[1] = 0;
+            return mFill;
+        }
+        int maxIndex = -1;
+        for (int i = 0; i < mKeys.length; i++) {
+            if (maxIndex == -1 || mPrunedProbability[maxIndex] < mPrunedProbability[i]) {
+                maxIndex = i;
+            }
+        }
+        // a stored pair is at least as probable as the pairs of its row which are not stored,
+        // and these are never above the .9 threshold of the centered connections
+        if (maxIndex != -1 && mPrunedProbability[maxIndex] > 0) {
+            result[0] = mKeys[maxIndex] / mSize;
+            result[1] = mKeys[maxIndex] % mSize;
+            return mPrunedProbability[maxIndex];
+        }
+        int max1 = 0;
+        int max2 = 0;
+        float val = get(0, 0);
+        for (int i = 0; i < mSize; i++) {
+            for (int j = 0; j < mSize; j++) {
+                float value = get(i, j);
+                if (val < value) {
+                    max1 = i;
+                    max2 = j;
+                    val = value;
+                }
+            }
+        }
+        result[0] = max1;
+        result[1] = max2;
+        return val;
+    }
+
+    /**
+     * @return the probabilities of one candidate with all the others (for debugging)
+     */
+    float[] getRow(int candidate1) {
+        float[] row = new float[mSize];
+        for (int i = 0; i < mSize; i++) {
+            row[i] = get(candidate1, i);
+        }
+        return row;
+    }
+}
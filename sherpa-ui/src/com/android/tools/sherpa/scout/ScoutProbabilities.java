@@ -20,6 +20,7 @@ import java.awt.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.stream.IntStream;
 
 /**
  * Inference Probability tables
@@ -43,12 +44,24 @@ public class ScoutProbabilities {
     private static final int ROOT_MARGIN_DISCOUNT = 16;
     private static final int MAX_ROOT_OVERHANG = 10;
     private static final boolean SKIP_SPARSE_COLUMNS = true;
+    private static final Direction[][] CENTER_SIDES =
+            { { Direction.NORTH, Direction.SOUTH }, { Direction.WEST, Direction.EAST } };
 
     float[][][] mProbability; // probability of a connection
     float[][][] mMargin; // margin needed for that connection
-    float[][][][] mBinaryBias; // Ratio needed for binary connections (should be .5 for now)
-    float[][][][] mBinaryProbability; // probability of a left_right/up_down
+    ScoutCenterTable[][] mCenterTables; // probability & bias of a left_right/up_down centered connection
     int len;
+    private boolean mPruned = true;
+
+    /**
+     * Pruned tables only keep the centered connections which can be picked, so they grow about
+     * linearly with the number of widgets instead of cubically. The picked connections are the same.
+     *
+     * @param pruned if false the complete tables are computed
+     */
+    public void setPruned(boolean pruned) {
+        mPruned = pruned;
+    }
 
     /**
      * This calculates a constraint tables
@@ -67,15 +80,33 @@ public class ScoutProbabilities {
 
         mProbability = new float[len][][];
         mMargin = new float[len][][];
+        mCenterTables = new ScoutCenterTable[len][];
+
+        if (mPruned) {
+            // the tables of a widget only depend on the positions, widgets can be scored in parallel
+            IntStream.range(1, len).parallel().forEach(i -> computeWidgetTables(list, i));
+        } else {
+            for (int i = 1; i < len; i++) { // for all non root widgets
+                computeWidgetTables(list, i);
+            }
+        }
+        if (DEBUG) {
+            printTable(list);
+        }
+    }
 
-        // calculate probability for normal connections
+    /**
+     * Calculate the probabilities of the connections of one widget
+     *
+     * @param list ordered list of widgets root must be list[0]
+     * @param i    the widget
+     */
+    private void computeWidgetTables(ScoutWidget[] list, int i) {
         float[] result = new float[2]; // estimation function return 2 values probability & margin
 
-        for (int i = 1; i < len; i++) { // for all non root widgets
+        // calculate probability for normal connections
+        if (!list[i].isGuideline()) {
             Direction[] all = Direction.getAllDirections();
-            if (list[i].isGuideline()) {
-                continue;
-            }
             mProbability[i] = new float[all.length][];
             mMargin[i] = new float[all.length][];
             for (int dir = 0; dir < all.length; dir++) { // for all possible connections
@@ -102,39 +133,149 @@ public class ScoutProbabilities {
         }
 
         // calculate probability for "centered" connections
-        mBinaryProbability = new float[len][2][len * 2][len * 2];
-        mBinaryBias = new float[len][2][len * 2][len * 2];
-        Direction[][] directions =
-                { { Direction.NORTH, Direction.SOUTH }, { Direction.WEST, Direction.EAST } };
-        for (int i = 1; i < len; i++) {
-            for (int horizontal = 0; horizontal < 2; horizontal++) { // vert=0 or horizantal=1
-                Direction[] sides = directions[horizontal];
-                for (int candidate1 = 0; candidate1 < len * 2; candidate1++) {
-                    for (int candidate2 = 0; candidate2 < len * 2; candidate2++) {
-
-                        // candidates are 2 per widget (left/right or above/below)
-                        int widget1Number = candidate1 / 2;
-                        int widget2Number = candidate2 / 2;
-
-                        // pick the sides to connect
-                        Direction widget1Side = sides[candidate1 & 0x1];
-                        Direction widget2Side = sides[candidate2 & 0x1];
-
-                        estimateBinaryProbability(list[i], horizontal,
-                                list[widget1Number], widget1Side,
-                                list[widget2Number], widget2Side,
-                                list, result);
-                        mBinaryProbability[i][horizontal][candidate1][candidate2] =
-                                result[RESULT_PROBABILITY];
-                        mBinaryBias[i][horizontal][candidate1][candidate2] =
-                                result[RESULT_MARGIN];
-                    }
+        mCenterTables[i] = new ScoutCenterTable[2];
+        for (int horizontal = 0; horizontal < 2; horizontal++) { // vert=0 or horizantal=1
+            mCenterTables[i][horizontal] = mPruned
+                    ? computePrunedCenterTable(list, i, horizontal, result)
+                    : computeDenseCenterTable(list, i, horizontal, result);
+        }
+    }
+
+    /**
+     * Calculate the probability of all the centered connections of a widget
+     */
+    private static ScoutCenterTable computeDenseCenterTable(ScoutWidget[] list, int i,
+            int horizontal, float[] result) {
+        Direction[] sides = CENTER_SIDES[horizontal];
+        int size = list.length * 2;
+        float[][] probability = new float[size][size];
+        float[][] bias = new float[size][size];
+        for (int candidate1 = 0; candidate1 < size; candidate1++) {
+            for (int candidate2 = 0; candidate2 < size; candidate2++) {
+
+                // candidates are 2 per widget (left/right or above/below)
+                int widget1Number = candidate1 / 2;
+                int widget2Number = candidate2 / 2;
+
+                // pick the sides to connect
+                Direction widget1Side = sides[candidate1 & 0x1];
+                Direction widget2Side = sides[candidate2 & 0x1];
+
+                estimateBinaryProbability(list[i], horizontal,
+                        list[widget1Number], widget1Side,
+                        list[widget2Number], widget2Side,
+                        list, result);
+                probability[candidate1][candidate2] = result[RESULT_PROBABILITY];
+                bias[candidate1][candidate2] = result[RESULT_MARGIN];
+            }
+        }
+        return new ScoutCenterTable(probability, bias);
+    }
+
+    /**
+     * Calculate the probability of the centered connections of a widget which can be picked.
+     * The pairs of widgets (other than root) the widget is not between are NEGATIVE_GAP_FLAG,
+     * they are not stored. Among the pairs it is between, a pair is only stored if the widget is
+     * close to its center (their probability is then above the others) or if it is the closest
+     * to the center in its row. The pairs left out are at most 1 / (1 + SLOPE_CENTER_CONNECTION),
+     * far from the threshold of the centered connections, and never the maximum of the table.
+     * The root keeps all its pairs as it accepts some overhang.
+     */
+    private static ScoutCenterTable computePrunedCenterTable(ScoutWidget[] list, int i,
+            int horizontal, float[] result) {
+        ScoutWidget from = list[i];
+        int size = list.length * 2;
+
+        // same as estimateBinaryProbability, nothing can be centered
+        if (from.isGuideline() || ((horizontal == Direction.ORIENTATION_VERTICAL)
+                && from.hasBaseline() && from.hasConnection(Direction.BASE))) {
+            return new ScoutCenterTable(size, i, 0, new int[0], new float[0], new float[0]);
+        }
+
+        Direction[] sides = CENTER_SIDES[horizontal];
+        float location1 = from.getLocation(Direction.getDirections(horizontal)[0]);
+        float location2 = from.getLocation(Direction.getDirections(horizontal)[1]);
+
+        // sweep the candidates after the widget in the order of their gap
+        ArrayList<Integer> after = new ArrayList<Integer>();
+        float[] gap2 = new float[size];
+        for (int candidate = 2; candidate < size; candidate++) {
+            gap2[candidate] = list[candidate / 2].getLocation(sides[candidate & 0x1]) - location2;
+            if (candidate / 2 != i && gap2[candidate] >= 0) {
+                after.add(candidate);
+            }
+        }
+        after.sort((c1, c2) -> Float.compare(gap2[c1], gap2[c2]));
+        float[] sortedGaps = new float[after.size()];
+        for (int k = 0; k < sortedGaps.length; k++) {
+            sortedGaps[k] = gap2[after.get(k)];
+        }
+
+        int[] keys = new int[8 * size];
+        int count = 0;
+        for (int candidate = 0; candidate < size; candidate++) { // all the pairs with root
+            for (int rootCandidate = 0; rootCandidate < 2; rootCandidate++) {
+                keys = ensureCapacity(keys, count + 2);
+                keys[count++] = rootCandidate * size + candidate;
+                keys[count++] = candidate * size + rootCandidate;
+            }
+        }
+        for (int candidate1 = 2; candidate1 < size; candidate1++) {
+            float gap1 = location1 - list[candidate1 / 2].getLocation(sides[candidate1 & 0x1]);
+            if (candidate1 / 2 == i || gap1 < 0) {
+                continue;
+            }
+            // first candidate with a gap >= gap1
+            int start = Arrays.binarySearch(sortedGaps, gap1);
+            if (start < 0) {
+                start = -start - 1;
+            }
+            while (start > 0 && sortedGaps[start - 1] == gap1) {
+                start--;
+            }
+            for (int k = start; k < sortedGaps.length; k++) {
+                if (k > start && sortedGaps[k] - gap1 >= SLOPE_CENTER_CONNECTION
+                        && sortedGaps[k] != sortedGaps[start]) {
+                    break;
+                }
+                keys = ensureCapacity(keys, count + 1);
+                keys[count++] = candidate1 * size + after.get(k);
+            }
+            for (int k = start - 1; k >= 0; k--) {
+                if (k < start - 1 && gap1 - sortedGaps[k] >= SLOPE_CENTER_CONNECTION
+                        && sortedGaps[k] != sortedGaps[start - 1]) {
+                    break;
                 }
+                keys = ensureCapacity(keys, count + 1);
+                keys[count++] = candidate1 * size + after.get(k);
             }
         }
-        if (DEBUG) {
-            printTable(list);
+
+        Arrays.sort(keys, 0, count);
+        int unique = 0;
+        for (int k = 0; k < count; k++) {
+            if (unique == 0 || keys[unique - 1] != keys[k]) {
+                keys[unique++] = keys[k];
+            }
+        }
+        keys = Arrays.copyOf(keys, unique);
+        float[] probability = new float[unique];
+        float[] bias = new float[unique];
+        for (int k = 0; k < unique; k++) {
+            int candidate1 = keys[k] / size;
+            int candidate2 = keys[k] % size;
+            estimateBinaryProbability(from, horizontal,
+                    list[candidate1 / 2], sides[candidate1 & 0x1],
+                    list[candidate2 / 2], sides[candidate2 & 0x1],
+                    list, result);
+            probability[k] = result[RESULT_PROBABILITY];
+            bias[k] = result[RESULT_MARGIN];
         }
+        return new ScoutCenterTable(size, i, NEGATIVE_GAP_FLAG, keys, probability, bias);
+    }
+
+    private static int[] ensureCapacity(int[] array, int capacity) {
+        return (capacity <= array.length) ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
     }
 
     /**
@@ -247,6 +388,20 @@ public class ScoutProbabilities {
         }
         int[] dualIndex = new int[2];
 
+        if (mPruned) {
+            // columns change and compare all the pairs, they need the complete tables
+            float[] result = new float[2];
+            for (ArrayList<ScoutWidget> group : groups) {
+                for (ScoutWidget scoutWidget : group) {
+                    for (int j = 1; j < list.length; j++) {
+                        if (scoutWidget == list[j] && mCenterTables[j][1].isPruned()) {
+                            mCenterTables[j][1] = computeDenseCenterTable(list, j, 1, result);
+                        }
+                    }
+                }
+            }
+        }
+
         for (ArrayList<ScoutWidget> group : groups) {
             if (SKIP_SPARSE_COLUMNS) { // skip columns that have lot of space to reject accidental columns.
                 Rectangle union = null;
@@ -285,10 +440,10 @@ public class ScoutProbabilities {
                 for (int j = 0; j < widgets.length; j++) {
                     int l = map[j] * 2;
                     for (int k = 2; k < 2 * list.length; k++) {
-                        mBinaryProbability[map[i]][1][l][k] = -1;
-                        mBinaryProbability[map[i]][1][k][l] = -1;
-                        mBinaryProbability[map[i]][1][l + 1][k] = -1;
-                        mBinaryProbability[map[i]][1][k][l + 1] = -1;
+                        mCenterTables[map[i]][1].set(l, k, -1);
+                        mCenterTables[map[i]][1].set(k, l, -1);
+                        mCenterTables[map[i]][1].set(l + 1, k, -1);
+                        mCenterTables[map[i]][1].set(k, l + 1, -1);
                     }
                 }
             }
@@ -296,7 +451,7 @@ public class ScoutProbabilities {
             int bestToConnect = -1;
             float maxVal = -1;
             for (int i = 0; i < widgets.length; i++) {
-                max[i] = Utils.max(mBinaryProbability[map[i]][1], dualIndex);
+                max[i] = mCenterTables[map[i]][1].max(dualIndex);
                 if (maxVal < max[i]) {
                     bestToConnect = i;
                     maxVal = max[i];
@@ -321,7 +476,7 @@ public class ScoutProbabilities {
             }
 
             if (bestToConnect >= 0) {
-                Utils.max(mBinaryProbability[map[bestToConnect]][1], dualIndex);
+                mCenterTables[map[bestToConnect]][1].max(dualIndex);
                 ScoutWidget w1 = list[dualIndex[0] / 2];
                 ScoutWidget w2 = list[dualIndex[1] / 2];
                 Direction dir1 = ((dualIndex[0] & 0x1) == 0) ? Direction.WEST : Direction.EAST;
@@ -402,7 +557,7 @@ public class ScoutProbabilities {
             }
 
             if (list[i].setConstraint(baseline, list[maxIndex], baseline, 0)) {
-                Utils.zero(mBinaryProbability[i][Direction.ORIENTATION_VERTICAL]);
+                mCenterTables[i][Direction.ORIENTATION_VERTICAL].fill(-1);
                 Arrays.fill(widgetProbability[baseline], 0.0f);
                 widgetProbability[north] = null;
                 Arrays.fill(widgetProbability[south], 0.0f);
@@ -425,19 +580,17 @@ public class ScoutProbabilities {
                 { { Direction.NORTH, Direction.SOUTH }, { Direction.WEST, Direction.EAST } };
         int[] dualIndex = new int[2];
         for (int i = 1; i < len; i++) {
-            float[][][] widgetBinaryProbability = mBinaryProbability[i];
-            float[][][] widgetBinaryBias = mBinaryBias[i];
+            ScoutCenterTable[] widgetCenterTables = mCenterTables[i];
 
-            for (int horizontal = 0; horizontal < widgetBinaryProbability.length;
+            for (int horizontal = 0; horizontal < widgetCenterTables.length;
                     horizontal++) { // vert=0 or horizontals=1
-                float[][] pmatrix = widgetBinaryProbability[horizontal];
-                float[][] bias = widgetBinaryBias[horizontal];
-                if (pmatrix == null) {
+                ScoutCenterTable table = widgetCenterTables[horizontal];
+                if (table == null) {
                     continue;
                 }
                 boolean worked = false;
                 while (!worked) {
-                    Utils.max(pmatrix, dualIndex);
+                    table.max(dualIndex);
                     int max1 = dualIndex[0];
                     int max2 = dualIndex[1];
                     int wNo1 = max1 / 2;
@@ -446,7 +599,7 @@ public class ScoutProbabilities {
                     Direction widget2Side = side[horizontal][max2 & 0x1];
 
                     // pick the sides to connect
-                    float centerProbability = pmatrix[max1][max2];
+                    float centerProbability = table.get(max1, max2);
                     worked = true;
                     if (centerProbability > .9) {
                         if (checkResizeable && !list[i].isCandidateResizable(horizontal)) {
@@ -456,12 +609,12 @@ public class ScoutProbabilities {
                         worked = list[i].setCentered(horizontal * 2, list[wNo1], list[wNo2],
                                 widget1Side,
                                 widget2Side,
-                                bias[max1][max2]);
+                                table.getBias(max1, max2));
                         if (worked) {
                             mProbability[i][horizontal * 2] = null;
                             mProbability[i][horizontal * 2 + 1] = null;
                         } else {
-                            pmatrix[max1][max2] = 0;
+                            table.set(max1, max2, 0);
                         }
                     }
                 }
@@ -549,7 +702,7 @@ public class ScoutProbabilities {
                             found = false;
                         }
                     } else {
-                        mBinaryProbability[i][horizontal] = null;
+                        mCenterTables[i][horizontal] = null;
                         if (DEBUG) {
                             System.out.println("connect " + s);
                         }
@@ -879,11 +1032,14 @@ public class ScoutProbabilities {
         System.out.println("  " + str);
 
         for (int i = 1; i < len; i++) {
-            for (int dir = 0; dir < mBinaryProbability[i].length;
+            for (int dir = 0; dir < mCenterTables[i].length;
                     dir++) { // above, below, left, right
+                if (mCenterTables[i][dir] == null) {
+                    continue;
+                }
                 String tab = "";
-                for (int k = 0; k < mBinaryProbability[i][dir].length; k++) {
-                    tab += Utils.toS(mBinaryProbability[i][dir][k]) + "\n  ";
+                for (int k = 0; k < mCenterTables[i][dir].size(); k++) {
+                    tab += Utils.toS(mCenterTables[i][dir].getRow(k)) + "\n  ";
                 }
                 System.out.println(Direction.toString(dir) + " " + tab);
             }